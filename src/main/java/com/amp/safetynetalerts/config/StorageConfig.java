@@ -0,0 +1,25 @@
+package com.amp.safetynetalerts.config;
+
+import com.amp.safetynetalerts.repository.H2SnapshotStorage;
+import com.amp.safetynetalerts.repository.JsonSnapshotStorage;
+import com.amp.safetynetalerts.repository.SnapshotStorage;
+import com.amp.safetynetalerts.repository.StorageBackend;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+@Configuration
+public class StorageConfig {
+
+    @Bean
+    @Primary
+    public SnapshotStorage snapshotStorage(JsonSnapshotStorage jsonStorage,
+                                           @Value("${safetynetalerts.storage.backend:JSON}") StorageBackend backend,
+                                           @Value("${safetynetalerts.storage.h2.url:jdbc:h2:file:./data}") String h2Url) {
+        return switch (backend) {
+            case JSON -> jsonStorage;
+            case H2 -> new H2SnapshotStorage(h2Url, jsonStorage);
+        };
+    }
+}
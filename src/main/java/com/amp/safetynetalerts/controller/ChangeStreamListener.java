@@ -0,0 +1,53 @@
+package com.amp.safetynetalerts.controller;
+
+import com.amp.safetynetalerts.dto.ChangeEventDTO;
+import com.amp.safetynetalerts.repository.ChangeFeed;
+import com.google.gson.Gson;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes the commits of a {@link ChangeFeed} subscription to a Server-Sent Events stream.
+ * Each change is sent as a {@code change} event holding its version, entity type, key, previous and new entity.
+ * Only the last event of a version carries the version as its id, so the Last-Event-ID sent back by a reconnecting
+ * client always designates a version it received entirely. When the subscription is dropped, a {@code gap} event
+ * holding the last version delivered is sent and the stream is completed, the client resumes from that version.
+ */
+class ChangeStreamListener implements ChangeFeed.Listener {
+
+    private final SseEmitter emitter;
+    private final Gson gson = new Gson();
+
+    ChangeStreamListener(SseEmitter emitter) {
+        this.emitter = emitter;
+    }
+
+    @Override
+    public void onCommit(ChangeFeed.Commit commit) throws IOException {
+        List<ChangeFeed.ChangeEvent> changes = commit.changes();
+        for (int i = 0; i < changes.size(); i++) {
+            ChangeFeed.ChangeEvent change = changes.get(i);
+            SseEmitter.SseEventBuilder event = SseEmitter.event()
+                    .name("change")
+                    .data(gson.toJson(new ChangeEventDTO(commit.version(), change.type().name(), change.key(),
+                            change.before(), change.after())), MediaType.APPLICATION_JSON);
+            if (i == changes.size() - 1) {
+                event.id(String.valueOf(commit.version()));
+            }
+            emitter.send(event);
+        }
+    }
+
+    @Override
+    public void onGap(long lastVersion) {
+        try {
+            emitter.send(SseEmitter.event().name("gap").data(String.valueOf(lastVersion)));
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+        }
+    }
+}
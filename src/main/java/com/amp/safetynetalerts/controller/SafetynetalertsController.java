@@ -3,16 +3,22 @@ package com.amp.safetynetalerts.controller;
 import com.amp.safetynetalerts.dto.*;
 import com.amp.safetynetalerts.exception.*;
 import com.amp.safetynetalerts.model.*;
+import com.amp.safetynetalerts.repository.ChangeFeed;
+import com.amp.safetynetalerts.repository.SnapshotHistory;
 import com.amp.safetynetalerts.service.FirestationService;
 import com.amp.safetynetalerts.service.MedicalRecordService;
 import com.amp.safetynetalerts.service.PersonService;
+import com.amp.safetynetalerts.service.SyncService;
 import org.springframework.web.bind.annotation.RestController;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
 import java.util.*;
@@ -26,25 +32,41 @@ public class SafetynetalertsController {
     private final FirestationService firestationService;
     private final PersonService personService;
     private final MedicalRecordService medicalRecordService;
+    private final SnapshotHistory snapshotHistory;
+    private final ChangeFeed changeFeed;
+    private final SyncService syncService;
 
     public SafetynetalertsController(FirestationService firestationService,
                                      PersonService personService,
-                                     MedicalRecordService medicalRecordService) {
+                                     MedicalRecordService medicalRecordService,
+                                     SnapshotHistory snapshotHistory,
+                                     ChangeFeed changeFeed,
+                                     SyncService syncService) {
         this.firestationService = firestationService;
         this.personService = personService;
         this.medicalRecordService = medicalRecordService;
+        this.snapshotHistory = snapshotHistory;
+        this.changeFeed = changeFeed;
+        this.syncService = syncService;
     }
 
     @GetMapping("/person")
-    public ResponseEntity<?> getPerson(@RequestParam String firstName, @RequestParam String lastName) throws Exception {
+    public ResponseEntity<?> getPerson(@RequestParam String firstName, @RequestParam String lastName,
+                                       @RequestParam(required = false) String asOf) throws Exception {
 
         logger.info("Retrieving person with firstname: {}, lastname: {}", firstName, lastName);
 
-        PersonDTO person = personService.fetchPerson(firstName, lastName);
+        long version;
+        PersonDTO person;
+        try (SnapshotHistory.Pin ignored = pin(asOf)) {
+            // The version is read first: if the person changes in between, the ETag is stale and a conditional update fails.
+            version = personService.getPersonVersion(firstName, lastName);
+            person = personService.fetchPerson(firstName, lastName);
+        }
 
-        logger.debug("Retrieved person data: {}", person);
+        logger.debug("Retrieved person data: {} at version {}", person, version);
 
-        return new ResponseEntity<>(person, HttpStatus.OK);
+        return ResponseEntity.ok().eTag(String.valueOf(version)).body(person);
     }
 
     @PostMapping(path = "/person", consumes = "application/json")
@@ -63,11 +85,17 @@ public class SafetynetalertsController {
     }
 
     @PutMapping(path = "/person", consumes = "application/json")
-    public ResponseEntity<?> updatePerson(@RequestBody Person person) throws Exception {
+    public ResponseEntity<?> updatePerson(@RequestBody Person person,
+                                          @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws Exception {
 
         logger.info("Updating the person : {}", person);
 
-        personService.updatePersonDataWrapper(person);
+        Long expectedVersion = expectedVersion(ifMatch);
+        if (expectedVersion == null) {
+            personService.updatePersonDataWrapper(person);
+        } else {
+            personService.updatePersonDataWrapper(person, expectedVersion);
+        }
 
         logger.debug("Person successfully updated : {}", person);
 
@@ -76,11 +104,17 @@ public class SafetynetalertsController {
     }
 
     @DeleteMapping("/person")
-    public ResponseEntity<String> deletePerson(@RequestParam String firstName, @RequestParam String lastName) throws Exception {
+    public ResponseEntity<String> deletePerson(@RequestParam String firstName, @RequestParam String lastName,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws Exception {
 
         logger.info("Deleting person with first name: {}, last name: {}", firstName, lastName);
 
-        personService.deletePersonDataWrapper(firstName, lastName);
+        Long expectedVersion = expectedVersion(ifMatch);
+        if (expectedVersion == null) {
+            personService.deletePersonDataWrapper(firstName, lastName);
+        } else {
+            personService.deletePersonDataWrapper(firstName, lastName, expectedVersion);
+        }
 
         logger.debug("Person successfully deleted.");
 
@@ -89,11 +123,15 @@ public class SafetynetalertsController {
     }
 
     @GetMapping("/addressesFromFirestationNumber")
-    public ResponseEntity<?> getAddressesFromFirestationNumber(@RequestParam Integer station) {
+    public ResponseEntity<?> getAddressesFromFirestationNumber(@RequestParam Integer station,
+                                                               @RequestParam(required = false) String asOf) {
 
         logger.info("Retrieving addresses for station number : {}", station);
 
-        List<String> addresses = firestationService.getAddressesFromFirestation(station);
+        List<String> addresses;
+        try (SnapshotHistory.Pin ignored = pin(asOf)) {
+            addresses = firestationService.getAddressesFromFirestation(station);
+        }
 
         logger.debug("Addresses retrieved : {}", addresses);
 
@@ -144,20 +182,26 @@ public class SafetynetalertsController {
     }
 
     @GetMapping("/medicalRecord")
-    public ResponseEntity<MedicalRecordDTO> getMedicalRecord(@RequestParam String firstName, @RequestParam String lastName) {
+    public ResponseEntity<MedicalRecordDTO> getMedicalRecord(@RequestParam String firstName, @RequestParam String lastName,
+                                                             @RequestParam(required = false) String asOf) {
 
         logger.info("Retrieving medical record with first name: {}, last name: {}", firstName, lastName);
 
-        MedicalRecordDTO medicalRecord = medicalRecordService.getMedicalRecordDataWrapper(firstName, lastName);
+        long version;
+        MedicalRecordDTO medicalRecord;
+        try (SnapshotHistory.Pin ignored = pin(asOf)) {
+            version = medicalRecordService.getMedicalRecordVersion(firstName, lastName);
+            medicalRecord = medicalRecordService.getMedicalRecordDataWrapper(firstName, lastName);
+        }
 
         if (medicalRecord == null) {
 
             throw new MedicalRecordNotFoundException("Medical Record for " + firstName + " " + lastName + " not found.");
         }
 
-        logger.debug("Medical record retrieved: {}", medicalRecord);
+        logger.debug("Medical record retrieved: {} at version {}", medicalRecord, version);
 
-        return new ResponseEntity<>(medicalRecord, HttpStatus.OK);
+        return ResponseEntity.ok().eTag(String.valueOf(version)).body(medicalRecord);
     }
 
     @PostMapping("/medicalRecord")
@@ -175,11 +219,15 @@ public class SafetynetalertsController {
     }
 
     @PutMapping("/medicalRecord")
-    public ResponseEntity<?> updateMedicalRecord(@RequestBody MedicalRecord medicalRecordToUpdate) throws Exception {
+    public ResponseEntity<?> updateMedicalRecord(@RequestBody MedicalRecord medicalRecordToUpdate,
+                                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws Exception {
 
         logger.info("Updating medical record: {}", medicalRecordToUpdate);
 
-        MedicalRecordDTO updatedRecord = medicalRecordService.updateMedicalRecordDataWrapper(medicalRecordToUpdate);
+        Long expectedVersion = expectedVersion(ifMatch);
+        MedicalRecordDTO updatedRecord = expectedVersion == null
+                ? medicalRecordService.updateMedicalRecordDataWrapper(medicalRecordToUpdate)
+                : medicalRecordService.updateMedicalRecordDataWrapper(medicalRecordToUpdate, expectedVersion);
 
         if (updatedRecord == null) {
             throw new MedicalRecordNotFoundException("Medical Record not found for provided name");
@@ -191,11 +239,17 @@ public class SafetynetalertsController {
     }
 
     @DeleteMapping("/medicalRecord")
-    public ResponseEntity<?> deleteMedicalRecord(@RequestParam String firstName, @RequestParam String lastName) throws IOException {
+    public ResponseEntity<?> deleteMedicalRecord(@RequestParam String firstName, @RequestParam String lastName,
+                                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws IOException {
 
         logger.info("Deleting medical record for person with first name: {}, last name: {}", firstName, lastName);
 
-        medicalRecordService.deleteMedicalRecordDataWrapper(firstName, lastName);
+        Long expectedVersion = expectedVersion(ifMatch);
+        if (expectedVersion == null) {
+            medicalRecordService.deleteMedicalRecordDataWrapper(firstName, lastName);
+        } else {
+            medicalRecordService.deleteMedicalRecordDataWrapper(firstName, lastName, expectedVersion);
+        }
 
         logger.info("Medical record successfully deleted for person with first name: {}, last name: {}", firstName, lastName);
 
@@ -203,13 +257,16 @@ public class SafetynetalertsController {
     }
 
     @GetMapping("/personsByFirestationNumber")
-    public ResponseEntity<Map<String, Object>> getPersonsByFirestationNumber(@RequestParam Integer stationNumber) {
+    public ResponseEntity<Map<String, Object>> getPersonsByFirestationNumber(@RequestParam Integer stationNumber,
+                                                                             @RequestParam(required = false) String asOf) {
 
         Map<String, Object> response = null;
 
         logger.info("Retrieving persons' information by firestation number: {}", stationNumber);
 
-        response = firestationService.getDataByFirestationNumber(stationNumber);
+        try (SnapshotHistory.Pin ignored = pin(asOf)) {
+            response = firestationService.getDataByFirestationNumber(stationNumber);
+        }
 
         if (response == null) {
             throw new FirestationNotFoundException("Firestation with number " + stationNumber + " not found");
@@ -221,11 +278,14 @@ public class SafetynetalertsController {
     }
 
     @GetMapping("/childAlert")
-    public ResponseEntity<?> getChildAlert(@RequestParam String address) {
+    public ResponseEntity<?> getChildAlert(@RequestParam String address, @RequestParam(required = false) String asOf) {
 
         logger.info("Retrieving child alert information for the address: {}", address);
 
-        Optional<Map<String, HouseholdDTO>> childAlertData = personService.getChildAlertData(address);
+        Optional<Map<String, HouseholdDTO>> childAlertData;
+        try (SnapshotHistory.Pin ignored = pin(asOf)) {
+            childAlertData = personService.getChildAlertData(address);
+        }
 
         if (childAlertData.isEmpty()) {
             throw new PersonNotFoundException("No child found at provided address: " + address);
@@ -237,13 +297,16 @@ public class SafetynetalertsController {
     }
 
     @GetMapping("/phoneAlert")
-    public ResponseEntity<List<String>> getPhoneAlert(@RequestParam(value = "firestation") Integer firestationNumber){
+    public ResponseEntity<List<String>> getPhoneAlert(@RequestParam(value = "firestation") Integer firestationNumber,
+                                                      @RequestParam(required = false) String asOf){
 
         List<String> phoneNumbers;
 
         logger.info("Retrieving phone numbers for firestation number: {}", firestationNumber);
 
-        phoneNumbers = firestationService.getPhoneNumbersByFirestation(firestationNumber);
+        try (SnapshotHistory.Pin ignored = pin(asOf)) {
+            phoneNumbers = firestationService.getPhoneNumbersByFirestation(firestationNumber);
+        }
 
         logger.info("Successfully retrieved phone numbers for firestation number: {}", firestationNumber);
 
@@ -251,13 +314,16 @@ public class SafetynetalertsController {
     }
 
     @GetMapping("/fire")
-    public ResponseEntity<List<DataOfInhabitantsDTO>> getFireInfoByAddress(@RequestParam String address) {
+    public ResponseEntity<List<DataOfInhabitantsDTO>> getFireInfoByAddress(@RequestParam String address,
+                                                                           @RequestParam(required = false) String asOf) {
 
         List<DataOfInhabitantsDTO> dataOfInhabitantsDTOS;
 
         logger.info("Retrieving fire information by address: {}", address);
 
-        dataOfInhabitantsDTOS = personService.processDataByAddress(address);
+        try (SnapshotHistory.Pin ignored = pin(asOf)) {
+            dataOfInhabitantsDTOS = personService.processDataByAddress(address);
+        }
 
         logger.info("Fire information successfully retrieved by address: {}", address);
 
@@ -265,13 +331,16 @@ public class SafetynetalertsController {
     }
 
     @GetMapping("/flood/stations")
-    public ResponseEntity<Map<Integer, List<DataOfInhabitantsDTO>>> getPersonsByListOfFirestationNumber(@RequestParam(value = "stations") List<Integer> stationNumbers)  {
+    public ResponseEntity<Map<Integer, List<DataOfInhabitantsDTO>>> getPersonsByListOfFirestationNumber(@RequestParam(value = "stations") List<Integer> stationNumbers,
+                                                                                                         @RequestParam(required = false) String asOf)  {
 
         Map<Integer, List<DataOfInhabitantsDTO>> response;
 
         logger.info("Retrieving persons by list of firestation numbers: {}", stationNumbers);
 
-        response = personService.getPersonsDataByFirestationNumber(stationNumbers);
+        try (SnapshotHistory.Pin ignored = pin(asOf)) {
+            response = personService.getPersonsDataByFirestationNumber(stationNumbers);
+        }
 
         logger.info("Successfully retrieved persons by list of firestation numbers");
 
@@ -279,11 +348,15 @@ public class SafetynetalertsController {
     }
 
     @GetMapping("/personInfo")
-    public ResponseEntity<List<PersoInfoDTO>> getPersonInfo(@RequestParam("firstName") String firstName, @RequestParam("lastName") String lastName) {
+    public ResponseEntity<List<PersoInfoDTO>> getPersonInfo(@RequestParam("firstName") String firstName, @RequestParam("lastName") String lastName,
+                                                            @RequestParam(required = false) String asOf) {
 
         logger.info("Retrieving person information with first name: {}, and last name: {}", firstName, lastName);
 
-        List<PersoInfoDTO> result = personService.getPersonInfoDataWrapper(firstName, lastName);
+        List<PersoInfoDTO> result;
+        try (SnapshotHistory.Pin ignored = pin(asOf)) {
+            result = personService.getPersonInfoDataWrapper(firstName, lastName);
+        }
 
         logger.debug("Person's information has been retrieved: {}", result);
 
@@ -293,11 +366,14 @@ public class SafetynetalertsController {
     }
 
     @GetMapping("/communityEmail")
-    public ResponseEntity<List<String>> getCommunityEmails(@RequestParam String city){
+    public ResponseEntity<List<String>> getCommunityEmails(@RequestParam String city, @RequestParam(required = false) String asOf){
 
         logger.info("Retrieving community emails for the city: {}", city);
 
-        List<String> emails = personService.getCommunityEmailsService(city);
+        List<String> emails;
+        try (SnapshotHistory.Pin ignored = pin(asOf)) {
+            emails = personService.getCommunityEmailsService(city);
+        }
 
         logger.debug("Community emails retrieved: {}", emails);
 
@@ -305,5 +381,79 @@ public class SafetynetalertsController {
 
         return ResponseEntity.ok(emails);
     }
-}
 
+    @GetMapping("/changes")
+    public ResponseEntity<ChangeSetDTO> getChanges(@RequestParam Long since) {
+
+        logger.info("Retrieving the changes since version {}", since);
+
+        ChangeSetDTO changes = syncService.getChangesSince(since);
+
+        logger.debug("Retrieved the changes up to version {}, full resync: {}", changes.getVersion(), changes.isFullResync());
+
+        return ResponseEntity.ok(changes);
+    }
+
+    /**
+     * Streams every mutation committed from now on as Server-Sent Events, see {@link ChangeStreamListener}.
+     * A client resumes from the last version it received with the since parameter or the Last-Event-ID header.
+     *
+     * @param since       the optional version to resume from
+     * @param lastEventId the Last-Event-ID header sent by a reconnecting client, used when since is absent
+     * @return the event stream, which does not time out
+     */
+    @GetMapping(path = "/changes/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@RequestParam(required = false) Long since,
+                                    @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+
+        Long from = since != null ? since : lastEventId;
+        logger.info("Streaming the changes following version {}", from);
+
+        SseEmitter emitter = new SseEmitter(0L);
+        ChangeFeed.Subscription subscription = changeFeed.subscribe(from, new ChangeStreamListener(emitter));
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(error -> subscription.close());
+
+        return emitter;
+    }
+
+    /**
+     * Pins the dataset version a GET endpoint reads for the duration of the read.
+     *
+     * @param asOf the optional asOf request parameter: a dataset version or an ISO-8601 instant
+     * @return the pin to close once the read is done, which pins nothing if asOf is null
+     */
+    private SnapshotHistory.Pin pin(String asOf) {
+
+        if (asOf == null) {
+            return SnapshotHistory.Pin.NONE;
+        }
+        logger.info("Reading as of {}", asOf);
+        return snapshotHistory.pin(asOf);
+    }
+
+    /**
+     * Parses the If-Match header of a conditional update: the ETag returned by the GET of the entity, weak or not.
+     *
+     * @param ifMatch the header value, may be null
+     * @return the expected version of the entity, or null if the update is unconditional (no header or {@code *})
+     * @throws PreconditionFailedException if the header holds no version, which cannot match any entity
+     */
+    private static Long expectedVersion(String ifMatch) {
+
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        tag = tag.replace("\"", "");
+        try {
+            return Long.parseLong(tag);
+        } catch (NumberFormatException e) {
+            throw new PreconditionFailedException("The If-Match header " + ifMatch + " does not match any version");
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.amp.safetynetalerts.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.stereotype.Component;
+
+@Component
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangeEventDTO {
+
+    private long version;
+    private String type;
+    private String key;
+    private Object before;
+    private Object after;
+}
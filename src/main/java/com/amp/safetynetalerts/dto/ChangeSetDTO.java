@@ -0,0 +1,23 @@
+package com.amp.safetynetalerts.dto;
+
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.stereotype.Component;
+
+@Component
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangeSetDTO {
+
+    private long since;
+    private long version;
+    private boolean fullResync;
+    private EntityChangesDTO<Person> persons = new EntityChangesDTO<>();
+    private EntityChangesDTO<Firestation> firestations = new EntityChangesDTO<>();
+    private EntityChangesDTO<MedicalRecord> medicalrecords = new EntityChangesDTO<>();
+}
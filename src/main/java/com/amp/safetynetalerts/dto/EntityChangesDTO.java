@@ -0,0 +1,19 @@
+package com.amp.safetynetalerts.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EntityChangesDTO<T> {
+
+    private List<T> upserts = new ArrayList<>();
+    private List<String> deletes = new ArrayList<>();
+}
@@ -121,6 +121,24 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler(value = {PersistenceBacklogException.class})
+    public ResponseEntity<String> handlePersistenceBacklogException(PersistenceBacklogException ex) {
+        logger.error("Handling PersistenceBacklogException: ", ex);
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @ExceptionHandler(value = {PreconditionFailedException.class})
+    public ResponseEntity<String> handlePreconditionFailedException(PreconditionFailedException ex) {
+        logger.error("Handling PreconditionFailedException: ", ex);
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.PRECONDITION_FAILED);
+    }
+
+    @ExceptionHandler(value = {VersionNotRetainedException.class})
+    public ResponseEntity<String> handleVersionNotRetainedException(VersionNotRetainedException ex) {
+        logger.error("Handling VersionNotRetainedException: ", ex);
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.GONE);
+    }
+
    /*
     @ExceptionHandler(value = {InvalidDataException.class})
     @ResponseStatus(HttpStatus.BAD_REQUEST)
@@ -0,0 +1,11 @@
+package com.amp.safetynetalerts.exception;
+
+public class PersistenceBacklogException extends RuntimeException {
+    public PersistenceBacklogException(String message) {
+        super(message);
+    }
+
+    public PersistenceBacklogException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
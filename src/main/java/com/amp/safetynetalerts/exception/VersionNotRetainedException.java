@@ -0,0 +1,11 @@
+package com.amp.safetynetalerts.exception;
+
+public class VersionNotRetainedException extends RuntimeException {
+    public VersionNotRetainedException(String message) {
+        super(message);
+    }
+
+    public VersionNotRetainedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
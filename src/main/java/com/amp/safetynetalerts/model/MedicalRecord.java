@@ -2,23 +2,94 @@ package com.amp.safetynetalerts.model;
 
 import lombok.Data;
 
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 import org.springframework.stereotype.Component;
 
 @Component
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 public class MedicalRecord {
 
+    /**
+     * The format of the birthdates.
+     */
+    public static final DateTimeFormatter BIRTHDATE_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy");
+
+    private static final int UNPARSED = Integer.MIN_VALUE;
+    private static final int INVALID = Integer.MAX_VALUE;
+
     private String firstName;
     private String lastName;
     private String birthdate;
     private List<String> medications;
     private List<String> allergies;
+
+    /**
+     * The birthdate as a number of days since 1970-01-01, parsed once when the birthdate is set.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient int birthEpochDay = UNPARSED;
+
+    @Builder(toBuilder = true)
+    public MedicalRecord(String firstName, String lastName, String birthdate, List<String> medications, List<String> allergies) {
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.birthdate = birthdate;
+        this.medications = medications;
+        this.allergies = allergies;
+        this.birthEpochDay = parse(birthdate);
+    }
+
+    public void setBirthdate(String birthdate) {
+        this.birthdate = birthdate;
+        this.birthEpochDay = parse(birthdate);
+    }
+
+    /**
+     * Retrieves the birthdate as a number of days since 1970-01-01, parsed once instead of on every age computation.
+     * The records deserialized without a constructor or a setter parse it on the first call.
+     *
+     * @return the birthdate, as a number of days since 1970-01-01
+     * @throws DateTimeParseException If the birthdate is not a valid date.
+     * @throws NullPointerException   If there is no birthdate.
+     */
+    public int birthEpochDay() {
+        int epochDay = birthEpochDay;
+        if (epochDay == UNPARSED) {
+            epochDay = parse(birthdate);
+            birthEpochDay = epochDay;
+        }
+        if (epochDay == INVALID) {
+            // Parses again to throw the same exception as the parsing of the birthdate
+            LocalDate.parse(birthdate, BIRTHDATE_FORMAT);
+        }
+        return epochDay;
+    }
+
+    private static int parse(String birthdate) {
+        if (birthdate == null) {
+            return INVALID;
+        }
+        try {
+            return (int) LocalDate.parse(birthdate, BIRTHDATE_FORMAT).toEpochDay();
+        } catch (DateTimeParseException e) {
+            return INVALID;
+        }
+    }
 }
 
 
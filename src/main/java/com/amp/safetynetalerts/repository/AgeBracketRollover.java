@@ -0,0 +1,41 @@
+package com.amp.safetynetalerts.repository;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the persons who were born or turned 18 to their new {@link AgeBrackets} at local midnight, so that the first
+ * read of the day does not pay for it. The brackets of a snapshot read before the rollover are rolled over on read.
+ */
+@Component
+public class AgeBracketRollover {
+
+    private static final Logger LOGGER = LogManager.getLogger(AgeBracketRollover.class);
+
+    private final DataStore dataStore;
+
+    public AgeBracketRollover(DataStore dataStore) {
+        this.dataStore = dataStore;
+    }
+
+    /**
+     * Rolls the age brackets of the current snapshot over to the current day.
+     * A data store that is only mapped is left alone until it is loaded.
+     */
+    @Scheduled(cron = "${safetynetalerts.age-brackets.rollover-cron:0 0 0 * * *}")
+    public void rollOver() {
+        if (!dataStore.isLoaded()) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            AgeBrackets brackets = dataStore.getSnapshot().getAgeBrackets();
+            LOGGER.info("Rolled the age brackets over to day {} in {} ms", brackets.getComputedOn(),
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (RuntimeException e) {
+            LOGGER.error("An error occurred while rolling the age brackets over", e);
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package com.amp.safetynetalerts.repository;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.utils.AgeCalculator;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Age brackets of a snapshot: the number of persons under 18 and 18 or over living at each address and covered by
+ * each station, counted like /personsByFirestationNumber counts them, each person once per medical record.
+ * The persons under 18 are told apart by the sign of their age, as /childAlert only lists the households with a
+ * child whose age is not negative.
+ * <p>
+ * The counts are held in {@link HashTrie}s by address and by station. Like the {@link Households}, a snapshot builds
+ * them on first use, then each following snapshot derives them from the previous ones by recounting only the addresses
+ * touched by its changes and the stations covering them, see {@link #update}.
+ * The counts are exact for the day they were computed on. The day each person moves to the next bracket is recorded
+ * with its address, so that moving to a new day only recounts the addresses of the persons who were born or turned 18
+ * since, see {@link #rollOver}; {@link AgeBracketRollover} does it at local midnight.
+ */
+public final class AgeBrackets {
+
+    private static final int ADULT_AGE = 18;
+    private static final int UNBORN = 0;
+    private static final int CHILD = 1;
+    private static final int ADULT = 2;
+    // Beyond a year without rolling over, building again is cheaper than replaying each day
+    private static final long MAX_ROLLOVER_DAYS = 366;
+
+    /**
+     * The number of persons in each bracket.
+     *
+     * @param unborn   the persons whose age is negative
+     * @param children the persons from 0 to 17 years old
+     * @param adults   the persons 18 or over
+     * @param invalid  the persons whose birthdate is not a valid date, whose age cannot be computed
+     */
+    public record Count(int unborn, int children, int adults, int invalid) {
+
+        public static final Count NONE = new Count(0, 0, 0, 0);
+
+        /**
+         * Retrieves the number of persons under 18, as /personsByFirestationNumber counts children.
+         *
+         * @return the persons under 18, including the ones whose age is negative
+         */
+        public int minors() {
+            return unborn + children;
+        }
+
+        Count plus(Count other) {
+            return new Count(unborn + other.unborn, children + other.children, adults + other.adults, invalid + other.invalid);
+        }
+    }
+
+    private final long computedOn;
+    private final HashTrie<String, Count> byAddress;
+    private final HashTrie<String, Count> byStation;
+    private final HashTrie<Long, List<String>> transitions;
+
+    private AgeBrackets(long computedOn, HashTrie<String, Count> byAddress, HashTrie<String, Count> byStation,
+                        HashTrie<Long, List<String>> transitions) {
+        this.computedOn = computedOn;
+        this.byAddress = byAddress;
+        this.byStation = byStation;
+        this.transitions = transitions;
+    }
+
+    /**
+     * Retrieves the brackets of the persons living at an address in a DataWrapper: from the age brackets of its
+     * snapshot if it is a snapshot DataWrapper, or counted from its lists otherwise.
+     *
+     * @param dataWrapper the DataWrapper
+     * @param address     the address
+     * @return the count, {@link Count#NONE} if nobody with a medical record lives at the address
+     */
+    public static Count atAddress(DataWrapper dataWrapper, String address) {
+        DataSnapshot snapshot = ownerOf(dataWrapper);
+        if (snapshot != null) {
+            return snapshot.getAgeBrackets().atAddress(address);
+        }
+        return count(IndexKey.valueKey(address), dataWrapper.getPersons(), dataWrapper.getMedicalrecords(), AgeCalculator.today(), null);
+    }
+
+    /**
+     * Retrieves the brackets of the persons living at the addresses covered by a station in a DataWrapper: from the
+     * age brackets of its snapshot if it is a snapshot DataWrapper, or counted from its lists otherwise.
+     *
+     * @param dataWrapper the DataWrapper
+     * @param station     the station number
+     * @return the count, {@link Count#NONE} if the station is null or covers nobody with a medical record
+     */
+    public static Count ofStation(DataWrapper dataWrapper, Integer station) {
+        if (station == null) {
+            return Count.NONE;
+        }
+        DataSnapshot snapshot = ownerOf(dataWrapper);
+        if (snapshot != null) {
+            return snapshot.getAgeBrackets().ofStation(station);
+        }
+        long today = AgeCalculator.today();
+        Count sum = Count.NONE;
+        for (String address : addressesOf(dataWrapper.getFirestations(), IndexKey.valueKey(station))) {
+            sum = sum.plus(count(address, dataWrapper.getPersons(), dataWrapper.getMedicalrecords(), today, null));
+        }
+        return sum;
+    }
+
+    private static DataSnapshot ownerOf(DataWrapper dataWrapper) {
+        DataSnapshot snapshot = PersistentVector.ownerOf(dataWrapper.getPersons());
+        if (snapshot != null && snapshot == PersistentVector.ownerOf(dataWrapper.getFirestations())
+                && snapshot == PersistentVector.ownerOf(dataWrapper.getMedicalrecords())) {
+            return snapshot;
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the day the counts are exact for.
+     *
+     * @return the day, as a number of days since 1970-01-01
+     */
+    long getComputedOn() {
+        return computedOn;
+    }
+
+    /**
+     * Retrieves the brackets of the persons living at an address.
+     *
+     * @param address the address
+     * @return the count, {@link Count#NONE} if nobody with a medical record lives at the address
+     */
+    public Count atAddress(String address) {
+        Count count = byAddress.get(IndexKey.valueKey(address));
+        return count == null ? Count.NONE : count;
+    }
+
+    /**
+     * Retrieves the brackets of the persons living at the addresses covered by a station.
+     *
+     * @param station the station number
+     * @return the count, {@link Count#NONE} if the station covers nobody with a medical record
+     */
+    public Count ofStation(Integer station) {
+        Count count = byStation.get(IndexKey.valueKey(station));
+        return count == null ? Count.NONE : count;
+    }
+
+    /**
+     * Builds the age brackets of whole collections.
+     *
+     * @param persons        the persons
+     * @param firestations   the firestations
+     * @param medicalRecords the medical records
+     * @param today          the day to count on, as a number of days since 1970-01-01
+     * @return the age brackets
+     */
+    static AgeBrackets build(List<Person> persons, List<Firestation> firestations, List<MedicalRecord> medicalRecords, long today) {
+        Set<String> addresses = new LinkedHashSet<>();
+        for (Person person : persons) {
+            addresses.add(IndexKey.PERSON_ADDRESS.key(person));
+        }
+        Set<String> stations = new LinkedHashSet<>();
+        for (Firestation firestation : firestations) {
+            stations.add(IndexKey.FIRESTATION_STATION.key(firestation));
+        }
+        return new AgeBrackets(today, HashTrie.empty(), HashTrie.empty(), HashTrie.empty())
+                .recount(addresses, stations, persons, firestations, medicalRecords, HashTrie.empty(), today);
+    }
+
+    /**
+     * Returns the age brackets on another day, recounting only the addresses of the persons who moved to another
+     * bracket since the day these were computed on.
+     *
+     * @param today          the day to count on, as a number of days since 1970-01-01
+     * @param persons        the persons
+     * @param firestations   the firestations
+     * @param medicalRecords the medical records
+     * @return the age brackets on the day, or these ones if they were computed on it
+     */
+    AgeBrackets rollOver(long today, List<Person> persons, List<Firestation> firestations, List<MedicalRecord> medicalRecords) {
+        if (today == computedOn) {
+            return this;
+        }
+        if (today < computedOn || today - computedOn > MAX_ROLLOVER_DAYS) {
+            return build(persons, firestations, medicalRecords, today);
+        }
+        Set<String> addresses = new LinkedHashSet<>();
+        HashTrie<Long, List<String>> pending = pendingTransitions(today, addresses);
+        return recount(addresses, new LinkedHashSet<>(), persons, firestations, medicalRecords, pending, today);
+    }
+
+    /**
+     * Returns the age brackets following a set of changes, recounting only the addresses and stations they touched,
+     * and the addresses of the persons who moved to another bracket if the day changed.
+     *
+     * @param changes        the changes
+     * @param persons        the persons after the changes
+     * @param firestations   the firestations after the changes
+     * @param medicalRecords the medical records after the changes
+     * @param today          the day to count on, as a number of days since 1970-01-01
+     * @return the new age brackets, or null if a person or a firestation was replaced or removed without its previous
+     * state, so that its previous address or station is unknown and the brackets must be built again
+     */
+    AgeBrackets update(List<Change> changes, List<Person> persons, List<Firestation> firestations,
+                       List<MedicalRecord> medicalRecords, long today) {
+        if (today < computedOn || today - computedOn > MAX_ROLLOVER_DAYS) {
+            return build(persons, firestations, medicalRecords, today);
+        }
+        Set<String> addresses = new LinkedHashSet<>();
+        Set<String> stations = new LinkedHashSet<>();
+        for (Change change : changes) {
+            if (change.getKey() != null && change.getBefore() == null && change.getType() != EntityType.MEDICAL_RECORD) {
+                return null;
+            }
+            switch (change.getType()) {
+                case PERSON -> {
+                    if (change.getBefore() != null) {
+                        addresses.add(IndexKey.PERSON_ADDRESS.key(change.getBefore()));
+                    }
+                    if (change.getValue() != null) {
+                        addresses.add(IndexKey.PERSON_ADDRESS.key(change.getValue()));
+                    }
+                }
+                case MEDICAL_RECORD -> {
+                    if (change.getKey() != null) {
+                        addresses.addAll(Households.addressesOf(persons, change.getKey()));
+                    }
+                    if (change.getValue() != null) {
+                        addresses.addAll(Households.addressesOf(persons, EntityType.MEDICAL_RECORD.key(change.getValue())));
+                    }
+                }
+                case FIRESTATION -> {
+                    if (change.getBefore() != null) {
+                        stations.add(IndexKey.FIRESTATION_STATION.key(change.getBefore()));
+                    }
+                    if (change.getValue() != null) {
+                        stations.add(IndexKey.FIRESTATION_STATION.key(change.getValue()));
+                    }
+                }
+            }
+        }
+        HashTrie<Long, List<String>> pending = pendingTransitions(today, addresses);
+        if (addresses.isEmpty() && stations.isEmpty() && today == computedOn) {
+            return this;
+        }
+        return recount(addresses, stations, persons, firestations, medicalRecords, pending, today);
+    }
+
+    /**
+     * Collects the addresses of the persons moving to another bracket after the day the counts were computed on
+     * and up to a day, and returns the transitions without them.
+     */
+    private HashTrie<Long, List<String>> pendingTransitions(long today, Set<String> addresses) {
+        HashTrie<Long, List<String>> pending = transitions;
+        for (long day = computedOn + 1; day <= today; day++) {
+            List<String> moving = pending.get(day);
+            if (moving != null) {
+                addresses.addAll(moving);
+                pending = pending.remove(day);
+            }
+        }
+        return pending;
+    }
+
+    private AgeBrackets recount(Set<String> addresses, Set<String> stations, List<Person> persons, List<Firestation> firestations,
+                                List<MedicalRecord> medicalRecords, HashTrie<Long, List<String>> pending, long today) {
+        HashTrie<String, Count> nextByAddress = byAddress;
+        HashTrie<Long, List<String>> nextTransitions = pending;
+        Set<String> touchedStations = new LinkedHashSet<>(stations);
+        Set<Long> days = new HashSet<>();
+        for (String address : addresses) {
+            days.clear();
+            Count count = count(address, persons, medicalRecords, today, days);
+            nextByAddress = count.equals(Count.NONE) ? nextByAddress.remove(address) : nextByAddress.put(address, count);
+            for (Long day : days) {
+                nextTransitions = withTransition(nextTransitions, day, address);
+            }
+            for (Firestation firestation : KeyIndex.findAll(firestations, IndexKey.FIRESTATION_ADDRESS, address)) {
+                touchedStations.add(IndexKey.FIRESTATION_STATION.key(firestation));
+            }
+        }
+        HashTrie<String, Count> nextByStation = byStation;
+        for (String station : touchedStations) {
+            Count sum = Count.NONE;
+            for (String address : addressesOf(firestations, station)) {
+                Count count = nextByAddress.get(address);
+                if (count != null) {
+                    sum = sum.plus(count);
+                }
+            }
+            nextByStation = sum.equals(Count.NONE) ? nextByStation.remove(station) : nextByStation.put(station, sum);
+        }
+        return new AgeBrackets(today, nextByAddress, nextByStation, nextTransitions);
+    }
+
+    private static HashTrie<Long, List<String>> withTransition(HashTrie<Long, List<String>> transitions, Long day, String address) {
+        List<String> moving = transitions.get(day);
+        if (moving == null) {
+            return transitions.put(day, List.of(address));
+        }
+        if (moving.contains(address)) {
+            return transitions;
+        }
+        List<String> next = new ArrayList<>(moving.size() + 1);
+        next.addAll(moving);
+        next.add(address);
+        return transitions.put(day, List.copyOf(next));
+    }
+
+    /**
+     * Retrieves the distinct addresses covered by a station, as the keys of the persons living there.
+     */
+    private static Set<String> addressesOf(List<Firestation> firestations, String station) {
+        Set<String> addresses = new LinkedHashSet<>();
+        for (Firestation firestation : KeyIndex.findAll(firestations, IndexKey.FIRESTATION_STATION, station)) {
+            addresses.add(IndexKey.FIRESTATION_ADDRESS.key(firestation));
+        }
+        return addresses;
+    }
+
+    /**
+     * Counts the persons living at an address in each bracket on a day, and collects the days they move to the next.
+     */
+    private static Count count(String address, List<Person> persons, List<MedicalRecord> medicalRecords, long today, Set<Long> days) {
+        int[] brackets = new int[3];
+        int invalid = 0;
+        for (Person person : KeyIndex.findAll(persons, IndexKey.PERSON_ADDRESS, address)) {
+            for (MedicalRecord record : KeyIndex.findAll(medicalRecords, IndexKey.MEDICAL_RECORD_NAME,
+                    EntityType.key(person.getFirstName(), person.getLastName()))) {
+                long birthdate;
+                try {
+                    birthdate = record.birthEpochDay();
+                } catch (DateTimeParseException | NullPointerException e) {
+                    invalid++;
+                    continue;
+                }
+                int bracket = bracket(birthdate, today);
+                brackets[bracket]++;
+                if (days != null && bracket != ADULT) {
+                    days.add(nextTransition(birthdate, today, bracket));
+                }
+            }
+        }
+        return new Count(brackets[UNBORN], brackets[CHILD], brackets[ADULT], invalid);
+    }
+
+    private static int bracket(long birthdate, long day) {
+        int age = AgeCalculator.age(birthdate, day);
+        return age < 0 ? UNBORN : age < ADULT_AGE ? CHILD : ADULT;
+    }
+
+    /**
+     * Finds the first day after today a person is in the next bracket: from a couple of days before the year before
+     * its birth or its 18th birthday, as a 29th of February moves these dates by a day.
+     */
+    private static long nextTransition(long birthdate, long today, int bracket) {
+        LocalDate date = LocalDate.ofEpochDay(birthdate);
+        long approximate = (bracket == UNBORN ? date.minusYears(1) : date.plusYears(ADULT_AGE)).toEpochDay();
+        long day = Math.max(today + 1, approximate - 2);
+        while (bracket(birthdate, day) == bracket) {
+            day++;
+        }
+        return day;
+    }
+}
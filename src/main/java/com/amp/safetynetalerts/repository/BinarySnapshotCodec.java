@@ -0,0 +1,406 @@
+package com.amp.safetynetalerts.repository;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary encoding of a {@link DataSnapshot}, read at startup in place of the JSON file.
+ * <p>
+ * Layout, all integers big-endian and counts, lengths and references as unsigned varints:
+ * <pre>
+ * magic "SNAB", format version (4 bytes), data version (8 bytes)
+ * dictionary: count, strings
+ * persons: count, then firstName lastName address* city* zip* phone email
+ * firestations: count, then address* station
+ * medicalrecords: count, then firstName lastName birthdate medications* allergies*
+ * CRC32 of all the previous bytes (4 bytes)
+ * </pre>
+ * Strings are written as their UTF-8 length plus one followed by their bytes, 0 standing for null.
+ * The fields marked * repeat across records and are written as their index in the dictionary plus one,
+ * lists as their size plus one followed by their elements.
+ * A station is a presence byte followed by its 4 bytes.
+ */
+final class BinarySnapshotCodec {
+
+    static final int MAGIC = 0x534E4142;
+    static final int FORMAT_VERSION = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private BinarySnapshotCodec() {
+    }
+
+    /**
+     * Writes the snapshot to the stream, which is left open.
+     *
+     * @param snapshot the snapshot to write
+     * @param out      the destination stream
+     * @throws IOException If the stream could not be written.
+     */
+    static void write(DataSnapshot snapshot, OutputStream out) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (Person person : snapshot.getPersons()) {
+            intern(dictionary, strings, person.getAddress());
+            intern(dictionary, strings, person.getCity());
+            intern(dictionary, strings, person.getZip());
+        }
+        for (Firestation firestation : snapshot.getFirestations()) {
+            intern(dictionary, strings, firestation.getAddress());
+        }
+        for (MedicalRecord medicalRecord : snapshot.getMedicalrecords()) {
+            internAll(dictionary, strings, medicalRecord.getMedications());
+            internAll(dictionary, strings, medicalRecord.getAllergies());
+        }
+
+        Output output = new Output(out);
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+        output.writeLong(snapshot.getVersion());
+        output.writeVarint(strings.size());
+        for (String string : strings) {
+            output.writeString(string);
+        }
+        output.writeVarint(snapshot.getPersons().size());
+        for (Person person : snapshot.getPersons()) {
+            output.writeString(person.getFirstName());
+            output.writeString(person.getLastName());
+            output.writeReference(dictionary, person.getAddress());
+            output.writeReference(dictionary, person.getCity());
+            output.writeReference(dictionary, person.getZip());
+            output.writeString(person.getPhone());
+            output.writeString(person.getEmail());
+        }
+        output.writeVarint(snapshot.getFirestations().size());
+        for (Firestation firestation : snapshot.getFirestations()) {
+            output.writeReference(dictionary, firestation.getAddress());
+            Integer station = firestation.getStation();
+            output.writeByte(station == null ? 0 : 1);
+            output.writeInt(station == null ? 0 : station);
+        }
+        output.writeVarint(snapshot.getMedicalrecords().size());
+        for (MedicalRecord medicalRecord : snapshot.getMedicalrecords()) {
+            output.writeString(medicalRecord.getFirstName());
+            output.writeString(medicalRecord.getLastName());
+            output.writeString(medicalRecord.getBirthdate());
+            output.writeReferences(dictionary, medicalRecord.getMedications());
+            output.writeReferences(dictionary, medicalRecord.getAllergies());
+        }
+        output.finish();
+    }
+
+    /**
+     * Reads a snapshot written by {@link #write(DataSnapshot, OutputStream)} from the stream, which is left open.
+     *
+     * @param in the source stream
+     * @return the snapshot
+     * @throws IOException If the stream could not be read, is not in this format or does not match its checksum.
+     */
+    static DataSnapshot read(InputStream in) throws IOException {
+        Input input = new Input(in);
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a binary snapshot");
+        }
+        int format = input.readInt();
+        if (format != FORMAT_VERSION) {
+            throw new IOException("Unsupported binary snapshot format " + format);
+        }
+        long version = input.readLong();
+        int stringCount = input.readCount();
+        List<String> strings = new ArrayList<>(initialCapacity(stringCount));
+        for (int i = 0; i < stringCount; i++) {
+            strings.add(input.readString());
+        }
+        String[] dictionary = strings.toArray(new String[0]);
+        int personCount = input.readCount();
+        List<Person> persons = new ArrayList<>(initialCapacity(personCount));
+        for (int i = 0; i < personCount; i++) {
+            persons.add(new Person(input.readString(), input.readString(), input.readReference(dictionary),
+                    input.readReference(dictionary), input.readReference(dictionary), input.readString(), input.readString()));
+        }
+        int firestationCount = input.readCount();
+        List<Firestation> firestations = new ArrayList<>(initialCapacity(firestationCount));
+        for (int i = 0; i < firestationCount; i++) {
+            String address = input.readReference(dictionary);
+            boolean hasStation = input.readByte() != 0;
+            int station = input.readInt();
+            firestations.add(new Firestation(address, hasStation ? station : null));
+        }
+        int medicalRecordCount = input.readCount();
+        List<MedicalRecord> medicalRecords = new ArrayList<>(initialCapacity(medicalRecordCount));
+        for (int i = 0; i < medicalRecordCount; i++) {
+            medicalRecords.add(new MedicalRecord(input.readString(), input.readString(), input.readString(),
+                    input.readReferences(dictionary), input.readReferences(dictionary)));
+        }
+        input.verifyChecksum();
+        return DataSnapshot.fromDraft(version, new DataWrapper(persons, firestations, medicalRecords));
+    }
+
+    /**
+     * Bounds the capacity allocated up front, since a count read from a corrupted file is only
+     * detected by the checksum once the whole file is read.
+     */
+    private static int initialCapacity(int count) {
+        return Math.min(count, 1 << 20);
+    }
+
+    private static void intern(Map<String, Integer> dictionary, List<String> strings, String value) {
+        if (value != null && dictionary.putIfAbsent(value, strings.size()) == null) {
+            strings.add(value);
+        }
+    }
+
+    private static void internAll(Map<String, Integer> dictionary, List<String> strings, List<String> values) {
+        if (values != null) {
+            values.forEach(value -> intern(dictionary, strings, value));
+        }
+    }
+
+    /**
+     * Buffered output computing the checksum of the bytes as the buffer is flushed.
+     */
+    private static final class Output {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private final CRC32 checksum = new CRC32();
+        private int position;
+
+        private Output(OutputStream out) {
+            this.out = out;
+        }
+
+        private void ensure(int length) throws IOException {
+            if (position + length > buffer.length) {
+                flushBuffer();
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            checksum.update(buffer, 0, position);
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+
+        private void writeByte(int value) throws IOException {
+            ensure(1);
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeInt(int value) throws IOException {
+            ensure(4);
+            buffer[position++] = (byte) (value >>> 24);
+            buffer[position++] = (byte) (value >>> 16);
+            buffer[position++] = (byte) (value >>> 8);
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeLong(long value) throws IOException {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        private void writeVarint(int value) throws IOException {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1);
+            if (bytes.length > buffer.length - position) {
+                flushBuffer();
+                if (bytes.length > buffer.length) {
+                    checksum.update(bytes);
+                    out.write(bytes);
+                    return;
+                }
+            }
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private void writeReference(Map<String, Integer> dictionary, String value) throws IOException {
+            writeVarint(value == null ? 0 : dictionary.get(value) + 1);
+        }
+
+        private void writeReferences(Map<String, Integer> dictionary, List<String> values) throws IOException {
+            if (values == null) {
+                writeVarint(0);
+                return;
+            }
+            writeVarint(values.size() + 1);
+            for (String value : values) {
+                writeReference(dictionary, value);
+            }
+        }
+
+        /**
+         * Flushes the buffered bytes then writes their checksum.
+         */
+        private void finish() throws IOException {
+            flushBuffer();
+            writeInt((int) checksum.getValue());
+            out.write(buffer, 0, position);
+            position = 0;
+            out.flush();
+        }
+    }
+
+    /**
+     * Buffered input computing the checksum of the bytes consumed, so that the trailing checksum
+     * can be compared once every record is read.
+     */
+    private static final class Input {
+        private final InputStream in;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private final CRC32 checksum = new CRC32();
+        private int position;
+        private int limit;
+        private int checksummed;
+
+        private Input(InputStream in) {
+            this.in = in;
+        }
+
+        private void require(int length) throws IOException {
+            if (limit - position >= length) {
+                return;
+            }
+            checksum.update(buffer, checksummed, position - checksummed);
+            int remaining = limit - position;
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+            position = 0;
+            checksummed = 0;
+            limit = remaining;
+            while (limit < length) {
+                int read = in.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    throw new EOFException("Truncated binary snapshot");
+                }
+                limit += read;
+            }
+        }
+
+        private int readByte() throws IOException {
+            require(1);
+            return buffer[position++] & 0xFF;
+        }
+
+        private int readInt() throws IOException {
+            require(4);
+            int value = (buffer[position] & 0xFF) << 24 | (buffer[position + 1] & 0xFF) << 16
+                    | (buffer[position + 2] & 0xFF) << 8 | (buffer[position + 3] & 0xFF);
+            position += 4;
+            return value;
+        }
+
+        private long readLong() throws IOException {
+            return (long) readInt() << 32 | (readInt() & 0xFFFFFFFFL);
+        }
+
+        private int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint in binary snapshot");
+        }
+
+        private int readCount() throws IOException {
+            int count = readVarint();
+            if (count < 0) {
+                throw new IOException("Malformed count in binary snapshot");
+            }
+            return count;
+        }
+
+        private String readString() throws IOException {
+            int length = readVarint() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (length > buffer.length) {
+                checksum.update(buffer, checksummed, position - checksummed);
+                byte[] bytes = new byte[length];
+                int copied = limit - position;
+                System.arraycopy(buffer, position, bytes, 0, copied);
+                position = limit;
+                checksummed = limit;
+                while (copied < length) {
+                    int read = in.read(bytes, copied, length - copied);
+                    if (read < 0) {
+                        throw new EOFException("Truncated binary snapshot");
+                    }
+                    copied += read;
+                }
+                checksum.update(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            require(length);
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private String readReference(String[] dictionary) throws IOException {
+            int reference = readVarint();
+            if (reference == 0) {
+                return null;
+            }
+            if (reference < 0 || reference > dictionary.length) {
+                throw new IOException("Dictionary reference out of range in binary snapshot");
+            }
+            return dictionary[reference - 1];
+        }
+
+        private List<String> readReferences(String[] dictionary) throws IOException {
+            int size = readVarint() - 1;
+            if (size < 0) {
+                return null;
+            }
+            List<String> values = new ArrayList<>(initialCapacity(size));
+            for (int i = 0; i < size; i++) {
+                values.add(readReference(dictionary));
+            }
+            return values;
+        }
+
+        /**
+         * Reads the trailing checksum and compares it to the one of the bytes read before it.
+         */
+        private void verifyChecksum() throws IOException {
+            require(4);
+            checksum.update(buffer, checksummed, position - checksummed);
+            checksummed = position;
+            int expected = (int) checksum.getValue();
+            if (readInt() != expected) {
+                throw new IOException("Checksum mismatch in binary snapshot");
+            }
+        }
+    }
+}
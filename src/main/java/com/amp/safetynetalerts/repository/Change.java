@@ -0,0 +1,117 @@
+package com.amp.safetynetalerts.repository;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * A single entity-level change applied by a mutation.
+ * <ul>
+ *     <li>an insertion has no key and the inserted entity as value,</li>
+ *     <li>a replacement has the key of the replaced entity and the new entity as value,</li>
+ *     <li>a removal has the key of the removed entity and no value.</li>
+ * </ul>
+ * Changes are applied by key, so replaying them on the dataset they were recorded against gives the same result.
+ * A change recorded by a draft also holds the entity it replaced or removed, for the {@link ChangeFeed}; the journal
+ * does not store it, so changes read back from the journal have none.
+ */
+@Getter
+public final class Change {
+
+    private final EntityType type;
+    private final String key;
+    private final Object value;
+    private final Object before;
+
+    public Change(EntityType type, String key, Object value) {
+        this(type, key, value, null);
+    }
+
+    public Change(EntityType type, String key, Object value, Object before) {
+        this.type = type;
+        this.key = key;
+        this.value = value;
+        this.before = before;
+    }
+
+    public static Change insert(EntityType type, Object value) {
+        return new Change(type, null, value);
+    }
+
+    public static Change replace(EntityType type, Object before, Object value) {
+        return new Change(type, type.key(before), value, before);
+    }
+
+    public static Change remove(EntityType type, Object before) {
+        return new Change(type, type.key(before), null, before);
+    }
+
+    /**
+     * Applies this change to the matching list of a mutable DataWrapper.
+     * A replacement whose key is not found inserts the value, a removal whose key is not found does nothing.
+     *
+     * @param target the list of entities of this change's type
+     */
+    public void applyTo(List<Object> target) {
+        int index = key == null ? -1 : indexOf(target);
+        if (value == null) {
+            if (index >= 0) {
+                target.remove(index);
+            }
+        } else if (index >= 0) {
+            target.set(index, value);
+        } else {
+            target.add(value);
+        }
+    }
+
+    /**
+     * Finds the first entity with the key of this change, through the indexes of the target when it is a draft or a
+     * snapshot list: by name for persons and medical records, among the firestations of the address of the key for
+     * firestations.
+     */
+    private int indexOf(List<Object> target) {
+        return switch (type) {
+            case PERSON -> KeyIndex.indexOf(target, IndexKey.PERSON_NAME, key);
+            case MEDICAL_RECORD -> KeyIndex.indexOf(target, IndexKey.MEDICAL_RECORD_NAME, key);
+            case FIRESTATION -> {
+                // The station number never holds the separator, the address is everything before the last one
+                int separator = key.lastIndexOf('|');
+                if (separator < 0) {
+                    yield -1;
+                }
+                String address = key.substring(0, separator);
+                if (address.equals("null")) {
+                    // A missing address and the address "null" give the same key but are indexed apart
+                    for (int position = 0; position < target.size(); position++) {
+                        if (key.equals(type.key(target.get(position)))) {
+                            yield position;
+                        }
+                    }
+                    yield -1;
+                }
+                for (int position : KeyIndex.positionsOf(target, IndexKey.FIRESTATION_ADDRESS, address)) {
+                    if (key.equals(type.key(target.get(position)))) {
+                        yield position;
+                    }
+                }
+                yield -1;
+            }
+        };
+    }
+
+    /**
+     * Returns the key of the entity this change applies to: the key of the replaced or removed entity,
+     * or the key of the inserted one.
+     *
+     * @return the key of the entity
+     */
+    public String getEntityKey() {
+        return key != null ? key : type.key(value);
+    }
+
+    @Override
+    public String toString() {
+        return "Change{" + type + ", key=" + key + ", value=" + value + "}";
+    }
+}
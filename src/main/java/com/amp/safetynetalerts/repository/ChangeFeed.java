@@ -0,0 +1,308 @@
+package com.amp.safetynetalerts.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Change-data-capture feed of the mutations committed by the {@link DataStore}.
+ * The data store publishes each version with its changes once it is journaled, in version order, and every
+ * subscriber receives them as {@link Commit}s holding the type, key, previous and new entity of each change.
+ * <p>
+ * The most recent commits are retained so that a subscriber can resume from the last version it received.
+ * Each subscriber has its own bounded buffer, drained by a delivery thread: publishing only offers the commit to
+ * the buffers and never waits for a subscriber. A subscriber whose buffer is full is dropped and told so, it can
+ * then subscribe again from its last version, as long as that version is still retained.
+ * The retained commits also serve as the change log of the delta sync, see {@link #commitsSince(long)}.
+ */
+@Component
+public class ChangeFeed {
+
+    private static final Logger LOGGER = LogManager.getLogger(ChangeFeed.class);
+
+    /**
+     * A change of one entity.
+     *
+     * @param type   the type of the entity
+     * @param key    the key of the entity, see {@link EntityType#key(Object)}
+     * @param before the entity before the change, null for an insertion or if it is not known
+     * @param after  the entity after the change, null for a removal
+     */
+    public record ChangeEvent(EntityType type, String key, Object before, Object after) {
+    }
+
+    /**
+     * The changes published by one dataset version.
+     *
+     * @param version the dataset version
+     * @param changes the changes, in the order they were applied
+     */
+    public record Commit(long version, List<ChangeEvent> changes) {
+    }
+
+    /**
+     * Receiver of the commits of a subscription, called by a delivery thread one commit at a time.
+     */
+    public interface Listener {
+
+        /**
+         * Receives the next commit.
+         *
+         * @param commit the commit
+         * @throws Exception If the commit could not be delivered, which cancels the subscription.
+         */
+        void onCommit(Commit commit) throws Exception;
+
+        /**
+         * Called once when the subscription is dropped because the commits following the given version
+         * cannot be delivered: the buffer of the subscriber overflowed, or they are no longer retained.
+         *
+         * @param lastVersion the last version delivered, or the version the subscription was asked to resume from
+         */
+        void onGap(long lastVersion);
+    }
+
+    /**
+     * Handle of a subscription, cancelling it when closed.
+     */
+    public interface Subscription extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+
+    private final int retainedCommits;
+    private final int bufferCapacity;
+    private final ArrayDeque<Commit> retained = new ArrayDeque<>();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService delivery = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "change-feed-delivery");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Counter overflows;
+
+    private long lastVersion = -1;
+
+    public ChangeFeed(MeterRegistry meterRegistry,
+                      @Value("${safetynetalerts.changes.retained-commits:10000}") int retainedCommits,
+                      @Value("${safetynetalerts.changes.subscriber-buffer:1024}") int bufferCapacity) {
+        this.retainedCommits = retainedCommits;
+        this.bufferCapacity = bufferCapacity;
+        Gauge.builder("safetynetalerts.changes.subscribers", subscribers, Set::size)
+                .description("Subscribers of the change feed")
+                .register(meterRegistry);
+        overflows = Counter.builder("safetynetalerts.changes.overflows")
+                .description("Subscribers dropped because their buffer was full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts over from a loaded version: the retained commits no longer apply to it and are dropped.
+     *
+     * @param version the version the data store was loaded at
+     */
+    synchronized void reset(long version) {
+        retained.clear();
+        lastVersion = version;
+    }
+
+    /**
+     * Publishes the changes of a version to every subscriber and retains them. Must be called in version order.
+     *
+     * @param version the version
+     * @param changes the changes it made to the previous version
+     */
+    synchronized void publish(long version, List<Change> changes) {
+        List<ChangeEvent> events = new ArrayList<>(changes.size());
+        for (Change change : changes) {
+            events.add(new ChangeEvent(change.getType(), change.getEntityKey(), change.getBefore(), change.getValue()));
+        }
+        Commit commit = new Commit(version, List.copyOf(events));
+        lastVersion = version;
+        if (retainedCommits > 0) {
+            if (retained.size() == retainedCommits) {
+                retained.pollFirst();
+            }
+            retained.addLast(commit);
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(commit);
+        }
+    }
+
+    /**
+     * Subscribes to the commits following a version. The retained commits following it are delivered first,
+     * then the commits published from now on, without gap nor duplicate.
+     *
+     * @param since    the last version the listener received, or null to only receive the commits published from now on
+     * @param listener the listener
+     * @return the subscription, to close once the listener is gone
+     */
+    public synchronized Subscription subscribe(Long since, Listener listener) {
+        List<Commit> missed = new ArrayList<>();
+        Subscriber subscriber = new Subscriber(listener, since == null ? lastVersion : since, missed);
+        if (since != null && since < lastVersion) {
+            Commit oldest = retained.peekFirst();
+            if (oldest == null || oldest.version() > since + 1) {
+                LOGGER.info("Cannot resume the change feed from version {}, the oldest retained version is {}",
+                        since, oldest == null ? lastVersion + 1 : oldest.version());
+                subscriber.drop();
+                return subscriber;
+            }
+            for (Commit commit : retained) {
+                if (commit.version() > since) {
+                    missed.add(commit);
+                }
+            }
+            subscriber.schedule();
+        }
+        subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    /**
+     * Retrieves the retained commits following a version, walking the log back from the newest commit only as far
+     * as that version, so the cost depends on the number of commits returned and not on the size of the log.
+     *
+     * @param since the last version the caller has
+     * @return the commits following it in version order, empty if it is the last published version,
+     * or null if some of them are no longer retained or the version was never published
+     */
+    public synchronized List<Commit> commitsSince(long since) {
+        if (since > lastVersion) {
+            return null;
+        }
+        ArrayDeque<Commit> commits = new ArrayDeque<>();
+        Iterator<Commit> newestFirst = retained.descendingIterator();
+        while (newestFirst.hasNext()) {
+            Commit commit = newestFirst.next();
+            if (commit.version() <= since) {
+                break;
+            }
+            commits.addFirst(commit);
+        }
+        long first = commits.isEmpty() ? lastVersion : commits.peekFirst().version() - 1;
+        return first == since ? new ArrayList<>(commits) : null;
+    }
+
+    /**
+     * Retrieves the version of the last published commit.
+     *
+     * @return the version
+     */
+    public synchronized long getLastVersion() {
+        return lastVersion;
+    }
+
+    /**
+     * Retrieves the number of active subscriptions.
+     *
+     * @return the number of subscribers
+     */
+    public int getSubscribers() {
+        return subscribers.size();
+    }
+
+    @PreDestroy
+    public void stop() {
+        delivery.shutdownNow();
+    }
+
+    /**
+     * A subscription: the retained commits it missed, then the buffer of commits published since it subscribed,
+     * drained by at most one delivery task at a time. The missed commits are shared with the feed, only the buffer
+     * is bounded.
+     */
+    private final class Subscriber implements Subscription {
+
+        private final Listener listener;
+        private final List<Commit> missed;
+        private final ArrayBlockingQueue<Commit> buffer = new ArrayBlockingQueue<>(Math.max(bufferCapacity, 1));
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile boolean overflowed;
+        private volatile long delivered;
+        private int replayed;
+
+        Subscriber(Listener listener, long since, List<Commit> missed) {
+            this.listener = listener;
+            this.delivered = since;
+            this.missed = missed;
+        }
+
+        void offer(Commit commit) {
+            if (closed.get()) {
+                return;
+            }
+            if (!buffer.offer(commit)) {
+                overflows.increment();
+                overflowed = true;
+                subscribers.remove(this);
+            }
+            schedule();
+        }
+
+        void drop() {
+            overflowed = true;
+            schedule();
+        }
+
+        void schedule() {
+            if (draining.compareAndSet(false, true)) {
+                delivery.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                while (!closed.get() && replayed < missed.size()) {
+                    Commit commit = missed.get(replayed++);
+                    listener.onCommit(commit);
+                    delivered = commit.version();
+                }
+                Commit commit;
+                while (!closed.get() && (commit = buffer.poll()) != null) {
+                    listener.onCommit(commit);
+                    delivered = commit.version();
+                }
+                if (overflowed && !closed.get()) {
+                    close();
+                    listener.onGap(delivered);
+                }
+            } catch (Exception e) {
+                LOGGER.debug("Change feed subscriber failed, cancelling it", e);
+                close();
+            } finally {
+                draining.set(false);
+            }
+            if (!closed.get() && (overflowed || !buffer.isEmpty())) {
+                schedule();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                subscribers.remove(this);
+                buffer.clear();
+            }
+        }
+    }
+}
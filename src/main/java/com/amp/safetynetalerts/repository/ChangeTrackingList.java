@@ -0,0 +1,217 @@
+package com.amp.safetynetalerts.repository;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * List used by mutation drafts that records every modification as a {@link Change}.
+ * Entities can only be inserted at the end and the collection cannot be sorted: its order is kept as published.
+ * <p>
+ * The draft starts from the {@link PersistentVector} of the snapshot without copying it: each modification derives
+ * a new vector sharing all but one path with the previous one, so a mutation costs O(log n) per changed entity.
+ * Removing an entity keeps the order of the others, leaving a hole in the vector; once the holes outnumber an
+ * eighth of the entities, the vector is compacted, which costs O(n) but only once every n / 8 removals.
+ * When the collection is indexed, its {@link KeyIndex}es are maintained along with the vector.
+ *
+ * @param <T> the entity class
+ */
+class ChangeTrackingList<T> extends AbstractList<T> implements RandomAccess, KeyIndex.Indexed {
+
+    private static final int MIN_HOLES_TO_COMPACT = 32;
+
+    private final EntityType type;
+    private final List<Change> changes;
+    private PersistentVector<T> vector;
+    private final KeyIndex[] keyIndexes;
+
+    ChangeTrackingList(EntityType type, PersistentVector<T> entities, KeyIndex[] keyIndexes, List<Change> changes) {
+        this.type = type;
+        this.vector = entities;
+        this.keyIndexes = keyIndexes == null ? new KeyIndex[0] : keyIndexes.clone();
+        this.changes = changes;
+    }
+
+    ChangeTrackingList(EntityType type, PersistentVector<T> entities, List<Change> changes) {
+        this(type, entities, null, changes);
+    }
+
+    /**
+     * Retrieves the vector holding the current content of the draft, to be published.
+     *
+     * @return the vector
+     */
+    PersistentVector<T> toVector() {
+        return vector;
+    }
+
+    @Override
+    public KeyIndex[] keyIndexes() {
+        return keyIndexes.length == 0 ? null : keyIndexes;
+    }
+
+    @Override
+    public T get(int index) {
+        return vector.get(index);
+    }
+
+    @Override
+    public int size() {
+        return vector.size();
+    }
+
+    @Override
+    public boolean add(T entity) {
+        changes.add(Change.insert(type, entity));
+        for (int i = 0; i < keyIndexes.length; i++) {
+            keyIndexes[i] = keyIndexes[i].add(entity, vector.slots());
+        }
+        vector = vector.append(entity);
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void add(int index, T entity) {
+        checkAppend(index);
+        add(entity);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> entities) {
+        for (T entity : entities) {
+            add(entity);
+        }
+        return !entities.isEmpty();
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends T> entities) {
+        checkAppend(index);
+        return addAll(entities);
+    }
+
+    /**
+     * Only accepts an insertion at the end, since entities are always appended.
+     */
+    private void checkAppend(int index) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+        }
+        if (index != size()) {
+            throw new UnsupportedOperationException("A draft collection can only be added to at its end");
+        }
+    }
+
+    @Override
+    public T set(int index, T entity) {
+        T before = vector.get(index);
+        vector = vector.set(index, entity);
+        int slot = keyIndexes.length == 0 ? -1 : vector.slotOf(index);
+        for (int i = 0; i < keyIndexes.length; i++) {
+            IndexKey key = keyIndexes[i].getKey();
+            if (!key.key(before).equals(key.key(entity))) {
+                keyIndexes[i] = keyIndexes[i].remove(before, slot).add(entity, slot);
+            }
+        }
+        changes.add(Change.replace(type, before, entity));
+        return before;
+    }
+
+    @Override
+    public T remove(int index) {
+        T before = vector.get(index);
+        int slot = keyIndexes.length == 0 ? -1 : vector.slotOf(index);
+        for (int i = 0; i < keyIndexes.length; i++) {
+            keyIndexes[i] = keyIndexes[i].remove(before, slot);
+        }
+        vector = vector.remove(index);
+        if (vector.holes() > Math.max(MIN_HOLES_TO_COMPACT, vector.size() >>> 3)) {
+            // Compacting renumbers the slots the indexes refer to
+            vector = vector.compact();
+            for (int i = 0; i < keyIndexes.length; i++) {
+                keyIndexes[i] = KeyIndex.build(keyIndexes[i].getKey(), vector);
+            }
+        }
+        modCount++;
+        changes.add(Change.remove(type, before));
+        return before;
+    }
+
+    @Override
+    public int indexOf(Object entity) {
+        if (keyIndexes.length == 0 || !type.getEntityClass().isInstance(entity)) {
+            return super.indexOf(entity);
+        }
+        // Equal entities have the same key, any index narrows the search down to the entities sharing it
+        KeyIndex keyIndex = keyIndexes[0];
+        for (int slot : keyIndex.slots(keyIndex.getKey().key(entity))) {
+            if (entity.equals(vector.getSlot(slot))) {
+                return vector.positionOf(slot);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean remove(Object entity) {
+        int index = indexOf(entity);
+        if (index < 0) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super T> filter) {
+        boolean removed = false;
+        Iterator<T> iterator = iterator();
+        while (iterator.hasNext()) {
+            if (filter.test(iterator.next())) {
+                iterator.remove();
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> entities) {
+        return removeIf(entities::contains);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> entities) {
+        return removeIf(entity -> !entities.contains(entity));
+    }
+
+    @Override
+    public void clear() {
+        removeIf(entity -> true);
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<T> operator) {
+        for (int i = 0; i < size(); i++) {
+            set(i, operator.apply(get(i)));
+        }
+    }
+
+    @Override
+    public void sort(Comparator<? super T> comparator) {
+        throw new UnsupportedOperationException("A draft collection cannot be reordered");
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        for (int i = toIndex - 1; i >= fromIndex; i--) {
+            remove(i);
+        }
+    }
+}
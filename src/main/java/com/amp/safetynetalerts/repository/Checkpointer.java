@@ -0,0 +1,167 @@
+package com.amp.safetynetalerts.repository;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background checkpointer of the data store.
+ * When the journal holds more records, more bytes or older records than the configured thresholds,
+ * it rolls the journal, writes the matching snapshot as the new base to the {@link SnapshotStorage}
+ * and deletes the rolled segments.
+ * Requests are only blocked while the journal is rolled, the snapshot is written from its immutable version.
+ * When an export file is configured, each checkpoint also exports the new base to it as a single JSON file,
+ * whatever the storage, see {@link #export(String)}.
+ * <p>
+ * The checkpoint duration, the recovery time and load throughput of the last load, the mutation conflicts
+ * and the pending journal size are exposed as metrics.
+ */
+@Component
+public class Checkpointer {
+
+    private static final Logger LOGGER = LogManager.getLogger(Checkpointer.class);
+
+    private final DataStore dataStore;
+    private final MutationJournal journal;
+    private final long maxRecords;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final Durability durability;
+    private final String exportFile;
+    private final Timer checkpointTimer;
+
+    private volatile long lastCheckpointMillis = System.currentTimeMillis();
+
+    @Autowired
+    public Checkpointer(DataStore dataStore,
+                        MutationJournal journal,
+                        MeterRegistry meterRegistry,
+                        @Value("${safetynetalerts.checkpoint.max-records:1000}") long maxRecords,
+                        @Value("${safetynetalerts.checkpoint.max-bytes:1048576}") long maxBytes,
+                        @Value("${safetynetalerts.checkpoint.max-age-ms:60000}") long maxAgeMillis,
+                        @Value("${safetynetalerts.data.durability:FSYNC_FILE_AND_DIRECTORY}") Durability durability,
+                        @Value("${safetynetalerts.checkpoint.export-file:}") String exportFile) {
+        this.dataStore = dataStore;
+        this.journal = journal;
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.durability = durability;
+        this.exportFile = exportFile == null || exportFile.isBlank() ? null : exportFile;
+        this.checkpointTimer = Timer.builder("safetynetalerts.checkpoint.duration")
+                .description("Time taken to write a base snapshot and compact the journal")
+                .register(meterRegistry);
+        TimeGauge.builder("safetynetalerts.recovery.time", dataStore, TimeUnit.MILLISECONDS, DataStore::getRecoveryMillis)
+                .description("Time taken by the last load to read the base snapshot and replay the journal")
+                .register(meterRegistry);
+        Gauge.builder("safetynetalerts.recovery.load.throughput", dataStore, DataStore::getLoadRecordsPerSecond)
+                .description("Records read per second by the last load of the base snapshot")
+                .baseUnit("records/s")
+                .register(meterRegistry);
+        FunctionCounter.builder("safetynetalerts.mutation.conflicts", dataStore, DataStore::getConflicts)
+                .description("Mutations applied again because another mutation was published first")
+                .register(meterRegistry);
+        Gauge.builder("safetynetalerts.journal.pending.records", journal, MutationJournal::getPendingRecords)
+                .description("Journal records not yet covered by a checkpoint")
+                .register(meterRegistry);
+        Gauge.builder("safetynetalerts.journal.pending.bytes", journal, MutationJournal::getPendingBytes)
+                .description("Journal bytes not yet covered by a checkpoint")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public Checkpointer(DataStore dataStore, MutationJournal journal, MeterRegistry meterRegistry,
+                        long maxRecords, long maxBytes, long maxAgeMillis, Durability durability) {
+        this(dataStore, journal, meterRegistry, maxRecords, maxBytes, maxAgeMillis, durability, null);
+    }
+
+    /**
+     * Checks the thresholds and checkpoints if one of them is reached.
+     */
+    @Scheduled(fixedDelayString = "${safetynetalerts.checkpoint.check-interval-ms:1000}")
+    public void checkpointIfDue() {
+        if (!isDue()) {
+            return;
+        }
+        try {
+            checkpoint();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("An error occurred while checkpointing {}", dataStore.getDataFile(), e);
+        }
+    }
+
+    /**
+     * Tells whether the journal holds more records, more bytes or older records than the thresholds.
+     * A data store that is only mapped is not checkpointed until it is loaded.
+     *
+     * @return true if a checkpoint is due
+     */
+    public boolean isDue() {
+        long records = journal.getPendingRecords();
+        return records > 0 && dataStore.isLoaded() && (records >= maxRecords
+                || journal.getPendingBytes() >= maxBytes
+                || System.currentTimeMillis() - lastCheckpointMillis >= maxAgeMillis);
+    }
+
+    /**
+     * Rolls the journal, writes the matching snapshot to the storage then deletes the journal
+     * segments it covers. A crash at any step leaves a base snapshot and segments that replay to the same data.
+     * The next published snapshot rebases the versions of its entities on the new base, dropping those it covers.
+     * The new base is then exported to the export file, if any; an export failure is logged and does not fail
+     * the checkpoint, which is complete by then.
+     *
+     * @return the snapshot written as the new base
+     * @throws IOException If the journal could not be rolled or the snapshot could not be written.
+     */
+    public synchronized DataSnapshot checkpoint() throws IOException {
+        long start = System.nanoTime();
+        DataSnapshot base = dataStore.rollJournal();
+        SnapshotStorage storage = dataStore.getStorage();
+        if (storage.isIncremental()) {
+            storage.write(base, journal.readSegmentsUpTo(base.getVersion()));
+        } else {
+            storage.write(base);
+        }
+        dataStore.checkpointed(base);
+        int deleted = journal.deleteSegmentsUpTo(base.getVersion());
+        lastCheckpointMillis = System.currentTimeMillis();
+        if (exportFile != null) {
+            try {
+                DataWrapperRepository.updateFileWithSnapshot(base, exportFile, durability);
+            } catch (IOException e) {
+                LOGGER.error("An error occurred while exporting the checkpoint of {} to {}", dataStore.getDataFile(), exportFile, e);
+            }
+        }
+        long duration = System.nanoTime() - start;
+        checkpointTimer.record(duration, TimeUnit.NANOSECONDS);
+        LOGGER.info("Checkpointed {} at version {} and deleted {} journal segments in {} ms",
+                dataStore.getDataFile(), base.getVersion(), deleted, duration / 1_000_000);
+        return base;
+    }
+
+    /**
+     * Writes the current data as a single JSON file, whatever the storage of the data store,
+     * for instance to export a segmented or H2 dataset. Checkpoints export their base the same way
+     * when {@code safetynetalerts.checkpoint.export-file} is set.
+     *
+     * @param fileName The path of the JSON file to write.
+     * @return The exported snapshot.
+     * @throws IOException If the file could not be written.
+     */
+    public DataSnapshot export(String fileName) throws IOException {
+        DataSnapshot current = dataStore.getSnapshot();
+        DataWrapperRepository.updateFileWithSnapshot(current, fileName, durability);
+        return current;
+    }
+}
@@ -0,0 +1,168 @@
+package com.amp.safetynetalerts.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot reload of the JSON data file when it is replaced or modified by another process.
+ * A background thread watches the directory of the file, waits for the file to stay unchanged for a quiet period,
+ * then parses it and publishes only the entities that differ from the current data, see {@link DataStore#reload}.
+ * Requests keep being served from the current snapshot while the new file is parsed and compared.
+ * <p>
+ * Once the changes are published, a checkpoint rewrites the file as the new base snapshot,
+ * so that the journal records written against the previous file are no longer replayed on the new one.
+ * The files written by the {@link Checkpointer} itself are ignored. With another {@link SnapshotStorage},
+ * the data file is not written by checkpoints and stays a way to import data.
+ */
+@Component
+public class DataFileWatcher {
+
+    private static final Logger LOGGER = LogManager.getLogger(DataFileWatcher.class);
+
+    private final DataStore dataStore;
+    private final Checkpointer checkpointer;
+    private final JsonSnapshotStorage storage;
+    private final boolean enabled;
+    private final long quietPeriodMillis;
+    private final Path file;
+    private final Counter reloads;
+    private final Object reloadLock = new Object();
+
+    private volatile boolean running;
+    private WatchService watchService;
+    private Thread watcher;
+
+    public DataFileWatcher(@Value("${safetynetalerts.data.file:data.json}") String dataFile,
+                           DataStore dataStore,
+                           Checkpointer checkpointer,
+                           JsonSnapshotStorage storage,
+                           MeterRegistry meterRegistry,
+                           @Value("${safetynetalerts.data.watch.enabled:true}") boolean enabled,
+                           @Value("${safetynetalerts.data.watch.quiet-period-ms:500}") long quietPeriodMillis) {
+        this.dataStore = dataStore;
+        this.checkpointer = checkpointer;
+        this.storage = storage;
+        this.enabled = enabled;
+        this.quietPeriodMillis = quietPeriodMillis;
+        this.file = Paths.get(dataFile).toAbsolutePath();
+        this.reloads = Counter.builder("safetynetalerts.data.reloads")
+                .description("Reloads of the data file after an external change")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts watching the directory of the data file if the watcher is enabled.
+     *
+     * @throws IOException If the directory could not be watched.
+     */
+    @PostConstruct
+    public synchronized void start() throws IOException {
+        if (!enabled || running) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        running = true;
+        watcher = new Thread(this::run, "data-file-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Stops watching the data file.
+     *
+     * @throws IOException          If the watch service could not be closed.
+     * @throws InterruptedException If interrupted while waiting for the watcher thread.
+     */
+    @PreDestroy
+    public synchronized void stop() throws IOException, InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        watchService.close();
+        watcher.join();
+        watcher = null;
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                if (!concernsFile(watchService.take())) {
+                    continue;
+                }
+                // Wait for the writer to finish: a copy in place raises several events.
+                WatchKey key;
+                while ((key = watchService.poll(quietPeriodMillis, TimeUnit.MILLISECONDS)) != null) {
+                    concernsFile(key);
+                }
+                reloadIfChanged();
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            LOGGER.debug("Stopped watching {}", file);
+        }
+    }
+
+    private boolean concernsFile(WatchKey key) {
+        boolean concerned = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                concerned = true;
+            }
+        }
+        key.reset();
+        return concerned;
+    }
+
+    /**
+     * Reloads the data file unless it is the one written by the last checkpoint.
+     * A file that cannot be parsed, for instance because it is still being written, is left for the next change.
+     *
+     * @return true if the file was reloaded
+     */
+    public boolean reloadIfChanged() {
+        synchronized (reloadLock) {
+            return reload();
+        }
+    }
+
+    private boolean reload() {
+        try {
+            FileTime modified = Files.getLastModifiedTime(file);
+            if (modified.equals(storage.getLastWrittenTime())) {
+                return false;
+            }
+            long start = System.nanoTime();
+            DataSnapshot loaded = DataWrapperRepository.getSnapshot(file.toString());
+            int changed = dataStore.reload(loaded);
+            if (changed > 0 || dataStore.getJournal().getPendingRecords() > 0) {
+                checkpointer.checkpoint();
+            }
+            reloads.increment();
+            LOGGER.info("Reloaded {} with {} changed entities in {} ms", file, changed, (System.nanoTime() - start) / 1_000_000);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not reload {}, keeping the current data", file, e);
+            return false;
+        }
+    }
+}
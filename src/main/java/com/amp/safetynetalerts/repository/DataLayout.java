@@ -0,0 +1,14 @@
+package com.amp.safetynetalerts.repository;
+
+/**
+ * How the base snapshot of the data store is laid out on disk.
+ */
+public enum DataLayout {
+    /** The whole dataset is held by the single JSON data file. */
+    SINGLE_FILE,
+    /**
+     * Each collection is held by its own JSON segment next to the data file, such as {@code data.persons.json},
+     * written and read independently; the single data file is only imported when a segment is missing.
+     */
+    SEGMENTED
+}
@@ -0,0 +1,336 @@
+package com.amp.safetynetalerts.repository;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.utils.AgeCalculator;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable, versioned view of the whole dataset.
+ * A snapshot is never modified once published: every mutation builds a new snapshot from a draft copy.
+ * The entities it holds must not be modified either, updates replace them with new instances.
+ * <p>
+ * Besides the version of the dataset, a snapshot knows the version at which each collection last changed,
+ * so that a segmented base only rewrites the collections changed since it was written, and the version at which
+ * each entity last changed, used to detect conflicting updates. Only the versions of the entities changed since
+ * the snapshot was read are tracked, the others have the version their collection was read at.
+ * <p>
+ * The collections are held in {@link PersistentVector}s and the entity versions in {@link HashTrie}s,
+ * so the next snapshot shares all but the changed paths with this one and is built in O(log n) per change.
+ * The collections are also indexed by their {@link IndexKey}s in {@link KeyIndex}es, carried by their lists and
+ * maintained by the drafts the same way, and the {@link Households} and {@link AgeBrackets} are derived from the
+ * previous snapshot's once they have been built.
+ */
+@Getter
+public final class DataSnapshot {
+
+    private final long version;
+    private final List<Person> persons;
+    private final List<Firestation> firestations;
+    private final List<MedicalRecord> medicalrecords;
+    @Getter(AccessLevel.NONE)
+    private final PersistentVector<Person> personVector;
+    @Getter(AccessLevel.NONE)
+    private final PersistentVector<Firestation> firestationVector;
+    @Getter(AccessLevel.NONE)
+    private final PersistentVector<MedicalRecord> medicalrecordVector;
+    @Getter(AccessLevel.NONE)
+    private final KeyIndex[] personIndexes;
+    @Getter(AccessLevel.NONE)
+    private final KeyIndex[] firestationIndexes;
+    @Getter(AccessLevel.NONE)
+    private final KeyIndex[] medicalrecordIndexes;
+    @Getter(AccessLevel.NONE)
+    private final long[] collectionVersions;
+    @Getter(AccessLevel.NONE)
+    private final long[] readVersions;
+    @Getter(AccessLevel.NONE)
+    private final List<HashTrie<String, Long>> entityVersions;
+    @Getter(AccessLevel.NONE)
+    private volatile Households households;
+    @Getter(AccessLevel.NONE)
+    private volatile AgeBrackets ageBrackets;
+    @Getter(AccessLevel.NONE)
+    private volatile AgeBrackets pinnedAgeBrackets;
+
+    private DataSnapshot(long version, List<Person> persons, List<Firestation> firestations, List<MedicalRecord> medicalrecords,
+                         long[] collectionVersions, long[] readVersions, List<HashTrie<String, Long>> entityVersions) {
+        this.version = version;
+        this.personVector = PersistentVector.from(persons);
+        this.firestationVector = PersistentVector.from(firestations);
+        this.medicalrecordVector = PersistentVector.from(medicalrecords);
+        this.personIndexes = KeyIndex.from(EntityType.PERSON, persons, personVector);
+        this.firestationIndexes = KeyIndex.from(EntityType.FIRESTATION, firestations, firestationVector);
+        this.medicalrecordIndexes = KeyIndex.from(EntityType.MEDICAL_RECORD, medicalrecords, medicalrecordVector);
+        this.persons = personVector.asList(personIndexes, this);
+        this.firestations = firestationVector.asList(firestationIndexes, this);
+        this.medicalrecords = medicalrecordVector.asList(medicalrecordIndexes, this);
+        this.collectionVersions = collectionVersions;
+        this.readVersions = readVersions;
+        this.entityVersions = entityVersions;
+    }
+
+    private DataSnapshot(long version, List<Person> persons, List<Firestation> firestations, List<MedicalRecord> medicalrecords,
+                         long[] collectionVersions) {
+        this(version, persons, firestations, medicalrecords, collectionVersions, collectionVersions, noEntityVersions());
+    }
+
+    private DataSnapshot(long version, List<Person> persons, List<Firestation> firestations, List<MedicalRecord> medicalrecords) {
+        this(version, persons, firestations, medicalrecords, uniformVersions(version));
+    }
+
+    /**
+     * Creates a snapshot holding the entities of the lists of the given DataWrapper.
+     *
+     * @param version     the version of the snapshot
+     * @param dataWrapper the data to hold, null lists are treated as empty
+     * @return the new snapshot
+     */
+    public static DataSnapshot of(long version, DataWrapper dataWrapper) {
+        return new DataSnapshot(version, dataWrapper.getPersons(), dataWrapper.getFirestations(), dataWrapper.getMedicalrecords());
+    }
+
+    /**
+     * Creates a snapshot taking ownership of the lists of a draft, which must not be used afterwards.
+     *
+     * @param version the version of the snapshot
+     * @param draft   the draft DataWrapper returned by {@link #toDraft(List)} and modified by a mutation
+     * @return the new snapshot
+     */
+    static DataSnapshot fromDraft(long version, DataWrapper draft) {
+        return new DataSnapshot(version, draft.getPersons(), draft.getFirestations(), draft.getMedicalrecords());
+    }
+
+    /**
+     * Creates a snapshot taking ownership of the lists of a draft whose collections were read at different versions.
+     *
+     * @param draft              the DataWrapper holding the collections, which must not be used afterwards
+     * @param collectionVersions the version of each collection, indexed by {@link EntityType#ordinal()}
+     * @return the new snapshot, whose version is the highest of its collections
+     */
+    static DataSnapshot fromCollections(DataWrapper draft, long[] collectionVersions) {
+        long version = 0;
+        for (long collectionVersion : collectionVersions) {
+            version = Math.max(version, collectionVersion);
+        }
+        return new DataSnapshot(version, draft.getPersons(), draft.getFirestations(), draft.getMedicalrecords(),
+                collectionVersions.clone());
+    }
+
+    /**
+     * Creates the snapshot following this one, taking ownership of the lists of a draft.
+     * The collections and the entities touched by the changes get the new version, the others keep theirs.
+     *
+     * @param version the version of the new snapshot
+     * @param draft   the draft DataWrapper holding the new data
+     * @param changes the changes made to this snapshot to obtain the draft
+     * @return the new snapshot
+     */
+    DataSnapshot next(long version, DataWrapper draft, List<Change> changes) {
+        return next(version, draft, changes, null);
+    }
+
+    /**
+     * Creates the snapshot following this one like {@link #next(long, DataWrapper, List)}, rebasing the versions of
+     * its entities on a checkpointed base. Each collection read at an older version than the base is then treated
+     * as read at the version of the base: the entities that did not change since report this version, as after
+     * a restart from the base, and the versions recorded up to it are dropped, so that they do not accumulate.
+     *
+     * @param version    the version of the new snapshot
+     * @param draft      the draft DataWrapper holding the new data
+     * @param changes    the changes made to this snapshot to obtain the draft
+     * @param rebaseTo   the version of each collection of the checkpointed base, indexed by
+     *                   {@link EntityType#ordinal()}, or null not to rebase
+     * @return the new snapshot
+     */
+    DataSnapshot next(long version, DataWrapper draft, List<Change> changes, long[] rebaseTo) {
+        return next(version, draft, changes, null, rebaseTo);
+    }
+
+    private DataSnapshot next(long version, DataWrapper draft, List<Change> changes, long[] changeVersions, long[] rebaseTo) {
+        long[] versions = collectionVersions.clone();
+        long[] nextReadVersions = readVersions;
+        List<HashTrie<String, Long>> nextEntityVersions = new ArrayList<>(entityVersions);
+        if (rebaseTo != null) {
+            for (int type = 0; type < rebaseTo.length; type++) {
+                long base = Math.min(rebaseTo[type], collectionVersions[type]);
+                if (base > nextReadVersions[type]) {
+                    if (nextReadVersions == readVersions) {
+                        nextReadVersions = readVersions.clone();
+                    }
+                    nextReadVersions[type] = base;
+                    nextEntityVersions.set(type, entityVersions.get(type).removeIf((key, changed) -> changed <= base));
+                }
+            }
+        }
+        for (int i = 0; i < changes.size(); i++) {
+            Change change = changes.get(i);
+            long changeVersion = changeVersions == null ? version : changeVersions[i];
+            EntityType type = change.getType();
+            versions[type.ordinal()] = changeVersion;
+            HashTrie<String, Long> changed = nextEntityVersions.get(type.ordinal());
+            if (change.getKey() != null) {
+                changed = changed.put(change.getKey(), changeVersion);
+            }
+            if (change.getValue() != null) {
+                changed = changed.put(type.key(change.getValue()), changeVersion);
+            }
+            nextEntityVersions.set(type.ordinal(), changed);
+        }
+        DataSnapshot next = new DataSnapshot(version, draft.getPersons(), draft.getFirestations(), draft.getMedicalrecords(),
+                versions, nextReadVersions, nextEntityVersions);
+        Households built = households;
+        if (built != null) {
+            next.households = built.update(changes, next.persons, next.medicalrecords);
+        }
+        AgeBrackets counted = ageBrackets;
+        if (counted != null) {
+            next.ageBrackets = counted.update(changes, next.persons, next.firestations, next.medicalrecords, AgeCalculator.today());
+        }
+        return next;
+    }
+
+    /**
+     * Retrieves the households of this snapshot, built on first use unless derived from the previous snapshot.
+     *
+     * @return the households
+     */
+    Households getHouseholds() {
+        Households built = households;
+        if (built == null) {
+            built = Households.build(persons, medicalrecords);
+            households = built;
+        }
+        return built;
+    }
+
+    /**
+     * Retrieves the age brackets of this snapshot on the current day, built on first use unless derived from the
+     * previous snapshot, and rolled over to the current day if they were computed on a previous one.
+     * A thread reading as of a past time gets them on its pinned day instead, derived from the ones of the current
+     * day and kept apart from them, see {@link AgeCalculator#pinDate(long)}.
+     *
+     * @return the age brackets
+     */
+    AgeBrackets getAgeBrackets() {
+        long today = AgeCalculator.today();
+        AgeBrackets counted = ageBrackets;
+        if (counted != null && counted.getComputedOn() == today) {
+            return counted;
+        }
+        if (AgeCalculator.isDatePinned()) {
+            AgeBrackets pinned = pinnedAgeBrackets;
+            if (pinned == null || pinned.getComputedOn() != today) {
+                pinned = counted == null ? AgeBrackets.build(persons, firestations, medicalrecords, today)
+                        : counted.rollOver(today, persons, firestations, medicalrecords);
+                pinnedAgeBrackets = pinned;
+            }
+            return pinned;
+        }
+        if (counted == null) {
+            counted = AgeBrackets.build(persons, firestations, medicalrecords, today);
+        } else {
+            counted = counted.rollOver(today, persons, firestations, medicalrecords);
+        }
+        ageBrackets = counted;
+        return counted;
+    }
+
+    /**
+     * Retrieves the version at which the given collection last changed, or was read at.
+     *
+     * @param type the type of the collection
+     * @return the version of the collection, never greater than the version of the snapshot
+     */
+    public long getVersion(EntityType type) {
+        return collectionVersions[type.ordinal()];
+    }
+
+    /**
+     * Retrieves the version at which the entity with the given key last changed, was inserted or was removed.
+     * An entity that did not change since the snapshot was read has the version its collection was read at,
+     * which may be older than its actual last change but never newer than the snapshot.
+     *
+     * @param type the type of the entity
+     * @param key  the key of the entity, see {@link EntityType#key(Object)}
+     * @return the version of the entity
+     */
+    public long getEntityVersion(EntityType type, String key) {
+        Long changed = entityVersions.get(type.ordinal()).get(key);
+        return changed != null ? changed : readVersions[type.ordinal()];
+    }
+
+    /**
+     * Returns a read-only DataWrapper over this snapshot. No data is copied.
+     *
+     * @return a DataWrapper whose lists cannot be modified
+     */
+    public DataWrapper toDataWrapper() {
+        return new DataWrapper(persons, firestations, medicalrecords);
+    }
+
+    /**
+     * Returns a mutable DataWrapper over the collections of this snapshot, which are not copied,
+     * to be modified by a mutation before being published as the next snapshot.
+     * Every modification made to the draft is recorded in the given list of changes.
+     *
+     * @param changes the list receiving the changes made to the draft
+     * @return a draft DataWrapper
+     */
+    public DataWrapper toDraft(List<Change> changes) {
+        return new DataWrapper(
+                new ChangeTrackingList<>(EntityType.PERSON, personVector, personIndexes, changes),
+                new ChangeTrackingList<>(EntityType.FIRESTATION, firestationVector, firestationIndexes, changes),
+                new ChangeTrackingList<>(EntityType.MEDICAL_RECORD, medicalrecordVector, medicalrecordIndexes, changes));
+    }
+
+    /**
+     * Returns the snapshot obtained by applying the given changes to this one.
+     *
+     * @param version the version of the new snapshot
+     * @param changes the changes to apply
+     * @return the new snapshot
+     */
+    public DataSnapshot apply(long version, List<Change> changes) {
+        return apply(version, changes, null);
+    }
+
+    /**
+     * Returns the snapshot obtained by applying changes read from several journal records to this one, each change
+     * giving the entities it touches and its collection the version of its own record, as when it was published.
+     *
+     * @param version        the version of the new snapshot, the one of the last record
+     * @param changes        the changes to apply, in order
+     * @param changeVersions the version of the record of each change, in the same order, or null to give them all
+     *                       the version of the new snapshot
+     * @return the new snapshot
+     */
+    DataSnapshot apply(long version, List<Change> changes, long[] changeVersions) {
+        DataWrapper next = toDraft(new ArrayList<>());
+        for (Change change : changes) {
+            change.applyTo(change.getType().list(next));
+        }
+        return next(version, next, changes, changeVersions, null);
+    }
+
+    private static long[] uniformVersions(long version) {
+        long[] versions = new long[EntityType.values().length];
+        Arrays.fill(versions, version);
+        return versions;
+    }
+
+    private static List<HashTrie<String, Long>> noEntityVersions() {
+        List<HashTrie<String, Long>> versions = new ArrayList<>();
+        for (int i = 0; i < EntityType.values().length; i++) {
+            versions.add(HashTrie.empty());
+        }
+        return versions;
+    }
+}
@@ -0,0 +1,787 @@
+package com.amp.safetynetalerts.repository;
+
+import com.amp.safetynetalerts.exception.PreconditionFailedException;
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+import jakarta.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Resident in-memory store of the application data.
+ * The DataWrapper is loaded once from the JSON file at startup and every read is served from memory.
+ * <p>
+ * The data is published as immutable {@link DataSnapshot} versions through an atomic reference:
+ * readers never lock and always see a consistent dataset, while each mutation is applied to a
+ * draft copy, published as the next version and then appended to the {@link MutationJournal}.
+ * Mutations take no lock: a draft is published by a compare-and-set on the snapshot it was derived from and
+ * applied again to the newer snapshot when another mutation won, so only the journal appends are ordered.
+ * A mutation can be made conditional on the version of an entity, see {@link DataSnapshot#getEntityVersion}.
+ * The base snapshot is read from the {@link SnapshotStorage}, the JSON file by default,
+ * and the journal is replayed on top of it at startup.
+ * The {@link Checkpointer} periodically writes a new base snapshot and drops the journal segments it covers.
+ * If a journal append fails, the store turns read-only: the versions that were not journaled are withdrawn and
+ * every following mutation fails, so that no version is ever journaled on top of a missing one.
+ * With the {@link WriteBehindQueue} enabled, mutations are acknowledged before they reach the journal.
+ * With the {@link MutationPipeline} enabled, mutations are instead queued as commands and applied by a single writer
+ * thread, each batch being published as one version and appended as one journal record.
+ * Every published version is also recorded in the {@link SnapshotHistory}, whose retained versions can be pinned
+ * to a thread so that all its reads are served as of a past version, and published to the {@link ChangeFeed}.
+ * <p>
+ * In {@link ReadMode#MAPPED} mode the JSON file is only memory-mapped at startup: point lookups decode single
+ * records from the {@link MappedDataFile}, overlaid with the journal changes, until the first read or mutation
+ * needing the whole dataset loads it into memory.
+ */
+@Component
+public class DataStore {
+
+    private static final Logger LOGGER = LogManager.getLogger(DataStore.class);
+
+    private static final Object REMOVED = new Object();
+
+    private final String dataFile;
+    private final SnapshotStorage storage;
+    private final MutationJournal journal;
+    private final WriteBehindQueue writeBehind;
+    private final ReadMode readMode;
+    private final MutationPipeline pipeline;
+    private final SnapshotHistory history;
+    private final ChangeFeed changeFeed;
+
+    private final AtomicReference<DataSnapshot> snapshot = new AtomicReference<>();
+    private final LongAdder conflicts = new LongAdder();
+
+    /** Orders the journal appends by version, guards {@link #journaled}. */
+    private final Object journalOrder = new Object();
+    private DataSnapshot journaled;
+    /** The failure of a journal append that turned the store read-only, guarded by {@link #journalOrder}. */
+    private volatile IOException journalFailure;
+    /** The collection versions of the last checkpointed base, which the next published snapshots rebase on. */
+    private volatile long[] checkpointedVersions;
+
+    private volatile MappedDataFile mapped;
+    private volatile Map<EntityType, Map<String, Object>> mappedChanges;
+    private volatile long mappedVersion;
+
+    private volatile long recoveryMillis;
+    private volatile long loadRecordsPerSecond;
+
+    @Autowired
+    public DataStore(@Value("${safetynetalerts.data.file:data.json}") String dataFile,
+                     SnapshotStorage storage,
+                     MutationJournal journal,
+                     WriteBehindQueue writeBehind,
+                     @Value("${safetynetalerts.data.read-mode:RESIDENT}") ReadMode readMode,
+                     MutationPipeline pipeline,
+                     SnapshotHistory history,
+                     ChangeFeed changeFeed) {
+        this.dataFile = dataFile;
+        this.storage = storage;
+        this.journal = journal;
+        this.writeBehind = writeBehind;
+        this.readMode = readMode;
+        this.pipeline = pipeline;
+        this.history = history;
+        this.changeFeed = changeFeed;
+    }
+
+    public DataStore(String dataFile, SnapshotStorage storage, MutationJournal journal, WriteBehindQueue writeBehind, ReadMode readMode,
+                     MutationPipeline pipeline, SnapshotHistory history) {
+        this(dataFile, storage, journal, writeBehind, readMode, pipeline, history, null);
+    }
+
+    public DataStore(String dataFile, SnapshotStorage storage, MutationJournal journal, WriteBehindQueue writeBehind, ReadMode readMode) {
+        this(dataFile, storage, journal, writeBehind, readMode, null, null);
+    }
+
+    public DataStore(String dataFile, MutationJournal journal) {
+        this(dataFile, new JsonSnapshotStorage(dataFile, DataLayout.SINGLE_FILE, Durability.NONE, false), journal, null, ReadMode.RESIDENT);
+    }
+
+    /**
+     * Loads the data into memory, or only maps the data file in {@link ReadMode#MAPPED} mode.
+     * Only a base snapshot held by the single JSON data file can be mapped, any other storage is always loaded.
+     * Then starts the writer of the {@link MutationPipeline} if it is enabled.
+     *
+     * @throws IllegalStateException If the file or the journal could not be read.
+     */
+    @PostConstruct
+    public void init() {
+        if (readMode == ReadMode.MAPPED && !storage.isSingleJsonFile()) {
+            LOGGER.warn("The {} storage cannot be memory-mapped, loading it into memory", storage.getClass().getSimpleName());
+            load();
+        } else if (readMode == ReadMode.MAPPED) {
+            map();
+        } else {
+            load();
+        }
+        if (pipeline != null) {
+            pipeline.start(this::applyBatch);
+        }
+    }
+
+    /**
+     * Memory-maps the JSON file and collects the journal changes newer than its version,
+     * so that point lookups can be served before the data is loaded.
+     *
+     * @throws IllegalStateException If the file or the journal could not be read.
+     */
+    public synchronized void map() {
+        long start = System.nanoTime();
+        MappedDataFile file;
+        try {
+            file = MappedDataFile.open(Paths.get(dataFile));
+        } catch (IOException e) {
+            LOGGER.error("An error occurred while mapping the {} file", dataFile, e);
+            throw new IllegalStateException("An error occurred while mapping the data file", e);
+        }
+        Map<EntityType, Map<String, Object>> changesByKey = new EnumMap<>(EntityType.class);
+        for (EntityType type : EntityType.values()) {
+            changesByKey.put(type, new HashMap<>());
+        }
+        long version = file.getVersion();
+        for (MutationJournal.Entry entry : readJournal()) {
+            if (entry.version() > version) {
+                entry.changes().forEach(change -> overlay(changesByKey.get(change.getType()), change));
+                version = entry.version();
+            }
+        }
+        mappedChanges = changesByKey;
+        mappedVersion = version;
+        mapped = file;
+        LOGGER.info("Mapped {} at version {} with the journal up to version {} in {} ms",
+                dataFile, file.getVersion(), version, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void overlay(Map<String, Object> changesByKey, Change change) {
+        EntityType type = change.getType();
+        Object value = change.getValue();
+        if (change.getKey() == null) {
+            changesByKey.merge(type.key(value), value, (previous, inserted) -> previous == REMOVED ? inserted : previous);
+        } else if (value == null) {
+            changesByKey.put(change.getKey(), REMOVED);
+        } else {
+            changesByKey.put(change.getKey(), REMOVED);
+            changesByKey.put(type.key(value), value);
+        }
+    }
+
+    /**
+     * Loads the base snapshot into memory, then replays the journal records that are newer than
+     * the base snapshot on top of it, skipping any record of an already replayed version.
+     * The base snapshot is read from the {@link SnapshotStorage}.
+     * Each collection only replays the changes newer than the version it was read at, and each replayed change
+     * gives its entities the version of its own record, so that their versions survive a restart.
+     *
+     * @throws IllegalStateException If the file or the journal could not be read.
+     */
+    public synchronized void load() {
+        long start = System.nanoTime();
+        DataSnapshot loaded = storage.read();
+        long records = (long) loaded.getPersons().size() + loaded.getFirestations().size() + loaded.getMedicalrecords().size();
+        loadRecordsPerSecond = records * 1_000_000_000L / Math.max(System.nanoTime() - start, 1);
+        List<MutationJournal.Entry> entries = readJournal();
+        DataSnapshot base = loaded;
+        long baseVersion = base.getVersion();
+        List<Change> changes = new ArrayList<>();
+        List<Long> changeVersions = new ArrayList<>();
+        long version = baseVersion;
+        long replayedUpTo = oldestCollectionVersion(base);
+        int replayed = 0;
+        for (MutationJournal.Entry entry : entries) {
+            if (entry.version() > replayedUpTo) {
+                for (Change change : entry.changes()) {
+                    if (entry.version() > base.getVersion(change.getType())) {
+                        changes.add(change);
+                        changeVersions.add(entry.version());
+                    }
+                }
+                replayedUpTo = entry.version();
+                version = Math.max(version, replayedUpTo);
+                replayed++;
+            }
+        }
+        if (replayed > 0) {
+            loaded = loaded.apply(version, changes, changeVersions.stream().mapToLong(Long::longValue).toArray());
+        }
+        synchronized (journalOrder) {
+            journaled = loaded;
+            journalFailure = null;
+            checkpointedVersions = null;
+            snapshot.set(loaded);
+            if (history != null) {
+                history.reset(loaded);
+            }
+            if (changeFeed != null) {
+                changeFeed.reset(loaded.getVersion());
+            }
+        }
+        mapped = null;
+        mappedChanges = null;
+        recoveryMillis = (System.nanoTime() - start) / 1_000_000;
+        LOGGER.info("Loaded {} records from {} at version {} ({} records/s) and replayed {} journal records in {} ms",
+                records, dataFile, baseVersion, loadRecordsPerSecond, replayed, recoveryMillis);
+    }
+
+    private static long oldestCollectionVersion(DataSnapshot base) {
+        long oldest = base.getVersion();
+        for (EntityType type : EntityType.values()) {
+            oldest = Math.min(oldest, base.getVersion(type));
+        }
+        return oldest;
+    }
+
+    private List<MutationJournal.Entry> readJournal() {
+        try {
+            return journal.readAll();
+        } catch (IOException e) {
+            LOGGER.error("An error occurred while reading the journal {}", journal.getJournalFile(), e);
+            throw new IllegalStateException("An error occurred while reading the journal", e);
+        }
+    }
+
+    /**
+     * Tells whether the data is loaded in memory, which is only not the case in {@link ReadMode#MAPPED} mode
+     * until the first read or mutation needing the whole dataset.
+     *
+     * @return true if the current snapshot is loaded
+     */
+    public boolean isLoaded() {
+        return snapshot.get() != null;
+    }
+
+    /**
+     * Finds the person with the given first name and last name.
+     *
+     * @param firstName The first name of the person.
+     * @param lastName  The last name of the person.
+     * @return The person, or null if there is none.
+     */
+    public Person findPerson(String firstName, String lastName) {
+        if (!isLoaded() && mapped != null) {
+            return findMapped(EntityType.PERSON, EntityType.key(firstName, lastName));
+        }
+        return KeyIndex.find(getDataWrapper().getPersons(), IndexKey.PERSON_NAME, EntityType.key(firstName, lastName));
+    }
+
+    /**
+     * Finds the medical record of the person with the given first name and last name.
+     *
+     * @param firstName The first name of the person.
+     * @param lastName  The last name of the person.
+     * @return The medical record, or null if there is none.
+     */
+    public MedicalRecord findMedicalRecord(String firstName, String lastName) {
+        if (!isLoaded() && mapped != null) {
+            return findMapped(EntityType.MEDICAL_RECORD, EntityType.key(firstName, lastName));
+        }
+        return KeyIndex.find(getDataWrapper().getMedicalrecords(), IndexKey.MEDICAL_RECORD_NAME, EntityType.key(firstName, lastName));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T findMapped(EntityType type, String key) {
+        MappedDataFile file = mapped;
+        Map<EntityType, Map<String, Object>> changes = mappedChanges;
+        if (file == null || changes == null) {
+            return findLoaded(type, key);
+        }
+        Object changed = changes.get(type).get(key);
+        if (changed == REMOVED) {
+            return null;
+        }
+        return changed != null ? (T) changed : file.find(type, key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T findLoaded(EntityType type, String key) {
+        for (Object entity : type.list(getDataWrapper())) {
+            if (type.key(entity).equals(key)) {
+                return (T) entity;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the version at which the given entity last changed, see {@link DataSnapshot#getEntityVersion}.
+     * While only mapped, the entities changed by the journal have the version it was replayed up to
+     * and the others the version of the data file, as they will once loaded.
+     *
+     * @param type the type of the entity
+     * @param key  the key of the entity, see {@link EntityType#key(Object)}
+     * @return the version of the entity
+     */
+    public long getEntityVersion(EntityType type, String key) {
+        Map<EntityType, Map<String, Object>> changes = mappedChanges;
+        MappedDataFile file = mapped;
+        if (!isLoaded() && file != null && changes != null) {
+            return changes.get(type).containsKey(key) ? mappedVersion : file.getVersion();
+        }
+        return getSnapshot().getEntityVersion(type, key);
+    }
+
+    /**
+     * Retrieves the snapshot read by the current thread: the current one, or the past one pinned by an as-of read,
+     * see {@link SnapshotHistory#pin(String)}.
+     *
+     * @return The latest published DataSnapshot, or the pinned one.
+     */
+    public DataSnapshot getSnapshot() {
+        if (history != null) {
+            DataSnapshot pinned = history.pinned();
+            if (pinned != null) {
+                return pinned;
+            }
+        }
+        return latest();
+    }
+
+    private DataSnapshot latest() {
+        DataSnapshot current = snapshot.get();
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot.get() == null) {
+                    load();
+                }
+                current = snapshot.get();
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Retrieves a read-only DataWrapper over the current snapshot.
+     *
+     * @return The DataWrapper object held in memory, whose lists cannot be modified.
+     */
+    public DataWrapper getDataWrapper() {
+        return getSnapshot().toDataWrapper();
+    }
+
+    /**
+     * Applies a mutation to a draft copy of the current data, publishes the draft as the next
+     * snapshot version, then appends the changes it made to the journal.
+     * Concurrent mutations are applied in parallel and the first one to publish wins, the others are applied
+     * again to the snapshot it published, so a mutation may run more than once and must only modify its draft.
+     * The journal records are appended in version order and forced outside of any lock,
+     * so concurrent mutations share a single flush; the call returns once its own record is durable.
+     * With write-behind enabled, the changes are queued instead and the call returns once they are published.
+     * If the mutation throws, nothing is published and the exception is propagated.
+     * A mutation that changes nothing publishes nothing either.
+     * Mutations must replace the entities they change instead of modifying them in place.
+     * With the {@link MutationPipeline} running, the mutation is applied by its writer thread instead,
+     * see {@link #applyBatch(List)}.
+     *
+     * @param mutation The function modifying the draft DataWrapper.
+     * @param <T>      The type of the value returned by the mutation.
+     * @return The value returned by the mutation.
+     * @throws IOException If an error occurred while appending the changes to the journal.
+     * @throws com.amp.safetynetalerts.exception.PersistenceBacklogException If the write-behind queue has no room.
+     */
+    public <T> T updateAndGet(Function<DataWrapper, T> mutation) throws IOException {
+        if (pipeline != null && pipeline.isRunning()) {
+            return pipeline.submit(null, null, 0, mutation);
+        }
+        return publish(current -> draft(current, mutation));
+    }
+
+    /**
+     * Applies a mutation as {@link #updateAndGet(Function)} does, only if the given entity still has
+     * the expected version. The version is checked against every snapshot the mutation is applied to,
+     * so a concurrent change of the entity fails the mutation instead of being overwritten.
+     *
+     * @param type            The type of the entity the mutation depends on.
+     * @param key             The key of the entity, see {@link EntityType#key(Object)}.
+     * @param expectedVersion The version the entity must have, see {@link #getEntityVersion(EntityType, String)}.
+     * @param mutation        The function modifying the draft DataWrapper.
+     * @param <T>             The type of the value returned by the mutation.
+     * @return The value returned by the mutation.
+     * @throws IOException If an error occurred while appending the changes to the journal.
+     * @throws PreconditionFailedException If the entity does not have the expected version.
+     */
+    public <T> T updateAndGetIfMatch(EntityType type, String key, long expectedVersion, Function<DataWrapper, T> mutation) throws IOException {
+        if (pipeline != null && pipeline.isRunning()) {
+            return pipeline.submit(type, key, expectedVersion, mutation);
+        }
+        return publish(current -> {
+            checkVersion(type, key, expectedVersion, current.getEntityVersion(type, key));
+            return draft(current, mutation);
+        });
+    }
+
+    private static void checkVersion(EntityType type, String key, long expectedVersion, long version) {
+        if (version != expectedVersion) {
+            throw new PreconditionFailedException("The " + type.getCollectionName() + " entry " + key
+                    + " is at version " + version + ", not " + expectedVersion);
+        }
+    }
+
+    /**
+     * Applies a mutation only if the given entity still has the expected version,
+     * see {@link #updateAndGetIfMatch(EntityType, String, long, Function)}.
+     *
+     * @param type            The type of the entity the mutation depends on.
+     * @param key             The key of the entity, see {@link EntityType#key(Object)}.
+     * @param expectedVersion The version the entity must have.
+     * @param mutation        The consumer modifying the draft DataWrapper.
+     * @throws IOException If an error occurred while appending the changes to the journal.
+     * @throws PreconditionFailedException If the entity does not have the expected version.
+     */
+    public void updateIfMatch(EntityType type, String key, long expectedVersion, Consumer<DataWrapper> mutation) throws IOException {
+        updateAndGetIfMatch(type, key, expectedVersion, draft -> {
+            mutation.accept(draft);
+            return null;
+        });
+    }
+
+    private static <T> Draft<T> draft(DataSnapshot current, Function<DataWrapper, T> mutation) {
+        List<Change> changes = new ArrayList<>();
+        DataWrapper draft = current.toDraft(changes);
+        T result = mutation.apply(draft);
+        return new Draft<>(result, changes, draft);
+    }
+
+    /**
+     * Replaces the current data with a snapshot read from an updated data file, publishing and journaling only
+     * the entities that differ from the current ones, see {@link SnapshotDiff}.
+     * The difference is computed against the current snapshot and computed again only if a mutation
+     * was published in the meantime.
+     *
+     * @param loaded The snapshot read from the data file, whose version is ignored.
+     * @return The number of changed entities, 0 if nothing was published.
+     * @throws IOException If an error occurred while appending the changes to the journal.
+     */
+    public int reload(DataSnapshot loaded) throws IOException {
+        DataSnapshot base = latest();
+        SnapshotDiff precomputed = SnapshotDiff.between(base, loaded);
+        return publish(current -> {
+            SnapshotDiff diff = current == base ? precomputed : SnapshotDiff.between(current, loaded);
+            return new Draft<>(diff.getChanges().size(), diff.getChanges(), diff.getResult());
+        });
+    }
+
+    /**
+     * Result of a mutation applied to a draft: the value to return, the changes made and the next data.
+     */
+    private record Draft<T>(T result, List<Change> changes, DataWrapper next) {
+    }
+
+    private <T> T publish(Function<DataSnapshot, Draft<T>> mutation) throws IOException {
+        boolean queued = writeBehind != null && writeBehind.isEnabled();
+        if (queued) {
+            writeBehind.reserve();
+        }
+        boolean enqueued = false;
+        try {
+            Draft<T> draft;
+            DataSnapshot next;
+            while (true) {
+                checkWritable();
+                DataSnapshot current = latest();
+                draft = mutation.apply(current);
+                if (draft.changes().isEmpty()) {
+                    return draft.result();
+                }
+                next = current.next(current.getVersion() + 1, draft.next(), draft.changes(), checkpointedVersions);
+                if (snapshot.compareAndSet(current, next)) {
+                    break;
+                }
+                conflicts.increment();
+            }
+            long position = append(next, draft.changes(), queued);
+            if (queued) {
+                enqueued = true;
+                return draft.result();
+            }
+            journal.sync(position);
+            return draft.result();
+        } finally {
+            if (queued && !enqueued) {
+                writeBehind.cancel();
+            }
+        }
+    }
+
+    /**
+     * Applies a batch of commands drained by the {@link MutationPipeline} writer to a single draft of the current
+     * snapshot, in order, publishes the draft as one version and appends all its changes as one journal record,
+     * forced once, or queues them as one write-behind mutation. Each command then holds its own result or failure:
+     * a command that throws publishes nothing of its own, and if it already changed the draft, the batch is applied
+     * again without it. A conditional command also fails if an earlier command of the batch changed its entity.
+     * A failure to persist the batch fails every command that had succeeded.
+     *
+     * @param batch the commands in submission order
+     */
+    void applyBatch(List<MutationPipeline.Command> batch) {
+        boolean queued = writeBehind != null && writeBehind.isEnabled();
+        try {
+            if (queued) {
+                writeBehind.reserve();
+            }
+        } catch (RuntimeException e) {
+            batch.forEach(command -> command.fail(e));
+            return;
+        }
+        boolean enqueued = false;
+        try {
+            List<Change> changes = new ArrayList<>();
+            DataSnapshot next;
+            while (true) {
+                checkWritable();
+                DataSnapshot current = latest();
+                DataWrapper draft = draft(current, batch, changes);
+                if (changes.isEmpty()) {
+                    return;
+                }
+                next = current.next(current.getVersion() + 1, draft, changes, checkpointedVersions);
+                if (snapshot.compareAndSet(current, next)) {
+                    break;
+                }
+                conflicts.increment();
+            }
+            long position = append(next, changes, queued);
+            if (queued) {
+                enqueued = true;
+                return;
+            }
+            journal.sync(position);
+        } catch (IOException | RuntimeException e) {
+            for (MutationPipeline.Command command : batch) {
+                if (!command.isFailed()) {
+                    command.fail(e);
+                }
+            }
+        } finally {
+            if (queued && !enqueued) {
+                writeBehind.cancel();
+            }
+        }
+    }
+
+    private static DataWrapper draft(DataSnapshot current, List<MutationPipeline.Command> batch, List<Change> changes) {
+        while (true) {
+            changes.clear();
+            DataWrapper draft = current.toDraft(changes);
+            boolean clean = true;
+            for (MutationPipeline.Command command : batch) {
+                if (command.isDiscarded()) {
+                    continue;
+                }
+                int applied = changes.size();
+                try {
+                    if (command.isConditional()) {
+                        checkVersion(command.getType(), command.getKey(), command.getExpectedVersion(),
+                                changedBefore(command.getType(), command.getKey(), changes)
+                                        ? current.getVersion() + 1
+                                        : current.getEntityVersion(command.getType(), command.getKey()));
+                    }
+                    command.succeed(command.getMutation().apply(draft));
+                } catch (RuntimeException e) {
+                    if (changes.size() > applied) {
+                        command.discard(e);
+                        clean = false;
+                        break;
+                    }
+                    command.fail(e);
+                }
+            }
+            if (clean) {
+                return draft;
+            }
+        }
+    }
+
+    private static boolean changedBefore(EntityType type, String key, List<Change> changes) {
+        for (Change change : changes) {
+            if (change.getType() == type && (key.equals(change.getKey())
+                    || (change.getValue() != null && key.equals(type.key(change.getValue()))))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Appends the changes of a published snapshot to the journal, or queues them for write-behind,
+     * once the changes of every previous version were, so that the journal stays in version order.
+     * The previous versions are always published already and only have their own append left to do.
+     *
+     * @return the journal position to sync, or -1 if the changes were queued
+     */
+    private long append(DataSnapshot next, List<Change> changes, boolean queued) throws IOException {
+        synchronized (journalOrder) {
+            boolean interrupted = false;
+            try {
+                while (journalFailure == null && journaled.getVersion() != next.getVersion() - 1) {
+                    try {
+                        journalOrder.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (journalFailure != null) {
+                    withdraw(next);
+                    throw new IOException("The data store is read-only since a journal append failed", journalFailure);
+                }
+                long position;
+                try {
+                    if (queued) {
+                        writeBehind.enqueue(next.getVersion(), changes);
+                        position = -1;
+                    } else {
+                        position = journal.append(next.getVersion(), changes);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    journalFailure = e instanceof IOException io ? io : new IOException(e);
+                    LOGGER.error("Could not journal version {}, the data store is now read-only at version {}",
+                            next.getVersion(), journaled.getVersion(), e);
+                    withdraw(next);
+                    throw e;
+                }
+                journaled = next;
+                if (history != null) {
+                    history.record(next, changes.size());
+                }
+                if (changeFeed != null) {
+                    changeFeed.publish(next.getVersion(), changes);
+                }
+                return position;
+            } finally {
+                journalOrder.notifyAll();
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Withdraws a version that will never be journaled by publishing the last journaled one again, unless a later
+     * version was published on top of it: that one fails in turn and withdraws them both.
+     */
+    private void withdraw(DataSnapshot next) {
+        snapshot.compareAndSet(next, journaled);
+    }
+
+    private void checkWritable() throws IOException {
+        IOException failure = journalFailure;
+        if (failure != null) {
+            throw new IOException("The data store is read-only since a journal append failed", failure);
+        }
+    }
+
+    /**
+     * Tells whether a journal append failed, which turns the store read-only until it is loaded again.
+     *
+     * @return true if mutations are rejected
+     */
+    public boolean isReadOnly() {
+        return journalFailure != null;
+    }
+
+    /**
+     * Applies a mutation to a draft copy of the current data and publishes it, see {@link #updateAndGet(Function)}.
+     *
+     * @param mutation The consumer modifying the draft DataWrapper.
+     * @throws IOException If an error occurred while updating the file with DataWrapper.
+     */
+    public void update(Consumer<DataWrapper> mutation) throws IOException {
+        updateAndGet(draft -> {
+            mutation.accept(draft);
+            return null;
+        });
+    }
+
+    /**
+     * Retrieves the version of the current snapshot, incremented by each published mutation.
+     *
+     * @return The current data version.
+     */
+    public long getVersion() {
+        return getSnapshot().getVersion();
+    }
+
+    /**
+     * Rolls the journal and returns the snapshot it is consistent with, while no journal record can be appended.
+     * Every rolled segment then holds records up to the version of the returned snapshot only.
+     *
+     * @return The last snapshot whose changes were appended to the journal.
+     * @throws IOException If the journal could not be rolled.
+     */
+    public DataSnapshot rollJournal() throws IOException {
+        latest();
+        synchronized (journalOrder) {
+            journal.roll();
+            return journaled;
+        }
+    }
+
+    /**
+     * Records that the given snapshot was written as the new base, so that the next published snapshot rebases
+     * the versions of its entities on it, see {@link DataSnapshot#next(long, DataWrapper, List, long[])}.
+     *
+     * @param base the snapshot returned by {@link #rollJournal()} and written by the checkpoint
+     */
+    void checkpointed(DataSnapshot base) {
+        long[] versions = new long[EntityType.values().length];
+        for (EntityType type : EntityType.values()) {
+            versions[type.ordinal()] = base.getVersion(type);
+        }
+        checkpointedVersions = versions;
+    }
+
+    /**
+     * Retrieves the number of mutations that had to be applied again because another one was published first.
+     *
+     * @return The number of conflicts since startup.
+     */
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    /**
+     * Retrieves the time taken by the last load to read the base snapshot and replay the journal.
+     *
+     * @return The recovery time in milliseconds.
+     */
+    public long getRecoveryMillis() {
+        return recoveryMillis;
+    }
+
+    /**
+     * Retrieves the throughput of the last load of the base snapshot.
+     *
+     * @return The number of records read per second.
+     */
+    public long getLoadRecordsPerSecond() {
+        return loadRecordsPerSecond;
+    }
+
+    public String getDataFile() {
+        return dataFile;
+    }
+
+    public MutationJournal getJournal() {
+        return journal;
+    }
+
+    public SnapshotStorage getStorage() {
+        return storage;
+    }
+}
@@ -1,12 +1,38 @@
 package com.amp.safetynetalerts.repository;
 
 import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
 import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import com.google.gson.GsonBuilder;
 import org.springframework.stereotype.Repository;
@@ -19,6 +45,26 @@ public class DataWrapperRepository {
 
     private static final Logger LOGGER = LogManager.getLogger(DataWrapperRepository.class);
 
+    public static final String DEFAULT_DATA_FILE = "data.json";
+
+    /**
+     * Optional top-level field holding the data version of a file written by a checkpoint.
+     */
+    public static final String VERSION_FIELD = "version";
+
+    /**
+     * Suffix of the binary snapshot written next to the JSON data file by a checkpoint.
+     */
+    public static final String BINARY_SNAPSHOT_SUFFIX = ".bin";
+
+    private static final String JSON_SUFFIX = ".json";
+
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    private static final Type PERSONS_TYPE = new TypeToken<List<Person>>() { }.getType();
+    private static final Type FIRESTATIONS_TYPE = new TypeToken<List<Firestation>>() { }.getType();
+    private static final Type MEDICALRECORDS_TYPE = new TypeToken<List<MedicalRecord>>() { }.getType();
+
     /**
      * Reads data stored in a JSON file and maps it into an object.
      *
@@ -27,14 +73,7 @@ public class DataWrapperRepository {
      * @return The object mapped from the JSON file.
      */
     public static <T> T loadDataFromFile(T type, Class<T> classOfT) {
-        T data = null;
-        try (JsonReader reader = new JsonReader(new FileReader("data.json"))) {
-            Gson gson = new Gson();
-            data = gson.fromJson(reader, classOfT);
-        } catch (IOException e) {
-            LOGGER.error("An error occurred while reading the data.json file", e);
-        }
-        return data;
+        return readFile(DEFAULT_DATA_FILE, classOfT);
     }
 
     /**
@@ -52,6 +91,19 @@ public class DataWrapperRepository {
         return data;
     }
 
+    /**
+     * Retrieves the DataWrapper object from the given JSON file.
+     *
+     * @param fileName The path of the JSON file to read.
+     * @return The DataWrapper object.
+     * @throws IllegalStateException If the DataWrapper object is null.
+     */
+    public static DataWrapper getDataWrapper(String fileName) {
+        DataWrapper data = new DataWrapper(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        streamFile(fileName, data);
+        return data;
+    }
+
     /**
      * Updates the data.json file with the provided DataWrapper object.
      *
@@ -59,12 +111,342 @@ public class DataWrapperRepository {
      * @throws IOException If an error occurred while updating the file with DataWrapper.
      */
     public static void updateFileWithDataWrapper(DataWrapper dataWrapper) throws IOException {
-        try (Writer writer = new FileWriter("data.json")) {
-            Gson gson = new GsonBuilder().setPrettyPrinting().create();
-            gson.toJson(dataWrapper, writer);
-        } catch (IOException e) {
+        updateFileWithDataWrapper(dataWrapper, DEFAULT_DATA_FILE);
+    }
+
+    /**
+     * Updates the given JSON file with the provided DataWrapper object, forcing it to disk.
+     *
+     * @param dataWrapper The DataWrapper object to be saved into the file.
+     * @param fileName    The path of the JSON file to write.
+     * @throws IOException If an error occurred while updating the file with DataWrapper.
+     */
+    public static void updateFileWithDataWrapper(DataWrapper dataWrapper, String fileName) throws IOException {
+        updateFileWithDataWrapper(dataWrapper, fileName, Durability.FSYNC_FILE_AND_DIRECTORY);
+    }
+
+    /**
+     * Atomically replaces the given JSON file with the provided DataWrapper object.
+     *
+     * @param dataWrapper The DataWrapper object to be saved into the file.
+     * @param fileName    The path of the JSON file to write.
+     * @param durability  How far the write is forced to disk.
+     * @throws IOException If an error occurred while updating the file with DataWrapper.
+     */
+    public static void updateFileWithDataWrapper(DataWrapper dataWrapper, String fileName, Durability durability) throws IOException {
+        try {
+            writeAtomically(fileName, durability, writer -> {
+                Gson gson = new GsonBuilder().setPrettyPrinting().create();
+                gson.toJson(dataWrapper, writer);
+            });
+        } catch (IOException | JsonIOException e) {
             LOGGER.error("An error occurred while updating the data.json file with DataWrapper", e);
             throw new IOException("An error occurred while updating the file with DataWrapper", e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads the given JSON file as a snapshot, whose version is 0 if the file has no version field.
+     * The records are streamed straight into the lists of the snapshot, without intermediate copy.
+     *
+     * @param fileName The path of the JSON file to read.
+     * @return The DataSnapshot read from the file.
+     * @throws IllegalStateException If the file could not be read.
+     */
+    public static DataSnapshot getSnapshot(String fileName) {
+        DataWrapper data = new DataWrapper(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        long version = streamFile(fileName, data);
+        return DataSnapshot.fromDraft(version, data);
+    }
+
+    /**
+     * Walks the JSON file token by token and adds each person, firestation and medical record to the lists
+     * of the target as soon as it is decoded, so that no more than one record is held besides the target.
+     *
+     * @return the version field of the file, 0 if it has none
+     */
+    private static long streamFile(String fileName, DataWrapper target) {
+        Gson gson = new Gson();
+        long version = 0;
+        try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(Files.newInputStream(Paths.get(fileName)), StandardCharsets.UTF_8), STREAM_BUFFER_SIZE))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case VERSION_FIELD -> version = reader.nextLong();
+                    case "persons" -> streamArray(reader, gson.getAdapter(Person.class), target.getPersons());
+                    case "firestations" -> streamArray(reader, gson.getAdapter(Firestation.class), target.getFirestations());
+                    case "medicalrecords" -> streamArray(reader, gson.getAdapter(MedicalRecord.class), target.getMedicalrecords());
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException | JsonParseException | IllegalStateException | NumberFormatException e) {
+            LOGGER.error("An error occurred while reading the {} file", fileName, e);
+            throw new IllegalStateException("DataWrapper object is null", e);
+        }
+        return version;
+    }
+
+    private static <T> void streamArray(JsonReader reader, TypeAdapter<T> adapter, List<T> target) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            T record = adapter.read(reader);
+            if (record != null) {
+                target.add(record);
+            }
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Atomically replaces the given JSON file with the snapshot and its version, streaming the entities one by one.
+     *
+     * @param snapshot   The DataSnapshot to be saved into the file.
+     * @param fileName   The path of the JSON file to write.
+     * @param durability How far the write is forced to disk.
+     * @throws IOException If an error occurred while writing the file.
+     */
+    public static void updateFileWithSnapshot(DataSnapshot snapshot, String fileName, Durability durability) throws IOException {
+        writeCollections(snapshot, EnumSet.allOf(EntityType.class), fileName, durability);
+    }
+
+    /**
+     * Returns the path of the segment holding the given collection next to the given JSON data file,
+     * such as {@code data.persons.json} for {@code data.json}.
+     *
+     * @param fileName The path of the JSON data file.
+     * @param type     The type of the collection.
+     * @return The path of the segment.
+     */
+    public static String getSegmentFile(String fileName, EntityType type) {
+        String base = fileName.endsWith(JSON_SUFFIX) ? fileName.substring(0, fileName.length() - JSON_SUFFIX.length()) : fileName;
+        return base + "." + type.getCollectionName() + JSON_SUFFIX;
+    }
+
+    /**
+     * Atomically replaces the segment of the given collection with the snapshot version and the collection,
+     * in the same format as the single JSON data file.
+     *
+     * @param snapshot   The DataSnapshot holding the collection.
+     * @param type       The type of the collection to write.
+     * @param fileName   The path of the JSON data file, see {@link #getSegmentFile(String, EntityType)}.
+     * @param durability How far the write is forced to disk.
+     * @throws IOException If an error occurred while writing the segment.
+     */
+    public static void updateSegmentWithSnapshot(DataSnapshot snapshot, EntityType type, String fileName, Durability durability) throws IOException {
+        writeCollections(snapshot, EnumSet.of(type), getSegmentFile(fileName, type), durability);
+    }
+
+    /**
+     * Reads the segments of the given JSON data file in parallel, each collection with the version of its segment.
+     * A collection whose segment does not exist is imported from the single JSON data file, with the version of that file.
+     *
+     * @param fileName The path of the JSON data file.
+     * @return The DataSnapshot holding the collections, at the highest of their versions.
+     * @throws IllegalStateException If a segment or the data file could not be read.
+     */
+    public static DataSnapshot getSegmentedSnapshot(String fileName) {
+        DataWrapper data = new DataWrapper(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        long[] versions = new long[EntityType.values().length];
+        Map<EntityType, CompletableFuture<Long>> reads = new EnumMap<>(EntityType.class);
+        for (EntityType type : EntityType.values()) {
+            String segment = getSegmentFile(fileName, type);
+            if (Files.exists(Paths.get(segment))) {
+                DataWrapper target = only(type, data);
+                reads.put(type, CompletableFuture.supplyAsync(() -> streamFile(segment, target)));
+            }
+        }
+        if (reads.size() < versions.length) {
+            DataSnapshot imported = getSnapshot(fileName);
+            DataWrapper importedData = imported.toDataWrapper();
+            for (EntityType type : EntityType.values()) {
+                if (!reads.containsKey(type)) {
+                    type.list(data).addAll(type.list(importedData));
+                    versions[type.ordinal()] = imported.getVersion();
+                }
+            }
+        }
+        try {
+            for (Map.Entry<EntityType, CompletableFuture<Long>> read : reads.entrySet()) {
+                versions[read.getKey().ordinal()] = read.getValue().join();
+            }
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IllegalStateException cause ? cause : e;
+        }
+        return DataSnapshot.fromCollections(data, versions);
+    }
+
+    /**
+     * Returns a DataWrapper in which only the list of the given type can receive records,
+     * so that a segment cannot fill the collections of the other segments read in parallel.
+     */
+    private static DataWrapper only(EntityType type, DataWrapper target) {
+        return new DataWrapper(
+                type == EntityType.PERSON ? target.getPersons() : new ArrayList<>(),
+                type == EntityType.FIRESTATION ? target.getFirestations() : new ArrayList<>(),
+                type == EntityType.MEDICAL_RECORD ? target.getMedicalrecords() : new ArrayList<>());
+    }
+
+    private static void writeCollections(DataSnapshot snapshot, Set<EntityType> types, String fileName, Durability durability) throws IOException {
+        try {
+            writeAtomically(fileName, durability, out -> {
+                Gson gson = new GsonBuilder().setPrettyPrinting().create();
+                JsonWriter writer = gson.newJsonWriter(out);
+                writer.beginObject();
+                writer.name(VERSION_FIELD).value(snapshot.getVersion());
+                if (types.contains(EntityType.PERSON)) {
+                    writer.name(EntityType.PERSON.getCollectionName());
+                    gson.toJson(snapshot.getPersons(), PERSONS_TYPE, writer);
+                }
+                if (types.contains(EntityType.FIRESTATION)) {
+                    writer.name(EntityType.FIRESTATION.getCollectionName());
+                    gson.toJson(snapshot.getFirestations(), FIRESTATIONS_TYPE, writer);
+                }
+                if (types.contains(EntityType.MEDICAL_RECORD)) {
+                    writer.name(EntityType.MEDICAL_RECORD.getCollectionName());
+                    gson.toJson(snapshot.getMedicalrecords(), MEDICALRECORDS_TYPE, writer);
+                }
+                writer.endObject();
+                writer.flush();
+            });
+        } catch (IOException e) {
+            LOGGER.error("An error occurred while writing the snapshot to {}", fileName, e);
+            throw new IOException("An error occurred while updating the file with DataWrapper", e);
+        }
+    }
+
+    /**
+     * Returns the path of the binary snapshot kept next to the given JSON data file.
+     *
+     * @param fileName The path of the JSON data file.
+     * @return The path of its binary snapshot.
+     */
+    public static String getBinarySnapshotFile(String fileName) {
+        return fileName + BINARY_SNAPSHOT_SUFFIX;
+    }
+
+    /**
+     * Reads the version field of the given JSON file, which a checkpoint writes first,
+     * without reading the rest of the file.
+     *
+     * @param fileName The path of the JSON file to read.
+     * @return The version of the file, 0 if it does not start with a version field.
+     * @throws IOException If the file could not be read.
+     */
+    public static long readVersion(String fileName) throws IOException {
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(Paths.get(fileName), StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            return reader.hasNext() && reader.nextName().equals(VERSION_FIELD) ? reader.nextLong() : 0;
+        } catch (JsonParseException | IllegalStateException | NumberFormatException e) {
+            throw new IOException("Could not read the version of " + fileName, e);
+        }
+    }
+
+    /**
+     * Reads a binary snapshot written by {@link #updateBinarySnapshot(DataSnapshot, String, Durability)}.
+     *
+     * @param fileName The path of the binary snapshot to read.
+     * @return The DataSnapshot read from the file.
+     * @throws IOException If the file could not be read, is not a binary snapshot or is corrupted.
+     */
+    public static DataSnapshot getBinarySnapshot(String fileName) throws IOException {
+        try (InputStream in = new FileInputStream(fileName)) {
+            return BinarySnapshotCodec.read(in);
+        }
+    }
+
+    /**
+     * Atomically replaces the given binary snapshot file with the snapshot, see {@link BinarySnapshotCodec}.
+     *
+     * @param snapshot   The DataSnapshot to be saved into the file.
+     * @param fileName   The path of the binary snapshot to write.
+     * @param durability How far the write is forced to disk.
+     * @throws IOException If an error occurred while writing the file.
+     */
+    public static void updateBinarySnapshot(DataSnapshot snapshot, String fileName, Durability durability) throws IOException {
+        try {
+            writeBytesAtomically(fileName, durability, out -> BinarySnapshotCodec.write(snapshot, out));
+        } catch (IOException e) {
+            LOGGER.error("An error occurred while writing the binary snapshot to {}", fileName, e);
+            throw new IOException("An error occurred while writing the binary snapshot", e);
+        }
+    }
+
+    /**
+     * Writes the content to a temporary file next to the target, then renames it over the target,
+     * so that readers and crashes see either the previous or the new file, never a partial one.
+     */
+    private static void writeAtomically(String fileName, Durability durability, WriteAction action) throws IOException {
+        writeBytesAtomically(fileName, durability, out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            action.write(writer);
+            writer.flush();
+        });
+    }
+
+    private static void writeBytesAtomically(String fileName, Durability durability, OutputAction action) throws IOException {
+        Path target = Paths.get(fileName).toAbsolutePath();
+        Path directory = target.getParent();
+        Path temp = Files.createTempFile(directory, target.getFileName() + ".", ".tmp");
+        try {
+            copyPermissions(target, temp);
+            try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+                action.write(out);
+                if (durability != Durability.NONE) {
+                    out.getFD().sync();
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        if (durability == Durability.FSYNC_FILE_AND_DIRECTORY) {
+            syncDirectory(directory);
+        }
+    }
+
+    /**
+     * Gives the temporary file the permissions of the file it replaces, as createTempFile creates it
+     * readable by its owner only.
+     */
+    private static void copyPermissions(Path target, Path temp) throws IOException {
+        if (Files.exists(target) && Files.getFileStore(temp).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+        }
+    }
+
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Some platforms, such as Windows, cannot open or force a directory.
+            LOGGER.warn("Could not force the directory {} to disk", directory, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface WriteAction {
+        void write(Writer writer) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface OutputAction {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private static <T> T readFile(String fileName, Class<T> classOfT) {
+        T data = null;
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(Paths.get(fileName), StandardCharsets.UTF_8))) {
+            Gson gson = new Gson();
+            data = gson.fromJson(reader, classOfT);
+        } catch (IOException e) {
+            LOGGER.error("An error occurred while reading the data.json file", e);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,15 @@
+package com.amp.safetynetalerts.repository;
+
+/**
+ * How far a data file write is forced to the storage device before it is considered done.
+ * Whatever the mode, the file is written to a temporary file then renamed over the target,
+ * so a reader or a crash never sees a partially written file.
+ */
+public enum Durability {
+    /** The written data is left to the operating system to flush, a power loss may lose the last write. */
+    NONE,
+    /** The temporary file is forced before the rename, a power loss may still lose the rename itself. */
+    FSYNC_FILE,
+    /** The temporary file is forced before the rename and the directory after it, the write survives a power loss. */
+    FSYNC_FILE_AND_DIRECTORY
+}
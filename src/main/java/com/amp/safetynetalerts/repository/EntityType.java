@@ -0,0 +1,108 @@
+package com.amp.safetynetalerts.repository;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+
+import java.util.List;
+
+/**
+ * The kinds of entities held by the data store, with the key identifying each entity.
+ * Persons and medical records are identified by first name and last name,
+ * firestations by the address and station number of the mapping.
+ */
+public enum EntityType {
+
+    PERSON(Person.class, "persons") {
+        @Override
+        public String key(Object entity) {
+            Person person = (Person) entity;
+            return key(person.getFirstName(), person.getLastName());
+        }
+
+        @Override
+        public <T> List<T> list(DataWrapper dataWrapper) {
+            return cast(dataWrapper.getPersons());
+        }
+    },
+    FIRESTATION(Firestation.class, "firestations") {
+        @Override
+        public String key(Object entity) {
+            Firestation firestation = (Firestation) entity;
+            return key(firestation.getAddress(), String.valueOf(firestation.getStation()));
+        }
+
+        @Override
+        public <T> List<T> list(DataWrapper dataWrapper) {
+            return cast(dataWrapper.getFirestations());
+        }
+    },
+    MEDICAL_RECORD(MedicalRecord.class, "medicalrecords") {
+        @Override
+        public String key(Object entity) {
+            MedicalRecord record = (MedicalRecord) entity;
+            return key(record.getFirstName(), record.getLastName());
+        }
+
+        @Override
+        public <T> List<T> list(DataWrapper dataWrapper) {
+            return cast(dataWrapper.getMedicalrecords());
+        }
+    };
+
+    private static final String KEY_SEPARATOR = "|";
+
+    private final Class<?> entityClass;
+    private final String collectionName;
+
+    EntityType(Class<?> entityClass, String collectionName) {
+        this.entityClass = entityClass;
+        this.collectionName = collectionName;
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * Returns the name of the collection of this type in the JSON data files.
+     *
+     * @return the collection name
+     */
+    public String getCollectionName() {
+        return collectionName;
+    }
+
+    /**
+     * Returns the key identifying the given entity within its collection.
+     *
+     * @param entity an entity of this type
+     * @return the key of the entity
+     */
+    public abstract String key(Object entity);
+
+    /**
+     * Returns the list holding the entities of this type in the given DataWrapper.
+     *
+     * @param dataWrapper the DataWrapper to read
+     * @param <T>         the entity class of this type
+     * @return the list of entities of this type
+     */
+    public abstract <T> List<T> list(DataWrapper dataWrapper);
+
+    /**
+     * Builds a composite key from its parts.
+     *
+     * @param parts the parts of the key, null parts are kept as "null"
+     * @return the composite key
+     */
+    public static String key(String... parts) {
+        return String.join(KEY_SEPARATOR, parts);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> cast(List<?> list) {
+        return (List<T>) list;
+    }
+}
@@ -0,0 +1,491 @@
+package com.amp.safetynetalerts.repository;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Storage of the base snapshot in an embedded H2 database, in file or in-memory mode depending on its URL,
+ * such as {@code jdbc:h2:file:./data} or {@code jdbc:h2:mem:safetynetalerts}.
+ * <p>
+ * Each collection is a table indexed by the key of its entities, see {@link EntityType#key(Object)},
+ * persons are also indexed by address and firestations by station. Writing a snapshot only updates the rows
+ * of the entities that changed since the last snapshot read or written, in a single transaction that also
+ * records the version of each changed collection. The changes are those of the journal records the checkpoint
+ * covers, so a checkpoint costs the size of the changes rather than the size of the dataset; when the records
+ * do not cover every version since the last snapshot, such as after a restart on an older database, they are
+ * the difference between the two snapshots, which compares the whole of each changed collection.
+ * The row changes of a table are sent as one batch per statement. Rows are read back in insertion order,
+ * the order of the lists.
+ * <p>
+ * An empty database imports the base snapshot of the JSON data file the first time it is read.
+ */
+public class H2SnapshotStorage implements SnapshotStorage, AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger(H2SnapshotStorage.class);
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS collection_versions (collection VARCHAR(32) PRIMARY KEY, version BIGINT NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS persons (id BIGINT AUTO_INCREMENT PRIMARY KEY, entity_key VARCHAR NOT NULL,"
+                    + " first_name VARCHAR, last_name VARCHAR, address VARCHAR, city VARCHAR, zip VARCHAR, phone VARCHAR, email VARCHAR)",
+            "CREATE INDEX IF NOT EXISTS persons_key ON persons (entity_key)",
+            "CREATE INDEX IF NOT EXISTS persons_address ON persons (address)",
+            "CREATE TABLE IF NOT EXISTS firestations (id BIGINT AUTO_INCREMENT PRIMARY KEY, entity_key VARCHAR NOT NULL,"
+                    + " address VARCHAR, station INT)",
+            "CREATE INDEX IF NOT EXISTS firestations_key ON firestations (entity_key)",
+            "CREATE INDEX IF NOT EXISTS firestations_station ON firestations (station)",
+            "CREATE TABLE IF NOT EXISTS medical_records (id BIGINT AUTO_INCREMENT PRIMARY KEY, entity_key VARCHAR NOT NULL,"
+                    + " first_name VARCHAR, last_name VARCHAR, birthdate VARCHAR, medications VARCHAR ARRAY, allergies VARCHAR ARRAY)",
+            "CREATE INDEX IF NOT EXISTS medical_records_key ON medical_records (entity_key)"};
+
+    /**
+     * Ids given to the rows a write inserts until the database assigns theirs, above any id it assigns.
+     */
+    private static final long FIRST_NEW_ROW = Long.MAX_VALUE / 2;
+
+    private final String url;
+    private final SnapshotStorage importSource;
+
+    private Connection connection;
+    private DataSnapshot lastWritten;
+
+    /**
+     * Creates the storage, the database is only opened by the first read or write.
+     *
+     * @param url          the JDBC URL of the H2 database
+     * @param importSource the storage imported by an empty database
+     */
+    public H2SnapshotStorage(String url, SnapshotStorage importSource) {
+        this.url = url;
+        this.importSource = importSource;
+    }
+
+    /**
+     * Reads every row of the three tables, after importing the base snapshot of the import source
+     * if the database holds none yet.
+     */
+    @Override
+    public synchronized DataSnapshot read() {
+        try {
+            long[] versions = readVersions();
+            if (versions == null) {
+                DataSnapshot imported = importSource.read();
+                insertAll(imported);
+                LOGGER.info("Imported {} persons, {} firestations and {} medical records into {}",
+                        imported.getPersons().size(), imported.getFirestations().size(), imported.getMedicalrecords().size(), url);
+                lastWritten = imported;
+                return imported;
+            }
+            DataWrapper data = new DataWrapper(readPersons(), readFirestations(), readMedicalRecords());
+            lastWritten = DataSnapshot.fromCollections(data, versions);
+            return lastWritten;
+        } catch (SQLException e) {
+            LOGGER.error("An error occurred while reading the {} database", url, e);
+            throw new IllegalStateException("An error occurred while reading the database", e);
+        }
+    }
+
+    /**
+     * Applies the changes between the last snapshot read or written and the given one, computed by comparing
+     * the collections whose version changed, in a single transaction.
+     */
+    @Override
+    public synchronized void write(DataSnapshot base) throws IOException {
+        if (lastWritten == null) {
+            read();
+        }
+        List<Change> changes = new ArrayList<>();
+        DataWrapper previous = lastWritten.toDataWrapper();
+        DataWrapper next = base.toDataWrapper();
+        for (EntityType type : changedTypes(base)) {
+            changes.addAll(SnapshotDiff.changes(type, type.list(previous), type.list(next)));
+        }
+        writeChanges(base, changes);
+    }
+
+    /**
+     * Applies the changes of the journal records following the last snapshot read or written, in a single
+     * transaction, or falls back to {@link #write(DataSnapshot)} if the records miss a version in between.
+     */
+    @Override
+    public synchronized void write(DataSnapshot base, List<MutationJournal.Entry> entries) throws IOException {
+        if (lastWritten == null) {
+            read();
+        }
+        List<Change> changes = new ArrayList<>();
+        long version = lastWritten.getVersion();
+        for (MutationJournal.Entry entry : entries) {
+            if (entry.version() > version && entry.version() <= base.getVersion()) {
+                if (entry.version() != version + 1) {
+                    break;
+                }
+                changes.addAll(entry.changes());
+                version = entry.version();
+            }
+        }
+        if (version != base.getVersion()) {
+            LOGGER.info("The journal does not hold every version from {} to {}, comparing the snapshots instead",
+                    lastWritten.getVersion(), base.getVersion());
+            write(base);
+            return;
+        }
+        writeChanges(base, changes);
+    }
+
+    @Override
+    public boolean isIncremental() {
+        return true;
+    }
+
+    private List<EntityType> changedTypes(DataSnapshot base) {
+        List<EntityType> changed = new ArrayList<>();
+        for (EntityType type : EntityType.values()) {
+            if (base.getVersion(type) != lastWritten.getVersion(type)) {
+                changed.add(type);
+            }
+        }
+        return changed;
+    }
+
+    private void writeChanges(DataSnapshot base, List<Change> changes) throws IOException {
+        List<EntityType> changed = changedTypes(base);
+        try {
+            Connection db = connection();
+            try {
+                for (EntityType type : changed) {
+                    apply(db, type, changes);
+                }
+                for (EntityType type : changed) {
+                    writeVersion(db, type, base.getVersion(type));
+                }
+                db.commit();
+            } catch (SQLException e) {
+                db.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IOException("An error occurred while writing to the " + url + " database", e);
+        }
+        lastWritten = base;
+        LOGGER.debug("Wrote {} changes to {} at version {}", changes.size(), url, base.getVersion());
+    }
+
+    /**
+     * Applies the changes of a type the way {@link Change#applyTo(List)} does, in order: the row holding the first
+     * entity with the key of a change is updated or deleted, a replacement whose key is not found inserts a new row.
+     * The ids of the rows of every key involved are read in one query, the changes are resolved against them in
+     * memory, new rows taking ids after the existing ones, then the deletes, the updates and the inserts are each
+     * sent as one batch.
+     */
+    private void apply(Connection db, EntityType type, List<Change> changes) throws SQLException {
+        Set<String> keys = new HashSet<>();
+        for (Change change : changes) {
+            if (change.getType() == type) {
+                if (change.getKey() != null) {
+                    keys.add(change.getKey());
+                }
+                if (change.getValue() != null) {
+                    keys.add(type.key(change.getValue()));
+                }
+            }
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        Map<String, TreeSet<Long>> ids = findIds(db, type, keys);
+        List<Long> deletes = new ArrayList<>();
+        Map<Long, Object> updates = new HashMap<>();
+        TreeMap<Long, Object> inserts = new TreeMap<>();
+        long nextInsert = FIRST_NEW_ROW;
+        for (Change change : changes) {
+            if (change.getType() != type) {
+                continue;
+            }
+            TreeSet<Long> keyIds = change.getKey() == null ? null : ids.get(change.getKey());
+            Long id = keyIds == null || keyIds.isEmpty() ? null : keyIds.first();
+            Object value = change.getValue();
+            if (value == null) {
+                if (id != null) {
+                    keyIds.remove(id);
+                    if (id >= FIRST_NEW_ROW) {
+                        inserts.remove(id);
+                    } else {
+                        updates.remove(id);
+                        deletes.add(id);
+                    }
+                }
+            } else {
+                String key = type.key(value);
+                if (id == null) {
+                    id = nextInsert++;
+                } else if (!key.equals(change.getKey())) {
+                    keyIds.remove(id);
+                }
+                ids.get(key).add(id);
+                (id >= FIRST_NEW_ROW ? inserts : updates).put(id, value);
+            }
+        }
+        if (!deletes.isEmpty()) {
+            try (PreparedStatement delete = db.prepareStatement("DELETE FROM " + table(type) + " WHERE id = ?")) {
+                for (long id : deletes) {
+                    delete.setLong(1, id);
+                    delete.addBatch();
+                }
+                delete.executeBatch();
+            }
+        }
+        if (!updates.isEmpty()) {
+            try (PreparedStatement update = db.prepareStatement(updateSql(type))) {
+                for (Map.Entry<Long, Object> row : updates.entrySet()) {
+                    update.setLong(bind(update, type, row.getValue()), row.getKey());
+                    update.addBatch();
+                }
+                update.executeBatch();
+            }
+        }
+        if (!inserts.isEmpty()) {
+            try (PreparedStatement insert = db.prepareStatement(insertSql(type))) {
+                for (Object value : inserts.values()) {
+                    bind(insert, type, value);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Reads the ids of the rows holding each of the given keys, in ascending order.
+     */
+    private Map<String, TreeSet<Long>> findIds(Connection db, EntityType type, Set<String> keys) throws SQLException {
+        Map<String, TreeSet<Long>> ids = new HashMap<>();
+        for (String key : keys) {
+            ids.put(key, new TreeSet<>());
+        }
+        try (PreparedStatement select = db.prepareStatement("SELECT id, entity_key FROM " + table(type) + " WHERE entity_key = ANY(?)")) {
+            select.setObject(1, keys.toArray(new String[0]), Types.ARRAY);
+            try (ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    ids.get(rows.getString(2)).add(rows.getLong(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private void insertAll(DataSnapshot snapshot) throws SQLException {
+        Connection db = connection();
+        try {
+            DataWrapper data = snapshot.toDataWrapper();
+            for (EntityType type : EntityType.values()) {
+                try (PreparedStatement insert = db.prepareStatement(insertSql(type))) {
+                    for (Object entity : type.list(data)) {
+                        bind(insert, type, entity);
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                }
+                writeVersion(db, type, snapshot.getVersion(type));
+            }
+            db.commit();
+        } catch (SQLException e) {
+            db.rollback();
+            throw e;
+        }
+    }
+
+    private static String table(EntityType type) {
+        return switch (type) {
+            case PERSON -> "persons";
+            case FIRESTATION -> "firestations";
+            case MEDICAL_RECORD -> "medical_records";
+        };
+    }
+
+    private static String columns(EntityType type) {
+        return switch (type) {
+            case PERSON -> "entity_key, first_name, last_name, address, city, zip, phone, email";
+            case FIRESTATION -> "entity_key, address, station";
+            case MEDICAL_RECORD -> "entity_key, first_name, last_name, birthdate, medications, allergies";
+        };
+    }
+
+    private static String insertSql(EntityType type) {
+        String columns = columns(type);
+        String parameters = String.join(", ", Collections.nCopies(columns.split(",").length, "?"));
+        return "INSERT INTO " + table(type) + " (" + columns + ") VALUES (" + parameters + ")";
+    }
+
+    private static String updateSql(EntityType type) {
+        return "UPDATE " + table(type) + " SET " + columns(type).replace(",", " = ?,") + " = ? WHERE id = ?";
+    }
+
+    /**
+     * Binds the key and the fields of the entity, in the order of {@link #columns(EntityType)}.
+     *
+     * @return the index of the next parameter
+     */
+    private int bind(PreparedStatement statement, EntityType type, Object entity) throws SQLException {
+        statement.setString(1, type.key(entity));
+        switch (type) {
+            case PERSON -> {
+                Person person = (Person) entity;
+                statement.setString(2, person.getFirstName());
+                statement.setString(3, person.getLastName());
+                statement.setString(4, person.getAddress());
+                statement.setString(5, person.getCity());
+                statement.setString(6, person.getZip());
+                statement.setString(7, person.getPhone());
+                statement.setString(8, person.getEmail());
+                return 9;
+            }
+            case FIRESTATION -> {
+                Firestation firestation = (Firestation) entity;
+                statement.setString(2, firestation.getAddress());
+                statement.setObject(3, firestation.getStation(), Types.INTEGER);
+                return 4;
+            }
+            case MEDICAL_RECORD -> {
+                MedicalRecord record = (MedicalRecord) entity;
+                statement.setString(2, record.getFirstName());
+                statement.setString(3, record.getLastName());
+                statement.setString(4, record.getBirthdate());
+                statement.setObject(5, toArray(record.getMedications()), Types.ARRAY);
+                statement.setObject(6, toArray(record.getAllergies()), Types.ARRAY);
+                return 7;
+            }
+            default -> throw new IllegalArgumentException("Unknown entity type " + type);
+        }
+    }
+
+    private List<Person> readPersons() throws SQLException {
+        List<Person> persons = new ArrayList<>();
+        try (Statement select = connection().createStatement();
+             ResultSet rows = select.executeQuery("SELECT first_name, last_name, address, city, zip, phone, email FROM persons ORDER BY id")) {
+            while (rows.next()) {
+                persons.add(new Person(rows.getString(1), rows.getString(2), rows.getString(3), rows.getString(4),
+                        rows.getString(5), rows.getString(6), rows.getString(7)));
+            }
+        }
+        return persons;
+    }
+
+    private List<Firestation> readFirestations() throws SQLException {
+        List<Firestation> firestations = new ArrayList<>();
+        try (Statement select = connection().createStatement();
+             ResultSet rows = select.executeQuery("SELECT address, station FROM firestations ORDER BY id")) {
+            while (rows.next()) {
+                firestations.add(new Firestation(rows.getString(1), rows.getObject(2, Integer.class)));
+            }
+        }
+        return firestations;
+    }
+
+    private List<MedicalRecord> readMedicalRecords() throws SQLException {
+        List<MedicalRecord> records = new ArrayList<>();
+        try (Statement select = connection().createStatement();
+             ResultSet rows = select.executeQuery("SELECT first_name, last_name, birthdate, medications, allergies FROM medical_records ORDER BY id")) {
+            while (rows.next()) {
+                records.add(new MedicalRecord(rows.getString(1), rows.getString(2), rows.getString(3),
+                        toList(rows.getArray(4)), toList(rows.getArray(5))));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Reads the version of each collection, or returns null if the database holds no snapshot yet.
+     */
+    private long[] readVersions() throws SQLException {
+        long[] versions = new long[EntityType.values().length];
+        int found = 0;
+        try (Statement select = connection().createStatement();
+             ResultSet rows = select.executeQuery("SELECT collection, version FROM collection_versions")) {
+            while (rows.next()) {
+                for (EntityType type : EntityType.values()) {
+                    if (table(type).equals(rows.getString(1))) {
+                        versions[type.ordinal()] = rows.getLong(2);
+                        found++;
+                    }
+                }
+            }
+        }
+        return found == 0 ? null : versions;
+    }
+
+    private static void writeVersion(Connection db, EntityType type, long version) throws SQLException {
+        try (PreparedStatement merge = db.prepareStatement("MERGE INTO collection_versions (collection, version) KEY (collection) VALUES (?, ?)")) {
+            merge.setString(1, table(type));
+            merge.setLong(2, version);
+            merge.executeUpdate();
+        }
+    }
+
+    private static String[] toArray(List<String> values) {
+        return values == null ? null : values.toArray(new String[0]);
+    }
+
+    private static List<String> toList(Array array) throws SQLException {
+        if (array == null) {
+            return null;
+        }
+        Object[] values = (Object[]) array.getArray();
+        List<String> list = new ArrayList<>(values.length);
+        Arrays.stream(values).forEach(value -> list.add((String) value));
+        return list;
+    }
+
+    private Connection connection() throws SQLException {
+        if (connection == null) {
+            Connection db = DriverManager.getConnection(url);
+            try (Statement schema = db.createStatement()) {
+                for (String sql : SCHEMA) {
+                    schema.execute(sql);
+                }
+            }
+            db.setAutoCommit(false);
+            connection = db;
+        }
+        return connection;
+    }
+
+    /**
+     * Closes the connection to the database, an in-memory database is then dropped.
+     *
+     * @throws SQLException If the connection could not be closed.
+     */
+    @Override
+    public synchronized void close() throws SQLException {
+        if (connection != null) {
+            connection.close();
+            connection = null;
+        }
+    }
+
+    public String getUrl() {
+        return url;
+    }
+}
@@ -0,0 +1,334 @@
+package com.amp.safetynetalerts.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+
+/**
+ * Immutable map stored as a hash array mapped trie.
+ * Each node consumes 5 bits of the hash of the key and holds, for the slots in use only, either an entry or a child
+ * node, as flagged by a bitmap. Adding or removing an entry copies the O(log32 n) nodes on the path to its slot and
+ * shares the others with the previous version. Keys whose hashes collide entirely share a collision node.
+ *
+ * @param <K> the key class
+ * @param <V> the value class
+ */
+final class HashTrie<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final HashTrie<?, ?> EMPTY = new HashTrie<>(new BitmapNode(0, new Object[0]), 0);
+
+    private final Node root;
+    private final int size;
+
+    private HashTrie(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> HashTrie<K, V> empty() {
+        return (HashTrie<K, V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Retrieves the value of the given key.
+     *
+     * @param key the key
+     * @return the value, or null if the map holds no such key
+     */
+    @SuppressWarnings("unchecked")
+    V get(K key) {
+        return (V) root.get(0, key.hashCode(), key);
+    }
+
+    /**
+     * Returns a map holding the given entry, replacing the previous value of the key if any.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the new map, or this one if the key already had this value
+     */
+    HashTrie<K, V> put(K key, V value) {
+        boolean[] added = new boolean[1];
+        Node next = root.put(0, key.hashCode(), key, value, added);
+        return next == root ? this : new HashTrie<>(next, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Returns a map without the given key.
+     *
+     * @param key the key
+     * @return the new map, or this one if it holds no such key
+     */
+    HashTrie<K, V> remove(K key) {
+        Node next = root.remove(0, key.hashCode(), key);
+        if (next == root) {
+            return this;
+        }
+        return next == null ? empty() : new HashTrie<>(next, size - 1);
+    }
+
+    /**
+     * Performs the given action on each entry, in no particular order.
+     *
+     * @param action the action receiving each key and its value
+     */
+    @SuppressWarnings("unchecked")
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        root.forEach((BiConsumer<Object, Object>) action);
+    }
+
+    /**
+     * Returns a map without the entries matching the given condition. Every entry is visited; the map is rebuilt
+     * from the kept entries when they are fewer than the removed ones.
+     *
+     * @param condition the condition of the entries to remove
+     * @return the new map, or this one if no entry matches
+     */
+    HashTrie<K, V> removeIf(BiPredicate<? super K, ? super V> condition) {
+        List<K> removed = new ArrayList<>();
+        List<Object> kept = new ArrayList<>();
+        forEach((key, value) -> {
+            if (condition.test(key, value)) {
+                removed.add(key);
+            } else {
+                kept.add(key);
+                kept.add(value);
+            }
+        });
+        HashTrie<K, V> next = this;
+        if (removed.size() > kept.size() / 2) {
+            next = empty();
+            for (int i = 0; i < kept.size(); i += 2) {
+                next = next.put(key(kept.get(i)), value(kept.get(i + 1)));
+            }
+            return next;
+        }
+        for (K key : removed) {
+            next = next.remove(key);
+        }
+        return next;
+    }
+
+    @SuppressWarnings("unchecked")
+    private K key(Object key) {
+        return (K) key;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(Object value) {
+        return (V) value;
+    }
+
+    private interface Node {
+
+        void forEach(BiConsumer<Object, Object> action);
+
+        Object get(int shift, int hash, Object key);
+
+        Node put(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /**
+         * Removes a key from this node.
+         *
+         * @return the node without the key, this node if it does not hold the key, or null if the node is left empty
+         */
+        Node remove(int shift, int hash, Object key);
+    }
+
+    /**
+     * Node holding a key and value, or null and a child node, for each bit set in its bitmap.
+     */
+    private record BitmapNode(int bitmap, Object[] slots) implements Node {
+
+        @Override
+        public void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < slots.length; i += 2) {
+                if (slots[i] == null) {
+                    ((Node) slots[i + 1]).forEach(action);
+                } else {
+                    action.accept(slots[i], slots[i + 1]);
+                }
+            }
+        }
+
+        @Override
+        public Object get(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int index = index(bit);
+            Object slotKey = slots[index];
+            Object slotValue = slots[index + 1];
+            if (slotKey == null) {
+                return ((Node) slotValue).get(shift + BITS, hash, key);
+            }
+            return key.equals(slotKey) ? slotValue : null;
+        }
+
+        @Override
+        public Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = bit(hash, shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] next = new Object[slots.length + 2];
+                System.arraycopy(slots, 0, next, 0, index);
+                next[index] = key;
+                next[index + 1] = value;
+                System.arraycopy(slots, index, next, index + 2, slots.length - index);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, next);
+            }
+            Object slotKey = slots[index];
+            Object slotValue = slots[index + 1];
+            if (slotKey == null) {
+                Node child = (Node) slotValue;
+                Node nextChild = child.put(shift + BITS, hash, key, value, added);
+                return nextChild == child ? this : with(index + 1, nextChild);
+            }
+            if (key.equals(slotKey)) {
+                return Objects.equals(value, slotValue) ? this : with(index + 1, value);
+            }
+            added[0] = true;
+            Node child = pair(shift + BITS, slotKey.hashCode(), slotKey, slotValue, hash, key, value);
+            Object[] next = slots.clone();
+            next[index] = null;
+            next[index + 1] = child;
+            return new BitmapNode(bitmap, next);
+        }
+
+        @Override
+        public Node remove(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = index(bit);
+            Object slotKey = slots[index];
+            Object slotValue = slots[index + 1];
+            if (slotKey == null) {
+                Node child = (Node) slotValue;
+                Node nextChild = child.remove(shift + BITS, hash, key);
+                if (nextChild == child) {
+                    return this;
+                }
+                if (nextChild == null) {
+                    return without(bit, index);
+                }
+                if (nextChild instanceof BitmapNode single && single.slots.length == 2 && single.slots[0] != null) {
+                    Object[] next = slots.clone();
+                    next[index] = single.slots[0];
+                    next[index + 1] = single.slots[1];
+                    return new BitmapNode(bitmap, next);
+                }
+                return with(index + 1, nextChild);
+            }
+            return key.equals(slotKey) ? without(bit, index) : this;
+        }
+
+        private BitmapNode without(int bit, int index) {
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] next = new Object[slots.length - 2];
+            System.arraycopy(slots, 0, next, 0, index);
+            System.arraycopy(slots, index + 2, next, index, slots.length - index - 2);
+            return new BitmapNode(bitmap & ~bit, next);
+        }
+
+        private BitmapNode with(int index, Object slot) {
+            Object[] next = slots.clone();
+            next[index] = slot;
+            return new BitmapNode(bitmap, next);
+        }
+
+        private int index(int bit) {
+            return 2 * Integer.bitCount(bitmap & (bit - 1));
+        }
+    }
+
+    /**
+     * Node holding the entries whose keys have the same hash.
+     */
+    private record CollisionNode(int hash, Object[] entries) implements Node {
+
+        @Override
+        public void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < entries.length; i += 2) {
+                action.accept(entries[i], entries[i + 1]);
+            }
+        }
+
+        @Override
+        public Object get(int shift, int hash, Object key) {
+            for (int i = 0; i < entries.length; i += 2) {
+                if (key.equals(entries[i])) {
+                    return entries[i + 1];
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                return new BitmapNode(bit(this.hash, shift), new Object[]{null, this}).put(shift, hash, key, value, added);
+            }
+            for (int i = 0; i < entries.length; i += 2) {
+                if (key.equals(entries[i])) {
+                    if (Objects.equals(value, entries[i + 1])) {
+                        return this;
+                    }
+                    Object[] next = entries.clone();
+                    next[i + 1] = value;
+                    return new CollisionNode(hash, next);
+                }
+            }
+            Object[] next = Arrays.copyOf(entries, entries.length + 2);
+            next[entries.length] = key;
+            next[entries.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, next);
+        }
+
+        @Override
+        public Node remove(int shift, int hash, Object key) {
+            for (int i = 0; i < entries.length; i += 2) {
+                if (key.equals(entries[i])) {
+                    if (entries.length == 4) {
+                        int remaining = 2 - i;
+                        return new BitmapNode(bit(hash, shift), new Object[]{entries[remaining], entries[remaining + 1]});
+                    }
+                    Object[] next = new Object[entries.length - 2];
+                    System.arraycopy(entries, 0, next, 0, i);
+                    System.arraycopy(entries, i + 2, next, i, entries.length - i - 2);
+                    return new CollisionNode(this.hash, next);
+                }
+            }
+            return this;
+        }
+    }
+
+    private static Node pair(int shift, int hash1, Object key1, Object value1, int hash2, Object key2, Object value2) {
+        if (hash1 == hash2) {
+            return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+        }
+        boolean[] ignored = new boolean[1];
+        return EMPTY.root.put(shift, hash1, key1, value1, ignored).put(shift, hash2, key2, value2, ignored);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+}
@@ -0,0 +1,263 @@
+package com.amp.safetynetalerts.repository;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.utils.AgeCalculator;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Households of a snapshot, materialized for the child alert: the persons sharing an address and a last name,
+ * each joined with its medical records, with the split between minors and adults computed in advance.
+ * <p>
+ * The households are held in a {@link HashTrie} by address. A snapshot builds them on first use, then each following
+ * snapshot derives them from the previous ones by recomputing only the addresses touched by its changes: the
+ * addresses of the changed persons and of the persons whose medical record changed, see {@link #update}.
+ * The split of a household only changes when one of its members is born or turns 18, so it stays valid until the
+ * first of these dates and is recomputed on the fly after it.
+ */
+public final class Households {
+
+    private static final int ADULT_AGE = 18;
+
+    private static final Households EMPTY = new Households(HashTrie.empty());
+
+    /**
+     * A member of a household: a person joined with one of its medical records.
+     *
+     * @param firstName     the first name
+     * @param lastName      the last name
+     * @param medicalRecord the medical record
+     */
+    public record Member(String firstName, String lastName, MedicalRecord medicalRecord) {
+
+        /**
+         * Calculates the age of the member on a date.
+         *
+         * @param epochDay the date, as a number of days since 1970-01-01
+         * @return the age in years, negative if the member is not born yet
+         * @throws DateTimeParseException If the birthdate is not a valid date.
+         */
+        public int age(long epochDay) {
+            return AgeCalculator.age(medicalRecord.birthEpochDay(), epochDay);
+        }
+    }
+
+    /**
+     * The members of a household, under 18 and 18 or over, in the order of the collections.
+     *
+     * @param minors the members under 18, including the ones not born yet
+     * @param adults the members 18 or over
+     */
+    public record Split(List<Member> minors, List<Member> adults) {
+    }
+
+    /**
+     * The persons living at an address under a last name.
+     */
+    public static final class Household {
+
+        private final String address;
+        private final String lastName;
+        private final List<Member> members;
+        private final Split split;
+        private final long computedOn;
+        private final long validUntil;
+
+        private Household(String address, String lastName, List<Member> members, long today) {
+            this.address = address;
+            this.lastName = lastName;
+            this.members = Collections.unmodifiableList(members);
+            this.computedOn = today;
+            long until = Long.MAX_VALUE;
+            try {
+                for (Member member : members) {
+                    long birthdate = member.medicalRecord().birthEpochDay();
+                    // plusYears only ever moves a 29th of February back, so the split never outlives its validity
+                    long next = today < birthdate ? birthdate : LocalDate.ofEpochDay(birthdate).plusYears(ADULT_AGE).toEpochDay();
+                    if (today < next && next < until) {
+                        until = next;
+                    }
+                }
+            } catch (DateTimeParseException | NullPointerException e) {
+                // Left to the reads, which fail on it like any age computation
+                until = today;
+            }
+            this.validUntil = until;
+            this.split = today < until ? splitOn(today) : null;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public String getLastName() {
+            return lastName;
+        }
+
+        /**
+         * Retrieves the members of the household.
+         *
+         * @return the members, in the order of the collections
+         */
+        public List<Member> getMembers() {
+            return members;
+        }
+
+        /**
+         * Retrieves the split of the household between minors and adults on a date: the one computed in advance
+         * while it is still valid, otherwise a new one.
+         *
+         * @param date the date, as a number of days since 1970-01-01
+         * @return the split
+         * @throws DateTimeParseException If the birthdate of a member is not a valid date.
+         */
+        public Split split(long date) {
+            if (split != null && date >= computedOn && date < validUntil) {
+                return split;
+            }
+            return splitOn(date);
+        }
+
+        private Split splitOn(long date) {
+            List<Member> minors = new ArrayList<>();
+            List<Member> adults = new ArrayList<>();
+            for (Member member : members) {
+                (member.age(date) < ADULT_AGE ? minors : adults).add(member);
+            }
+            return new Split(Collections.unmodifiableList(minors), Collections.unmodifiableList(adults));
+        }
+    }
+
+    private final HashTrie<String, List<Household>> byAddress;
+
+    private Households(HashTrie<String, List<Household>> byAddress) {
+        this.byAddress = byAddress;
+    }
+
+    /**
+     * Retrieves the households living at an address in a DataWrapper: from the households of its snapshot if it is
+     * a snapshot DataWrapper, or computed from its lists otherwise.
+     *
+     * @param dataWrapper the DataWrapper
+     * @param address     the address
+     * @return the households, empty if nobody with a medical record lives at the address
+     */
+    public static List<Household> at(DataWrapper dataWrapper, String address) {
+        DataSnapshot snapshot = PersistentVector.ownerOf(dataWrapper.getPersons());
+        if (snapshot != null && snapshot == PersistentVector.ownerOf(dataWrapper.getMedicalrecords())) {
+            return snapshot.getHouseholds().at(address);
+        }
+        return compute(IndexKey.valueKey(address), dataWrapper.getPersons(), dataWrapper.getMedicalrecords(), AgeCalculator.today());
+    }
+
+    /**
+     * Retrieves the households living at an address.
+     *
+     * @param address the address
+     * @return the households, empty if nobody with a medical record lives at the address
+     */
+    public List<Household> at(String address) {
+        List<Household> households = byAddress.get(IndexKey.valueKey(address));
+        return households == null ? List.of() : households;
+    }
+
+    /**
+     * Builds the households of whole collections.
+     *
+     * @param persons        the persons
+     * @param medicalRecords the medical records
+     * @return the households
+     */
+    static Households build(List<Person> persons, List<MedicalRecord> medicalRecords) {
+        Set<String> addresses = new LinkedHashSet<>();
+        for (Person person : persons) {
+            addresses.add(IndexKey.PERSON_ADDRESS.key(person));
+        }
+        return EMPTY.recompute(addresses, persons, medicalRecords);
+    }
+
+    /**
+     * Returns the households following a set of changes, recomputing only the addresses they touched.
+     *
+     * @param changes        the changes
+     * @param persons        the persons after the changes
+     * @param medicalRecords the medical records after the changes
+     * @return the new households, or null if a person was replaced or removed without its previous state, so that
+     * its previous address is unknown and the households must be built again
+     */
+    Households update(List<Change> changes, List<Person> persons, List<MedicalRecord> medicalRecords) {
+        Set<String> addresses = new LinkedHashSet<>();
+        for (Change change : changes) {
+            if (change.getType() == EntityType.PERSON) {
+                if (change.getKey() != null && change.getBefore() == null) {
+                    return null;
+                }
+                if (change.getBefore() != null) {
+                    addresses.add(IndexKey.PERSON_ADDRESS.key(change.getBefore()));
+                }
+                if (change.getValue() != null) {
+                    addresses.add(IndexKey.PERSON_ADDRESS.key(change.getValue()));
+                }
+            } else if (change.getType() == EntityType.MEDICAL_RECORD) {
+                if (change.getKey() != null) {
+                    addresses.addAll(addressesOf(persons, change.getKey()));
+                }
+                if (change.getValue() != null) {
+                    addresses.addAll(addressesOf(persons, EntityType.MEDICAL_RECORD.key(change.getValue())));
+                }
+            }
+        }
+        return addresses.isEmpty() ? this : recompute(addresses, persons, medicalRecords);
+    }
+
+    /**
+     * Retrieves the addresses of the persons with a name.
+     *
+     * @param persons the persons
+     * @param name    the key of the name, see {@link EntityType#key(String, String)}
+     * @return the addresses, as {@link IndexKey#PERSON_ADDRESS} keys
+     */
+    static List<String> addressesOf(List<Person> persons, String name) {
+        List<String> addresses = new ArrayList<>();
+        for (Person person : KeyIndex.findAll(persons, IndexKey.PERSON_NAME, name)) {
+            addresses.add(IndexKey.PERSON_ADDRESS.key(person));
+        }
+        return addresses;
+    }
+
+    private Households recompute(Set<String> addresses, List<Person> persons, List<MedicalRecord> medicalRecords) {
+        long today = AgeCalculator.today();
+        HashTrie<String, List<Household>> next = byAddress;
+        for (String address : addresses) {
+            List<Household> households = compute(address, persons, medicalRecords, today);
+            next = households.isEmpty() ? next.remove(address) : next.put(address, households);
+        }
+        return new Households(next);
+    }
+
+    private static List<Household> compute(String address, List<Person> persons, List<MedicalRecord> medicalRecords, long today) {
+        Map<String, List<Member>> members = new LinkedHashMap<>();
+        for (Person person : KeyIndex.findAll(persons, IndexKey.PERSON_ADDRESS, address)) {
+            for (MedicalRecord record : KeyIndex.findAll(medicalRecords, IndexKey.MEDICAL_RECORD_NAME,
+                    EntityType.key(person.getFirstName(), person.getLastName()))) {
+                members.computeIfAbsent(person.getLastName(), lastName -> new ArrayList<>())
+                        .add(new Member(person.getFirstName(), person.getLastName(), record));
+            }
+        }
+        List<Household> households = new ArrayList<>(members.size());
+        for (Map.Entry<String, List<Member>> household : members.entrySet()) {
+            households.add(new Household(address, household.getKey(), household.getValue(), today));
+        }
+        return List.copyOf(households);
+    }
+}
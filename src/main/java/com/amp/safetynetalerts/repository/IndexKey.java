@@ -0,0 +1,82 @@
+package com.amp.safetynetalerts.repository;
+
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.model.Person;
+
+/**
+ * The keys the collections of a snapshot are indexed by, each maintained in a {@link KeyIndex}.
+ * Persons and medical records are indexed by first name and last name, the same key as {@link EntityType#key(Object)},
+ * firestations by address and by station number, persons also by address.
+ * A missing address or station is indexed under {@link #MISSING}, so that it is not found by a query for the text
+ * "null"; see {@link #valueKey(Object)}.
+ */
+public enum IndexKey {
+
+    PERSON_NAME(EntityType.PERSON) {
+        @Override
+        public String key(Object entity) {
+            return EntityType.PERSON.key(entity);
+        }
+    },
+    PERSON_ADDRESS(EntityType.PERSON) {
+        @Override
+        public String key(Object entity) {
+            return valueKey(((Person) entity).getAddress());
+        }
+    },
+    MEDICAL_RECORD_NAME(EntityType.MEDICAL_RECORD) {
+        @Override
+        public String key(Object entity) {
+            return EntityType.MEDICAL_RECORD.key(entity);
+        }
+    },
+    FIRESTATION_ADDRESS(EntityType.FIRESTATION) {
+        @Override
+        public String key(Object entity) {
+            return valueKey(((Firestation) entity).getAddress());
+        }
+    },
+    FIRESTATION_STATION(EntityType.FIRESTATION) {
+        @Override
+        public String key(Object entity) {
+            return valueKey(((Firestation) entity).getStation());
+        }
+    };
+
+    /** The key of a missing value: a NUL character, which no address or station number holds. */
+    public static final String MISSING = "\0";
+
+    private final EntityType type;
+
+    IndexKey(EntityType type) {
+        this.type = type;
+    }
+
+    /**
+     * Returns the type of the entities indexed by this key.
+     *
+     * @return the entity type
+     */
+    public EntityType getType() {
+        return type;
+    }
+
+    /**
+     * Returns the key a value is indexed or looked up under: its text, or {@link #MISSING} if it is null,
+     * so that a null value only matches the entities missing it.
+     *
+     * @param value the address or station number
+     * @return the key of the value
+     */
+    public static String valueKey(Object value) {
+        return value == null ? MISSING : value.toString();
+    }
+
+    /**
+     * Returns the key the given entity is indexed under.
+     *
+     * @param entity an entity of the type of this key
+     * @return the key of the entity
+     */
+    public abstract String key(Object entity);
+}
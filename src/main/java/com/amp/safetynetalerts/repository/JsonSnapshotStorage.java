@@ -0,0 +1,174 @@
+package com.amp.safetynetalerts.repository;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Storage of the base snapshot in the JSON data file, the default {@link SnapshotStorage}.
+ * When enabled, the snapshot is also written in the binary format next to the JSON file, to be read at startup.
+ * In the {@link DataLayout#SEGMENTED} layout, the snapshot is split into one JSON segment per collection
+ * and only the segments of the changed collections are rewritten.
+ */
+@Component
+public class JsonSnapshotStorage implements SnapshotStorage {
+
+    private static final Logger LOGGER = LogManager.getLogger(JsonSnapshotStorage.class);
+
+    private static final long UNKNOWN_VERSION = Long.MIN_VALUE;
+
+    private final String dataFile;
+    private final DataLayout layout;
+    private final Durability durability;
+    private final boolean binarySnapshot;
+
+    private volatile FileTime lastWrittenTime;
+    private final long[] segmentVersions = new long[EntityType.values().length];
+
+    public JsonSnapshotStorage(@Value("${safetynetalerts.data.file:data.json}") String dataFile,
+                               @Value("${safetynetalerts.data.layout:SINGLE_FILE}") DataLayout layout,
+                               @Value("${safetynetalerts.data.durability:FSYNC_FILE_AND_DIRECTORY}") Durability durability,
+                               @Value("${safetynetalerts.checkpoint.binary-snapshot:true}") boolean binarySnapshot) {
+        this.dataFile = dataFile;
+        this.layout = layout;
+        this.durability = durability;
+        this.binarySnapshot = binarySnapshot;
+        Arrays.fill(segmentVersions, UNKNOWN_VERSION);
+    }
+
+    /**
+     * Reads the binary snapshot if it was written after the JSON file and holds the same version,
+     * so that a JSON file edited or restored by hand always wins. Falls back to the JSON file
+     * when the binary snapshot is missing, stale or corrupted.
+     * In the {@link DataLayout#SEGMENTED} layout, reads the segment of each collection instead.
+     */
+    @Override
+    public DataSnapshot read() {
+        if (layout == DataLayout.SEGMENTED) {
+            return DataWrapperRepository.getSegmentedSnapshot(dataFile);
+        }
+        Path json = Paths.get(dataFile);
+        Path binary = Paths.get(DataWrapperRepository.getBinarySnapshotFile(dataFile));
+        if (Files.exists(binary)) {
+            try {
+                if (Files.getLastModifiedTime(binary).compareTo(Files.getLastModifiedTime(json)) >= 0) {
+                    DataSnapshot loaded = DataWrapperRepository.getBinarySnapshot(binary.toString());
+                    if (loaded.getVersion() == DataWrapperRepository.readVersion(dataFile)) {
+                        return loaded;
+                    }
+                }
+                LOGGER.info("Ignoring the binary snapshot {}, older than {}", binary, dataFile);
+            } catch (IOException e) {
+                LOGGER.warn("Could not read the binary snapshot {}, loading {} instead", binary, dataFile, e);
+            }
+        }
+        return DataWrapperRepository.getSnapshot(dataFile);
+    }
+
+    /**
+     * Writes the snapshot to the JSON data file, then to the binary snapshot when enabled. A failure to write
+     * the binary snapshot only makes the next startup read the JSON file.
+     * <p>
+     * In the {@link DataLayout#SEGMENTED} layout, only the segments of the collections changed since they were
+     * last written are rewritten, in parallel. A segment left behind by a crash keeps its older version
+     * and replays its collection from the journal segments, which are only deleted once every segment is written.
+     */
+    @Override
+    public void write(DataSnapshot base) throws IOException {
+        if (layout == DataLayout.SEGMENTED) {
+            writeSegments(base);
+        } else {
+            writeSingleFile(base);
+        }
+    }
+
+    private void writeSingleFile(DataSnapshot base) throws IOException {
+        DataWrapperRepository.updateFileWithSnapshot(base, dataFile, durability);
+        lastWrittenTime = Files.getLastModifiedTime(Paths.get(dataFile));
+        if (binarySnapshot) {
+            String binaryFile = DataWrapperRepository.getBinarySnapshotFile(dataFile);
+            try {
+                DataWrapperRepository.updateBinarySnapshot(base, binaryFile, durability);
+            } catch (IOException e) {
+                LOGGER.warn("Could not write the binary snapshot {}", binaryFile, e);
+            }
+        }
+    }
+
+    private synchronized void writeSegments(DataSnapshot base) throws IOException {
+        List<EntityType> changed = new ArrayList<>();
+        for (EntityType type : EntityType.values()) {
+            if (base.getVersion(type) > segmentVersion(type)) {
+                changed.add(type);
+            }
+        }
+        CompletableFuture<?>[] writes = changed.stream()
+                .map(type -> CompletableFuture.runAsync(() -> {
+                    try {
+                        DataWrapperRepository.updateSegmentWithSnapshot(base, type, dataFile, durability);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }))
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(writes).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException cause) {
+                throw cause.getCause();
+            }
+            throw e;
+        }
+        changed.forEach(type -> segmentVersions[type.ordinal()] = base.getVersion());
+        LOGGER.debug("Rewrote {} segments of {}", changed.size(), dataFile);
+    }
+
+    /**
+     * Retrieves the version of the segment of the given collection, read from its file the first time.
+     *
+     * @return the version of the segment, or -1 if it does not exist yet
+     */
+    private long segmentVersion(EntityType type) throws IOException {
+        if (segmentVersions[type.ordinal()] == UNKNOWN_VERSION) {
+            String segment = DataWrapperRepository.getSegmentFile(dataFile, type);
+            segmentVersions[type.ordinal()] = Files.exists(Paths.get(segment)) ? DataWrapperRepository.readVersion(segment) : -1;
+        }
+        return segmentVersions[type.ordinal()];
+    }
+
+    @Override
+    public boolean isSingleJsonFile() {
+        return layout == DataLayout.SINGLE_FILE;
+    }
+
+    /**
+     * Retrieves the modification time of the data file written by the last checkpoint,
+     * so that the {@link DataFileWatcher} ignores the files written by the checkpointer.
+     *
+     * @return The modification time, or null if no snapshot was written.
+     */
+    public FileTime getLastWrittenTime() {
+        return lastWrittenTime;
+    }
+
+    public String getDataFile() {
+        return dataFile;
+    }
+
+    public DataLayout getLayout() {
+        return layout;
+    }
+}
@@ -0,0 +1,317 @@
+package com.amp.safetynetalerts.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable hash index from a key of the entities of a collection to their positions in the collection, so that
+ * entities are found by key in O(1) instead of by a scan. The keys a collection is indexed by are the
+ * {@link IndexKey}s of its type; several entities sharing a key all keep their position.
+ * The index holds the slots of the entities in the vector, which removing another entity does not change, and
+ * maps them to positions in the list when it is read.
+ * <p>
+ * The index is held in a {@link HashTrie} next to the {@link PersistentVector} of the collection: it is built once
+ * when a snapshot is read, then each draft maintains it along with the vector in O(log n) per change, see
+ * {@link ChangeTrackingList}, and the next snapshot takes it over. The lists of a snapshot or of a draft carry their
+ * indexes, the static lookups of this class use them when they are there and scan the list otherwise.
+ */
+public final class KeyIndex {
+
+    private static final int[] NONE = new int[0];
+
+    /**
+     * A list carrying the indexes of its entities.
+     */
+    interface Indexed {
+
+        /**
+         * Retrieves the indexes of the list, one per {@link IndexKey} of its type. The array must not be modified.
+         *
+         * @return the indexes, or null if the list is not indexed
+         */
+        KeyIndex[] keyIndexes();
+    }
+
+    private final IndexKey key;
+    private final HashTrie<String, int[]> slots;
+
+    private KeyIndex(IndexKey key, HashTrie<String, int[]> slots) {
+        this.key = key;
+        this.slots = slots;
+    }
+
+    /**
+     * Builds the index of a collection by a key.
+     *
+     * @param key      the key
+     * @param entities the collection
+     * @return the index
+     */
+    static KeyIndex build(IndexKey key, PersistentVector<?> entities) {
+        KeyIndex index = new KeyIndex(key, HashTrie.empty());
+        for (int i = 0; i < entities.size(); i++) {
+            int slot = entities.slotOf(i);
+            index = index.add(entities.getSlot(slot), slot);
+        }
+        return index;
+    }
+
+    /**
+     * Retrieves the indexes carried by a list of a snapshot or of a draft, or builds them from any other list.
+     *
+     * @param type     the type of the entities
+     * @param entities the list
+     * @param vector   the vector holding the entities of the list
+     * @return one index per {@link IndexKey} of the type
+     */
+    static KeyIndex[] from(EntityType type, List<?> entities, PersistentVector<?> vector) {
+        if (entities instanceof Indexed indexed && indexed.keyIndexes() != null) {
+            return indexed.keyIndexes();
+        }
+        List<KeyIndex> indexes = new ArrayList<>();
+        for (IndexKey key : IndexKey.values()) {
+            if (key.getType() == type) {
+                indexes.add(build(key, vector));
+            }
+        }
+        return indexes.toArray(new KeyIndex[0]);
+    }
+
+    /**
+     * Retrieves the key of the index.
+     *
+     * @return the key
+     */
+    IndexKey getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the index with an entity added in a slot.
+     */
+    KeyIndex add(Object entity, int slot) {
+        String value = key.key(entity);
+        int[] current = slots.get(value);
+        int[] next;
+        if (current == null) {
+            next = new int[]{slot};
+        } else {
+            next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = slot;
+        }
+        return new KeyIndex(key, slots.put(value, next));
+    }
+
+    /**
+     * Returns the index without the entity in a slot.
+     */
+    KeyIndex remove(Object entity, int slot) {
+        String value = key.key(entity);
+        int[] current = slots.get(value);
+        if (current == null) {
+            return this;
+        }
+        int[] next = without(current, slot);
+        return new KeyIndex(key, next.length == 0 ? slots.remove(value) : slots.put(value, next));
+    }
+
+    private static int[] without(int[] slots, int slot) {
+        int[] next = new int[slots.length];
+        int size = 0;
+        for (int current : slots) {
+            if (current != slot) {
+                next[size++] = current;
+            }
+        }
+        return size == slots.length ? slots : Arrays.copyOf(next, size);
+    }
+
+    /**
+     * Retrieves the slots of the entities with a key.
+     *
+     * @param value the key
+     * @return the slots in ascending order, empty if there is none
+     */
+    int[] slots(String value) {
+        int[] found = value == null ? null : slots.get(value);
+        if (found == null) {
+            return NONE;
+        }
+        if (found.length > 1) {
+            found = found.clone();
+            Arrays.sort(found);
+        }
+        return found;
+    }
+
+    private static KeyIndex of(List<?> entities, IndexKey key) {
+        if (entities instanceof Indexed indexed && indexed.keyIndexes() != null) {
+            for (KeyIndex index : indexed.keyIndexes()) {
+                if (index.key == key) {
+                    return index;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the positions of the entities with a key in a list.
+     *
+     * @param entities the list
+     * @param key      the key the entities are looked up by
+     * @param value    the value of the key, see {@link IndexKey#key(Object)}
+     * @return the positions in ascending order, empty if there is none
+     */
+    public static int[] positionsOf(List<?> entities, IndexKey key, String value) {
+        KeyIndex index = of(entities, key);
+        if (index != null) {
+            int[] slots = index.slots(value);
+            PersistentVector<?> vector = PersistentVector.from(entities);
+            if (vector.holes() == 0 || slots.length == 0) {
+                return slots;
+            }
+            int[] found = new int[slots.length];
+            for (int i = 0; i < slots.length; i++) {
+                found[i] = vector.positionOf(slots[i]);
+            }
+            return found;
+        }
+        int[] found = NONE;
+        int size = 0;
+        for (int i = 0; i < entities.size(); i++) {
+            if (key.key(entities.get(i)).equals(value)) {
+                if (size == found.length) {
+                    found = Arrays.copyOf(found, Math.max(4, size * 2));
+                }
+                found[size++] = i;
+            }
+        }
+        return size == found.length ? found : Arrays.copyOf(found, size);
+    }
+
+    /**
+     * Retrieves the position of the first entity with a key in a list.
+     *
+     * @param entities the list
+     * @param key      the key the entities are looked up by
+     * @param value    the value of the key, see {@link IndexKey#key(Object)}
+     * @return the position, or -1 if there is none
+     */
+    public static int indexOf(List<?> entities, IndexKey key, String value) {
+        KeyIndex index = of(entities, key);
+        if (index != null) {
+            int[] found = value == null ? null : index.slots.get(value);
+            if (found == null) {
+                return -1;
+            }
+            int first = found[0];
+            for (int slot : found) {
+                first = Math.min(first, slot);
+            }
+            return PersistentVector.from(entities).positionOf(first);
+        }
+        for (int i = 0; i < entities.size(); i++) {
+            if (key.key(entities.get(i)).equals(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the first entity with a key in a list.
+     *
+     * @param entities the list
+     * @param key      the key the entities are looked up by
+     * @param value    the value of the key, see {@link IndexKey#key(Object)}
+     * @param <T>      the entity class
+     * @return the entity, or null if there is none
+     */
+    public static <T> T find(List<T> entities, IndexKey key, String value) {
+        int position = indexOf(entities, key, value);
+        return position < 0 ? null : entities.get(position);
+    }
+
+    /**
+     * Finds all the entities with a key in a list.
+     *
+     * @param entities the list
+     * @param key      the key the entities are looked up by
+     * @param value    the value of the key, see {@link IndexKey#key(Object)}
+     * @param <T>      the entity class
+     * @return the entities in list order, empty if there is none
+     */
+    public static <T> List<T> findAll(List<T> entities, IndexKey key, String value) {
+        KeyIndex index = of(entities, key);
+        int[] found = index == null ? positionsOf(entities, key, value) : index.slots(value);
+        PersistentVector<T> vector = index == null ? null : PersistentVector.from(entities);
+        List<T> result = new ArrayList<>(found.length);
+        for (int position : found) {
+            result.add(vector == null ? entities.get(position) : vector.getSlot(position));
+        }
+        return result;
+    }
+
+    /**
+     * Finds all the entities with any of several keys in a list, as the union of the positions of each key.
+     *
+     * @param entities the list
+     * @param key      the key the entities are looked up by
+     * @param values   the values of the key, see {@link IndexKey#key(Object)}
+     * @param <T>      the entity class
+     * @return the entities in list order, each once, empty if there is none
+     */
+    public static <T> List<T> findAll(List<T> entities, IndexKey key, Collection<String> values) {
+        Set<String> distinct = new HashSet<>(values);
+        List<T> result = new ArrayList<>();
+        KeyIndex index = of(entities, key);
+        if (index == null) {
+            for (T entity : entities) {
+                if (distinct.contains(key.key(entity))) {
+                    result.add(entity);
+                }
+            }
+            return result;
+        }
+        int[] found = NONE;
+        int size = 0;
+        for (String value : distinct) {
+            int[] slots = value == null ? null : index.slots.get(value);
+            if (slots != null) {
+                if (size + slots.length > found.length) {
+                    found = Arrays.copyOf(found, Math.max(size + slots.length, found.length * 2));
+                }
+                System.arraycopy(slots, 0, found, size, slots.length);
+                size += slots.length;
+            }
+        }
+        Arrays.sort(found, 0, size);
+        PersistentVector<T> vector = PersistentVector.from(entities);
+        for (int i = 0; i < size; i++) {
+            result.add(vector.getSlot(found[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Removes all the entities with a key from a list, from the last position to the first so that removing one
+     * never shifts the position of one that is still to be removed.
+     *
+     * @param entities the list
+     * @param key      the key the entities are looked up by
+     * @param value    the value of the key, see {@link IndexKey#key(Object)}
+     * @return true if an entity was removed
+     */
+    public static boolean removeAll(List<?> entities, IndexKey key, String value) {
+        int[] found = positionsOf(entities, key, value);
+        for (int i = found.length - 1; i >= 0; i--) {
+            entities.remove(found[i]);
+        }
+        return found.length > 0;
+    }
+}
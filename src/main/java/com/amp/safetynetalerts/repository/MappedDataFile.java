@@ -0,0 +1,325 @@
+package com.amp.safetynetalerts.repository;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only, memory-mapped view of a JSON data file.
+ * Opening the file only maps it, the page cache of the operating system holds its content instead of the heap.
+ * The first lookup scans the bytes once to build an index of the offset and key of every person,
+ * firestation and medical record, then each lookup decodes only the record it needs.
+ * <p>
+ * The version of the file is read from a leading {@code "version"} field, as written by a checkpoint.
+ */
+public final class MappedDataFile {
+
+    private static final Logger LOGGER = LogManager.getLogger(MappedDataFile.class);
+
+    private static final int REGION_BITS = 30;
+    private static final long REGION_SIZE = 1L << REGION_BITS;
+
+    private static final Map<String, EntityType> COLLECTIONS = Map.of(
+            "persons", EntityType.PERSON,
+            "firestations", EntityType.FIRESTATION,
+            "medicalrecords", EntityType.MEDICAL_RECORD);
+
+    private static final byte[][] KEY_FIELDS = {
+            "\"firstName\"".getBytes(StandardCharsets.UTF_8),
+            "\"lastName\"".getBytes(StandardCharsets.UTF_8),
+            "\"address\"".getBytes(StandardCharsets.UTF_8),
+            "\"station\"".getBytes(StandardCharsets.UTF_8)};
+    private static final int FIRST_NAME = 0;
+    private static final int LAST_NAME = 1;
+    private static final int ADDRESS = 2;
+    private static final int STATION = 3;
+
+    /**
+     * Offsets and keys of the records of one collection.
+     */
+    private static final class Index {
+        private long[] starts = new long[16];
+        private int[] lengths = new int[16];
+        private int size;
+        private final Map<String, Integer> positions = new HashMap<>();
+
+        private void add(String key, long start, int length) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+            }
+            positions.putIfAbsent(key, size);
+            starts[size] = start;
+            lengths[size] = length;
+            size++;
+        }
+    }
+
+    private final Path file;
+    private final long size;
+    private final MappedByteBuffer[] regions;
+    private final long version;
+    private final Gson gson = new Gson();
+
+    private Map<EntityType, Index> indexes;
+
+    private MappedDataFile(Path file, long size, MappedByteBuffer[] regions) {
+        this.file = file;
+        this.size = size;
+        this.regions = regions;
+        this.version = readVersion();
+    }
+
+    /**
+     * Maps the given JSON file into memory, in regions of at most 1 GB.
+     *
+     * @param file the JSON data file
+     * @return the mapped file
+     * @throws IOException If the file could not be mapped.
+     */
+    public static MappedDataFile open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer[] regions = new MappedByteBuffer[(int) ((size + REGION_SIZE - 1) >>> REGION_BITS)];
+            for (int i = 0; i < regions.length; i++) {
+                long start = (long) i << REGION_BITS;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, size - start));
+            }
+            return new MappedDataFile(file, size, regions);
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Decodes the first record of the given type with the given key.
+     *
+     * @param type the type of the record
+     * @param key  the key of the record, see {@link EntityType#key(Object)}
+     * @param <T>  the entity class of the type
+     * @return the decoded record, or null if the file holds no record with this key
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T find(EntityType type, String key) {
+        Index index = indexes().get(type);
+        Integer position = index.positions.get(key);
+        if (position == null) {
+            return null;
+        }
+        return (T) gson.fromJson(string(index.starts[position], index.lengths[position]), type.getEntityClass());
+    }
+
+    /**
+     * Retrieves the number of records of the given type held by the file.
+     *
+     * @param type the type of the records
+     * @return the number of records
+     */
+    public int count(EntityType type) {
+        return indexes().get(type).size;
+    }
+
+    private synchronized Map<EntityType, Index> indexes() {
+        if (indexes == null) {
+            long start = System.nanoTime();
+            indexes = scan();
+            LOGGER.info("Indexed {} persons, {} firestations and {} medical records of {} in {} ms",
+                    indexes.get(EntityType.PERSON).size, indexes.get(EntityType.FIRESTATION).size,
+                    indexes.get(EntityType.MEDICAL_RECORD).size, file, (System.nanoTime() - start) / 1_000_000);
+        }
+        return indexes;
+    }
+
+    /**
+     * Walks the structure of the file once, recording where each record of the three collections starts and ends
+     * and the values of the fields making up its key. Field names inside records are compared in place and
+     * only the values of the key fields are decoded.
+     */
+    private Map<EntityType, Index> scan() {
+        Map<EntityType, Index> result = new EnumMap<>(EntityType.class);
+        for (EntityType type : EntityType.values()) {
+            result.put(type, new Index());
+        }
+        int depth = 0;
+        String rootName = null;
+        int field = -1;
+        EntityType collection = null;
+        long recordStart = -1;
+        String[] keyValues = new String[KEY_FIELDS.length];
+        long i = 0;
+        while (i < size) {
+            byte b = get(i);
+            switch (b) {
+                case '"' -> {
+                    long end = skipString(i);
+                    boolean isName = nextToken(end) == ':';
+                    if (isName && depth == 1) {
+                        rootName = string(i, end - i);
+                    } else if (depth == 3 && collection != null) {
+                        if (isName) {
+                            field = keyField(i, end);
+                        } else if (field >= 0) {
+                            keyValues[field] = unquote(string(i, end - i));
+                        }
+                    }
+                    i = end;
+                    continue;
+                }
+                case '{', '[' -> {
+                    depth++;
+                    if (b == '[' && depth == 2) {
+                        collection = rootName == null ? null : COLLECTIONS.get(unquote(rootName));
+                    } else if (b == '{' && depth == 3 && collection != null) {
+                        recordStart = i;
+                        field = -1;
+                        Arrays.fill(keyValues, null);
+                    }
+                }
+                case '}', ']' -> {
+                    if (b == '}' && depth == 3 && collection != null) {
+                        result.get(collection).add(key(collection, keyValues), recordStart, (int) (i + 1 - recordStart));
+                    } else if (b == ']' && depth == 2) {
+                        collection = null;
+                    }
+                    depth--;
+                }
+                default -> {
+                    if (depth == 3 && collection != null && field >= 0 && (b == '-' || (b >= '0' && b <= '9'))) {
+                        long end = i;
+                        while (end < size && isNumberByte(get(end))) {
+                            end++;
+                        }
+                        keyValues[field] = string(i, end - i);
+                        i = end;
+                        continue;
+                    }
+                }
+            }
+            i++;
+        }
+        return result;
+    }
+
+    private int keyField(long start, long end) {
+        for (int field = 0; field < KEY_FIELDS.length; field++) {
+            byte[] name = KEY_FIELDS[field];
+            if (name.length == end - start && matches(start, name)) {
+                return field;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(long start, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (get(start + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String key(EntityType type, String[] keyValues) {
+        return switch (type) {
+            case PERSON, MEDICAL_RECORD -> EntityType.key(String.valueOf(keyValues[FIRST_NAME]), String.valueOf(keyValues[LAST_NAME]));
+            case FIRESTATION -> EntityType.key(String.valueOf(keyValues[ADDRESS]), String.valueOf(keyValues[STATION]));
+        };
+    }
+
+    private static String unquote(String value) {
+        if (!value.startsWith("\"")) {
+            return value;
+        }
+        return value.indexOf('\\') < 0 ? value.substring(1, value.length() - 1) : JsonParser.parseString(value).getAsString();
+    }
+
+    private static boolean isNumberByte(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+    }
+
+    /**
+     * Returns the position just after the closing quote of the string starting at the given position.
+     */
+    private long skipString(long start) {
+        long i = start + 1;
+        while (i < size) {
+            byte b = get(i);
+            if (b == '\\') {
+                i += 2;
+            } else if (b == '"') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return size;
+    }
+
+    private byte nextToken(long from) {
+        for (long i = from; i < size; i++) {
+            byte b = get(i);
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return b;
+            }
+        }
+        return 0;
+    }
+
+    private long readVersion() {
+        long i = 0;
+        while (i < size && get(i) != '"') {
+            if (get(i) == '[') {
+                return 0;
+            }
+            i++;
+        }
+        if (i >= size) {
+            return 0;
+        }
+        long end = skipString(i);
+        if (!string(i, end - i).equals("\"" + DataWrapperRepository.VERSION_FIELD + "\"")) {
+            return 0;
+        }
+        i = end;
+        while (i < size && !isNumberByte(get(i))) {
+            i++;
+        }
+        long numberEnd = i;
+        while (numberEnd < size && isNumberByte(get(numberEnd))) {
+            numberEnd++;
+        }
+        return numberEnd > i ? Long.parseLong(string(i, numberEnd - i)) : 0;
+    }
+
+    private byte get(long position) {
+        return regions[(int) (position >>> REGION_BITS)].get((int) (position & (REGION_SIZE - 1)));
+    }
+
+    private String string(long start, long length) {
+        byte[] bytes = new byte[(int) length];
+        int region = (int) (start >>> REGION_BITS);
+        int offset = (int) (start & (REGION_SIZE - 1));
+        if (offset + length <= regions[region].limit()) {
+            regions[region].get(offset, bytes);
+        } else {
+            for (int i = 0; i < length; i++) {
+                bytes[i] = get(start + i);
+            }
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,490 @@
+package com.amp.safetynetalerts.repository;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Append-only journal of the mutations applied to the data store.
+ * Each mutation is written as one compact JSON line holding its version and its entity-level changes,
+ * so the cost of a write depends on the size of the change and not on the size of the dataset.
+ * At startup the journal is replayed on top of the base snapshot read from the JSON data file.
+ * <p>
+ * A checkpoint {@link #roll() rolls} the journal file into a closed segment named after the last version it holds,
+ * then deletes the segments covered by the base snapshot it wrote, so the journal does not grow without bound.
+ * <p>
+ * Appending and forcing are separate steps so that concurrent writers share their flushes (group commit):
+ * records are appended in order under the data store lock, then each writer calls {@link #sync(long)} outside of it.
+ * The first writer to get there forces every record appended so far, the writers queued behind it find their
+ * record already forced and return without another flush.
+ */
+@Component
+public class MutationJournal {
+
+    private static final Logger LOGGER = LogManager.getLogger(MutationJournal.class);
+
+    /**
+     * When appended records are forced to the storage device.
+     */
+    public enum FsyncPolicy {
+        /** Every record is forced before the mutation is acknowledged, concurrent records share a single force. */
+        ALWAYS,
+        /**
+         * Records are forced at most once per configured interval, a crash may lose the last interval: a record not
+         * forced by its own sync is forced by a background force at the end of the interval.
+         */
+        INTERVAL,
+        /** Records are left to the operating system to flush. */
+        NEVER
+    }
+
+    /**
+     * A mutation read back from the journal.
+     *
+     * @param version the data version published by the mutation
+     * @param changes the changes applied by the mutation
+     */
+    public record Entry(long version, List<Change> changes) {
+    }
+
+    private final Path journalFile;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMillis;
+    private final long groupCommitWindowMicros;
+    private final Gson gson = new Gson();
+    private final Object forceLock = new Object();
+
+    private FileChannel channel;
+    private long lastForceMillis;
+    private volatile long forcedPosition;
+    private long forceCount;
+    /** Runs the forces deferred to the end of an interval, guarded by {@link #forceLock}. */
+    private ScheduledExecutorService deferredForces;
+    private boolean forceDeferred;
+    private long bytesWritten;
+    private long lastVersion;
+    private long pendingRecords;
+    private long pendingBytes;
+
+    @Autowired
+    public MutationJournal(@Value("${safetynetalerts.journal.file:data.journal}") String journalFile,
+                           @Value("${safetynetalerts.journal.fsync:ALWAYS}") FsyncPolicy fsyncPolicy,
+                           @Value("${safetynetalerts.journal.fsync-interval-ms:100}") long fsyncIntervalMillis,
+                           @Value("${safetynetalerts.journal.group-commit-window-us:0}") long groupCommitWindowMicros) {
+        this.journalFile = Paths.get(journalFile);
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.groupCommitWindowMicros = groupCommitWindowMicros;
+    }
+
+    public MutationJournal(String journalFile, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis) {
+        this(journalFile, fsyncPolicy, fsyncIntervalMillis, 0);
+    }
+
+    /**
+     * Reads every complete record of the rolled segments then of the journal file, in order.
+     * A truncated or unreadable last record of the journal file, left by a crash in the middle of an append,
+     * is ignored and cut off. The rolled segments are complete, so an unreadable record in one of them, like one
+     * followed by other records in the journal file, is an error and nothing is cut off.
+     *
+     * @return the entries of the journal
+     * @throws IOException If the journal could not be read or holds an unreadable record other than the last one.
+     */
+    public synchronized List<Entry> readAll() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        pendingRecords = 0;
+        pendingBytes = 0;
+        for (Path segment : segments().values()) {
+            readSegment(segment, entries);
+            pendingRecords = entries.size();
+            pendingBytes += Files.size(segment);
+        }
+        if (Files.exists(journalFile)) {
+            read(journalFile, entries);
+        }
+        if (!entries.isEmpty()) {
+            lastVersion = entries.get(entries.size() - 1).version();
+        }
+        return entries;
+    }
+
+    private void read(Path file, List<Entry> entries) throws IOException {
+        long validLength = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (!line.isBlank()) {
+                    try {
+                        entries.add(decode(line));
+                        pendingRecords++;
+                    } catch (JsonParseException | IllegalStateException | NullPointerException e) {
+                        if (hasRecord(reader)) {
+                            throw new IOException("Unreadable record at line " + lineNumber + " of " + file
+                                    + ", followed by other records", e);
+                        }
+                        LOGGER.error("Ignoring unreadable last record at line {} of {}", lineNumber, file, e);
+                        break;
+                    }
+                }
+                validLength += line.getBytes(StandardCharsets.UTF_8).length + 1;
+            }
+        }
+        repair(file, validLength);
+        pendingBytes += Files.size(file);
+    }
+
+    private static boolean hasRecord(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.isBlank()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void readSegment(Path segment, List<Entry> entries) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    entries.add(decode(line));
+                }
+            }
+        } catch (JsonParseException | IllegalStateException | NullPointerException e) {
+            throw new IOException("Unreadable record in " + segment, e);
+        }
+    }
+
+    /**
+     * Cuts a torn record off the end of the journal and makes sure it ends with a line break,
+     * so that the next append starts a new record.
+     */
+    private void repair(Path file, long validLength) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = fileChannel.size();
+            if (validLength < size) {
+                LOGGER.warn("Truncating {} from {} to {} bytes", file, size, validLength);
+                fileChannel.truncate(validLength);
+            } else if (size > 0) {
+                ByteBuffer lastByte = ByteBuffer.allocate(1);
+                fileChannel.read(lastByte, size - 1);
+                if (lastByte.get(0) != '\n') {
+                    fileChannel.write(ByteBuffer.wrap(new byte[]{'\n'}), size);
+                }
+            }
+            fileChannel.force(false);
+        }
+    }
+
+    /**
+     * Appends the changes of one mutation to the journal without forcing it to disk, see {@link #sync(long)}.
+     *
+     * @param version the data version published by the mutation
+     * @param changes the changes applied by the mutation
+     * @return the position of the end of the record, to be passed to {@link #sync(long)}
+     * @throws IOException If the record could not be written.
+     */
+    public synchronized long append(long version, List<Change> changes) throws IOException {
+        ByteBuffer record = ByteBuffer.wrap((encode(version, changes) + "\n").getBytes(StandardCharsets.UTF_8));
+        FileChannel fileChannel = channel();
+        while (record.hasRemaining()) {
+            int written = fileChannel.write(record);
+            bytesWritten += written;
+            pendingBytes += written;
+        }
+        lastVersion = version;
+        pendingRecords++;
+        return bytesWritten;
+    }
+
+    /**
+     * Forces the journal to disk up to the given position according to the fsync policy.
+     * Concurrent callers are serialized: one forces every record appended so far, possibly after waiting
+     * for the group commit window to let more records in, and the others return as soon as it covers them.
+     *
+     * @param position the position returned by {@link #append(long, List)}
+     * @throws IOException If the journal could not be forced.
+     */
+    public void sync(long position) throws IOException {
+        if (fsyncPolicy == FsyncPolicy.NEVER) {
+            return;
+        }
+        synchronized (forceLock) {
+            if (forcedPosition >= position) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (fsyncPolicy == FsyncPolicy.INTERVAL && now - lastForceMillis < fsyncIntervalMillis) {
+                deferForce(lastForceMillis + fsyncIntervalMillis - now);
+                return;
+            }
+            if (groupCommitWindowMicros > 0) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(groupCommitWindowMicros));
+            }
+            force(now);
+        }
+    }
+
+    /**
+     * Forces every record appended so far. The caller holds {@link #forceLock}.
+     */
+    private void force(long now) throws IOException {
+        FileChannel fileChannel;
+        long target;
+        synchronized (this) {
+            fileChannel = channel;
+            target = bytesWritten;
+        }
+        if (fileChannel != null) {
+            try {
+                fileChannel.force(false);
+            } catch (ClosedChannelException e) {
+                // Closed by a roll, which forced it first.
+            }
+        }
+        forcedPosition = target;
+        lastForceMillis = now;
+        forceCount++;
+    }
+
+    /**
+     * Schedules a force at the end of the current interval, unless one is already scheduled, so that the records
+     * whose sync came within the interval are not left unforced if no other sync follows. The caller holds
+     * {@link #forceLock}.
+     */
+    private void deferForce(long delayMillis) {
+        if (forceDeferred) {
+            return;
+        }
+        if (deferredForces == null) {
+            deferredForces = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-deferred-force");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        forceDeferred = true;
+        deferredForces.schedule(this::forceDeferred, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void forceDeferred() {
+        synchronized (forceLock) {
+            forceDeferred = false;
+            try {
+                long appended;
+                synchronized (this) {
+                    appended = bytesWritten;
+                }
+                if (forcedPosition < appended) {
+                    force(System.currentTimeMillis());
+                }
+            } catch (IOException e) {
+                LOGGER.error("An error occurred while forcing the journal {}", journalFile, e);
+            }
+        }
+    }
+
+    /**
+     * Closes the journal file, it is reopened by the next append.
+     *
+     * @throws IOException If the file could not be closed.
+     */
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Closes the journal file and renames it into a segment named after the last version it holds,
+     * so that the next append starts a new journal file.
+     *
+     * @return the last version held by the rolled segment, or -1 if the journal file was empty
+     * @throws IOException If the journal file could not be rolled.
+     */
+    public synchronized long roll() throws IOException {
+        close();
+        if (!Files.exists(journalFile) || Files.size(journalFile) == 0) {
+            return -1;
+        }
+        Path segment = segmentFile(lastVersion);
+        Files.move(journalFile, segment, StandardCopyOption.ATOMIC_MOVE);
+        pendingRecords = 0;
+        pendingBytes = 0;
+        LOGGER.info("Rolled {} into {}", journalFile, segment);
+        return lastVersion;
+    }
+
+    /**
+     * Reads the records of the rolled segments up to the given version, in order, such as the records
+     * a checkpoint at that version covers. Segments are complete since they are only rolled once closed.
+     *
+     * @param version the last version to read the segments up to
+     * @return the entries of the segments
+     * @throws IOException If a segment could not be read or holds an unreadable record.
+     */
+    public synchronized List<Entry> readSegmentsUpTo(long version) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (Path segment : segments().headMap(version, true).values()) {
+            readSegment(segment, entries);
+        }
+        return entries;
+    }
+
+    /**
+     * Deletes the rolled segments whose records are all covered by a base snapshot of the given version.
+     *
+     * @param version the version of the base snapshot
+     * @return the number of segments deleted
+     * @throws IOException If a segment could not be deleted.
+     */
+    public synchronized int deleteSegmentsUpTo(long version) throws IOException {
+        int deleted = 0;
+        for (Map.Entry<Long, Path> segment : segments().headMap(version, true).entrySet()) {
+            Files.delete(segment.getValue());
+            deleted++;
+        }
+        return deleted;
+    }
+
+    private NavigableMap<Long, Path> segments() throws IOException {
+        NavigableMap<Long, Path> segments = new TreeMap<>();
+        Path directory = journalFile.toAbsolutePath().getParent();
+        String prefix = journalFile.getFileName() + ".";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path file : files) {
+                String suffix = file.getFileName().toString().substring(prefix.length());
+                if (!suffix.isEmpty() && suffix.chars().allMatch(Character::isDigit)) {
+                    segments.put(Long.parseLong(suffix), file);
+                }
+            }
+        }
+        return segments;
+    }
+
+    private Path segmentFile(long version) {
+        return journalFile.resolveSibling(journalFile.getFileName() + "." + version);
+    }
+
+    public Path getJournalFile() {
+        return journalFile;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    /**
+     * Retrieves the number of bytes appended since this journal was created.
+     *
+     * @return the number of bytes written
+     */
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Retrieves the number of times the journal was forced to disk by {@link #sync(long)}.
+     *
+     * @return the number of forces
+     */
+    public long getForceCount() {
+        synchronized (forceLock) {
+            return forceCount;
+        }
+    }
+
+    /**
+     * Retrieves the number of records appended to the journal file since it was last rolled,
+     * including the records replayed at startup.
+     *
+     * @return the number of records not yet covered by a checkpoint
+     */
+    public synchronized long getPendingRecords() {
+        return pendingRecords;
+    }
+
+    /**
+     * Retrieves the size of the records appended to the journal file since it was last rolled,
+     * including the records replayed at startup.
+     *
+     * @return the number of bytes not yet covered by a checkpoint
+     */
+    public synchronized long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    String encode(long version, List<Change> changes) {
+        JsonArray encodedChanges = new JsonArray();
+        for (Change change : changes) {
+            JsonObject encodedChange = new JsonObject();
+            encodedChange.addProperty("t", change.getType().name());
+            if (change.getKey() != null) {
+                encodedChange.addProperty("k", change.getKey());
+            }
+            if (change.getValue() != null) {
+                encodedChange.add("v", gson.toJsonTree(change.getValue()));
+            }
+            encodedChanges.add(encodedChange);
+        }
+        JsonObject record = new JsonObject();
+        record.addProperty("v", version);
+        record.add("c", encodedChanges);
+        return gson.toJson(record);
+    }
+
+    Entry decode(String line) {
+        JsonObject record = JsonParser.parseString(line).getAsJsonObject();
+        List<Change> changes = new ArrayList<>();
+        for (JsonElement element : record.getAsJsonArray("c")) {
+            JsonObject encodedChange = element.getAsJsonObject();
+            EntityType type = EntityType.valueOf(encodedChange.get("t").getAsString());
+            String key = encodedChange.has("k") ? encodedChange.get("k").getAsString() : null;
+            Object value = encodedChange.has("v") ? gson.fromJson(encodedChange.get("v"), type.getEntityClass()) : null;
+            changes.add(new Change(type, key, value));
+        }
+        return new Entry(record.get("v").getAsLong(), changes);
+    }
+}
@@ -0,0 +1,358 @@
+package com.amp.safetynetalerts.repository;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Optional single-writer pipeline of the data store mutations.
+ * When enabled, the request threads do not apply their mutations themselves: each one claims a slot of a
+ * pre-allocated ring buffer, writes its command into it and waits. A single writer thread drains the published
+ * slots in batches and hands each batch to the {@link DataStore}, which applies the whole batch to one draft,
+ * publishes it as one snapshot version and appends it to the journal as one record forced once.
+ * <p>
+ * The ring takes no lock: producers claim their sequence with an atomic increment and each slot carries the
+ * sequence it is at, going from free to published, then completed by the writer and freed again by its producer.
+ * When every slot is in use, producers wait for the writer to catch up. Readers are not involved at all
+ * and keep reading the published snapshots. The size of the batches is exposed as a metric.
+ * <p>
+ * A producer interrupted while it waits cancels its command, unless the writer has already taken it into a batch,
+ * in which case it waits for the outcome; the writer skips cancelled commands. A producer claiming a slot after
+ * the writer stopped fails its command.
+ */
+@Component
+public class MutationPipeline {
+
+    private static final int SPINS = 100;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    private static final int WAITING = 0;
+    private static final int TAKEN = 1;
+    private static final int CANCELLED = 2;
+
+    /**
+     * Applies the drained batches, called by the writer thread only.
+     */
+    interface BatchHandler {
+
+        /**
+         * Applies the commands of a batch in order, leaving the outcome of each one in the command.
+         *
+         * @param batch the commands, only valid for the duration of the call
+         */
+        void apply(List<Command> batch);
+    }
+
+    /**
+     * Slot of the ring buffer, reused by every command written into it.
+     * The fields are written by the producer before it publishes the slot, then by the writer before it completes it,
+     * the volatile sequence ordering both.
+     */
+    static final class Command {
+        private volatile long sequence;
+        private final AtomicInteger state = new AtomicInteger();
+        private Function<DataWrapper, ?> mutation;
+        private EntityType type;
+        private String key;
+        private long expectedVersion;
+        private boolean conditional;
+        private Thread waiter;
+        private Object result;
+        private Throwable failure;
+        private boolean discarded;
+
+        private Command(long sequence) {
+            this.sequence = sequence;
+        }
+
+        Function<DataWrapper, ?> getMutation() {
+            return mutation;
+        }
+
+        boolean isConditional() {
+            return conditional;
+        }
+
+        EntityType getType() {
+            return type;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        long getExpectedVersion() {
+            return expectedVersion;
+        }
+
+        void succeed(Object result) {
+            this.result = result;
+            this.failure = null;
+        }
+
+        void fail(Throwable failure) {
+            this.result = null;
+            this.failure = failure;
+        }
+
+        boolean isFailed() {
+            return failure != null;
+        }
+
+        /**
+         * Marks the command as failed for good, so that it is skipped when the rest of the batch is applied again.
+         */
+        void discard(Throwable failure) {
+            fail(failure);
+            discarded = true;
+        }
+
+        boolean isDiscarded() {
+            return discarded;
+        }
+
+        /**
+         * Takes a published command into a batch, unless its producer cancelled it.
+         */
+        private boolean take() {
+            return state.compareAndSet(WAITING, TAKEN);
+        }
+
+        /**
+         * Cancels a published command, unless the writer already took it into a batch.
+         */
+        private boolean cancel() {
+            return state.compareAndSet(WAITING, CANCELLED);
+        }
+
+        private void clear() {
+            mutation = null;
+            key = null;
+            waiter = null;
+            result = null;
+            failure = null;
+            discarded = false;
+        }
+    }
+
+    private final boolean enabled;
+    private final Command[] ring;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final DistributionSummary batchSizes;
+
+    private volatile boolean running;
+    private volatile Thread writer;
+    private volatile long stoppedAt = Long.MAX_VALUE;
+    private BatchHandler handler;
+
+    public MutationPipeline(MeterRegistry meterRegistry,
+                            @Value("${safetynetalerts.pipeline.enabled:false}") boolean enabled,
+                            @Value("${safetynetalerts.pipeline.capacity:1024}") int capacity) {
+        this.enabled = enabled;
+        int size = Integer.highestOneBit(Math.max(capacity, 4) - 1) << 1;
+        this.ring = new Command[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Command(i);
+        }
+        this.mask = size - 1;
+        this.batchSizes = DistributionSummary.builder("safetynetalerts.pipeline.batch.size")
+                .description("Mutations applied and persisted together by the pipeline writer")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Tells whether the writer is running, in which case mutations are to be submitted to the pipeline.
+     *
+     * @return true if the pipeline accepts commands
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Starts the writer thread if the pipeline is enabled.
+     *
+     * @param handler the handler applying the batches
+     */
+    synchronized void start(BatchHandler handler) {
+        if (!enabled || running) {
+            return;
+        }
+        this.handler = handler;
+        running = true;
+        Thread thread = new Thread(this::run, "mutation-pipeline");
+        thread.setDaemon(true);
+        writer = thread;
+        thread.start();
+    }
+
+    /**
+     * Stops the writer thread once every command submitted so far is applied.
+     *
+     * @throws InterruptedException If interrupted while waiting for the writer.
+     */
+    @PreDestroy
+    public synchronized void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        Thread thread = writer;
+        LockSupport.unpark(thread);
+        thread.join();
+        writer = null;
+    }
+
+    /**
+     * Submits a mutation and waits until the writer has applied and persisted it.
+     *
+     * @param type            the type of the entity the mutation depends on, or null if it is not conditional
+     * @param key             the key of the entity
+     * @param expectedVersion the version the entity must have, if the mutation is conditional
+     * @param mutation        the function modifying the draft DataWrapper
+     * @param <T>             the type of the value returned by the mutation
+     * @return the value returned by the mutation
+     * @throws IOException If an error occurred while appending the batch to the journal.
+     * @throws InterruptedIOException If interrupted before the writer took the mutation, which is then not applied.
+     * @throws IllegalStateException If the pipeline stopped before the mutation was submitted.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T submit(EntityType type, String key, long expectedVersion, Function<DataWrapper, T> mutation) throws IOException {
+        if (Thread.currentThread() == writer) {
+            throw new IllegalStateException("A mutation cannot be submitted from another mutation");
+        }
+        long sequence = claimed.getAndIncrement();
+        Command command = ring[(int) sequence & mask];
+        boolean interrupted = false;
+        int spins = 0;
+        while (command.sequence != sequence) {
+            checkRunning(sequence);
+            if (++spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(this, FULL_PARK_NANOS);
+                interrupted |= Thread.interrupted();
+            }
+        }
+        if (interrupted) {
+            // The writer drains the sequences in order, the claimed one is published cancelled for it to skip
+            command.state.set(CANCELLED);
+            command.sequence = sequence + 1;
+            LockSupport.unpark(writer);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a slot of the mutation pipeline");
+        }
+        command.mutation = mutation;
+        command.type = type;
+        command.key = key;
+        command.expectedVersion = expectedVersion;
+        command.conditional = type != null;
+        command.waiter = Thread.currentThread();
+        command.state.set(WAITING);
+        command.sequence = sequence + 1;
+        LockSupport.unpark(writer);
+
+        while (command.sequence != sequence + 2) {
+            checkRunning(sequence);
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            if (Thread.interrupted()) {
+                interrupted = true;
+                if (command.cancel()) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the mutation pipeline, the mutation is not applied");
+                }
+                // The writer is applying the command, its outcome is only a batch away
+            }
+        }
+        Object result = command.result;
+        Throwable failure = command.failure;
+        command.clear();
+        command.sequence = sequence + ring.length;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failure instanceof IOException e) {
+            throw e;
+        } else if (failure instanceof RuntimeException e) {
+            throw e;
+        } else if (failure instanceof Error e) {
+            throw e;
+        } else if (failure != null) {
+            throw new IllegalStateException(failure);
+        }
+        return (T) result;
+    }
+
+    /**
+     * Fails a command whose sequence the writer will never drain, since it stopped before it was claimed.
+     */
+    private void checkRunning(long sequence) {
+        if (sequence >= stoppedAt) {
+            throw new IllegalStateException("The mutation pipeline is stopped");
+        }
+    }
+
+    private void run() {
+        List<Command> batch = new ArrayList<>(ring.length);
+        long next = 0;
+        while (running || next < claimed.get()) {
+            long end = next;
+            Command command;
+            while (end - next < ring.length && (command = ring[(int) end & mask]).sequence == end + 1) {
+                if (command.take()) {
+                    batch.add(command);
+                }
+                end++;
+            }
+            if (end == next) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            if (!batch.isEmpty()) {
+                try {
+                    handler.apply(batch);
+                } catch (Throwable e) {
+                    for (Command failed : batch) {
+                        failed.fail(e);
+                    }
+                }
+                batchSizes.record(batch.size());
+            }
+            for (; next < end; next++) {
+                Command completed = ring[(int) next & mask];
+                if (completed.state.get() == CANCELLED) {
+                    // Its producer is gone, the slot is freed for the next one
+                    completed.clear();
+                    completed.sequence = next + ring.length;
+                } else {
+                    Thread waiter = completed.waiter;
+                    completed.sequence = next + 2;
+                    LockSupport.unpark(waiter);
+                }
+            }
+            batch.clear();
+        }
+        // Every sequence claimed so far is drained, any later one never will be
+        stoppedAt = next;
+    }
+}
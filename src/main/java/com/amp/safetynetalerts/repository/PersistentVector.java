@@ -0,0 +1,417 @@
+package com.amp.safetynetalerts.repository;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+
+/**
+ * Immutable list stored as a 32-way trie indexed by slot.
+ * Reading, replacing, appending and removing an entity each cost O(log32 n): an update copies only the path
+ * from the root to the leaf it changes and shares every other node with the previous version, so that publishing
+ * a new snapshot does not copy its collections and older snapshots stay cheap to keep.
+ * The nodes are arrays of up to 32 children, the leaves arrays of up to 32 slots, all but the last one full.
+ * <p>
+ * Removing an entity keeps the order of the others: its slot is left as a hole, which the positions of the list
+ * skip, so that the slots of the other entities, which the {@link KeyIndex}es refer to, do not change. The holes
+ * are kept sorted, a position is mapped to its slot by a binary search over them, and {@link #compact()} drops them.
+ *
+ * @param <T> the entity class
+ */
+final class PersistentVector<T> {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final int[] NO_HOLES = new int[0];
+    private static final Object HOLE = new Object();
+
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(0, 0, new Object[0], NO_HOLES);
+
+    private final int slots;
+    private final int shift;
+    private final Object[] root;
+    private final int[] holes;
+    private final List<T> view = new View(null, null);
+
+    private PersistentVector(int slots, int shift, Object[] root, int[] holes) {
+        this.slots = slots;
+        this.shift = shift;
+        this.root = root;
+        this.holes = holes;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> PersistentVector<T> empty() {
+        return (PersistentVector<T>) EMPTY;
+    }
+
+    /**
+     * Builds a vector holding the given entities in order, filling the trie level by level.
+     *
+     * @param entities the entities
+     * @param <T>      the entity class
+     * @return the new vector
+     */
+    static <T> PersistentVector<T> of(Collection<? extends T> entities) {
+        if (entities.isEmpty()) {
+            return empty();
+        }
+        Object[] nodes = chunk(entities.toArray());
+        int shift = 0;
+        while (nodes.length > 1) {
+            nodes = chunk(nodes);
+            shift += BITS;
+        }
+        return new PersistentVector<>(entities.size(), shift, (Object[]) nodes[0], NO_HOLES);
+    }
+
+    private static Object[] chunk(Object[] children) {
+        Object[] nodes = new Object[(children.length + MASK) >>> BITS];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = Arrays.copyOfRange(children, i << BITS, Math.min((i + 1) << BITS, children.length));
+        }
+        return nodes;
+    }
+
+    /**
+     * Retrieves the vector underlying a list of a snapshot or of a draft, or builds one from any other list.
+     *
+     * @param entities the list
+     * @param <T>      the entity class
+     * @return the vector holding the entities of the list
+     */
+    @SuppressWarnings("unchecked")
+    static <T> PersistentVector<T> from(List<T> entities) {
+        if (entities instanceof PersistentVector<?>.View view) {
+            return (PersistentVector<T>) view.vector();
+        }
+        if (entities instanceof ChangeTrackingList<T> draft) {
+            return draft.toVector();
+        }
+        return entities == null ? empty() : of(entities);
+    }
+
+    int size() {
+        return slots - holes.length;
+    }
+
+    /**
+     * Retrieves the number of slots of the vector, the entities and the holes left by removed ones.
+     *
+     * @return the number of slots, the slot the next appended entity takes
+     */
+    int slots() {
+        return slots;
+    }
+
+    /**
+     * Retrieves the number of holes left by removed entities since the vector was built or compacted.
+     *
+     * @return the number of holes
+     */
+    int holes() {
+        return holes.length;
+    }
+
+    T get(int index) {
+        return getSlot(slotOf(index));
+    }
+
+    /**
+     * Retrieves the entity in a slot.
+     *
+     * @param slot the slot, which must not be a hole
+     * @return the entity
+     */
+    @SuppressWarnings("unchecked")
+    T getSlot(int slot) {
+        return (T) leafFor(slot)[slot & MASK];
+    }
+
+    /**
+     * Maps a position of the list to its slot: the position plus the number of holes before the slot, found as
+     * the last hole with fewer entities before it than the position.
+     *
+     * @param index the position
+     * @return the slot
+     */
+    int slotOf(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+        }
+        int low = 0;
+        int high = holes.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (holes[middle] - middle <= index) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return index + low;
+    }
+
+    /**
+     * Maps a slot holding an entity to its position in the list.
+     *
+     * @param slot the slot
+     * @return the position: the slot minus the number of holes before it
+     */
+    int positionOf(int slot) {
+        if (holes.length == 0) {
+            return slot;
+        }
+        int found = Arrays.binarySearch(holes, slot);
+        return slot - (found < 0 ? -found - 1 : found);
+    }
+
+    private Object[] leafFor(int slot) {
+        if (slot < 0 || slot >= slots) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " out of bounds for length " + slots);
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(slot >>> level) & MASK];
+        }
+        return node;
+    }
+
+    /**
+     * Returns a vector with the entity at the given position replaced.
+     *
+     * @param index  the position
+     * @param entity the new entity
+     * @return the new vector, sharing every node but the path to the position with this one
+     */
+    PersistentVector<T> set(int index, T entity) {
+        return new PersistentVector<>(slots, shift, set(root, shift, slotOf(index), entity), holes);
+    }
+
+    private static Object[] set(Object[] node, int level, int index, Object entity) {
+        Object[] copy = node.clone();
+        if (level == 0) {
+            copy[index & MASK] = entity;
+        } else {
+            int child = (index >>> level) & MASK;
+            copy[child] = set((Object[]) node[child], level - BITS, index, entity);
+        }
+        return copy;
+    }
+
+    /**
+     * Returns a vector with the given entity appended.
+     *
+     * @param entity the entity
+     * @return the new vector
+     */
+    PersistentVector<T> append(T entity) {
+        if (slots == 0) {
+            return new PersistentVector<>(1, 0, new Object[]{entity}, NO_HOLES);
+        }
+        if (slots == 1 << (shift + BITS)) {
+            return new PersistentVector<>(slots + 1, shift + BITS, new Object[]{root, path(shift, entity)}, holes);
+        }
+        return new PersistentVector<>(slots + 1, shift, append(root, shift, slots, entity), holes);
+    }
+
+    private static Object[] append(Object[] node, int level, int index, Object entity) {
+        int child = (index >>> level) & MASK;
+        Object[] copy = Arrays.copyOf(node, Math.max(node.length, child + 1));
+        if (level == 0) {
+            copy[child] = entity;
+        } else if (child < node.length) {
+            copy[child] = append((Object[]) node[child], level - BITS, index, entity);
+        } else {
+            copy[child] = path(level - BITS, entity);
+        }
+        return copy;
+    }
+
+    private static Object[] path(int level, Object entity) {
+        Object[] node = new Object[]{entity};
+        for (int l = 0; l < level; l += BITS) {
+            node = new Object[]{node};
+        }
+        return node;
+    }
+
+    /**
+     * Returns a vector without the entity at the given position, the entities after it keeping their order and
+     * their slots. The slot is left as a hole, unless it is the last one: then it is dropped along with the holes
+     * before it.
+     *
+     * @param index the position
+     * @return the new vector
+     */
+    PersistentVector<T> remove(int index) {
+        int slot = slotOf(index);
+        if (slot < slots - 1) {
+            int at = -Arrays.binarySearch(holes, slot) - 1;
+            int[] nextHoles = new int[holes.length + 1];
+            System.arraycopy(holes, 0, nextHoles, 0, at);
+            nextHoles[at] = slot;
+            System.arraycopy(holes, at, nextHoles, at + 1, holes.length - at);
+            return new PersistentVector<>(slots, shift, set(root, shift, slot, HOLE), nextHoles);
+        }
+        int kept = holes.length;
+        while (kept > 0 && holes[kept - 1] == slot - (holes.length - kept) - 1) {
+            kept--;
+        }
+        return truncate(slot - (holes.length - kept), kept == holes.length ? holes : Arrays.copyOf(holes, kept));
+    }
+
+    private PersistentVector<T> truncate(int nextSlots, int[] nextHoles) {
+        if (nextSlots == 0) {
+            return empty();
+        }
+        Object[] next = root;
+        int nextShift = shift;
+        for (int slot = slots - 1; slot >= nextSlots; slot--) {
+            next = removeLast(next, nextShift, slot);
+        }
+        while (nextShift > 0 && next.length == 1) {
+            next = (Object[]) next[0];
+            nextShift -= BITS;
+        }
+        return new PersistentVector<>(nextSlots, nextShift, next, nextHoles);
+    }
+
+    /**
+     * Returns a vector holding the same entities in the same order without holes, which renumbers their slots.
+     *
+     * @return the new vector, or this one if it has no hole
+     */
+    PersistentVector<T> compact() {
+        return holes.length == 0 ? this : of(view);
+    }
+
+    private static Object[] removeLast(Object[] node, int level, int index) {
+        int child = (index >>> level) & MASK;
+        if (level == 0) {
+            return child == 0 ? null : Arrays.copyOf(node, child);
+        }
+        Object[] next = removeLast((Object[]) node[child], level - BITS, index);
+        if (next == null) {
+            return child == 0 ? null : Arrays.copyOf(node, child);
+        }
+        Object[] copy = node.clone();
+        copy[child] = next;
+        return copy;
+    }
+
+    /**
+     * Returns a read-only list over this vector. No data is copied.
+     *
+     * @return the list view
+     */
+    List<T> asList() {
+        return view;
+    }
+
+    /**
+     * Returns a read-only list over this vector belonging to a snapshot and carrying the indexes of its entities,
+     * see {@link KeyIndex}.
+     *
+     * @param indexes the indexes of the entities of this vector
+     * @param owner   the snapshot holding the list
+     * @return the list view
+     */
+    List<T> asList(KeyIndex[] indexes, DataSnapshot owner) {
+        return new View(indexes == null || indexes.length == 0 ? null : indexes, owner);
+    }
+
+    /**
+     * Retrieves the snapshot a list returned by {@link #asList(KeyIndex[], DataSnapshot)} belongs to.
+     *
+     * @param entities the list
+     * @return the snapshot, or null if the list does not belong to one
+     */
+    static DataSnapshot ownerOf(List<?> entities) {
+        return entities instanceof PersistentVector<?>.View view ? view.owner : null;
+    }
+
+    /**
+     * Read-only list over the vector, iterating leaf by leaf.
+     */
+    private final class View extends AbstractList<T> implements RandomAccess, KeyIndex.Indexed {
+
+        private final KeyIndex[] indexes;
+        private final DataSnapshot owner;
+
+        private View(KeyIndex[] indexes, DataSnapshot owner) {
+            this.indexes = indexes;
+            this.owner = owner;
+        }
+
+        @Override
+        public KeyIndex[] keyIndexes() {
+            return indexes;
+        }
+
+        private PersistentVector<T> vector() {
+            return PersistentVector.this;
+        }
+
+        @Override
+        public T get(int index) {
+            return PersistentVector.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return PersistentVector.this.size();
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<>() {
+                private int slot;
+                private int hole;
+                private Object[] leaf;
+                private int leafStart = -1;
+
+                @Override
+                public boolean hasNext() {
+                    // The holes are sorted, the next one is never before the slot
+                    while (hole < holes.length && holes[hole] == slot) {
+                        slot++;
+                        hole++;
+                    }
+                    return slot < slots;
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public T next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    if ((slot & ~MASK) != leafStart) {
+                        leafStart = slot & ~MASK;
+                        leaf = leafFor(slot);
+                    }
+                    return (T) leaf[slot++ & MASK];
+                }
+            };
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void forEach(Consumer<? super T> action) {
+            for (int slot = 0; slot < slots; slot += WIDTH) {
+                for (Object entity : leafFor(slot)) {
+                    if (entity != HOLE) {
+                        action.accept((T) entity);
+                    }
+                }
+            }
+        }
+    }
+}
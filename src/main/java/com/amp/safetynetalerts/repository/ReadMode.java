@@ -0,0 +1,14 @@
+package com.amp.safetynetalerts.repository;
+
+/**
+ * How the data store serves reads at startup.
+ */
+public enum ReadMode {
+    /** The whole data file is loaded into memory at startup. */
+    RESIDENT,
+    /**
+     * The data file is memory-mapped at startup and point lookups decode single records on demand;
+     * the data is only loaded into memory by the first read or mutation needing the whole dataset.
+     */
+    MAPPED
+}
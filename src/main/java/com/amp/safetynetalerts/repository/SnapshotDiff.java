@@ -0,0 +1,103 @@
+package com.amp.safetynetalerts.repository;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Entity-level difference between two snapshots, matched by key.
+ * <p>
+ * The entities sharing a key are matched in order. An entity of the target left without a match in the source,
+ * because its key is new or because the target holds more entities under it, is recorded as an insertion.
+ * Entities that are equal in both snapshots are kept as the same instances.
+ */
+final class SnapshotDiff {
+
+    private final List<Change> changes;
+    private final DataWrapper result;
+
+    private SnapshotDiff(List<Change> changes, DataWrapper result) {
+        this.changes = changes;
+        this.result = result;
+    }
+
+    /**
+     * Computes the changes turning the source snapshot into the target one.
+     *
+     * @param source the current snapshot
+     * @param target the snapshot to reach
+     * @return the difference, whose result holds the entities of the target in the order of the source
+     */
+    static SnapshotDiff between(DataSnapshot source, DataSnapshot target) {
+        List<Change> changes = new ArrayList<>();
+        DataWrapper sourceData = source.toDataWrapper();
+        DataWrapper targetData = target.toDataWrapper();
+        DataWrapper result = new DataWrapper(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        for (EntityType type : EntityType.values()) {
+            diff(type, type.list(sourceData), type.list(targetData), type.list(result), changes);
+        }
+        return new SnapshotDiff(changes, result);
+    }
+
+    /**
+     * Computes the changes turning a collection of the source snapshot into the same collection of the target one.
+     *
+     * @param type   the type of the collection
+     * @param source the entities of the current snapshot
+     * @param target the entities of the snapshot to reach
+     * @return the changes, in the same form as those of {@link #between(DataSnapshot, DataSnapshot)}
+     */
+    static List<Change> changes(EntityType type, List<Object> source, List<Object> target) {
+        List<Change> changes = new ArrayList<>();
+        diff(type, source, target, new ArrayList<>(source.size()), changes);
+        return changes;
+    }
+
+    private static void diff(EntityType type, List<Object> source, List<Object> target, List<Object> result, List<Change> changes) {
+        Map<String, Deque<Object>> targetByKey = new LinkedHashMap<>();
+        for (Object entity : target) {
+            targetByKey.computeIfAbsent(type.key(entity), key -> new ArrayDeque<>(1)).add(entity);
+        }
+        for (Object entity : source) {
+            String key = type.key(entity);
+            Deque<Object> matches = targetByKey.get(key);
+            Object match = matches == null ? null : matches.poll();
+            if (match == null) {
+                changes.add(Change.remove(type, entity));
+            } else if (match.equals(entity)) {
+                result.add(entity);
+            } else {
+                result.add(match);
+                changes.add(Change.replace(type, entity, match));
+            }
+        }
+        for (Deque<Object> remaining : targetByKey.values()) {
+            for (Object entity : remaining) {
+                result.add(entity);
+                changes.add(Change.insert(type, entity));
+            }
+        }
+    }
+
+    List<Change> getChanges() {
+        return changes;
+    }
+
+    boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Returns the mutable DataWrapper holding the entities of the target, to be published as the next snapshot.
+     *
+     * @return the resulting DataWrapper
+     */
+    DataWrapper getResult() {
+        return result;
+    }
+}
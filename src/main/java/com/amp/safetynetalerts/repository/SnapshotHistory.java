@@ -0,0 +1,256 @@
+package com.amp.safetynetalerts.repository;
+
+import com.amp.safetynetalerts.exception.VersionNotRetainedException;
+import com.amp.safetynetalerts.utils.AgeCalculator;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Window of the most recent dataset versions, for reads "as of" a past version or time.
+ * The {@link DataStore} records every snapshot it publishes, in version order. Since consecutive snapshots share
+ * their unchanged structure, retaining a version only costs the paths its successor replaced, estimated at
+ * {@value #BYTES_PER_CHANGE} bytes per change. The window is bounded by a number of versions, by the age at which
+ * a version was superseded and by this estimate; the oldest versions are dropped when a version is recorded.
+ * The number of versions retained and the estimated memory they hold are exposed as metrics.
+ * <p>
+ * An as-of read pins a retained snapshot to the current thread for its duration, see {@link #pin(String)}, and every
+ * read of the data store made by the thread is served from it. Reads of the current version only check a counter
+ * of pinned threads. The ages are computed on the date of the read instant, or of the publication of the read
+ * version, see {@link AgeCalculator#pinDate(long)}.
+ */
+@Component
+public class SnapshotHistory {
+
+    /** Estimated memory held by a retained version per change made by the next one: the copied trie nodes and entity. */
+    static final long BYTES_PER_CHANGE = 1024;
+
+    /**
+     * Scope of an as-of read, restoring the previously pinned snapshot of the thread when closed.
+     */
+    public interface Pin extends AutoCloseable {
+
+        /** Pin of a read of the current version, which pins nothing. */
+        Pin NONE = () -> {
+        };
+
+        @Override
+        void close();
+    }
+
+    private record Entry(DataSnapshot snapshot, long publishedMillis, long changeBytes) {
+    }
+
+    private static final ThreadLocal<DataSnapshot> PINNED = new ThreadLocal<>();
+
+    private final int maxVersions;
+    private final long maxAgeMillis;
+    private final long maxBytes;
+    private final ConcurrentSkipListMap<Long, Entry> entries = new ConcurrentSkipListMap<>();
+    private final AtomicInteger pinnedReaders = new AtomicInteger();
+
+    private volatile long retainedBytes;
+
+    public SnapshotHistory(MeterRegistry meterRegistry,
+                           @Value("${safetynetalerts.history.max-versions:1000}") int maxVersions,
+                           @Value("${safetynetalerts.history.max-age-ms:3600000}") long maxAgeMillis,
+                           @Value("${safetynetalerts.history.max-bytes:67108864}") long maxBytes) {
+        this.maxVersions = maxVersions;
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxBytes = maxBytes;
+        Gauge.builder("safetynetalerts.history.versions", entries, Map::size)
+                .description("Dataset versions retained for as-of reads")
+                .register(meterRegistry);
+        Gauge.builder("safetynetalerts.history.retained.bytes", this, SnapshotHistory::getRetainedBytes)
+                .description("Estimated memory held by the retained versions beyond the current one")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Drops every retained version and starts over from a loaded snapshot.
+     *
+     * @param loaded the snapshot the data store was loaded with
+     */
+    synchronized void reset(DataSnapshot loaded) {
+        entries.clear();
+        retainedBytes = 0;
+        record(loaded, 0);
+    }
+
+    /**
+     * Retains a published snapshot, then drops the versions falling out of the window.
+     * Must be called in version order.
+     *
+     * @param snapshot the published snapshot
+     * @param changes  the number of changes it made to the previous one
+     */
+    synchronized void record(DataSnapshot snapshot, int changes) {
+        if (maxVersions <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long changeBytes = entries.isEmpty() ? 0 : changes * BYTES_PER_CHANGE;
+        entries.put(snapshot.getVersion(), new Entry(snapshot, now, changeBytes));
+        retainedBytes += changeBytes;
+        while (entries.size() > 1 && (entries.size() > maxVersions || retainedBytes > maxBytes || supersededBefore(now - maxAgeMillis))) {
+            entries.pollFirstEntry();
+            retainedBytes -= entries.firstEntry().getValue().changeBytes();
+        }
+    }
+
+    private boolean supersededBefore(long millis) {
+        Map.Entry<Long, Entry> second = entries.higherEntry(entries.firstKey());
+        return second != null && second.getValue().publishedMillis() < millis;
+    }
+
+    /**
+     * Pins the snapshot designated by an as-of parameter to the current thread until the returned pin is closed,
+     * along with the date to compute ages on: the date of the instant, or the date the version was published.
+     *
+     * @param asOf a dataset version, or an ISO-8601 instant designating the version current at that time
+     * @return the pin to close once the read is done
+     * @throws IllegalArgumentException    If the parameter is neither a version nor an instant.
+     * @throws VersionNotRetainedException If the designated version is not retained.
+     */
+    public Pin pin(String asOf) {
+        long[] dateMillis = new long[1];
+        DataSnapshot snapshot = resolve(asOf, dateMillis);
+        AgeCalculator.Pin date = AgeCalculator.pinDate(dateMillis[0]);
+        DataSnapshot previous = PINNED.get();
+        PINNED.set(snapshot);
+        pinnedReaders.incrementAndGet();
+        return () -> {
+            pinnedReaders.decrementAndGet();
+            if (previous == null) {
+                PINNED.remove();
+            } else {
+                PINNED.set(previous);
+            }
+            date.close();
+        };
+    }
+
+    /**
+     * Retrieves the snapshot pinned to the current thread.
+     *
+     * @return the pinned snapshot, or null if the thread reads the current version
+     */
+    DataSnapshot pinned() {
+        return pinnedReaders.get() == 0 ? null : PINNED.get();
+    }
+
+    /**
+     * Retrieves the snapshot designated by an as-of parameter.
+     *
+     * @param asOf a dataset version, or an ISO-8601 instant designating the version current at that time
+     * @return the retained snapshot
+     * @throws IllegalArgumentException    If the parameter is neither a version nor an instant.
+     * @throws VersionNotRetainedException If the designated version is not retained.
+     */
+    public DataSnapshot resolve(String asOf) {
+        return resolve(asOf, new long[1]);
+    }
+
+    private DataSnapshot resolve(String asOf, long[] dateMillis) {
+        String value = asOf.trim();
+        if (!value.isEmpty() && value.chars().allMatch(Character::isDigit)) {
+            Entry entry = entryAt(Long.parseLong(value));
+            dateMillis[0] = entry.publishedMillis();
+            return entry.snapshot();
+        }
+        Instant instant;
+        try {
+            instant = Instant.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("asOf must be a dataset version or an ISO-8601 instant: " + asOf, e);
+        }
+        dateMillis[0] = instant.toEpochMilli();
+        return atTime(instant);
+    }
+
+    /**
+     * Retrieves a retained version.
+     *
+     * @param version the version
+     * @return the snapshot of that version
+     * @throws VersionNotRetainedException If the version is not retained.
+     */
+    public DataSnapshot atVersion(long version) {
+        return entryAt(version).snapshot();
+    }
+
+    private Entry entryAt(long version) {
+        Entry entry = entries.get(version);
+        if (entry == null) {
+            throw new VersionNotRetainedException("Version " + version + " is not retained, the retained versions are "
+                    + describeWindow());
+        }
+        return entry;
+    }
+
+    /**
+     * Retrieves the version that was current at the given time, by a binary search of the retained versions,
+     * which are published in version order.
+     *
+     * @param instant the time
+     * @return the snapshot current at that time
+     * @throws VersionNotRetainedException If that version is not retained.
+     */
+    public DataSnapshot atTime(Instant instant) {
+        long millis = instant.toEpochMilli();
+        Map.Entry<Long, Entry> first = entries.firstEntry();
+        Map.Entry<Long, Entry> last = entries.lastEntry();
+        if (first == null || first.getValue().publishedMillis() > millis) {
+            throw new VersionNotRetainedException("No version current at " + instant + " is retained, the retained versions are "
+                    + describeWindow());
+        }
+        long low = first.getKey();
+        long high = last.getKey();
+        Entry found = first.getValue();
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            Entry entry = entries.get(middle);
+            if (entry == null) {
+                low = middle + 1;
+            } else if (entry.publishedMillis() <= millis) {
+                found = entry;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found.snapshot();
+    }
+
+    private String describeWindow() {
+        Map.Entry<Long, Entry> first = entries.firstEntry();
+        Map.Entry<Long, Entry> last = entries.lastEntry();
+        return first == null || last == null ? "none" : first.getKey() + " to " + last.getKey();
+    }
+
+    /**
+     * Retrieves the number of versions retained, including the current one.
+     *
+     * @return the number of versions
+     */
+    public int getRetainedVersions() {
+        return entries.size();
+    }
+
+    /**
+     * Retrieves the estimated memory held by the retained versions beyond the current one.
+     *
+     * @return the estimate in bytes
+     */
+    public long getRetainedBytes() {
+        return retainedBytes;
+    }
+}
@@ -0,0 +1,63 @@
+package com.amp.safetynetalerts.repository;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Storage of the base snapshot of the {@link DataStore}, on top of which the {@link MutationJournal} is replayed.
+ * The data store reads the base snapshot at startup and the {@link Checkpointer} writes a new one
+ * before dropping the journal segments it covers.
+ * <p>
+ * The JSON data file, see {@link JsonSnapshotStorage}, is the default backend and stays the interchange format
+ * of the other backends, which import it the first time they are used.
+ */
+public interface SnapshotStorage {
+
+    /**
+     * Reads the base snapshot. A collection may be read at an older version than the snapshot,
+     * see {@link DataSnapshot#getVersion(EntityType)}, the journal then replays its changes from that version.
+     *
+     * @return The base snapshot.
+     * @throws IllegalStateException If the base snapshot could not be read.
+     */
+    DataSnapshot read();
+
+    /**
+     * Replaces the base snapshot with the given one.
+     *
+     * @param base The snapshot to write, consistent with every journal segment up to its version.
+     * @throws IOException If the snapshot could not be written.
+     */
+    void write(DataSnapshot base) throws IOException;
+
+    /**
+     * Replaces the base snapshot with the given one, knowing the journal records it covers. Only called when
+     * {@link #isIncremental()}, the default implementation ignores the records.
+     *
+     * @param base    The snapshot to write, consistent with every journal segment up to its version.
+     * @param entries The records of the journal segments up to the version of the snapshot, in order.
+     * @throws IOException If the snapshot could not be written.
+     */
+    default void write(DataSnapshot base, List<MutationJournal.Entry> entries) throws IOException {
+        write(base);
+    }
+
+    /**
+     * Tells whether the storage writes a base snapshot by applying the journal records it covers, which the
+     * {@link Checkpointer} then reads back from the segments, see {@link #write(DataSnapshot, List)}.
+     *
+     * @return true if the storage applies the journal records
+     */
+    default boolean isIncremental() {
+        return false;
+    }
+
+    /**
+     * Tells whether the base snapshot is the whole single JSON data file, which can then be memory-mapped.
+     *
+     * @return true if the data file holds the base snapshot
+     */
+    default boolean isSingleJsonFile() {
+        return false;
+    }
+}
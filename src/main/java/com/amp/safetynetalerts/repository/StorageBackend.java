@@ -0,0 +1,11 @@
+package com.amp.safetynetalerts.repository;
+
+/**
+ * The {@link SnapshotStorage} holding the base snapshot of the data store.
+ */
+public enum StorageBackend {
+    /** The JSON data file, see {@link JsonSnapshotStorage}. */
+    JSON,
+    /** An embedded H2 database importing the JSON data file once, see {@link H2SnapshotStorage}. */
+    H2
+}
@@ -0,0 +1,250 @@
+package com.amp.safetynetalerts.repository;
+
+import com.amp.safetynetalerts.exception.PersistenceBacklogException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Optional write-behind persistence of the data store.
+ * When enabled, a mutation is acknowledged once it is published in memory, and a background thread
+ * appends the queued changes to the {@link MutationJournal} in version order, forcing each batch once.
+ * A crash may lose the mutations still queued.
+ * <p>
+ * The queue is bounded by its capacity and by a maximum persistence lag: when either is exceeded,
+ * new mutations either wait for room (BLOCK, up to the block timeout) or are rejected (REJECT)
+ * with a {@link PersistenceBacklogException}, answered with a 503 status.
+ * The queue depth and the persistence lag are exposed as metrics.
+ */
+@Component
+public class WriteBehindQueue {
+
+    private static final Logger LOGGER = LogManager.getLogger(WriteBehindQueue.class);
+
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    /**
+     * What happens to a mutation submitted while the queue is full or lagging.
+     */
+    public enum Backpressure {
+        /** The caller waits for room, up to the block timeout, then is rejected. */
+        BLOCK,
+        /** The caller is rejected at once. */
+        REJECT
+    }
+
+    private record Pending(long version, List<Change> changes, long enqueuedNanos) {
+    }
+
+    private final MutationJournal journal;
+    private final boolean enabled;
+    private final long maxLagMillis;
+    private final Backpressure backpressure;
+    private final long blockTimeoutMillis;
+    private final Semaphore permits;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+
+    private volatile long inFlightSinceNanos;
+    private volatile int inFlight;
+    private volatile boolean running;
+    private Thread writer;
+
+    public WriteBehindQueue(MutationJournal journal,
+                            MeterRegistry meterRegistry,
+                            @Value("${safetynetalerts.write-behind.enabled:false}") boolean enabled,
+                            @Value("${safetynetalerts.write-behind.capacity:10000}") int capacity,
+                            @Value("${safetynetalerts.write-behind.max-lag-ms:1000}") long maxLagMillis,
+                            @Value("${safetynetalerts.write-behind.backpressure:BLOCK}") Backpressure backpressure,
+                            @Value("${safetynetalerts.write-behind.block-timeout-ms:5000}") long blockTimeoutMillis) {
+        this.journal = journal;
+        this.enabled = enabled;
+        this.maxLagMillis = maxLagMillis;
+        this.backpressure = backpressure;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        this.permits = new Semaphore(capacity);
+        Gauge.builder("safetynetalerts.write-behind.queue.depth", this, WriteBehindQueue::getDepth)
+                .description("Mutations acknowledged but not yet persisted")
+                .register(meterRegistry);
+        TimeGauge.builder("safetynetalerts.write-behind.lag", this, TimeUnit.MILLISECONDS, WriteBehindQueue::getLagMillis)
+                .description("Age of the oldest mutation not yet persisted")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts the background writer if write-behind is enabled.
+     */
+    @PostConstruct
+    public synchronized void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::run, "write-behind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stops the background writer once every queued mutation is persisted.
+     *
+     * @throws InterruptedException If interrupted while waiting for the writer.
+     */
+    @PreDestroy
+    public synchronized void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        writer.join();
+        writer = null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Reserves room in the queue for one mutation, applying backpressure when the queue is full or lagging.
+     * The reservation is either used by {@link #enqueue(long, List)} or given back by {@link #cancel()}.
+     *
+     * @throws PersistenceBacklogException If no room was available in time.
+     */
+    public void reserve() {
+        if (getLagMillis() <= maxLagMillis && permits.tryAcquire()) {
+            return;
+        }
+        if (backpressure == Backpressure.REJECT) {
+            throw new PersistenceBacklogException("Too many mutations are waiting to be persisted");
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+        while (getLagMillis() > maxLagMillis && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        try {
+            long remaining = deadline - System.nanoTime();
+            if (getLagMillis() <= maxLagMillis && permits.tryAcquire(Math.max(remaining, 0), TimeUnit.NANOSECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        throw new PersistenceBacklogException("Timed out waiting for queued mutations to be persisted");
+    }
+
+    /**
+     * Queues the changes of a published mutation, using a reservation. Must be called in version order.
+     *
+     * @param version the data version published by the mutation
+     * @param changes the changes applied by the mutation
+     */
+    public void enqueue(long version, List<Change> changes) {
+        queue.add(new Pending(version, changes, System.nanoTime()));
+    }
+
+    /**
+     * Gives back a reservation that was not used.
+     */
+    public void cancel() {
+        permits.release();
+    }
+
+    /**
+     * Waits until every mutation queued so far is persisted.
+     *
+     * @param timeoutMillis the maximum time to wait
+     * @return true if the queue was drained in time
+     */
+    public boolean awaitDrained(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (getDepth() > 0) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves the number of mutations acknowledged but not yet persisted.
+     *
+     * @return the queue depth
+     */
+    public int getDepth() {
+        return queue.size() + inFlight;
+    }
+
+    /**
+     * Retrieves the age of the oldest mutation not yet persisted.
+     *
+     * @return the persistence lag in milliseconds, 0 if nothing is waiting
+     */
+    public long getLagMillis() {
+        long since = inFlightSinceNanos;
+        if (since == 0) {
+            Pending head = queue.peek();
+            if (head == null) {
+                return 0;
+            }
+            since = head.enqueuedNanos();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - since);
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch);
+                inFlight = batch.size();
+                inFlightSinceNanos = first.enqueuedNanos();
+                persist(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                permits.release(batch.size());
+                batch.clear();
+                inFlightSinceNanos = 0;
+                inFlight = 0;
+            }
+        }
+    }
+
+    private void persist(List<Pending> batch) throws InterruptedException {
+        int appended = 0;
+        long position = 0;
+        while (true) {
+            try {
+                for (; appended < batch.size(); appended++) {
+                    Pending pending = batch.get(appended);
+                    position = journal.append(pending.version(), pending.changes());
+                }
+                journal.sync(position);
+                return;
+            } catch (IOException e) {
+                LOGGER.error("An error occurred while persisting {} queued mutations, retrying", batch.size() - appended, e);
+                Thread.sleep(RETRY_DELAY_MILLIS);
+            }
+        }
+    }
+}
@@ -15,50 +15,50 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import com.amp.safetynetalerts.model.MedicalRecord;
 import com.amp.safetynetalerts.model.Person;
-import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.AgeBrackets;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.IndexKey;
+import com.amp.safetynetalerts.repository.KeyIndex;
 import org.springframework.stereotype.Service;
 
 @Service
 public class FirestationService {
 
+    private final DataStore dataStore;
+
+    public FirestationService(DataStore dataStore) {
+        this.dataStore = dataStore;
+    }
+
     public static List<String> getFirestationAddresses(List<Firestation> firestations, Integer stationNumber) {
 
         List<String> addresses = new ArrayList<>();
-        for (Firestation firestation : firestations) {
-            if (firestation.getStation().equals(stationNumber)) {
-                addresses.add(firestation.getAddress());
-            }
+        if (stationNumber == null) {
+            return addresses;
+        }
+        for (Firestation firestation : KeyIndex.findAll(firestations, IndexKey.FIRESTATION_STATION, IndexKey.valueKey(stationNumber))) {
+            addresses.add(firestation.getAddress());
         }
         return addresses;
     }
 
     public static Integer getFirestationNumber(List<Firestation> firestations, String address) {
 
-        for (Firestation firestation : firestations) {
-            if (firestation.getAddress().equals(address)) {
-                return firestation.getStation();
-            }
-        }
-        return null;
+        Firestation firestation = KeyIndex.find(firestations, IndexKey.FIRESTATION_ADDRESS, address);
+        return firestation == null ? null : firestation.getStation();
     }
 
     public void updateFirestationStationNumber(List<Firestation> firestations, String address, Integer newStationNumber) {
 
-        boolean addressExists = false;
+        int[] positions = KeyIndex.positionsOf(firestations, IndexKey.FIRESTATION_ADDRESS, address);
 
-        for (Firestation firestation : firestations) {
-            if (firestation.getAddress().equals(address)) {
-                if (newStationNumber != null) {
-                    firestation.setStation(newStationNumber);
-                    addressExists = true;
-                }
-            }
+        if (positions.length == 0 || newStationNumber == null) {
+            throw new FirestationUpdateException("The address does not exist in firestations");
         }
 
-        if (!addressExists) {
-            throw new FirestationUpdateException("The address does not exist in firestations");
+        for (int i : positions) {
+            firestations.set(i, firestations.get(i).toBuilder().station(newStationNumber).build());
         }
     }
 
@@ -72,10 +72,10 @@ public class FirestationService {
         boolean isStationNumberDeleted = false;
 
         if (address != null) {
-            isAddressDeleted = firestations.removeIf(firestation -> firestation.getAddress().equals(address));
+            isAddressDeleted = KeyIndex.removeAll(firestations, IndexKey.FIRESTATION_ADDRESS, address);
         }
         if (stationNumber != null) {
-            isStationNumberDeleted = firestations.removeIf(firestation -> firestation.getStation().equals(stationNumber));
+            isStationNumberDeleted = KeyIndex.removeAll(firestations, IndexKey.FIRESTATION_STATION, IndexKey.valueKey(stationNumber));
         }
 
         if (!isAddressDeleted && !isStationNumberDeleted) {
@@ -93,39 +93,25 @@ public class FirestationService {
 
     public static List<String> getFirestationAddressesByStationNumber(List<Firestation> firestations, Integer targetStationNumber) {
 
-        List<String> addresses = new ArrayList<>();
-        for (Firestation firestation : firestations) {
-            if (targetStationNumber != null && firestation.getStation().equals(targetStationNumber)) {
-                addresses.add(firestation.getAddress());
-            }
-        }
-        return addresses;
+        return getFirestationAddresses(firestations, targetStationNumber);
     }
 
     public Map<String, Object> getDataByFirestationNumber(Integer stationNumber) {
 
-        DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper();
+        DataWrapper dataWrapper = dataStore.getDataWrapper();
         List<String> addresses = FirestationService.getFirestationAddressesByStationNumber(dataWrapper.getFirestations(), stationNumber);
         List<Person> persons = PersonService.getPersonsByAddresses(dataWrapper.getPersons(), addresses);
-        List<MedicalRecord> medicalRecords = new ArrayList<>();
-
-        for (Person person : persons) {
-            MedicalRecord record = MedicalRecordService.getMedicalRecord(dataWrapper.getMedicalrecords(), person.getFirstName(), person.getLastName());
-            if (record != null) {
-                medicalRecords.add(record);
-            }
-        }
-        List<PersonWithMedicalRecordDTO> personWithMedicalRecordDTOS = PersonService.processPersonsAndRecords(persons, medicalRecords);
+        List<PersonWithMedicalRecordDTO> personWithMedicalRecordDTOS = PersonService.processPersonsAndRecords(persons, dataWrapper.getMedicalrecords());
 
         Map<String, Object> response = new HashMap<>();
         response.put("persons", personWithMedicalRecordDTOS);
-        response.put("count", PersonService.countAdultsAndChildren(personWithMedicalRecordDTOS));
+        response.put("count", PersonService.countAdultsAndChildren(AgeBrackets.ofStation(dataWrapper, stationNumber)));
         return response;
     }
 
     public List<String> getAddressesFromFirestation(Integer station) {
 
-        DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper();
+        DataWrapper dataWrapper = dataStore.getDataWrapper();
         List<String> addresses = FirestationService.getFirestationAddresses(dataWrapper.getFirestations(), station);
 
         if (addresses.isEmpty()) {
@@ -141,36 +127,28 @@ public class FirestationService {
         firestation.setAddress(address);
         firestation.setStation(station);
 
-        DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper();
-        addFirestation(dataWrapper.getFirestations(), firestation.getAddress(), firestation.getStation());
-        DataWrapperRepository.updateFileWithDataWrapper(dataWrapper);
+        dataStore.update(dataWrapper -> addFirestation(dataWrapper.getFirestations(), firestation.getAddress(), firestation.getStation()));
 
         return FirestationMapper.toFirestationDTO(firestation);
     }
     public void updateFirestationStationNumberWrapper(String address, Integer newStationNumber) throws IOException {
 
-        DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper();
-        updateFirestationStationNumber(dataWrapper.getFirestations(), address, newStationNumber);
-        DataWrapperRepository.updateFileWithDataWrapper(dataWrapper);
+        dataStore.update(dataWrapper -> updateFirestationStationNumber(dataWrapper.getFirestations(), address, newStationNumber));
     }
 
     public void deleteFirestationDataWrapper(String address, Integer stationNumber) throws IOException {
 
-        DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper();
-        deleteFirestation(
+        dataStore.update(dataWrapper -> deleteFirestation(
                 dataWrapper.getFirestations(),
                 address,
-                stationNumber);
-        DataWrapperRepository.updateFileWithDataWrapper(dataWrapper);
+                stationNumber));
     }
 
-    public static List<String> getPhoneNumbersByFirestation(Integer firestationNumber) {
+    public List<String> getPhoneNumbersByFirestation(Integer firestationNumber) {
 
-        DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper();
+        DataWrapper dataWrapper = dataStore.getDataWrapper();
         List<String> addresses = FirestationService.getFirestationAddresses(dataWrapper.getFirestations(), firestationNumber);
-        List<Person> persons = PersonService.getPersonsByAddresses(dataWrapper.getPersons(), addresses);
-
-        return PersonService.getListOfPhoneNumbers(persons, addresses);
+        return PersonService.getListOfPhoneNumbers(dataWrapper.getPersons(), addresses);
     }
 
 }
@@ -7,42 +7,46 @@ import com.amp.safetynetalerts.utils.*;
 import java.io.IOException;
 import java.util.List;
 
-import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.EntityType;
+import com.amp.safetynetalerts.repository.IndexKey;
+import com.amp.safetynetalerts.repository.KeyIndex;
 import org.springframework.stereotype.Service;
 
 @Service
 public class MedicalRecordService {
 
+    private final DataStore dataStore;
+
+    public MedicalRecordService(DataStore dataStore) {
+        this.dataStore = dataStore;
+    }
+
     public static MedicalRecord getMedicalRecord(List<MedicalRecord> medicalRecords, String firstName, String lastName) {
 
-        for (MedicalRecord record : medicalRecords) {
-            if (record.getFirstName().equals(firstName) && record.getLastName().equals(lastName)) {
-                return record;
-            }
-        }
-        return null;
+        return KeyIndex.find(medicalRecords, IndexKey.MEDICAL_RECORD_NAME, EntityType.key(firstName, lastName));
     }
 
     public void updateMedicalRecord(List<MedicalRecord> medicalRecords, String firstName, String lastName, String newBirthdate, List<String> newMedications, List<String> newAllergies) {
 
-        for (MedicalRecord record : medicalRecords) {
-            if (record.getFirstName().equals(firstName) && record.getLastName().equals(lastName)) {
-                if (newBirthdate != null) {
-                    record.setBirthdate(newBirthdate);
-                }
-                if (newMedications != null) {
-                    record.setMedications(newMedications);
-                }
-                if (newAllergies != null) {
-                    record.setAllergies(newAllergies);
-                }
+        for (int i : KeyIndex.positionsOf(medicalRecords, IndexKey.MEDICAL_RECORD_NAME, EntityType.key(firstName, lastName))) {
+            MedicalRecord updatedRecord = medicalRecords.get(i).toBuilder().build();
+            if (newBirthdate != null) {
+                updatedRecord.setBirthdate(newBirthdate);
+            }
+            if (newMedications != null) {
+                updatedRecord.setMedications(newMedications);
+            }
+            if (newAllergies != null) {
+                updatedRecord.setAllergies(newAllergies);
             }
+            medicalRecords.set(i, updatedRecord);
         }
     }
 
     public void deleteMedicalRecordByName(List<MedicalRecord> medicalRecords, String firstName, String lastName) {
 
-        boolean isRemoved = medicalRecords.removeIf(record -> record.getFirstName().equals(firstName) && record.getLastName().equals(lastName));
+        boolean isRemoved = KeyIndex.removeAll(medicalRecords, IndexKey.MEDICAL_RECORD_NAME, EntityType.key(firstName, lastName));
 
         if (!isRemoved) {
             throw new IllegalStateException("No medical record was deleted");
@@ -50,69 +54,88 @@ public class MedicalRecordService {
     }
 
     public MedicalRecordDTO getMedicalRecordDataWrapper(String firstName, String lastName) {
-    DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper();
-    MedicalRecord medicalRecord = MedicalRecordService.getMedicalRecord(
-            dataWrapper.getMedicalrecords(),
-            firstName,
-            lastName
-    );
+    MedicalRecord medicalRecord = dataStore.findMedicalRecord(firstName, lastName);
     return MedicalRecordMapper.toMedicalRecordDTO(medicalRecord);
 }
     public MedicalRecordDTO addMedicalRecordDataWrapper(MedicalRecord medicalRecord) throws IOException {
 
-        DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper();
-
-        // Get the List of medical records from the DataWrapper
-        List<MedicalRecord> medicalRecords = dataWrapper.getMedicalrecords();
-
         // Check if the medical record exists.
-        for (MedicalRecord record : medicalRecords) {
-            if (record.getFirstName().equals(medicalRecord.getFirstName())
-                    && record.getLastName().equals(medicalRecord.getLastName())) {
-                return null;
-            }
+        if (getMedicalRecord(dataStore.getDataWrapper().getMedicalrecords(), medicalRecord.getFirstName(), medicalRecord.getLastName()) != null) {
+            return null;
         }
 
-        // If it doesn't exist, then add it to the list
-        medicalRecords.add(medicalRecord);
+        boolean added = dataStore.updateAndGet(dataWrapper -> {
+
+            // Get the List of medical records from the DataWrapper
+            List<MedicalRecord> medicalRecords = dataWrapper.getMedicalrecords();
+
+            // Check again against the draft, the record may have been added since
+            if (getMedicalRecord(medicalRecords, medicalRecord.getFirstName(), medicalRecord.getLastName()) != null) {
+                return false;
+            }
 
-        // Update the DataWrapper and save it
-        DataWrapperRepository.updateFileWithDataWrapper(dataWrapper);
+            // If it doesn't exist, then add it to the list
+            return medicalRecords.add(medicalRecord);
+        });
 
-        return MedicalRecordMapper.toMedicalRecordDTO(medicalRecord);
+        return added ? MedicalRecordMapper.toMedicalRecordDTO(medicalRecord) : null;
     }
 
     public MedicalRecordDTO updateMedicalRecordDataWrapper(MedicalRecord medicalRecordToUpdate) throws IOException {
 
-        DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper();
         String firstName = medicalRecordToUpdate.getFirstName();
         String lastName = medicalRecordToUpdate.getLastName();
         String birthdate = medicalRecordToUpdate.getBirthdate();
         List<String> medications = medicalRecordToUpdate.getMedications();
         List<String> allergies = medicalRecordToUpdate.getAllergies();
 
-        MedicalRecord existingMedicalRecord = MedicalRecordService.getMedicalRecord(dataWrapper.getMedicalrecords(), firstName, lastName);
+        MedicalRecord existingMedicalRecord = MedicalRecordService.getMedicalRecord(dataStore.getDataWrapper().getMedicalrecords(), firstName, lastName);
         if (existingMedicalRecord == null) {
             return null;
         }
-       updateMedicalRecord(
+        dataStore.update(dataWrapper -> updateMedicalRecord(
                 dataWrapper.getMedicalrecords(),
                 firstName,
                 lastName,
                 birthdate,
                 medications,
                 allergies
-        );
-        DataWrapperRepository.updateFileWithDataWrapper(dataWrapper);
+        ));
 
-       return MedicalRecordMapper.toMedicalRecordDTO(medicalRecordToUpdate);
+        return MedicalRecordMapper.toMedicalRecordDTO(medicalRecordToUpdate);
+    }
+
+    public MedicalRecordDTO updateMedicalRecordDataWrapper(MedicalRecord medicalRecordToUpdate, long expectedVersion) throws IOException {
+
+        String firstName = medicalRecordToUpdate.getFirstName();
+        String lastName = medicalRecordToUpdate.getLastName();
+
+        boolean updated = dataStore.updateAndGetIfMatch(EntityType.MEDICAL_RECORD, EntityType.key(firstName, lastName), expectedVersion, dataWrapper -> {
+            if (getMedicalRecord(dataWrapper.getMedicalrecords(), firstName, lastName) == null) {
+                return false;
+            }
+            updateMedicalRecord(dataWrapper.getMedicalrecords(), firstName, lastName, medicalRecordToUpdate.getBirthdate(),
+                    medicalRecordToUpdate.getMedications(), medicalRecordToUpdate.getAllergies());
+            return true;
+        });
+
+        return updated ? MedicalRecordMapper.toMedicalRecordDTO(medicalRecordToUpdate) : null;
     }
 
     public void deleteMedicalRecordDataWrapper(String firstName, String lastName) throws IOException {
 
-        DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper();
-        deleteMedicalRecordByName(dataWrapper.getMedicalrecords(), firstName, lastName);
-        DataWrapperRepository.updateFileWithDataWrapper(dataWrapper);
+        dataStore.update(dataWrapper -> deleteMedicalRecordByName(dataWrapper.getMedicalrecords(), firstName, lastName));
+    }
+
+    public void deleteMedicalRecordDataWrapper(String firstName, String lastName, long expectedVersion) throws IOException {
+
+        dataStore.updateIfMatch(EntityType.MEDICAL_RECORD, EntityType.key(firstName, lastName), expectedVersion,
+                dataWrapper -> deleteMedicalRecordByName(dataWrapper.getMedicalrecords(), firstName, lastName));
+    }
+
+    public long getMedicalRecordVersion(String firstName, String lastName) {
+
+        return dataStore.getEntityVersion(EntityType.MEDICAL_RECORD, EntityType.key(firstName, lastName));
     }
 
 }
\ No newline at end of file
@@ -11,11 +11,15 @@ import com.amp.safetynetalerts.utils.*;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.time.Period;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.AgeBrackets;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.EntityType;
+import com.amp.safetynetalerts.repository.Households;
+import com.amp.safetynetalerts.repository.IndexKey;
+import com.amp.safetynetalerts.repository.KeyIndex;
 import lombok.Data;
 
 import org.springframework.stereotype.Service;
@@ -28,6 +32,11 @@ import static com.amp.safetynetalerts.service.MedicalRecordService.getMedicalRec
 @Service
 public class PersonService {
 
+    private final DataStore dataStore;
+
+    public PersonService(DataStore dataStore) {
+        this.dataStore = dataStore;
+    }
 
     /**
      * Counts the number of adults and children in a list of PersonWithMedicalRecordDTO objects.
@@ -52,6 +61,20 @@ public class PersonService {
         return countMap;
     }
 
+    /**
+     * Converts the age brackets of a station or an address to the count of adults and children.
+     *
+     * @param count the age brackets, see {@link AgeBrackets}
+     * @return a map containing the count of adults and children, where the keys are "Adults" and "Children"
+     */
+    public static Map<String, Long> countAdultsAndChildren(AgeBrackets.Count count) {
+
+        Map<String, Long> countMap = new HashMap<>();
+        countMap.put("Adults", (long) count.adults());
+        countMap.put("Children", (long) count.minors());
+        return countMap;
+    }
+
     /**
      * Adds a new person to the given list of persons.
      *
@@ -106,33 +129,30 @@ public class PersonService {
      */
     public void updatePerson(List<Person> persons, String firstName, String lastName, String address, String city, String zip, String phone, String email) {
 
-        boolean personFound = false;
+        int i = KeyIndex.indexOf(persons, IndexKey.PERSON_NAME, EntityType.key(firstName, lastName));
 
-        for (Person person : persons) {
-            if (person.getFirstName().equals(firstName) && person.getLastName().equals(lastName)) {
-                personFound = true;
-                if (address != null) {
-                    person.setAddress(address);
-                }
-                if (city != null) {
-                    person.setCity(city);
-                }
-                if (zip != null) {
-                    person.setZip(zip);
-                }
-                if (phone != null) {
-                    person.setPhone(phone);
-                }
-                if (email != null) {
-                    person.setEmail(email);
-                }
-                break;
-            }
+        if (i < 0) {
+            throw new PersonUpdateException("Person not found");
         }
 
-        if (!personFound) {
-            throw new PersonUpdateException("Person not found");
+        // Replace the person rather than modifying it, it may be shared with a published snapshot
+        Person updatedPerson = persons.get(i).toBuilder().build();
+        if (address != null) {
+            updatedPerson.setAddress(address);
+        }
+        if (city != null) {
+            updatedPerson.setCity(city);
+        }
+        if (zip != null) {
+            updatedPerson.setZip(zip);
+        }
+        if (phone != null) {
+            updatedPerson.setPhone(phone);
+        }
+        if (email != null) {
+            updatedPerson.setEmail(email);
         }
+        persons.set(i, updatedPerson);
     }
 
     /**
@@ -146,7 +166,7 @@ public class PersonService {
      */
     public void deletePerson(List<Person> persons, String firstName, String lastName) {
 
-        boolean isDeleted = persons.removeIf(p -> p.getFirstName().equals(firstName) && p.getLastName().equals(lastName));
+        boolean isDeleted = KeyIndex.removeAll(persons, IndexKey.PERSON_NAME, EntityType.key(firstName, lastName));
 
         if (!isDeleted) {
             throw new PersonDeleteException("No person was deleted with the provided user details!");
@@ -164,12 +184,11 @@ public class PersonService {
      */
     public static Person getPerson(List<Person> persons, String firstName, String lastName) throws NoHandlerFoundException {
 
-        for (Person person : persons) {
-            if (person.getFirstName().equals(firstName) && person.getLastName().equals(lastName)) {
-                return person;
-            }
+        Person person = KeyIndex.find(persons, IndexKey.PERSON_NAME, EntityType.key(firstName, lastName));
+        if (person == null) {
+            throw new NoHandlerFoundException("GET", "/" + firstName + "/" + lastName, null);
         }
-        throw new NoHandlerFoundException("GET", "/" + firstName + "/" + lastName, null);
+        return person;
     }
 
     /**
@@ -181,13 +200,11 @@ public class PersonService {
      */
     public static List<Person> getPersonsByAddresses(List<Person> persons, List<String> addresses) {
 
-        List<Person> result = new ArrayList<>();
-        for (Person person : persons) {
-            if (addresses.contains(person.getAddress())) {
-                result.add(person);
-            }
+        List<String> keys = new ArrayList<>(addresses.size());
+        for (String address : addresses) {
+            keys.add(IndexKey.valueKey(address));
         }
-        return result;
+        return KeyIndex.findAll(persons, IndexKey.PERSON_ADDRESS, keys);
     }
 
     /**
@@ -199,8 +216,7 @@ public class PersonService {
      */
     public static int calculateAge(String birthdate, LocalDate date) {
 
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MM/dd/yyyy");
-        LocalDate birthDate = LocalDate.parse(birthdate, formatter);
+        LocalDate birthDate = LocalDate.parse(birthdate, MedicalRecord.BIRTHDATE_FORMAT);
 
         return Period.between(birthDate, date).getYears();
     }
@@ -218,22 +234,21 @@ public class PersonService {
 
         List<PersonWithMedicalRecordDTO> result = new ArrayList<>();
         for (Person person : persons) {
-            for (MedicalRecord record : medicalRecords) {
-                if (person.getFirstName().equals(record.getFirstName()) && person.getLastName().equals(record.getLastName())) {
-                    PersonWithMedicalRecordDTO dto = new PersonWithMedicalRecordDTO();
-                    dto.setFirstName(person.getFirstName());
-                    dto.setLastName(person.getLastName());
-                    dto.setAddress(person.getAddress());
-                    dto.setCity(person.getCity());
-                    dto.setZip(person.getZip());
-                    dto.setPhone(person.getPhone());
-                    dto.setEmail(person.getEmail());
-                    dto.setAge(calculateAge(record.getBirthdate(), LocalDate.now()));
-                    dto.setBirthdate(record.getBirthdate());
-                    dto.setMedications(record.getMedications());
-                    dto.setAllergies(record.getAllergies());
-                    result.add(dto);
-                }
+            for (MedicalRecord record : KeyIndex.findAll(medicalRecords, IndexKey.MEDICAL_RECORD_NAME,
+                    EntityType.key(person.getFirstName(), person.getLastName()))) {
+                PersonWithMedicalRecordDTO dto = new PersonWithMedicalRecordDTO();
+                dto.setFirstName(person.getFirstName());
+                dto.setLastName(person.getLastName());
+                dto.setAddress(person.getAddress());
+                dto.setCity(person.getCity());
+                dto.setZip(person.getZip());
+                dto.setPhone(person.getPhone());
+                dto.setEmail(person.getEmail());
+                dto.setAge(AgeCalculator.age(record));
+                dto.setBirthdate(record.getBirthdate());
+                dto.setMedications(record.getMedications());
+                dto.setAllergies(record.getAllergies());
+                result.add(dto);
             }
         }
         return result;
@@ -253,18 +268,17 @@ public class PersonService {
 
         List<DataOfInhabitantsDTO> result = new ArrayList<>();
         for (Person person : persons) {
-            for (MedicalRecord record : medicalRecords) {
-                if (person.getFirstName().equals(record.getFirstName()) && person.getLastName().equals(record.getLastName())) {
-                    DataOfInhabitantsDTO dto = new DataOfInhabitantsDTO();
-                    dto.setFirestationNumber(firestationNumber);
-                    dto.setFirstName(person.getFirstName());
-                    dto.setLastName(person.getLastName());
-                    dto.setPhone(person.getPhone());
-                    dto.setAge(calculateAge(record.getBirthdate(),LocalDate.now()));
-                    dto.setMedications(record.getMedications());
-                    dto.setAllergies(record.getAllergies());
-                    result.add(dto);
-                }
+            for (MedicalRecord record : KeyIndex.findAll(medicalRecords, IndexKey.MEDICAL_RECORD_NAME,
+                    EntityType.key(person.getFirstName(), person.getLastName()))) {
+                DataOfInhabitantsDTO dto = new DataOfInhabitantsDTO();
+                dto.setFirestationNumber(firestationNumber);
+                dto.setFirstName(person.getFirstName());
+                dto.setLastName(person.getLastName());
+                dto.setPhone(person.getPhone());
+                dto.setAge(AgeCalculator.age(record));
+                dto.setMedications(record.getMedications());
+                dto.setAllergies(record.getAllergies());
+                result.add(dto);
             }
         }
         return result;
@@ -334,13 +348,11 @@ public class PersonService {
      */
     public static List<String> getListOfPhoneNumbers(List<Person> persons, List<String> addresses) {
 
-        List<String> phoneNumbers = new ArrayList<>();
-        for (Person person : persons) {
-            if (addresses.contains(person.getAddress()) && !phoneNumbers.contains(person.getPhone())) {
-                phoneNumbers.add(person.getPhone());
-            }
+        Set<String> phoneNumbers = new LinkedHashSet<>();
+        for (Person person : getPersonsByAddresses(persons, addresses)) {
+            phoneNumbers.add(person.getPhone());
         }
-        return phoneNumbers;
+        return new ArrayList<>(phoneNumbers);
     }
 
     /**
@@ -355,20 +367,19 @@ public class PersonService {
 
         List<PersoInfoDTO> result = new ArrayList<>();
         for (Person person : persons) {
-            for (MedicalRecord record : medicalRecords) {
-                if (person.getFirstName().equals(record.getFirstName()) && person.getLastName().equals(record.getLastName())) {
-                    PersoInfoDTO dto = new PersoInfoDTO();
-                    dto.setFirstName(person.getFirstName());
-                    dto.setLastName(person.getLastName());
-                    dto.setAddress(person.getAddress());
-                    dto.setCity(person.getCity());
-                    dto.setZip(person.getZip());
-                    dto.setEmail(person.getEmail());
-                    dto.setAge(calculateAge(record.getBirthdate(),LocalDate.now()));
-                    dto.setMedications(record.getMedications());
-                    dto.setAllergies(record.getAllergies());
-                    result.add(dto);
-                }
+            for (MedicalRecord record : KeyIndex.findAll(medicalRecords, IndexKey.MEDICAL_RECORD_NAME,
+                    EntityType.key(person.getFirstName(), person.getLastName()))) {
+                PersoInfoDTO dto = new PersoInfoDTO();
+                dto.setFirstName(person.getFirstName());
+                dto.setLastName(person.getLastName());
+                dto.setAddress(person.getAddress());
+                dto.setCity(person.getCity());
+                dto.setZip(person.getZip());
+                dto.setEmail(person.getEmail());
+                dto.setAge(AgeCalculator.age(record));
+                dto.setMedications(record.getMedications());
+                dto.setAllergies(record.getAllergies());
+                result.add(dto);
             }
         }
         return result;
@@ -382,14 +393,17 @@ public class PersonService {
      * @return the fetched PersonDTO object
      * @throws NoHandlerFoundException if no person with the specified first name and last name is found
      */
-    public static PersonDTO fetchPerson(String firstName, String lastName) throws NoHandlerFoundException {
+    public PersonDTO fetchPerson(String firstName, String lastName) throws NoHandlerFoundException {
 
-        DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper();
-        return PersonMapper.toPersonDTO(getPerson(dataWrapper.getPersons(), firstName, lastName));
+        Person person = dataStore.findPerson(firstName, lastName);
+        if (person == null) {
+            throw new NoHandlerFoundException("GET", "/" + firstName + "/" + lastName, null);
+        }
+        return PersonMapper.toPersonDTO(person);
     }
 
     /**
-     * Adds a person to the data wrapper and persists the changes,
+     * Adds a person to the data store and persists the changes,
      * then returns a PersonDTO object representing the added person.
      *
      * @param person the person object to be added and persisted
@@ -398,8 +412,7 @@ public class PersonService {
      */
     public PersonDTO addAndPersistPerson(Person person) throws IOException {
 
-        DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper();
-        addPerson(
+        dataStore.update(dataWrapper -> addPerson(
                 dataWrapper.getPersons(),
                 person.getFirstName(),
                 person.getLastName(),
@@ -408,8 +421,7 @@ public class PersonService {
                 person.getZip(),
                 person.getPhone(),
                 person.getEmail()
-        );
-        DataWrapperRepository.updateFileWithDataWrapper(dataWrapper);
+        ));
         return PersonMapper.toPersonDTO(person);
     }
 
@@ -423,30 +435,34 @@ public class PersonService {
      */
     public Optional<Map<String, HouseholdDTO>> getChildAlertData(String address) {
 
-        DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper();
-        List<Person> persons = getPersonsByAddresses(dataWrapper.getPersons(), Collections.singletonList(address));
-
-        List<MedicalRecord> medicalRecords = new ArrayList<>();
-        for (Person person : persons) {
-            MedicalRecord record = MedicalRecordService.getMedicalRecord(dataWrapper.getMedicalrecords(), person.getFirstName(), person.getLastName());
-            if (record != null) {
-                medicalRecords.add(record);
+        DataWrapper dataWrapper = dataStore.getDataWrapper();
+        AgeBrackets.Count count = AgeBrackets.atAddress(dataWrapper, address);
+        if (count.children() == 0 && count.invalid() == 0) {
+            return Optional.empty();   // no child aged 0 or over, so no household to list
+        }
+        long today = AgeCalculator.today();
+        Map<String, HouseholdDTO> response = new HashMap<>();
+        for (Households.Household household : Households.at(dataWrapper, address)) {
+            Households.Split split = household.split(today);
+            List<HouseholdMemberDTO> childrenMembers = toHouseholdMembers(split.minors(), today);
+            if (childrenMembers.stream().noneMatch(member -> member.getAge() >= 0)) {
+                continue;
             }
+            childrenMembers.addAll(toHouseholdMembers(split.adults(), today));
+            String key = childrenMembers.size() + " " + household.getLastName();
+            response.put(key, new HouseholdDTO(childrenMembers));
         }
-        List<PersonWithMedicalRecordDTO> personWithMedicalRecordDTOS = processPersonsAndRecords(persons, medicalRecords);
+        return response.isEmpty() ? Optional.empty() : Optional.of(response);
+    }
 
-        List<PersonWithMedicalRecordDTO> children = extractChildren(personWithMedicalRecordDTOS);
-        if (children.isEmpty()) {
-            return Optional.empty();
-        }
+    private static List<HouseholdMemberDTO> toHouseholdMembers(List<Households.Member> members, long today) {
 
-        List<HouseholdDTO> households = fetchHouseholds(personWithMedicalRecordDTOS, children);
-        Map<String, HouseholdDTO> response = new HashMap<>();
-        for (HouseholdDTO household : households) {
-            String key = household.getHouseholdMembers().size() + " " + household.getHouseholdMembers().get(0).getLastName();
-            response.put(key, household);
+        List<HouseholdMemberDTO> result = new ArrayList<>(members.size());
+        for (Households.Member member : members) {
+            result.add(new HouseholdMemberDTO(member.firstName(), member.lastName(), member.age(today)));
         }
-        return Optional.of(response);
+        result.sort(Comparator.comparingInt(HouseholdMemberDTO::getAge));   // sort from youngest to oldest
+        return result;
     }
     /**
      * Processes data for inhabitants based on the given address.
@@ -456,17 +472,10 @@ public class PersonService {
      */
     public List<DataOfInhabitantsDTO> processDataByAddress(String address) {
 
-        DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper();
+        DataWrapper dataWrapper = dataStore.getDataWrapper();
         Integer firestationNumber = FirestationService.getFirestationNumber(dataWrapper.getFirestations(), address);
         List<Person> persons = PersonService.getPersonsByAddresses(dataWrapper.getPersons(), Collections.singletonList(address));
-        List<MedicalRecord> medicalRecords = new ArrayList<>();
-        for (Person person : persons) {
-            MedicalRecord record = MedicalRecordService.getMedicalRecord(dataWrapper.getMedicalrecords(), person.getFirstName(), person.getLastName());
-            if (record != null) {
-                medicalRecords.add(record);
-            }
-        }
-        return PersonService.processPersonsDataOfInhabitants(persons, medicalRecords, firestationNumber);
+        return PersonService.processPersonsDataOfInhabitants(persons, dataWrapper.getMedicalrecords(), firestationNumber);
     }
 
     /**
@@ -478,22 +487,14 @@ public class PersonService {
      */
     public Map<Integer, List<DataOfInhabitantsDTO>> getPersonsDataByFirestationNumber(List<Integer> stationNumbers) {
 
-        DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper();
+        DataWrapper dataWrapper = dataStore.getDataWrapper();
         Map<Integer, List<DataOfInhabitantsDTO>> response = new HashMap<>();
 
         for (Integer stationNumber : stationNumbers) {
             List<String> addresses = getFirestationAddressesByStationNumber(dataWrapper.getFirestations(), stationNumber);
             List<Person> persons = getPersonsByAddresses(dataWrapper.getPersons(), addresses);
 
-            List<MedicalRecord> medicalRecords = new ArrayList<>();
-            for (Person person : persons) {
-                MedicalRecord record = getMedicalRecord(dataWrapper.getMedicalrecords(), person.getFirstName(), person.getLastName());
-                if (record != null) {
-                    medicalRecords.add(record);
-                }
-            }
-
-            List<DataOfInhabitantsDTO> inhabitants = processPersonsDataOfInhabitants(persons, medicalRecords, stationNumber);
+            List<DataOfInhabitantsDTO> inhabitants = processPersonsDataOfInhabitants(persons, dataWrapper.getMedicalrecords(), stationNumber);
             response.put(stationNumber, inhabitants);
         }
 
@@ -507,16 +508,35 @@ public class PersonService {
      */
     public void updatePersonDataWrapper(Person person) throws IOException {
 
-        DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper();
-        updatePerson(dataWrapper.getPersons(),
+        dataStore.update(dataWrapper -> updatePerson(dataWrapper.getPersons(),
                 person.getFirstName(),
                 person.getLastName(),
                 person.getAddress(),
                 person.getCity(),
                 person.getZip(),
                 person.getPhone(),
-                person.getEmail());
-        DataWrapperRepository.updateFileWithDataWrapper(dataWrapper);
+                person.getEmail()));
+    }
+
+    /**
+     * Updates the person data in the data wrapper only if the person is still at the expected version.
+     *
+     * @param person          The person object containing the updated data.
+     * @param expectedVersion The version of the person the update is based on, see {@link #getPersonVersion}.
+     * @throws IOException If an I/O error occurs while updating the data wrapper file.
+     * @throws com.amp.safetynetalerts.exception.PreconditionFailedException If the person changed since that version.
+     */
+    public void updatePersonDataWrapper(Person person, long expectedVersion) throws IOException {
+
+        dataStore.updateIfMatch(EntityType.PERSON, EntityType.key(person.getFirstName(), person.getLastName()), expectedVersion,
+                dataWrapper -> updatePerson(dataWrapper.getPersons(),
+                        person.getFirstName(),
+                        person.getLastName(),
+                        person.getAddress(),
+                        person.getCity(),
+                        person.getZip(),
+                        person.getPhone(),
+                        person.getEmail()));
     }
 
     /**
@@ -528,10 +548,35 @@ public class PersonService {
      */
     public void deletePersonDataWrapper(String firstName, String lastName) throws IOException {
 
-        DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper();
-        deletePerson(dataWrapper.getPersons(), firstName, lastName);
-        DataWrapperRepository.updateFileWithDataWrapper(dataWrapper);
+        dataStore.update(dataWrapper -> deletePerson(dataWrapper.getPersons(), firstName, lastName));
+    }
+
+    /**
+     * Deletes the person with the given first name and last name only if it is still at the expected version.
+     *
+     * @param firstName       the first name of the person
+     * @param lastName        the last name of the person
+     * @param expectedVersion the version of the person the deletion is based on, see {@link #getPersonVersion}
+     * @throws IOException if there is an error updating the data wrapper file
+     * @throws com.amp.safetynetalerts.exception.PreconditionFailedException if the person changed since that version
+     */
+    public void deletePersonDataWrapper(String firstName, String lastName, long expectedVersion) throws IOException {
+
+        dataStore.updateIfMatch(EntityType.PERSON, EntityType.key(firstName, lastName), expectedVersion,
+                dataWrapper -> deletePerson(dataWrapper.getPersons(), firstName, lastName));
+    }
 
+    /**
+     * Retrieves the version at which the person with the given first name and last name last changed,
+     * to be sent back as a precondition of its update or deletion.
+     *
+     * @param firstName the first name of the person
+     * @param lastName  the last name of the person
+     * @return the version of the person
+     */
+    public long getPersonVersion(String firstName, String lastName) {
+
+        return dataStore.getEntityVersion(EntityType.PERSON, EntityType.key(firstName, lastName));
     }
 
     /**
@@ -543,14 +588,12 @@ public class PersonService {
      */
     public List<PersoInfoDTO> getPersonInfoDataWrapper(String firstName, String lastName) {
 
-        DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper();
+        DataWrapper dataWrapper = dataStore.getDataWrapper();
         List<Person> persons = dataWrapper.getPersons();
         List<MedicalRecord> medicalRecords = dataWrapper.getMedicalrecords();
 
         // Filter the persons by firstName and lastName
-        List<Person> personsFiltered = persons.stream()
-                .filter(person -> person.getFirstName().equals(firstName) && person.getLastName().equals(lastName))
-                .collect(Collectors.toList());
+        List<Person> personsFiltered = KeyIndex.findAll(persons, IndexKey.PERSON_NAME, EntityType.key(firstName, lastName));
 
         // Call processPersonsToPersoInfoDTOs method in the PersonService to get the list of PersoInfoDTO
         return processPersonsToPersoInfoDTOs(personsFiltered, medicalRecords);
@@ -564,7 +607,7 @@ public class PersonService {
      */
     public List<String> getCommunityEmailsService(String city) {
 
-        DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper();
+        DataWrapper dataWrapper = dataStore.getDataWrapper();
 
         // Filter persons by city and remove duplicates by email using distinct
         List<Person> persons = dataWrapper.getPersons().stream()
@@ -0,0 +1,195 @@
+package com.amp.safetynetalerts.service;
+
+import com.amp.safetynetalerts.dto.ChangeSetDTO;
+import com.amp.safetynetalerts.dto.EntityChangesDTO;
+import com.amp.safetynetalerts.repository.ChangeFeed;
+import com.amp.safetynetalerts.repository.DataSnapshot;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.EntityType;
+import com.amp.safetynetalerts.repository.IndexKey;
+import com.amp.safetynetalerts.repository.KeyIndex;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Delta sync of the dataset for clients mirroring it: the changes since the version a client has, compacted to
+ * the last state of each changed entity, read from the commits retained by the {@link ChangeFeed}.
+ * <p>
+ * The changes are compacted by key, which only holds while each key designates at most one entity. The number of
+ * entities under each changed key is therefore counted in the snapshot of the last commit and traced back through
+ * the commits: if a key held several entities at any point, the whole dataset is returned instead.
+ */
+@Service
+public class SyncService {
+
+    private static final Object DELETED = new Object();
+    // Attempts at reading the snapshot of the last commit before falling back to a full resync
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final DataStore dataStore;
+    private final ChangeFeed changeFeed;
+
+    public SyncService(DataStore dataStore, ChangeFeed changeFeed) {
+        this.dataStore = dataStore;
+        this.changeFeed = changeFeed;
+    }
+
+    /**
+     * Retrieves the changes made since a version, as one upsert per entity changed and still present and one delete
+     * per key of an entity removed, entities inserted then removed in between being left out.
+     * If the commits following that version are no longer retained, the version is unknown or a changed key held
+     * several entities, the whole current dataset is returned instead as upserts, flagged as a full resync:
+     * the client replaces its copy with it.
+     *
+     * @param since the version the client has
+     * @return the change set, holding the version the client has once it is applied
+     */
+    public ChangeSetDTO getChangesSince(long since) {
+
+        List<ChangeFeed.Commit> commits = null;
+        DataSnapshot snapshot = null;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS && snapshot == null; attempt++) {
+            commits = changeFeed.commitsSince(since);
+            if (commits == null) {
+                return fullResync(since);
+            }
+            // A version is published before its commit, so the snapshot is at least as recent as the commits
+            DataSnapshot current = dataStore.getSnapshot();
+            long version = commits.isEmpty() ? since : commits.get(commits.size() - 1).version();
+            if (current.getVersion() == version) {
+                snapshot = current;
+            }
+        }
+        if (snapshot == null) {
+            return fullResync(since);
+        }
+
+        Map<EntityType, Map<String, Object>> latest = new EnumMap<>(EntityType.class);
+        Map<EntityType, Map<String, KeyCount>> counts = new EnumMap<>(EntityType.class);
+        Set<String> inserted = new HashSet<>();
+        for (EntityType type : EntityType.values()) {
+            latest.put(type, new LinkedHashMap<>());
+            counts.put(type, new HashMap<>());
+        }
+        long version = since;
+        for (ChangeFeed.Commit commit : commits) {
+            for (ChangeFeed.ChangeEvent change : commit.changes()) {
+                Map<String, Object> entities = latest.get(change.type());
+                Map<String, KeyCount> keyCounts = counts.get(change.type());
+                if (change.after() == null) {
+                    keyCounts.computeIfAbsent(change.key(), key -> new KeyCount(change.before())).add(-1);
+                    entities.put(change.key(), DELETED);
+                    continue;
+                }
+                String key = change.type().key(change.after());
+                if (change.before() != null || !key.equals(change.key())) {
+                    keyCounts.computeIfAbsent(change.key(), changed -> new KeyCount(change.before())).add(-1);
+                }
+                keyCounts.computeIfAbsent(key, changed -> new KeyCount(change.after())).add(1);
+                if (change.before() == null && !entities.containsKey(key)) {
+                    inserted.add(change.type() + key);
+                }
+                if (!key.equals(change.key())) {
+                    entities.put(change.key(), DELETED);
+                }
+                entities.put(key, change.after());
+            }
+            version = commit.version();
+        }
+        for (EntityType type : EntityType.values()) {
+            for (Map.Entry<String, KeyCount> keyCount : counts.get(type).entrySet()) {
+                if (keyCount.getValue().isAmbiguous(snapshot, type, keyCount.getKey())) {
+                    return fullResync(since);
+                }
+            }
+        }
+
+        ChangeSetDTO changeSet = new ChangeSetDTO();
+        changeSet.setSince(since);
+        changeSet.setVersion(version);
+        collect(latest.get(EntityType.PERSON), EntityType.PERSON, inserted, changeSet.getPersons());
+        collect(latest.get(EntityType.FIRESTATION), EntityType.FIRESTATION, inserted, changeSet.getFirestations());
+        collect(latest.get(EntityType.MEDICAL_RECORD), EntityType.MEDICAL_RECORD, inserted, changeSet.getMedicalrecords());
+        return changeSet;
+    }
+
+    /**
+     * The number of entities a key gained through the commits, and the most it gained at any point.
+     */
+    private static final class KeyCount {
+
+        private final Object sample;
+        private int delta;
+        private int maxDelta;
+
+        KeyCount(Object sample) {
+            this.sample = sample;
+        }
+
+        void add(int change) {
+            delta += change;
+            maxDelta = Math.max(maxDelta, delta);
+        }
+
+        /**
+         * Tells whether the key held several entities at any point of the commits, counting the ones it holds in the
+         * snapshot of the last commit. A key whose entities cannot be looked up is treated as ambiguous.
+         */
+        boolean isAmbiguous(DataSnapshot snapshot, EntityType type, String key) {
+            int now = count(snapshot, type, key, sample);
+            return now < 0 || now - delta + maxDelta > 1;
+        }
+    }
+
+    private static int count(DataSnapshot snapshot, EntityType type, String key, Object sample) {
+        return switch (type) {
+            case PERSON -> KeyIndex.positionsOf(snapshot.getPersons(), IndexKey.PERSON_NAME, key).length;
+            case MEDICAL_RECORD -> KeyIndex.positionsOf(snapshot.getMedicalrecords(), IndexKey.MEDICAL_RECORD_NAME, key).length;
+            case FIRESTATION -> {
+                if (sample == null) {
+                    yield -1;
+                }
+                int count = 0;
+                for (Object firestation : KeyIndex.findAll(snapshot.getFirestations(), IndexKey.FIRESTATION_ADDRESS,
+                        IndexKey.FIRESTATION_ADDRESS.key(sample))) {
+                    if (type.key(firestation).equals(key)) {
+                        count++;
+                    }
+                }
+                yield count;
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void collect(Map<String, Object> entities, EntityType type, Set<String> inserted, EntityChangesDTO<T> target) {
+
+        for (Map.Entry<String, Object> entry : entities.entrySet()) {
+            if (entry.getValue() != DELETED) {
+                target.getUpserts().add((T) entry.getValue());
+            } else if (!inserted.contains(type + entry.getKey())) {
+                target.getDeletes().add(entry.getKey());
+            }
+        }
+    }
+
+    private ChangeSetDTO fullResync(long since) {
+
+        DataSnapshot snapshot = dataStore.getSnapshot();
+        ChangeSetDTO changeSet = new ChangeSetDTO();
+        changeSet.setSince(since);
+        changeSet.setVersion(snapshot.getVersion());
+        changeSet.setFullResync(true);
+        changeSet.getPersons().getUpserts().addAll(snapshot.getPersons());
+        changeSet.getFirestations().getUpserts().addAll(snapshot.getFirestations());
+        changeSet.getMedicalrecords().getUpserts().addAll(snapshot.getMedicalrecords());
+        return changeSet;
+    }
+}
@@ -0,0 +1,203 @@
+package com.amp.safetynetalerts.utils;
+
+import com.amp.safetynetalerts.model.MedicalRecord;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes ages from birthdates held as epoch days, see {@link MedicalRecord#birthEpochDay()}, with integer
+ * arithmetic only: the birthdate is converted to a year, month and day by the civil-from-days algorithm and
+ * compared to the current date, which is cached until the next local midnight. Computing an age allocates nothing.
+ * <p>
+ * The ages are the ones of {@link java.time.Period#between(LocalDate, LocalDate)}: the number of complete years,
+ * rounded toward zero for a birthdate in the future.
+ * <p>
+ * A read as of a past time pins the date of that time as the current date of its thread, see {@link #pinDate(long)}.
+ * The other threads only check a counter of pinned threads.
+ */
+public final class AgeCalculator {
+
+    private static final long DAYS_0000_TO_1970 = 719_468;
+    private static final long DAYS_PER_CYCLE = 146_097;
+
+    private static volatile Clock clock = Clock.systemDefaultZone();
+    private static volatile Today today = Today.on(clock);
+
+    private static final ThreadLocal<Today> PINNED = new ThreadLocal<>();
+    private static final AtomicInteger pinnedThreads = new AtomicInteger();
+
+    /**
+     * Scope of a pinned date, restoring the previously pinned date of the thread when closed.
+     */
+    public interface Pin extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+
+    /**
+     * The current date, valid until the next local midnight.
+     */
+    private record Today(long epochDay, long prolepticMonth, int day, long untilMillis) {
+
+        static Today on(Clock clock) {
+            LocalDate date = LocalDate.now(clock);
+            long until = ZonedDateTime.of(date.plusDays(1).atStartOfDay(), clock.getZone()).toInstant().toEpochMilli();
+            return new Today(date.toEpochDay(), AgeCalculator.prolepticMonth(date.toEpochDay()), date.getDayOfMonth(), until);
+        }
+    }
+
+    private AgeCalculator() {
+    }
+
+    /**
+     * Calculates the age of the person of a medical record on the current date, or the pinned date of the thread.
+     *
+     * @param medicalRecord the medical record
+     * @return the age in years
+     * @throws java.time.format.DateTimeParseException If the birthdate of the record is not a valid date.
+     */
+    public static int age(MedicalRecord medicalRecord) {
+        return age(medicalRecord.birthEpochDay());
+    }
+
+    /**
+     * Calculates the age of a person born on a date, on the current date, or the pinned date of the thread.
+     *
+     * @param birthEpochDay the birthdate, as a number of days since 1970-01-01
+     * @return the age in years
+     */
+    public static int age(long birthEpochDay) {
+        Today current = current();
+        return years(birthEpochDay, current.prolepticMonth, current.day);
+    }
+
+    /**
+     * Calculates the age of a person born on a date, on another date.
+     *
+     * @param birthEpochDay the birthdate, as a number of days since 1970-01-01
+     * @param epochDay      the date the age is calculated on, as a number of days since 1970-01-01
+     * @return the age in years
+     */
+    public static int age(long birthEpochDay, long epochDay) {
+        Today current = today;
+        if (current.epochDay == epochDay) {
+            return years(birthEpochDay, current.prolepticMonth, current.day);
+        }
+        return years(birthEpochDay, prolepticMonth(epochDay), dayOfMonth(epochDay));
+    }
+
+    /**
+     * Retrieves the current date, cached until the next local midnight, or the pinned date of the thread.
+     *
+     * @return the current date, as a number of days since 1970-01-01
+     */
+    public static long today() {
+        return current().epochDay;
+    }
+
+    /**
+     * Makes the date of the given time, in the zone of the clock, the current date of the calling thread until
+     * the returned pin is closed, for the ages of a read as of that time.
+     *
+     * @param epochMillis the time, as a number of milliseconds since 1970-01-01T00:00:00Z
+     * @return the pin to close once the read is done
+     */
+    public static Pin pinDate(long epochMillis) {
+        Today pinned = Today.on(Clock.fixed(Instant.ofEpochMilli(epochMillis), clock.getZone()));
+        Today previous = PINNED.get();
+        PINNED.set(pinned);
+        pinnedThreads.incrementAndGet();
+        return () -> {
+            pinnedThreads.decrementAndGet();
+            if (previous == null) {
+                PINNED.remove();
+            } else {
+                PINNED.set(previous);
+            }
+        };
+    }
+
+    /**
+     * Tells whether the current date of the calling thread is pinned, see {@link #pinDate(long)}.
+     *
+     * @return true if the thread reads as of a past time
+     */
+    public static boolean isDatePinned() {
+        return pinnedThreads.get() != 0 && PINNED.get() != null;
+    }
+
+    /**
+     * Replaces the clock the current date is read from, for tests.
+     *
+     * @param newClock the clock
+     */
+    public static void setClock(Clock newClock) {
+        clock = newClock;
+        today = Today.on(newClock);
+    }
+
+    private static Today current() {
+        if (pinnedThreads.get() != 0) {
+            Today pinned = PINNED.get();
+            if (pinned != null) {
+                return pinned;
+            }
+        }
+        Today current = today;
+        if (clock.millis() >= current.untilMillis) {
+            current = Today.on(clock);
+            today = current;
+        }
+        return current;
+    }
+
+    private static int years(long birthEpochDay, long prolepticMonth, int day) {
+        long months = prolepticMonth - prolepticMonth(birthEpochDay);
+        int days = day - dayOfMonth(birthEpochDay);
+        if (months > 0 && days < 0) {
+            months--;
+        } else if (months < 0 && days > 0) {
+            months++;
+        }
+        return (int) (months / 12);
+    }
+
+    /**
+     * Returns the number of months from year 0 to an epoch day, year * 12 + month - 1.
+     */
+    private static long prolepticMonth(long epochDay) {
+        long dayOfEra = dayOfEra(epochDay);
+        long yearOfEra = yearOfEra(dayOfEra);
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        // The shifted year starts in March
+        long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era(epochDay) * 400 + (month <= 2 ? 1 : 0);
+        return year * 12 + month - 1;
+    }
+
+    private static int dayOfMonth(long epochDay) {
+        long dayOfEra = dayOfEra(epochDay);
+        long yearOfEra = yearOfEra(dayOfEra);
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        return (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+    }
+
+    private static long era(long epochDay) {
+        return Math.floorDiv(epochDay + DAYS_0000_TO_1970, DAYS_PER_CYCLE);
+    }
+
+    private static long dayOfEra(long epochDay) {
+        return epochDay + DAYS_0000_TO_1970 - era(epochDay) * DAYS_PER_CYCLE;
+    }
+
+    private static long yearOfEra(long dayOfEra) {
+        return (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+    }
+}
@@ -0,0 +1,86 @@
+package com.amp.safetynetalerts;
+
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.utils.AgeCalculator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgeCalculatorTest {
+
+    @AfterEach
+    void tearDown() {
+        AgeCalculator.setClock(Clock.systemDefaultZone());
+    }
+
+    @Test
+    void testAgeMatchesPeriodBetween() {
+
+        Random random = new Random(24);
+        long min = LocalDate.of(1600, 1, 1).toEpochDay();
+        long max = LocalDate.of(2400, 12, 31).toEpochDay();
+        for (int i = 0; i < 200_000; i++) {
+            long birthdate = min + (long) (random.nextDouble() * (max - min));
+            long date = min + (long) (random.nextDouble() * (max - min));
+            assertEquals(Period.between(LocalDate.ofEpochDay(birthdate), LocalDate.ofEpochDay(date)).getYears(),
+                    AgeCalculator.age(birthdate, date), LocalDate.ofEpochDay(birthdate) + " on " + LocalDate.ofEpochDay(date));
+        }
+    }
+
+    @Test
+    void testAgeAroundBirthdays() {
+
+        List<LocalDate> birthdates = List.of(LocalDate.of(2008, 2, 29), LocalDate.of(2008, 3, 1), LocalDate.of(2007, 12, 31),
+                LocalDate.of(2000, 1, 1), LocalDate.of(1969, 12, 31), LocalDate.of(2030, 6, 15));
+        for (LocalDate birthdate : birthdates) {
+            for (LocalDate date = LocalDate.of(2024, 1, 1); date.isBefore(LocalDate.of(2033, 1, 1)); date = date.plusDays(1)) {
+                assertEquals(Period.between(birthdate, date).getYears(), AgeCalculator.age(birthdate.toEpochDay(), date.toEpochDay()),
+                        birthdate + " on " + date);
+            }
+        }
+    }
+
+    @Test
+    void testTodayRollsOverAtMidnight() {
+
+        ZoneId zone = ZoneId.of("Europe/Paris");
+        AgeCalculator.setClock(Clock.fixed(Instant.parse("2026-03-05T22:59:59Z"), zone));
+        long birthdate = LocalDate.of(2008, 3, 6).toEpochDay();
+        assertEquals(LocalDate.of(2026, 3, 5).toEpochDay(), AgeCalculator.today());
+        assertEquals(17, AgeCalculator.age(birthdate));
+
+        AgeCalculator.setClock(Clock.fixed(Instant.parse("2026-03-05T23:00:00Z"), zone));
+        assertEquals(LocalDate.of(2026, 3, 6).toEpochDay(), AgeCalculator.today());
+        assertEquals(18, AgeCalculator.age(birthdate));
+    }
+
+    @Test
+    void testMedicalRecordParsesItsBirthdateOnce() {
+
+        MedicalRecord record = new MedicalRecord("John", "Boyd", "03/06/1984", List.of(), List.of());
+        assertEquals(LocalDate.of(1984, 3, 6).toEpochDay(), record.birthEpochDay());
+
+        record.setBirthdate("02/29/2008");
+        assertEquals(LocalDate.of(2008, 2, 29).toEpochDay(), record.birthEpochDay());
+        assertEquals(record, record.toBuilder().build());
+        assertEquals(record.birthEpochDay(), record.toBuilder().build().birthEpochDay());
+
+        MedicalRecord deserialized = new MedicalRecord();
+        deserialized.setFirstName("John");
+        assertThrows(NullPointerException.class, deserialized::birthEpochDay);
+
+        record.setBirthdate("13/01/2008");
+        assertThrows(DateTimeParseException.class, record::birthEpochDay);
+        assertThrows(DateTimeParseException.class, () -> AgeCalculator.age(record));
+    }
+}
@@ -0,0 +1,174 @@
+package com.amp.safetynetalerts;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.repository.ChangeFeed;
+import com.amp.safetynetalerts.repository.DataLayout;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.Durability;
+import com.amp.safetynetalerts.repository.EntityType;
+import com.amp.safetynetalerts.repository.JsonSnapshotStorage;
+import com.amp.safetynetalerts.repository.MutationJournal;
+import com.amp.safetynetalerts.repository.ReadMode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeFeedTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path dataFile;
+    private SimpleMeterRegistry meterRegistry;
+    private ChangeFeed changeFeed;
+
+    @BeforeEach
+    void setUp() throws IOException {
+
+        dataFile = tempDir.resolve("data.json");
+        DataWrapperRepository.updateFileWithDataWrapper(new DataWrapper(new ArrayList<>(), new ArrayList<>(), new ArrayList<>()), dataFile.toString());
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        changeFeed.stop();
+    }
+
+    private DataStore newDataStore(int retainedCommits, int bufferCapacity) {
+        changeFeed = new ChangeFeed(meterRegistry, retainedCommits, bufferCapacity);
+        DataStore store = new DataStore(dataFile.toString(),
+                new JsonSnapshotStorage(dataFile.toString(), DataLayout.SINGLE_FILE, Durability.NONE, false),
+                new MutationJournal(tempDir.resolve("data.journal").toString(), MutationJournal.FsyncPolicy.NEVER, 0),
+                null, ReadMode.RESIDENT, null, null, changeFeed);
+        store.load();
+        return store;
+    }
+
+    private static void addFirestation(DataStore store, String address) throws IOException {
+        store.update(dataWrapper -> dataWrapper.getFirestations().add(new Firestation(address, 1)));
+    }
+
+    /**
+     * Listener collecting the commits it receives, and the version of the gap if the subscription is dropped.
+     */
+    private static class Collector implements ChangeFeed.Listener {
+
+        final BlockingQueue<ChangeFeed.Commit> commits = new LinkedBlockingQueue<>();
+        final CountDownLatch gap = new CountDownLatch(1);
+        final CountDownLatch release;
+        volatile long gapVersion = -1;
+
+        Collector(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void onCommit(ChangeFeed.Commit commit) throws InterruptedException {
+            release.await();
+            commits.add(commit);
+        }
+
+        @Override
+        public void onGap(long lastVersion) {
+            gapVersion = lastVersion;
+            gap.countDown();
+        }
+
+        ChangeFeed.Commit next() throws InterruptedException {
+            return commits.poll(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void subscribe_receivesEachCommitWithItsPreviousEntity_andResumesFromAVersion() throws Exception {
+
+        DataStore store = newDataStore(100, 16);
+        Collector live = new Collector(new CountDownLatch(0));
+        try (ChangeFeed.Subscription ignored = changeFeed.subscribe(null, live)) {
+            addFirestation(store, "29 15th St");
+            store.update(dataWrapper -> dataWrapper.getFirestations().set(0, new Firestation("29 15th St", 2)));
+            store.update(dataWrapper -> dataWrapper.getFirestations().remove(0));
+
+            ChangeFeed.Commit inserted = live.next();
+            assertEquals(1, inserted.version());
+            assertEquals(List.of(new ChangeFeed.ChangeEvent(EntityType.FIRESTATION, EntityType.key("29 15th St", "1"),
+                    null, new Firestation("29 15th St", 1))), inserted.changes());
+            ChangeFeed.Commit replaced = live.next();
+            assertEquals(new Firestation("29 15th St", 1), replaced.changes().get(0).before());
+            assertEquals(new Firestation("29 15th St", 2), replaced.changes().get(0).after());
+            ChangeFeed.Commit removed = live.next();
+            assertEquals(3, removed.version());
+            assertNull(removed.changes().get(0).after());
+        }
+
+        Collector resumed = new Collector(new CountDownLatch(0));
+        try (ChangeFeed.Subscription ignored = changeFeed.subscribe(1L, resumed)) {
+            addFirestation(store, "834 Binoc Ave");
+            assertEquals(2, resumed.next().version());
+            assertEquals(3, resumed.next().version());
+            assertEquals(4, resumed.next().version());
+        }
+        assertEquals(0, changeFeed.getSubscribers());
+    }
+
+    @Test
+    void publish_toASlowSubscriber_dropsItWithoutStallingWriters() throws Exception {
+
+        DataStore store = newDataStore(100, 4);
+        CountDownLatch release = new CountDownLatch(1);
+        Collector slow = new Collector(release);
+        changeFeed.subscribe(null, slow);
+
+        for (int i = 0; i < 20; i++) {
+            addFirestation(store, "address " + i);
+        }
+        assertEquals(20, store.getVersion());
+        assertEquals(0, changeFeed.getSubscribers());
+        assertEquals(1, meterRegistry.get("safetynetalerts.changes.overflows").counter().count());
+
+        release.countDown();
+        assertTrue(slow.gap.await(5, TimeUnit.SECONDS));
+        assertTrue(slow.gapVersion >= 4 && slow.gapVersion <= 5);
+        assertEquals(slow.gapVersion, slow.commits.size());
+
+        Collector resumed = new Collector(new CountDownLatch(0));
+        try (ChangeFeed.Subscription ignored = changeFeed.subscribe(slow.gapVersion, resumed)) {
+            for (long version = slow.gapVersion + 1; version <= 20; version++) {
+                assertEquals(version, resumed.next().version());
+            }
+        }
+    }
+
+    @Test
+    void subscribe_fromAVersionNoLongerRetained_reportsTheGap() throws Exception {
+
+        DataStore store = newDataStore(3, 16);
+        for (int i = 0; i < 5; i++) {
+            addFirestation(store, "address " + i);
+        }
+
+        Collector collector = new Collector(new CountDownLatch(0));
+        changeFeed.subscribe(1L, collector);
+
+        assertTrue(collector.gap.await(5, TimeUnit.SECONDS));
+        assertEquals(1, collector.gapVersion);
+        assertTrue(collector.commits.isEmpty());
+        assertEquals(0, changeFeed.getSubscribers());
+    }
+}
@@ -0,0 +1,288 @@
+package com.amp.safetynetalerts;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.Checkpointer;
+import com.amp.safetynetalerts.repository.DataLayout;
+import com.amp.safetynetalerts.repository.DataSnapshot;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.Durability;
+import com.amp.safetynetalerts.repository.EntityType;
+import com.amp.safetynetalerts.repository.JsonSnapshotStorage;
+import com.amp.safetynetalerts.repository.MutationJournal;
+import com.amp.safetynetalerts.repository.ReadMode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckpointerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path dataFile;
+    private Path journalFile;
+    private DataStore dataStore;
+    private SimpleMeterRegistry meterRegistry;
+    private Checkpointer checkpointer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+
+        dataFile = tempDir.resolve("data.json");
+        DataWrapper dataWrapper = new DataWrapper(
+                new ArrayList<>(List.of(new Person("John", "Boyd", "1509 Culver St", "Culver", "97451", "841-874-6512", "jaboyd@email.com"))),
+                new ArrayList<>(List.of(new Firestation("1509 Culver St", 3))),
+                new ArrayList<>(List.of(new MedicalRecord("John", "Boyd", "03/06/1984", List.of(), List.of()))));
+        DataWrapperRepository.updateFileWithDataWrapper(dataWrapper, dataFile.toString());
+        journalFile = tempDir.resolve("data.journal");
+        meterRegistry = new SimpleMeterRegistry();
+        dataStore = newDataStore();
+        checkpointer = new Checkpointer(dataStore, dataStore.getJournal(), meterRegistry, 3, Long.MAX_VALUE, Long.MAX_VALUE, Durability.NONE);
+    }
+
+    private DataStore newDataStore() {
+        return newDataStore(DataLayout.SINGLE_FILE);
+    }
+
+    private DataStore newSegmentedDataStore() {
+        return newDataStore(DataLayout.SEGMENTED);
+    }
+
+    private DataStore newDataStore(DataLayout layout) {
+        DataStore store = new DataStore(dataFile.toString(),
+                new JsonSnapshotStorage(dataFile.toString(), layout, Durability.NONE, true),
+                new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.NEVER, 0),
+                null, ReadMode.RESIDENT);
+        store.load();
+        return store;
+    }
+
+    private Checkpointer segmentedCheckpointer() throws IOException {
+        dataStore.getJournal().close();
+        dataStore = newSegmentedDataStore();
+        return new Checkpointer(dataStore, dataStore.getJournal(), new SimpleMeterRegistry(), 3, Long.MAX_VALUE, Long.MAX_VALUE, Durability.NONE);
+    }
+
+    private long segmentVersion(EntityType type) throws IOException {
+        return DataWrapperRepository.readVersion(DataWrapperRepository.getSegmentFile(dataFile.toString(), type));
+    }
+
+    private void addFirestation(String address) throws IOException {
+        dataStore.update(dataWrapper -> dataWrapper.getFirestations().add(new Firestation(address, 2)));
+    }
+
+    private long journalFiles() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("data.journal")).count();
+        }
+    }
+
+    @Test
+    void isDue_whenRecordThresholdIsReached() throws IOException {
+
+        addFirestation("29 15th St");
+        addFirestation("834 Binoc Ave");
+        assertFalse(checkpointer.isDue());
+
+        addFirestation("644 Gershwin Cir");
+        assertTrue(checkpointer.isDue());
+    }
+
+    @Test
+    void checkpoint_writesVersionedBaseAndDeletesJournal() throws IOException {
+
+        addFirestation("29 15th St");
+        addFirestation("834 Binoc Ave");
+
+        DataSnapshot base = checkpointer.checkpoint();
+
+        assertEquals(2, base.getVersion());
+        assertEquals(0, journalFiles());
+        assertEquals(0, dataStore.getJournal().getPendingRecords());
+        DataSnapshot written = DataWrapperRepository.getSnapshot(dataFile.toString());
+        assertEquals(2, written.getVersion());
+        assertEquals(3, written.getFirestations().size());
+        assertEquals(1, meterRegistry.get("safetynetalerts.checkpoint.duration").timer().count());
+        assertFalse(checkpointer.isDue());
+    }
+
+    @Test
+    void load_afterCheckpoint_readsCurrentBinarySnapshot() throws IOException {
+
+        addFirestation("29 15th St");
+        checkpointer.checkpoint();
+        dataStore.getJournal().close();
+        // Same version but other content: only the binary snapshot holds the added firestation.
+        FileTime written = Files.getLastModifiedTime(dataFile);
+        DataWrapperRepository.updateFileWithSnapshot(DataSnapshot.of(1, new DataWrapper()), dataFile.toString(), Durability.NONE);
+        Files.setLastModifiedTime(dataFile, written);
+
+        DataStore reloaded = newDataStore();
+
+        assertEquals(1, reloaded.getVersion());
+        assertEquals(dataStore.getDataWrapper().getFirestations(), reloaded.getDataWrapper().getFirestations());
+    }
+
+    @Test
+    void load_whenJsonIsNewerThanBinarySnapshot_readsJson() throws IOException {
+
+        addFirestation("29 15th St");
+        checkpointer.checkpoint();
+        dataStore.getJournal().close();
+        DataWrapperRepository.updateFileWithSnapshot(DataSnapshot.of(1, new DataWrapper()), dataFile.toString(), Durability.NONE);
+        Path binaryFile = Path.of(DataWrapperRepository.getBinarySnapshotFile(dataFile.toString()));
+        Files.setLastModifiedTime(binaryFile, FileTime.fromMillis(Files.getLastModifiedTime(dataFile).toMillis() - 1000));
+
+        DataStore reloaded = newDataStore();
+
+        assertTrue(reloaded.getDataWrapper().getFirestations().isEmpty());
+    }
+
+    @Test
+    void checkpoint_segmented_rewritesOnlyChangedCollections() throws IOException {
+
+        Checkpointer segmented = segmentedCheckpointer();
+        addFirestation("29 15th St");
+        segmented.checkpoint();
+        String persons = Files.readString(Path.of(DataWrapperRepository.getSegmentFile(dataFile.toString(), EntityType.PERSON)));
+
+        addFirestation("834 Binoc Ave");
+        segmented.checkpoint();
+
+        assertEquals(1, segmentVersion(EntityType.PERSON));
+        assertEquals(1, segmentVersion(EntityType.MEDICAL_RECORD));
+        assertEquals(2, segmentVersion(EntityType.FIRESTATION));
+        assertEquals(persons, Files.readString(Path.of(DataWrapperRepository.getSegmentFile(dataFile.toString(), EntityType.PERSON))));
+        assertEquals(0, DataWrapperRepository.readVersion(dataFile.toString()));
+        assertFalse(Files.exists(Path.of(DataWrapperRepository.getBinarySnapshotFile(dataFile.toString()))));
+    }
+
+    @Test
+    void load_segmented_replaysEachCollectionFromItsSegmentVersion() throws IOException {
+
+        Checkpointer segmented = segmentedCheckpointer();
+        addFirestation("29 15th St");
+        segmented.checkpoint();
+        dataStore.update(dataWrapper -> dataWrapper.getPersons().add(new Person("Jacob", "Boyd", "1509 Culver St", "Culver", "97451", "841-874-6513", "drk@email.com")));
+        addFirestation("834 Binoc Ave");
+        // A crash after the firestations segment was written, before the persons segment and the journal cleanup.
+        DataWrapperRepository.updateSegmentWithSnapshot(dataStore.getSnapshot(), EntityType.FIRESTATION, dataFile.toString(), Durability.NONE);
+        dataStore.getJournal().close();
+
+        DataStore reloaded = newSegmentedDataStore();
+
+        assertEquals(3, reloaded.getVersion());
+        assertEquals(dataStore.getDataWrapper().getPersons(), reloaded.getDataWrapper().getPersons());
+        assertEquals(dataStore.getDataWrapper().getFirestations(), reloaded.getDataWrapper().getFirestations());
+        assertEquals(dataStore.getDataWrapper().getMedicalrecords(), reloaded.getDataWrapper().getMedicalrecords());
+    }
+
+    @Test
+    void export_writesSegmentedDataAsSingleFile() throws IOException {
+
+        Checkpointer segmented = segmentedCheckpointer();
+        addFirestation("29 15th St");
+        segmented.checkpoint();
+        Path exported = tempDir.resolve("export.json");
+
+        segmented.export(exported.toString());
+
+        DataSnapshot snapshot = DataWrapperRepository.getSnapshot(exported.toString());
+        assertEquals(1, snapshot.getVersion());
+        assertEquals(1, snapshot.getPersons().size());
+        assertEquals(2, snapshot.getFirestations().size());
+        assertEquals(1, snapshot.getMedicalrecords().size());
+    }
+
+    @Test
+    void checkpoint_withExportFile_exportsTheNewBase() throws IOException {
+
+        dataStore.getJournal().close();
+        dataStore = newSegmentedDataStore();
+        Path exported = tempDir.resolve("export.json");
+        Checkpointer exporting = new Checkpointer(dataStore, dataStore.getJournal(), new SimpleMeterRegistry(),
+                3, Long.MAX_VALUE, Long.MAX_VALUE, Durability.NONE, exported.toString());
+        addFirestation("29 15th St");
+        addFirestation("834 Binoc Ave");
+
+        DataSnapshot base = exporting.checkpoint();
+
+        DataSnapshot snapshot = DataWrapperRepository.getSnapshot(exported.toString());
+        assertEquals(2, snapshot.getVersion());
+        assertEquals(base.getPersons(), snapshot.getPersons());
+        assertEquals(base.getFirestations(), snapshot.getFirestations());
+        assertEquals(base.getMedicalrecords(), snapshot.getMedicalrecords());
+
+        addFirestation("644 Gershwin Cir");
+        exporting.checkpoint();
+
+        assertEquals(4, DataWrapperRepository.getSnapshot(exported.toString()).getFirestations().size());
+    }
+
+    @Test
+    void checkpoint_rebasesEntityVersionsOnTheNewBase() throws IOException {
+
+        addFirestation("29 15th St");
+        addFirestation("834 Binoc Ave");
+        String first = EntityType.FIRESTATION.key(new Firestation("29 15th St", 2));
+        assertEquals(1, dataStore.getSnapshot().getEntityVersion(EntityType.FIRESTATION, first));
+
+        checkpointer.checkpoint();
+        addFirestation("644 Gershwin Cir");
+        dataStore.getJournal().close();
+
+        DataSnapshot reloaded = newDataStore().getSnapshot();
+        DataSnapshot snapshot = dataStore.getSnapshot();
+        assertEquals(2, snapshot.getEntityVersion(EntityType.FIRESTATION, first));
+        for (Firestation firestation : snapshot.getFirestations()) {
+            String key = EntityType.FIRESTATION.key(firestation);
+            assertEquals(reloaded.getEntityVersion(EntityType.FIRESTATION, key), snapshot.getEntityVersion(EntityType.FIRESTATION, key));
+        }
+        assertEquals(3, snapshot.getEntityVersion(EntityType.FIRESTATION, EntityType.FIRESTATION.key(new Firestation("644 Gershwin Cir", 2))));
+    }
+
+    @Test
+    void load_afterCheckpoint_replaysOnlyNewerRecords() throws IOException {
+
+        addFirestation("29 15th St");
+        checkpointer.checkpoint();
+        addFirestation("834 Binoc Ave");
+        dataStore.getJournal().close();
+
+        DataStore reloaded = newDataStore();
+
+        assertEquals(2, reloaded.getVersion());
+        assertEquals(dataStore.getDataWrapper().getFirestations(), reloaded.getDataWrapper().getFirestations());
+    }
+
+    @Test
+    void load_whenSegmentsWereNotDeleted_skipsRecordsCoveredByBase() throws IOException {
+
+        addFirestation("29 15th St");
+        DataSnapshot base = dataStore.rollJournal();
+        DataWrapperRepository.updateFileWithSnapshot(base, dataFile.toString(), Durability.NONE);
+        addFirestation("834 Binoc Ave");
+        dataStore.getJournal().close();
+
+        DataStore reloaded = newDataStore();
+
+        assertEquals(2, journalFiles());
+        assertEquals(3, reloaded.getDataWrapper().getFirestations().size());
+        assertEquals(2, reloaded.getVersion());
+    }
+}
@@ -0,0 +1,104 @@
+package com.amp.safetynetalerts;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.Checkpointer;
+import com.amp.safetynetalerts.repository.DataFileWatcher;
+import com.amp.safetynetalerts.repository.DataLayout;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.Durability;
+import com.amp.safetynetalerts.repository.JsonSnapshotStorage;
+import com.amp.safetynetalerts.repository.MutationJournal;
+import com.amp.safetynetalerts.repository.ReadMode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataFileWatcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path dataFile;
+    private JsonSnapshotStorage storage;
+    private DataStore dataStore;
+    private Checkpointer checkpointer;
+    private SimpleMeterRegistry meterRegistry;
+    private DataFileWatcher watcher;
+
+    @BeforeEach
+    void setUp() throws IOException {
+
+        dataFile = tempDir.resolve("data.json");
+        DataWrapperRepository.updateFileWithDataWrapper(dataWrapper("841-874-6512"), dataFile.toString());
+        storage = new JsonSnapshotStorage(dataFile.toString(), DataLayout.SINGLE_FILE, Durability.NONE, false);
+        dataStore = new DataStore(dataFile.toString(), storage,
+                new MutationJournal(tempDir.resolve("data.journal").toString(), MutationJournal.FsyncPolicy.NEVER, 0), null, ReadMode.RESIDENT);
+        dataStore.load();
+        meterRegistry = new SimpleMeterRegistry();
+        checkpointer = new Checkpointer(dataStore, dataStore.getJournal(), meterRegistry,
+                1000, Long.MAX_VALUE, Long.MAX_VALUE, Durability.NONE);
+        watcher = new DataFileWatcher(dataFile.toString(), dataStore, checkpointer, storage, meterRegistry, true, 50);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        watcher.stop();
+        dataStore.getJournal().close();
+    }
+
+    private static DataWrapper dataWrapper(String phone) {
+        return new DataWrapper(
+                new ArrayList<>(List.of(new Person("John", "Boyd", "1509 Culver St", "Culver", "97451", phone, "jaboyd@email.com"))),
+                new ArrayList<>(List.of(new Firestation("1509 Culver St", 3))),
+                new ArrayList<>(List.of(new MedicalRecord("John", "Boyd", "03/06/1984", List.of(), List.of()))));
+    }
+
+    @Test
+    void externalChange_isReloadedAndCheckpointed() throws Exception {
+
+        watcher.start();
+
+        DataWrapperRepository.updateFileWithDataWrapper(dataWrapper("841-874-0000"), dataFile.toString());
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (meterRegistry.get("safetynetalerts.data.reloads").counter().count() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals("841-874-0000", dataStore.findPerson("John", "Boyd").getPhone());
+        assertEquals(1, dataStore.getVersion());
+        assertEquals(1, DataWrapperRepository.readVersion(dataFile.toString()));
+    }
+
+    @Test
+    void reloadIfChanged_ignoresFileWrittenByCheckpoint() throws IOException {
+
+        dataStore.update(dataWrapper -> dataWrapper.getFirestations().add(new Firestation("29 15th St", 2)));
+        checkpointer.checkpoint();
+
+        assertFalse(watcher.reloadIfChanged());
+        assertEquals(1, dataStore.getVersion());
+    }
+
+    @Test
+    void reloadIfChanged_whenFileIsMalformed_keepsCurrentData() throws IOException {
+
+        Files.writeString(dataFile, "{\"persons\":[{\"firstName\":");
+
+        assertFalse(watcher.reloadIfChanged());
+        assertEquals("841-874-6512", dataStore.findPerson("John", "Boyd").getPhone());
+    }
+}
@@ -0,0 +1,427 @@
+package com.amp.safetynetalerts;
+
+import com.amp.safetynetalerts.dto.PersonWithMedicalRecordDTO;
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.AgeBrackets;
+import com.amp.safetynetalerts.repository.Change;
+import com.amp.safetynetalerts.repository.DataSnapshot;
+import com.amp.safetynetalerts.repository.EntityType;
+import com.amp.safetynetalerts.repository.Households;
+import com.amp.safetynetalerts.repository.IndexKey;
+import com.amp.safetynetalerts.repository.KeyIndex;
+import com.amp.safetynetalerts.service.FirestationService;
+import com.amp.safetynetalerts.service.PersonService;
+import com.amp.safetynetalerts.utils.AgeCalculator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataSnapshotTest {
+
+    private static DataSnapshot snapshotOf(int firestations) {
+        List<Firestation> list = new ArrayList<>();
+        for (int i = 0; i < firestations; i++) {
+            list.add(new Firestation("address " + i, i % 4));
+        }
+        return DataSnapshot.of(0, new DataWrapper(new ArrayList<>(), list, new ArrayList<>()));
+    }
+
+    @Test
+    void draft_afterRandomEdits_isPublishedWithoutChangingPreviousSnapshots() {
+
+        Random random = new Random(42);
+        DataSnapshot snapshot = snapshotOf(1500);
+        List<DataSnapshot> published = new ArrayList<>();
+        List<List<Firestation>> copies = new ArrayList<>();
+        int nextAddress = 1500;
+        for (int round = 1; round <= 10; round++) {
+            published.add(snapshot);
+            copies.add(new ArrayList<>(snapshot.getFirestations()));
+            List<Change> changes = new ArrayList<>();
+            DataWrapper draft = snapshot.toDraft(changes);
+            List<Firestation> expected = new ArrayList<>(snapshot.getFirestations());
+            for (int i = 0; i < 300; i++) {
+                List<Firestation> firestations = draft.getFirestations();
+                int operation = random.nextInt(3);
+                if (operation == 0 || expected.isEmpty()) {
+                    Firestation added = new Firestation("address " + nextAddress++, round);
+                    firestations.add(added);
+                    expected.add(added);
+                } else if (operation == 1) {
+                    int index = random.nextInt(expected.size());
+                    Firestation replaced = expected.get(index).toBuilder().station(round).build();
+                    firestations.set(index, replaced);
+                    expected.set(index, replaced);
+                } else {
+                    int index = random.nextInt(expected.size());
+                    firestations.remove(index);
+                    expected.remove(index);
+                }
+            }
+            assertEquals(expected, draft.getFirestations());
+
+            DataSnapshot replayed = snapshot.apply(round, changes);
+            snapshot = DataSnapshot.of(round, draft);
+
+            assertEquals(expected, snapshot.getFirestations());
+            assertEquals(expected, replayed.getFirestations());
+        }
+        for (int version = 0; version < published.size(); version++) {
+            assertEquals(copies.get(version), published.get(version).getFirestations());
+        }
+        assertThrows(UnsupportedOperationException.class, () -> published.get(0).getFirestations().remove(0));
+    }
+
+    @Test
+    void draft_insertingBeforeTheEnd_isRejected() {
+
+        DataSnapshot snapshot = snapshotOf(3);
+        List<Change> changes = new ArrayList<>();
+        List<Firestation> firestations = snapshot.toDraft(changes).getFirestations();
+
+        assertThrows(UnsupportedOperationException.class, () -> firestations.add(0, new Firestation("new address", 1)));
+        assertThrows(UnsupportedOperationException.class, () -> firestations.addAll(1, List.of(new Firestation("new address", 1))));
+        assertThrows(IndexOutOfBoundsException.class, () -> firestations.add(4, new Firestation("new address", 1)));
+        assertTrue(changes.isEmpty());
+
+        firestations.add(3, new Firestation("new address", 1));
+        assertEquals("new address", firestations.get(3).getAddress());
+        assertEquals(1, changes.size());
+    }
+
+    @Test
+    void indexes_missingAddressOrStation_isNotFoundAsTheTextNull() {
+
+        Person homeless = new Person("John", "Boyd", null, "Culver", "97451", "841-874-6512", "jaboyd@email.com");
+        Firestation unassigned = new Firestation(null, null);
+        DataSnapshot snapshot = DataSnapshot.of(0, new DataWrapper(
+                new ArrayList<>(List.of(homeless)),
+                new ArrayList<>(List.of(unassigned, new Firestation("1509 Culver St", 3))),
+                new ArrayList<>(List.of(new MedicalRecord("John", "Boyd", "03/06/1984", List.of(), List.of())))));
+        DataWrapper dataWrapper = snapshot.toDataWrapper();
+
+        assertTrue(KeyIndex.findAll(dataWrapper.getPersons(), IndexKey.PERSON_ADDRESS, "null").isEmpty());
+        assertTrue(Households.at(dataWrapper, "null").isEmpty());
+        assertEquals(AgeBrackets.Count.NONE, AgeBrackets.atAddress(dataWrapper, "null"));
+        assertNull(FirestationService.getFirestationNumber(dataWrapper.getFirestations(), "null"));
+        assertTrue(KeyIndex.findAll(dataWrapper.getFirestations(), IndexKey.FIRESTATION_STATION, "null").isEmpty());
+        assertEquals(List.of(homeless), PersonService.getPersonsByAddresses(dataWrapper.getPersons(), Collections.singletonList(null)));
+        assertEquals(List.of(unassigned), KeyIndex.findAll(dataWrapper.getFirestations(), IndexKey.FIRESTATION_ADDRESS, IndexKey.valueKey(null)));
+
+        DataSnapshot next = snapshot.apply(1, List.of(Change.remove(EntityType.FIRESTATION, unassigned)));
+        assertEquals(List.of(new Firestation("1509 Culver St", 3)), next.getFirestations());
+    }
+
+    @Test
+    void getEntityVersion_afterManyChanges_isTrackedPerEntity() {
+
+        DataSnapshot snapshot = snapshotOf(3000);
+        List<Change> changes = new ArrayList<>();
+        DataWrapper draft = snapshot.toDraft(changes);
+        for (int i = 0; i < 3000; i += 2) {
+            draft.getFirestations().set(i, draft.getFirestations().get(i).toBuilder().station(9).build());
+        }
+        DataSnapshot next = snapshot.apply(1, changes);
+
+        for (int i = 0; i < 3000; i++) {
+            String key = EntityType.key("address " + i, String.valueOf(i % 2 == 0 ? 9 : i % 4));
+            assertEquals(i % 2 == 0 ? 1 : 0, next.getEntityVersion(EntityType.FIRESTATION, key), key);
+            assertEquals(0, snapshot.getEntityVersion(EntityType.FIRESTATION, key));
+        }
+    }
+
+    @Test
+    void keyIndex_afterRandomEdits_findsTheSamePersonsAsAScan() {
+
+        Random random = new Random(7);
+        List<Person> persons = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            persons.add(new Person("First" + i % 200, "Boyd", "address " + i, "Culver", "97451", "841-874-6512", "jaboyd@email.com"));
+        }
+        DataSnapshot snapshot = DataSnapshot.of(0, new DataWrapper(persons, new ArrayList<>(), new ArrayList<>()));
+        for (int round = 1; round <= 5; round++) {
+            DataWrapper draft = snapshot.toDraft(new ArrayList<>());
+            List<Person> draftPersons = draft.getPersons();
+            for (int i = 0; i < 200; i++) {
+                Person person = new Person("First" + random.nextInt(250), "Boyd", "address " + round, "Culver", "97451", "841-874-6512", "jaboyd@email.com");
+                int operation = random.nextInt(3);
+                if (operation == 0 || draftPersons.isEmpty()) {
+                    draftPersons.add(person);
+                } else if (operation == 1) {
+                    draftPersons.set(random.nextInt(draftPersons.size()), person);
+                } else {
+                    draftPersons.remove(random.nextInt(draftPersons.size()));
+                }
+            }
+            assertIndexed(draftPersons);
+            snapshot = DataSnapshot.of(round, draft);
+            assertIndexed(snapshot.getPersons());
+        }
+    }
+
+    @Test
+    void apply_journalChangesWithoutPreviousState_matchesTheTargetsOfAScanOnAnIndexedDraft() {
+
+        Random random = new Random(20);
+        List<Person> persons = new ArrayList<>();
+        List<Firestation> firestations = new ArrayList<>();
+        List<MedicalRecord> medicalRecords = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            persons.add(new Person("First" + i % 1800, "Boyd", "address " + i % 300, "Culver", "97451", "841-874-6512", null));
+            firestations.add(new Firestation(i % 5 == 0 ? null : "address " + i % 300, i % 3));
+            medicalRecords.add(new MedicalRecord("First" + i % 1800, "Boyd", "03/06/1984", List.of(), List.of()));
+        }
+        DataSnapshot snapshot = DataSnapshot.of(0, new DataWrapper(persons, firestations, medicalRecords));
+        DataWrapper scanned = new DataWrapper(new ArrayList<>(persons), new ArrayList<>(firestations), new ArrayList<>(medicalRecords));
+        for (int round = 1; round <= 5; round++) {
+            // Changes read back from the journal only hold the key of the entity they replace or remove
+            List<Change> changes = new ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                String personKey = EntityType.key("First" + random.nextInt(2200), "Boyd");
+                String address = random.nextInt(5) == 0 ? null : "address " + random.nextInt(320);
+                String firestationKey = EntityType.key(address, String.valueOf(random.nextInt(4)));
+                switch (random.nextInt(5)) {
+                    case 0 -> changes.add(new Change(EntityType.PERSON, personKey,
+                            new Person("New" + round + "-" + i, "Boyd", "address " + round, "Culver", "97451", "841-874-6512", null)));
+                    case 1 -> changes.add(new Change(EntityType.PERSON, personKey, null));
+                    case 2 -> changes.add(new Change(EntityType.MEDICAL_RECORD, personKey, random.nextBoolean() ? null
+                            : new MedicalRecord("New" + round + "-" + i, "Boyd", "01/01/2000", List.of(), List.of())));
+                    case 3 -> changes.add(new Change(EntityType.FIRESTATION, firestationKey, new Firestation(address, round)));
+                    default -> changes.add(new Change(EntityType.FIRESTATION, firestationKey, null));
+                }
+            }
+            snapshot = snapshot.apply(round, changes);
+            for (Change change : changes) {
+                change.applyTo(change.getType().list(scanned));
+            }
+            assertEquals(scanned.getFirestations(), snapshot.getFirestations());
+            assertEquals(scanned.getPersons(), snapshot.getPersons());
+            assertEquals(scanned.getMedicalrecords(), snapshot.getMedicalrecords());
+        }
+    }
+
+    @Test
+    void firestationIndexes_afterRandomEditsByTheService_findTheSameAddressesAndStationsAsAScan() {
+
+        Random random = new Random(11);
+        FirestationService firestationService = new FirestationService(null);
+        DataSnapshot snapshot = snapshotOf(400);
+        for (int round = 1; round <= 5; round++) {
+            DataWrapper draft = snapshot.toDraft(new ArrayList<>());
+            List<Firestation> firestations = draft.getFirestations();
+            for (int i = 0; i < 100; i++) {
+                String address = "address " + random.nextInt(450);
+                int station = random.nextInt(6);
+                int operation = random.nextInt(4);
+                if (operation == 0 || firestations.isEmpty()) {
+                    firestationService.addFirestation(firestations, address, station);
+                } else if (operation == 1 && FirestationService.getFirestationNumber(firestations, address) != null) {
+                    firestationService.updateFirestationStationNumber(firestations, address, station);
+                } else if (operation == 2 && FirestationService.getFirestationNumber(firestations, address) != null) {
+                    firestationService.deleteFirestation(firestations, address, null);
+                } else if (operation == 3 && !FirestationService.getFirestationAddresses(firestations, station).isEmpty()) {
+                    firestationService.deleteFirestation(firestations, null, station);
+                }
+            }
+            snapshot = DataSnapshot.of(round, draft);
+            List<Firestation> scanned = new ArrayList<>(snapshot.getFirestations());
+            for (int station = 0; station < 6; station++) {
+                assertEquals(FirestationService.getFirestationAddresses(scanned, station),
+                        FirestationService.getFirestationAddresses(snapshot.getFirestations(), station));
+            }
+            for (int address = 0; address < 450; address++) {
+                assertEquals(FirestationService.getFirestationNumber(scanned, "address " + address),
+                        FirestationService.getFirestationNumber(snapshot.getFirestations(), "address " + address));
+            }
+        }
+    }
+
+    @Test
+    void residentIndex_afterRandomEditsByTheService_findsTheSameResidentsAsAScan() {
+
+        Random random = new Random(13);
+        PersonService personService = new PersonService(null);
+        DataSnapshot snapshot = DataSnapshot.of(0, new DataWrapper(new ArrayList<>(), new ArrayList<>(), new ArrayList<>()));
+        for (int round = 1; round <= 5; round++) {
+            DataWrapper draft = snapshot.toDraft(new ArrayList<>());
+            List<Person> persons = draft.getPersons();
+            for (int i = 0; i < 200; i++) {
+                String firstName = "First" + random.nextInt(100);
+                String address = "address " + random.nextInt(30);
+                int operation = random.nextInt(3);
+                if (operation == 0 || persons.isEmpty()) {
+                    personService.addPerson(persons, firstName, "Boyd", address, "Culver", "97451", "841-874-" + i, null);
+                } else if (operation == 1 && KeyIndex.indexOf(persons, IndexKey.PERSON_NAME, EntityType.key(firstName, "Boyd")) >= 0) {
+                    personService.updatePerson(persons, firstName, "Boyd", address, null, null, null, null);
+                } else if (operation == 2 && KeyIndex.indexOf(persons, IndexKey.PERSON_NAME, EntityType.key(firstName, "Boyd")) >= 0) {
+                    personService.deletePerson(persons, firstName, "Boyd");
+                }
+            }
+            snapshot = DataSnapshot.of(round, draft);
+            List<Person> scanned = new ArrayList<>(snapshot.getPersons());
+            for (int address = 0; address < 30; address += 3) {
+                List<String> addresses = List.of("address " + address, "address " + (address + 1), "address " + address);
+                assertEquals(PersonService.getPersonsByAddresses(scanned, addresses),
+                        PersonService.getPersonsByAddresses(snapshot.getPersons(), addresses));
+                assertEquals(PersonService.getListOfPhoneNumbers(scanned, addresses),
+                        PersonService.getListOfPhoneNumbers(snapshot.getPersons(), addresses));
+            }
+        }
+    }
+
+    @Test
+    void households_afterRandomPersonAndMedicalRecordEdits_areTheOnesComputedFromTheLists() {
+
+        Random random = new Random(17);
+        DataSnapshot snapshot = DataSnapshot.of(0, new DataWrapper(new ArrayList<>(), new ArrayList<>(), new ArrayList<>()));
+        assertTrue(Households.at(snapshot.toDataWrapper(), "address 0").isEmpty());
+        for (int round = 1; round <= 20; round++) {
+            List<Change> changes = new ArrayList<>();
+            DataWrapper draft = snapshot.toDraft(changes);
+            for (int i = 0; i < 20; i++) {
+                String firstName = "First" + random.nextInt(40);
+                String lastName = "Last" + random.nextInt(3);
+                String address = "address " + random.nextInt(5);
+                String birthdate = String.format("%02d/%02d/%d", random.nextInt(12) + 1, random.nextInt(28) + 1, LocalDate.now().getYear() - random.nextInt(40));
+                int person = KeyIndex.indexOf(draft.getPersons(), IndexKey.PERSON_NAME, EntityType.key(firstName, lastName));
+                int record = KeyIndex.indexOf(draft.getMedicalrecords(), IndexKey.MEDICAL_RECORD_NAME, EntityType.key(firstName, lastName));
+                switch (random.nextInt(4)) {
+                    case 0 -> draft.getPersons().add(new Person(firstName, lastName, address, "Culver", "97451", "841-874-6512", null));
+                    case 1 -> draft.getMedicalrecords().add(new MedicalRecord(firstName, lastName, birthdate, List.of(), List.of()));
+                    case 2 -> {
+                        if (person >= 0) {
+                            draft.getPersons().set(person, draft.getPersons().get(person).toBuilder().address(address).build());
+                        } else if (record >= 0) {
+                            draft.getMedicalrecords().set(record, draft.getMedicalrecords().get(record).toBuilder().birthdate(birthdate).build());
+                        }
+                    }
+                    default -> {
+                        if (person >= 0) {
+                            draft.getPersons().remove(person);
+                        } else if (record >= 0) {
+                            draft.getMedicalrecords().remove(record);
+                        }
+                    }
+                }
+            }
+            snapshot = snapshot.apply(round, changes);
+            DataWrapper copy = new DataWrapper(new ArrayList<>(snapshot.getPersons()), new ArrayList<>(), new ArrayList<>(snapshot.getMedicalrecords()));
+            for (int address = 0; address < 5; address++) {
+                assertEquals(households(Households.at(copy, "address " + address)),
+                        households(Households.at(snapshot.toDataWrapper(), "address " + address)));
+            }
+        }
+    }
+
+    @Test
+    void ageBrackets_afterRandomEditsAndDays_areTheOnesCountedFromTheLists() {
+
+        Random random = new Random(25);
+        LocalDate start = LocalDate.of(2026, 2, 20);
+        DataSnapshot snapshot = DataSnapshot.of(0, new DataWrapper(new ArrayList<>(), new ArrayList<>(), new ArrayList<>()));
+        assertEquals(AgeBrackets.Count.NONE, AgeBrackets.ofStation(snapshot.toDataWrapper(), 1));
+        try {
+            for (int round = 1; round <= 40; round++) {
+                LocalDate today = start.plusDays(round / 2);
+                AgeCalculator.setClock(Clock.fixed(today.atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC));
+                List<Change> changes = new ArrayList<>();
+                DataWrapper draft = snapshot.toDraft(changes);
+                for (int i = 0; i < 20; i++) {
+                    String firstName = "First" + random.nextInt(40);
+                    String lastName = "Last" + random.nextInt(3);
+                    String address = "address " + random.nextInt(5);
+                    // Born around 18 years ago or around a year from now, so that persons move between brackets
+                    LocalDate born = random.nextBoolean() ? start.minusYears(18) : start.plusYears(1);
+                    String birthdate = born.plusDays(random.nextInt(30) - 5).format(MedicalRecord.BIRTHDATE_FORMAT);
+                    int person = KeyIndex.indexOf(draft.getPersons(), IndexKey.PERSON_NAME, EntityType.key(firstName, lastName));
+                    int record = KeyIndex.indexOf(draft.getMedicalrecords(), IndexKey.MEDICAL_RECORD_NAME, EntityType.key(firstName, lastName));
+                    int firestation = KeyIndex.indexOf(draft.getFirestations(), IndexKey.FIRESTATION_ADDRESS, address);
+                    switch (random.nextInt(5)) {
+                        case 0 -> draft.getPersons().add(new Person(firstName, lastName, address, "Culver", "97451", "841-874-6512", null));
+                        case 1 -> draft.getMedicalrecords().add(new MedicalRecord(firstName, lastName, birthdate, List.of(), List.of()));
+                        case 2 -> {
+                            if (firestation >= 0 && random.nextBoolean()) {
+                                draft.getFirestations().remove(firestation);
+                            } else {
+                                draft.getFirestations().add(new Firestation(address, random.nextInt(3)));
+                            }
+                        }
+                        case 3 -> {
+                            if (person >= 0) {
+                                draft.getPersons().set(person, draft.getPersons().get(person).toBuilder().address(address).build());
+                            } else if (record >= 0) {
+                                draft.getMedicalrecords().set(record, draft.getMedicalrecords().get(record).toBuilder().birthdate(birthdate).build());
+                            }
+                        }
+                        default -> {
+                            if (person >= 0) {
+                                draft.getPersons().remove(person);
+                            } else if (record >= 0) {
+                                draft.getMedicalrecords().remove(record);
+                            }
+                        }
+                    }
+                }
+                snapshot = snapshot.apply(round, changes);
+                DataWrapper copy = new DataWrapper(new ArrayList<>(snapshot.getPersons()), new ArrayList<>(snapshot.getFirestations()),
+                        new ArrayList<>(snapshot.getMedicalrecords()));
+                for (int address = 0; address < 5; address++) {
+                    assertEquals(AgeBrackets.atAddress(copy, "address " + address),
+                            AgeBrackets.atAddress(snapshot.toDataWrapper(), "address " + address));
+                }
+                for (int station = 0; station < 3; station++) {
+                    AgeBrackets.Count count = AgeBrackets.ofStation(snapshot.toDataWrapper(), station);
+                    assertEquals(AgeBrackets.ofStation(copy, station), count);
+                    List<PersonWithMedicalRecordDTO> persons = PersonService.processPersonsAndRecords(PersonService.getPersonsByAddresses(
+                            copy.getPersons(), FirestationService.getFirestationAddresses(copy.getFirestations(), station)), copy.getMedicalrecords());
+                    assertEquals(PersonService.countAdultsAndChildren(persons), PersonService.countAdultsAndChildren(count));
+                }
+            }
+            DataWrapper copy = new DataWrapper(new ArrayList<>(snapshot.getPersons()), new ArrayList<>(snapshot.getFirestations()),
+                    new ArrayList<>(snapshot.getMedicalrecords()));
+            for (int day = 21; day < 40; day++) {
+                LocalDate today = start.plusDays(day);
+                AgeCalculator.setClock(Clock.fixed(today.atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC));
+                for (int station = 0; station < 3; station++) {
+                    assertEquals(AgeBrackets.ofStation(copy, station), AgeBrackets.ofStation(snapshot.toDataWrapper(), station), today.toString());
+                }
+            }
+        } finally {
+            AgeCalculator.setClock(Clock.systemDefaultZone());
+        }
+    }
+
+    private static TreeMap<String, List<String>> households(List<Households.Household> households) {
+        TreeMap<String, List<String>> members = new TreeMap<>();
+        for (Households.Household household : households) {
+            Households.Split split = household.split(AgeCalculator.today());
+            List<String> names = new ArrayList<>();
+            split.minors().forEach(member -> names.add("minor " + member.firstName() + " " + member.medicalRecord().getBirthdate()));
+            split.adults().forEach(member -> names.add("adult " + member.firstName() + " " + member.medicalRecord().getBirthdate()));
+            names.sort(null);
+            members.put(household.getLastName(), names);
+        }
+        return members;
+    }
+
+    private static void assertIndexed(List<Person> persons) {
+        List<Person> scanned = new ArrayList<>(persons);
+        for (int i = 0; i < 250; i++) {
+            String key = EntityType.key("First" + i, "Boyd");
+            assertArrayEquals(KeyIndex.positionsOf(scanned, IndexKey.PERSON_NAME, key), KeyIndex.positionsOf(persons, IndexKey.PERSON_NAME, key), key);
+            assertEquals(KeyIndex.indexOf(scanned, IndexKey.PERSON_NAME, key), KeyIndex.indexOf(persons, IndexKey.PERSON_NAME, key), key);
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package com.amp.safetynetalerts;
+
+import com.amp.safetynetalerts.exception.PreconditionFailedException;
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.Change;
+import com.amp.safetynetalerts.repository.DataLayout;
+import com.amp.safetynetalerts.repository.DataSnapshot;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.Durability;
+import com.amp.safetynetalerts.repository.EntityType;
+import com.amp.safetynetalerts.repository.JsonSnapshotStorage;
+import com.amp.safetynetalerts.repository.MutationJournal;
+import com.amp.safetynetalerts.repository.ReadMode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path dataFile;
+    private Path journalFile;
+    private DataStore dataStore;
+
+    @BeforeEach
+    void setUp() throws IOException {
+
+        dataFile = tempDir.resolve("data.json");
+        DataWrapper dataWrapper = new DataWrapper(
+                new ArrayList<>(List.of(new Person("John", "Boyd", "1509 Culver St", "Culver", "97451", "841-874-6512", "jaboyd@email.com"))),
+                new ArrayList<>(List.of(new Firestation("1509 Culver St", 3))),
+                new ArrayList<>(List.of(new MedicalRecord("John", "Boyd", "03/06/1984", List.of(), List.of()))));
+        DataWrapperRepository.updateFileWithDataWrapper(dataWrapper, dataFile.toString());
+
+        journalFile = tempDir.resolve("data.journal");
+        dataStore = newDataStore();
+    }
+
+    private DataStore newDataStore() {
+        DataStore store = new DataStore(dataFile.toString(),
+                new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.NEVER, 0));
+        store.load();
+        return store;
+    }
+
+    @Test
+    void getDataWrapper_isServedFromMemory() throws IOException {
+
+        Files.delete(dataFile);
+
+        assertEquals("John", dataStore.getDataWrapper().getPersons().get(0).getFirstName());
+    }
+
+    @Test
+    void getDataWrapper_isReadOnly() {
+
+        List<Person> persons = dataStore.getDataWrapper().getPersons();
+
+        assertThrows(UnsupportedOperationException.class, () -> persons.add(new Person()));
+    }
+
+    @Test
+    void update_publishesNewVersionAndLeavesPreviousSnapshotUnchanged() throws IOException {
+
+        DataSnapshot before = dataStore.getSnapshot();
+
+        dataStore.update(dataWrapper -> dataWrapper.getFirestations().add(new Firestation("29 15th St", 2)));
+
+        DataSnapshot after = dataStore.getSnapshot();
+        assertEquals(before.getVersion() + 1, after.getVersion());
+        assertEquals(1, before.getFirestations().size());
+        assertEquals(2, after.getFirestations().size());
+    }
+
+    @Test
+    void update_isAppendedToJournalAndReplayedAtLoad() throws IOException {
+
+        dataStore.update(dataWrapper -> dataWrapper.getPersons().set(0, dataWrapper.getPersons().get(0).toBuilder().city("Paris").build()));
+        dataStore.update(dataWrapper -> dataWrapper.getFirestations().add(new Firestation("29 15th St", 2)));
+        dataStore.update(dataWrapper -> dataWrapper.getMedicalrecords().clear());
+        dataStore.getJournal().close();
+
+        assertEquals(1, DataWrapperRepository.getDataWrapper(dataFile.toString()).getMedicalrecords().size());
+        assertTrue(Files.size(journalFile) > 0);
+
+        DataStore reloaded = newDataStore();
+        assertEquals(dataStore.getVersion(), reloaded.getVersion());
+        assertEquals("Paris", reloaded.getDataWrapper().getPersons().get(0).getCity());
+        assertEquals(dataStore.getDataWrapper().getFirestations(), reloaded.getDataWrapper().getFirestations());
+        assertTrue(reloaded.getDataWrapper().getMedicalrecords().isEmpty());
+    }
+
+    @Test
+    void update_whenJournalAppendFails_withdrawsTheVersionAndTurnsReadOnly() throws IOException {
+
+        boolean[] failing = {false};
+        DataStore store = new DataStore(dataFile.toString(),
+                new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.NEVER, 0) {
+                    @Override
+                    public synchronized long append(long version, List<Change> changes) throws IOException {
+                        if (failing[0]) {
+                            throw new IOException("No space left on device");
+                        }
+                        return super.append(version, changes);
+                    }
+                });
+        store.load();
+        store.update(dataWrapper -> dataWrapper.getFirestations().add(new Firestation("29 15th St", 2)));
+        DataSnapshot journaled = store.getSnapshot();
+
+        failing[0] = true;
+        assertThrows(IOException.class,
+                () -> store.update(dataWrapper -> dataWrapper.getFirestations().add(new Firestation("834 Binoc Ave", 3))));
+        assertSame(journaled, store.getSnapshot());
+        assertTrue(store.isReadOnly());
+
+        failing[0] = false;
+        assertThrows(IOException.class,
+                () -> store.update(dataWrapper -> dataWrapper.getFirestations().add(new Firestation("644 Gershwin Cir", 1))));
+        assertSame(journaled, store.getSnapshot());
+        store.getJournal().close();
+
+        DataStore reloaded = newDataStore();
+        assertEquals(journaled.getVersion(), reloaded.getVersion());
+        assertEquals(journaled.getFirestations(), reloaded.getDataWrapper().getFirestations());
+        assertFalse(reloaded.isReadOnly());
+    }
+
+    @Test
+    void update_withoutChange_publishesNothing() throws IOException {
+
+        DataSnapshot before = dataStore.getSnapshot();
+
+        dataStore.update(dataWrapper -> dataWrapper.getPersons().removeIf(person -> person.getFirstName().equals("Nobody")));
+
+        assertSame(before, dataStore.getSnapshot());
+        assertFalse(Files.exists(journalFile));
+    }
+
+    @Test
+    void update_fromConcurrentWriters_appliesEveryMutationOnce() throws Exception {
+
+        DataStore store = new DataStore(dataFile.toString(),
+                new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.ALWAYS, 0));
+        store.load();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String address = i + " Culver St";
+            futures.add(executor.submit(() -> {
+                store.update(dataWrapper -> dataWrapper.getFirestations().add(new Firestation(address, 1)));
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        store.getJournal().close();
+
+        assertEquals(200, store.getVersion());
+        assertEquals(201, store.getDataWrapper().getFirestations().size());
+        assertTrue(store.getJournal().getForceCount() <= 200);
+        assertEquals(201, newDataStore().getDataWrapper().getFirestations().size());
+    }
+
+    @Test
+    void getEntityVersion_isTheVersionOfTheLastChangeOfTheEntity() throws IOException {
+
+        String john = EntityType.key("John", "Boyd");
+        dataStore.update(dataWrapper -> dataWrapper.getFirestations().add(new Firestation("29 15th St", 2)));
+        dataStore.update(dataWrapper -> dataWrapper.getPersons().set(0, dataWrapper.getPersons().get(0).toBuilder().city("Paris").build()));
+        dataStore.update(dataWrapper -> dataWrapper.getFirestations().add(new Firestation("834 Binoc Ave", 3)));
+
+        assertEquals(2, dataStore.getEntityVersion(EntityType.PERSON, john));
+        assertEquals(0, dataStore.getEntityVersion(EntityType.MEDICAL_RECORD, john));
+        assertEquals(1, dataStore.getEntityVersion(EntityType.FIRESTATION, EntityType.key("29 15th St", "2")));
+        assertEquals(3, dataStore.getEntityVersion(EntityType.FIRESTATION, EntityType.key("834 Binoc Ave", "3")));
+    }
+
+    @Test
+    void updateIfMatch_whenEntityChangedSinceExpectedVersion_publishesNothing() throws IOException {
+
+        String john = EntityType.key("John", "Boyd");
+        long read = dataStore.getEntityVersion(EntityType.PERSON, john);
+        dataStore.update(dataWrapper -> dataWrapper.getPersons().set(0, dataWrapper.getPersons().get(0).toBuilder().city("Paris").build()));
+        DataSnapshot before = dataStore.getSnapshot();
+
+        assertThrows(PreconditionFailedException.class, () -> dataStore.updateIfMatch(EntityType.PERSON, john, read,
+                dataWrapper -> dataWrapper.getPersons().set(0, dataWrapper.getPersons().get(0).toBuilder().city("Lyon").build())));
+
+        assertSame(before, dataStore.getSnapshot());
+        dataStore.updateIfMatch(EntityType.PERSON, john, dataStore.getEntityVersion(EntityType.PERSON, john),
+                dataWrapper -> dataWrapper.getPersons().set(0, dataWrapper.getPersons().get(0).toBuilder().city("Lyon").build()));
+        assertEquals("Lyon", dataStore.getDataWrapper().getPersons().get(0).getCity());
+    }
+
+    @Test
+    void updateIfMatch_afterRestart_acceptsTheVersionReadBeforeIt() throws IOException {
+
+        String john = EntityType.key("John", "Boyd");
+        dataStore.update(dataWrapper -> dataWrapper.getPersons().set(0, dataWrapper.getPersons().get(0).toBuilder().city("Paris").build()));
+        dataStore.update(dataWrapper -> dataWrapper.getFirestations().add(new Firestation("29 15th St", 2)));
+        dataStore.update(dataWrapper -> dataWrapper.getPersons().add(new Person("Jacob", "Boyd", "1509 Culver St", "Culver", "97451", "841-874-6513", "drk@email.com")));
+        long read = dataStore.getEntityVersion(EntityType.PERSON, john);
+        dataStore.getJournal().close();
+
+        DataStore restarted = newDataStore();
+
+        assertEquals(1, read);
+        assertEquals(read, restarted.getEntityVersion(EntityType.PERSON, john));
+        assertEquals(2, restarted.getEntityVersion(EntityType.FIRESTATION, EntityType.key("29 15th St", "2")));
+        restarted.updateIfMatch(EntityType.PERSON, john, read,
+                dataWrapper -> dataWrapper.getPersons().set(0, dataWrapper.getPersons().get(0).toBuilder().city("Lyon").build()));
+        assertEquals("Lyon", restarted.getDataWrapper().getPersons().get(0).getCity());
+    }
+
+    @Test
+    void updateIfMatch_fromConcurrentReadModifyWriteCycles_losesNoUpdate() throws Exception {
+
+        String john = EntityType.key("John", "Boyd");
+        dataStore.update(dataWrapper -> dataWrapper.getPersons().set(0, dataWrapper.getPersons().get(0).toBuilder().zip("0").build()));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(executor.submit(() -> {
+                while (true) {
+                    long version = dataStore.getEntityVersion(EntityType.PERSON, john);
+                    int zip = Integer.parseInt(dataStore.findPerson("John", "Boyd").getZip());
+                    try {
+                        dataStore.updateIfMatch(EntityType.PERSON, john, version, dataWrapper -> dataWrapper.getPersons()
+                                .set(0, dataWrapper.getPersons().get(0).toBuilder().zip(String.valueOf(zip + 1)).build()));
+                        return null;
+                    } catch (PreconditionFailedException e) {
+                        // Read again and retry
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals("100", dataStore.findPerson("John", "Boyd").getZip());
+        assertEquals(101, dataStore.getVersion());
+    }
+
+    @Test
+    void mappedMode_servesLookupsWithoutLoading() {
+
+        DataStore mapped = new DataStore(dataFile.toString(),
+                new JsonSnapshotStorage(dataFile.toString(), DataLayout.SINGLE_FILE, Durability.NONE, false),
+                new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.NEVER, 0), null, ReadMode.MAPPED);
+        mapped.init();
+
+        assertEquals("1509 Culver St", mapped.findPerson("John", "Boyd").getAddress());
+        assertEquals("03/06/1984", mapped.findMedicalRecord("John", "Boyd").getBirthdate());
+        assertNull(mapped.findPerson("Jacob", "Boyd"));
+        assertFalse(mapped.isLoaded());
+
+        assertEquals(1, mapped.getDataWrapper().getPersons().size());
+        assertTrue(mapped.isLoaded());
+    }
+
+    @Test
+    void mappedMode_overlaysJournalChanges() throws IOException {
+
+        dataStore.update(dataWrapper -> dataWrapper.getPersons().set(0, dataWrapper.getPersons().get(0).toBuilder().city("Paris").build()));
+        dataStore.update(dataWrapper -> dataWrapper.getPersons().add(new Person("Jacob", "Boyd", "1509 Culver St", "Culver", "97451", "841-874-6513", "drk@email.com")));
+        dataStore.update(dataWrapper -> dataWrapper.getMedicalrecords().clear());
+        dataStore.getJournal().close();
+
+        DataStore mapped = new DataStore(dataFile.toString(),
+                new JsonSnapshotStorage(dataFile.toString(), DataLayout.SINGLE_FILE, Durability.NONE, false),
+                new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.NEVER, 0), null, ReadMode.MAPPED);
+        mapped.init();
+
+        assertEquals("Paris", mapped.findPerson("John", "Boyd").getCity());
+        assertEquals("841-874-6513", mapped.findPerson("Jacob", "Boyd").getPhone());
+        assertNull(mapped.findMedicalRecord("John", "Boyd"));
+        assertFalse(mapped.isLoaded());
+    }
+
+    @Test
+    void reload_publishesOnlyChangedEntities() throws IOException {
+
+        DataSnapshot before = dataStore.getSnapshot();
+        DataWrapper refreshed = new DataWrapper(
+                new ArrayList<>(List.of(
+                        new Person("John", "Boyd", "1509 Culver St", "Culver", "97451", "841-874-0000", "jaboyd@email.com"),
+                        new Person("Jacob", "Boyd", "1509 Culver St", "Culver", "97451", "841-874-6513", "drk@email.com"))),
+                new ArrayList<>(List.of(new Firestation("1509 Culver St", 3))),
+                new ArrayList<>());
+
+        int changed = dataStore.reload(DataSnapshot.of(0, refreshed));
+
+        assertEquals(3, changed);
+        assertEquals(before.getVersion() + 1, dataStore.getVersion());
+        assertEquals(refreshed.getPersons(), dataStore.getDataWrapper().getPersons());
+        assertSame(before.getFirestations().get(0), dataStore.getDataWrapper().getFirestations().get(0));
+        assertTrue(dataStore.getDataWrapper().getMedicalrecords().isEmpty());
+        assertEquals(0, dataStore.reload(DataSnapshot.of(0, refreshed)));
+    }
+
+    @Test
+    void reload_withDuplicateKey_isReplayedAtLoadAsPublished() throws IOException {
+
+        DataWrapper refreshed = new DataWrapper(
+                new ArrayList<>(List.of(
+                        new Person("John", "Boyd", "1509 Culver St", "Culver", "97451", "841-874-6512", "jaboyd@email.com"),
+                        new Person("John", "Boyd", "29 15th St", "Culver", "97451", "841-874-6513", "john@email.com"))),
+                new ArrayList<>(List.of(new Firestation("1509 Culver St", 3))),
+                new ArrayList<>(List.of(new MedicalRecord("John", "Boyd", "03/06/1984", List.of(), List.of()))));
+        assertEquals(1, dataStore.reload(DataSnapshot.of(0, refreshed)));
+        dataStore.getJournal().close();
+
+        DataStore reloaded = newDataStore();
+
+        assertEquals(refreshed.getPersons(), dataStore.getDataWrapper().getPersons());
+        assertEquals(refreshed.getPersons(), reloaded.getDataWrapper().getPersons());
+    }
+
+    @Test
+    void update_whenMutationThrows_publishesNothing() {
+
+        DataSnapshot before = dataStore.getSnapshot();
+
+        assertThrows(IllegalStateException.class, () -> dataStore.update(dataWrapper -> {
+            dataWrapper.getPersons().clear();
+            throw new IllegalStateException("rejected");
+        }));
+
+        assertSame(before, dataStore.getSnapshot());
+        assertEquals(1, dataStore.getDataWrapper().getPersons().size());
+    }
+}
@@ -1,11 +1,19 @@
 package com.amp.safetynetalerts;
 
 import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.DataSnapshot;
 import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.Durability;
+import com.amp.safetynetalerts.repository.EntityType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.MockedConstruction;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.mockito.MockedStatic;
 
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -13,12 +21,23 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.Mockito;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import static org.mockito.Mockito.*;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
-import static org.mockito.ArgumentMatchers.anyString;
 
 @ExtendWith(MockitoExtension.class)
 class DataWrapperRepositoryTest {
@@ -68,22 +87,184 @@ class DataWrapperRepositoryTest {
     }
 
     @Test
-    void updateFileWithDataWrapper_throwsIOException() {
-        try (MockedConstruction<FileWriter> mockedConstruction = Mockito.mockConstruction(FileWriter.class,
-                (mock, context) -> {
-                    doThrow(new IOException()).when(mock).write(anyString());
-                })) {
+    void updateFileWithDataWrapper_throwsIOException(@TempDir Path tempDir) {
 
-            try {
-                DataWrapperRepository.updateFileWithDataWrapper(new DataWrapper());
-            } catch (Exception exception) {
-                assertTrue(exception instanceof IOException);
-                assertEquals("An error occurred while updating the file with DataWrapper", exception.getMessage());
+        String fileInMissingDirectory = tempDir.resolve("missing").resolve("data.json").toString();
+
+        IOException exception = assertThrows(IOException.class, () -> DataWrapperRepository.updateFileWithDataWrapper(new DataWrapper(), fileInMissingDirectory));
+
+        assertEquals("An error occurred while updating the file with DataWrapper", exception.getMessage());
+    }
+
+    @ParameterizedTest
+    @EnumSource(Durability.class)
+    void updateFileWithDataWrapper_replacesFileAtomically(Durability durability, @TempDir Path tempDir) throws IOException {
+
+        Path file = tempDir.resolve("data.json");
+        Files.writeString(file, "{}");
+        DataWrapper dataWrapper = new DataWrapper(List.of(new Person("John", "Boyd", "1509 Culver St", "Culver", "97451", "841-874-6512", "jaboyd@email.com")), List.of(), List.of());
+
+        DataWrapperRepository.updateFileWithDataWrapper(dataWrapper, file.toString(), durability);
+
+        assertEquals("John", DataWrapperRepository.getDataWrapper(file.toString()).getPersons().get(0).getFirstName());
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(List.of(file), files.toList());
+        }
+    }
+
+    @Test
+    void updateFileWithDataWrapper_keepsPermissionsOfReplacedFile(@TempDir Path tempDir) throws IOException {
+
+        assumeTrue(Files.getFileStore(tempDir).supportsFileAttributeView(PosixFileAttributeView.class));
+        Path file = tempDir.resolve("data.json");
+        Path binaryFile = tempDir.resolve("data.json.bin");
+        Files.writeString(file, "{}");
+        Files.write(binaryFile, new byte[0]);
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r--r--");
+        Files.setPosixFilePermissions(file, permissions);
+        Files.setPosixFilePermissions(binaryFile, permissions);
+        DataWrapper dataWrapper = new DataWrapper(List.of(new Person("John", "Boyd", "1509 Culver St", "Culver", "97451", "841-874-6512", "jaboyd@email.com")), List.of(), List.of());
+
+        DataWrapperRepository.updateFileWithDataWrapper(dataWrapper, file.toString(), Durability.NONE);
+        DataWrapperRepository.updateBinarySnapshot(DataSnapshot.of(1, dataWrapper), binaryFile.toString(), Durability.NONE);
+
+        assertEquals(permissions, Files.getPosixFilePermissions(file));
+        assertEquals(permissions, Files.getPosixFilePermissions(binaryFile));
+    }
+
+    @Test
+    void updateFileWithDataWrapper_whenWriteFails_leavesPreviousFile(@TempDir Path tempDir) throws IOException {
+
+        Path file = tempDir.resolve("data.json");
+        Files.writeString(file, "{\"persons\":[]}");
+
+        List<Person> failingPersons = new ArrayList<>() {
+            @Override
+            public Iterator<Person> iterator() {
+                throw new IllegalStateException("write interrupted");
             }
+        };
+
+        assertThrows(IllegalStateException.class, () -> DataWrapperRepository.updateFileWithDataWrapper(new DataWrapper(failingPersons, List.of(), List.of()), file.toString()));
 
+        assertEquals("{\"persons\":[]}", Files.readString(file));
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
         }
     }
 
+    @Test
+    void getSnapshot_streamsRecordsAndVersion(@TempDir Path tempDir) throws IOException {
+
+        Path file = tempDir.resolve("data.json");
+        Files.writeString(file, "{\"comment\":{\"ignored\":[1,2]},\"persons\":[{\"firstName\":\"John\",\"lastName\":\"Boyd\"}],"
+                + "\"firestations\":null,\"medicalrecords\":[{\"firstName\":\"John\",\"lastName\":\"Boyd\",\"medications\":[\"aznol:350mg\"]}],\"version\":42}");
+
+        DataSnapshot snapshot = DataWrapperRepository.getSnapshot(file.toString());
+
+        assertEquals(42, snapshot.getVersion());
+        assertEquals("Boyd", snapshot.getPersons().get(0).getLastName());
+        assertTrue(snapshot.getFirestations().isEmpty());
+        assertEquals(List.of("aznol:350mg"), snapshot.getMedicalrecords().get(0).getMedications());
+    }
+
+    @Test
+    void getSnapshot_readsFileAsUtf8(@TempDir Path tempDir) throws IOException {
+
+        Path file = tempDir.resolve("data.json");
+        Files.writeString(file, "{\"version\":7,\"persons\":[{\"firstName\":\"Zoë\",\"lastName\":\"Ångström\",\"city\":\"Besançon\"}]}",
+                StandardCharsets.UTF_8);
+
+        DataSnapshot snapshot = DataWrapperRepository.getSnapshot(file.toString());
+        DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper(file.toString());
+
+        assertEquals(7, DataWrapperRepository.readVersion(file.toString()));
+        assertEquals("Zoë", snapshot.getPersons().get(0).getFirstName());
+        assertEquals("Ångström", dataWrapper.getPersons().get(0).getLastName());
+        assertEquals("Besançon", dataWrapper.getPersons().get(0).getCity());
+    }
+
+    @Test
+    void getSnapshot_whenFileIsTruncated_throwsIllegalStateException(@TempDir Path tempDir) throws IOException {
+
+        Path file = tempDir.resolve("data.json");
+        Files.writeString(file, "{\"persons\":[{\"firstName\":\"John\"");
+
+        assertThrows(IllegalStateException.class, () -> DataWrapperRepository.getSnapshot(file.toString()));
+    }
+
+    @Test
+    void binarySnapshot_roundTripsRecordsNullsAndVersion(@TempDir Path tempDir) throws IOException {
+
+        DataWrapper dataWrapper = new DataWrapper(
+                new ArrayList<>(List.of(
+                        new Person("John", "Boyd", "1509 Culver St", "Culver", "97451", "841-874-6512", "jaboyd@email.com"),
+                        new Person("Jacob", "Boyd", "1509 Culver St", "Culver", "97451", null, "drk@email.com"))),
+                new ArrayList<>(List.of(new Firestation("1509 Culver St", 3), new Firestation("29 15th St", null))),
+                new ArrayList<>(List.of(
+                        new MedicalRecord("John", "Boyd", "03/06/1984", List.of("aznol:350mg", "hydrapermazol:100mg"), List.of("nillacilan")),
+                        new MedicalRecord("Jacob", "Boyd", "03/06/1989", List.of("aznol:350mg"), null))));
+        Path file = tempDir.resolve("data.json.bin");
+
+        DataWrapperRepository.updateBinarySnapshot(DataSnapshot.of(7, dataWrapper), file.toString(), Durability.NONE);
+        DataSnapshot snapshot = DataWrapperRepository.getBinarySnapshot(file.toString());
+
+        assertEquals(7, snapshot.getVersion());
+        assertEquals(dataWrapper.getPersons(), snapshot.getPersons());
+        assertEquals(dataWrapper.getFirestations(), snapshot.getFirestations());
+        assertEquals(dataWrapper.getMedicalrecords(), snapshot.getMedicalrecords());
+        assertSame(snapshot.getPersons().get(0).getAddress(), snapshot.getFirestations().get(0).getAddress());
+    }
+
+    @Test
+    void getBinarySnapshot_whenFileIsCorrupted_throwsIOException(@TempDir Path tempDir) throws IOException {
+
+        DataWrapper dataWrapper = new DataWrapper(
+                new ArrayList<>(List.of(new Person("John", "Boyd", "1509 Culver St", "Culver", "97451", "841-874-6512", "jaboyd@email.com"))),
+                new ArrayList<>(), new ArrayList<>());
+        Path file = tempDir.resolve("data.json.bin");
+        DataWrapperRepository.updateBinarySnapshot(DataSnapshot.of(1, dataWrapper), file.toString(), Durability.NONE);
+        byte[] bytes = Files.readAllBytes(file);
+        int nameOffset = new String(bytes, StandardCharsets.ISO_8859_1).indexOf("John");
+        bytes[nameOffset] = 'j';
+        Files.write(file, bytes);
+        Path truncated = tempDir.resolve("truncated.bin");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 6));
+
+        IOException exception = assertThrows(IOException.class, () -> DataWrapperRepository.getBinarySnapshot(file.toString()));
+        assertEquals("Checksum mismatch in binary snapshot", exception.getMessage());
+        assertThrows(IOException.class, () -> DataWrapperRepository.getBinarySnapshot(truncated.toString()));
+    }
+
+    @Test
+    void readVersion_readsLeadingVersionField(@TempDir Path tempDir) throws IOException {
+
+        Path versioned = tempDir.resolve("versioned.json");
+        DataWrapperRepository.updateFileWithSnapshot(DataSnapshot.of(12, new DataWrapper()), versioned.toString(), Durability.NONE);
+        Path unversioned = tempDir.resolve("unversioned.json");
+        Files.writeString(unversioned, "{\"persons\":[]}");
+
+        assertEquals(12, DataWrapperRepository.readVersion(versioned.toString()));
+        assertEquals(0, DataWrapperRepository.readVersion(unversioned.toString()));
+    }
+
+    @Test
+    void getSegmentedSnapshot_importsMissingSegmentsFromDataFile(@TempDir Path tempDir) throws IOException {
+
+        Path file = tempDir.resolve("data.json");
+        Files.writeString(file, "{\"persons\":[{\"firstName\":\"John\"}],\"firestations\":[{\"address\":\"29 15th St\",\"station\":2}]}");
+        Files.writeString(tempDir.resolve("data.persons.json"), "{\"version\":5,\"persons\":[{\"firstName\":\"Jacob\"},{\"firstName\":\"Tenley\"}]}");
+
+        DataSnapshot snapshot = DataWrapperRepository.getSegmentedSnapshot(file.toString());
+
+        assertEquals(5, snapshot.getVersion());
+        assertEquals(5, snapshot.getVersion(EntityType.PERSON));
+        assertEquals(0, snapshot.getVersion(EntityType.FIRESTATION));
+        assertEquals(List.of("Jacob", "Tenley"), snapshot.getPersons().stream().map(Person::getFirstName).toList());
+        assertEquals(1, snapshot.getFirestations().size());
+        assertTrue(snapshot.getMedicalrecords().isEmpty());
+    }
+
     @Test
     void getDataWrapper_WhenDataIsNull() {
 
@@ -2,7 +2,7 @@ package com.amp.safetynetalerts;
 
 import com.amp.safetynetalerts.dto.FirestationDTO;
 import com.amp.safetynetalerts.exception.FirestationUpdateException;
-import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.DataStore;
 import com.amp.safetynetalerts.model.Firestation;
 import com.amp.safetynetalerts.service.FirestationService;
 import com.amp.safetynetalerts.model.Person;
@@ -21,6 +21,7 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.junit.jupiter.api.extension.ExtendWith;
 
@@ -56,6 +57,9 @@ public class FirestationServiceTest {
     @MockBean
     private DataWrapper dataWrapper;
 
+    @MockBean
+    private DataStore dataStore;
+
     @Mock
     private DataWrapper dataWrapperMock;
 
@@ -67,7 +71,7 @@ public class FirestationServiceTest {
         dataWrapper = new DataWrapper();
         dataWrapper.setFirestations(mockFirestations);
 
-        firestationService = new FirestationService();
+        firestationService = new FirestationService(dataStore);
 
         Firestation station1 = new Firestation();
         station1.setAddress("Address1");
@@ -157,32 +161,26 @@ public class FirestationServiceTest {
         List<Person> persons = new ArrayList<>();
         dataWrapper.setPersons(persons);
 
-        try (MockedStatic<DataWrapperRepository> mockedService = mockStatic(DataWrapperRepository.class)) {
-            mockedService.when(DataWrapperRepository::getDataWrapper).thenReturn(dataWrapper);
+        when(dataStore.getDataWrapper()).thenReturn(dataWrapper);
 
-            
-            Map<String, Object> result = firestationService.getDataByFirestationNumber(stationNumber);
+        Map<String, Object> result = firestationService.getDataByFirestationNumber(stationNumber);
 
-            
-            assertThat(result).isNotNull();
-            assertThat(result.size()).isEqualTo(2);
-            mockedService.verify(DataWrapperRepository::getDataWrapper, times(1));
-        }
+        assertThat(result).isNotNull();
+        assertThat(result.size()).isEqualTo(2);
+        verify(dataStore, times(1)).getDataWrapper();
     }
 
     @Test
     void getAddressesFromFirestationTest() {
         
         List<String> expectedAddresses = Arrays.asList("Address1", "Address3");
-        try (MockedStatic<DataWrapperRepository> mockedService = mockStatic(DataWrapperRepository.class)) {
-            mockedService.when(DataWrapperRepository::getDataWrapper).thenReturn(dataWrapper);
-            
-            List<String> result = firestationService.getAddressesFromFirestation(1);
-
-            assertThat(result.size()).isEqualTo(expectedAddresses.size());
-            assertThat(result).isEqualTo(expectedAddresses);
-            mockedService.verify(DataWrapperRepository::getDataWrapper, times(1));
-        }
+        when(dataStore.getDataWrapper()).thenReturn(dataWrapper);
+
+        List<String> result = firestationService.getAddressesFromFirestation(1);
+
+        assertThat(result.size()).isEqualTo(expectedAddresses.size());
+        assertThat(result).isEqualTo(expectedAddresses);
+        verify(dataStore, times(1)).getDataWrapper();
     }
 
     @Test
@@ -190,18 +188,15 @@ public class FirestationServiceTest {
         
         String address = "Address";
         Integer station = 1;
-        try (MockedStatic<DataWrapperRepository> mockedService = mockStatic(DataWrapperRepository.class)) {
-            mockedService.when(DataWrapperRepository::getDataWrapper).thenReturn(dataWrapper);
-            mockedService.when(() -> DataWrapperRepository.updateFileWithDataWrapper(any(DataWrapper.class))).thenAnswer(i -> null);
-            
-            FirestationDTO result = firestationService.addFirestationDataWrapper(address, station);
-
-            assertThat(result).isNotNull();
-            assertThat(result.getAddress()).isEqualTo(address);
-            assertThat(result.getStation()).isEqualTo(station);
-            mockedService.verify(DataWrapperRepository::getDataWrapper, times(1));
-            mockedService.verify(() -> DataWrapperRepository.updateFileWithDataWrapper(any(DataWrapper.class)), times(1));
-        }
+        applyUpdatesTo(dataWrapper);
+
+        FirestationDTO result = firestationService.addFirestationDataWrapper(address, station);
+
+        assertThat(result).isNotNull();
+        assertThat(result.getAddress()).isEqualTo(address);
+        assertThat(result.getStation()).isEqualTo(station);
+        assertThat(FirestationService.getFirestationNumber(mockFirestations, address)).isEqualTo(station);
+        verify(dataStore, times(1)).update(any());
     }
 
     @Test
@@ -209,29 +204,21 @@ public class FirestationServiceTest {
         
         String address = "Address";
         Integer station = 1;
-        try (MockedStatic<DataWrapperRepository> mockedService = mockStatic(DataWrapperRepository.class)) {
-            mockedService.when(DataWrapperRepository::getDataWrapper).thenReturn(dataWrapper);
-            mockedService.when(() -> DataWrapperRepository.updateFileWithDataWrapper(any(DataWrapper.class))).thenAnswer(i -> null);
-
-            
-            firestationService.deleteFirestationDataWrapper(address, station);
-
-            
-            mockedService.verify(DataWrapperRepository::getDataWrapper, times(1));
-            mockedService.verify(() -> DataWrapperRepository.updateFileWithDataWrapper(any(DataWrapper.class)), times(1));
-        }
+        applyUpdatesTo(dataWrapper);
 
+        firestationService.deleteFirestationDataWrapper(address, station);
 
+        assertThat(FirestationService.getFirestationAddresses(mockFirestations, station)).isEmpty();
+        verify(dataStore, times(1)).update(any());
     }
 
     @Test
     public void getPhoneNumbersByFirestationTest() {
 
-        try (MockedStatic<DataWrapperRepository> dataWrapperRepoMock = Mockito.mockStatic(DataWrapperRepository.class);
-             MockedStatic<FirestationService> firestationServiceMock = Mockito.mockStatic(FirestationService.class);
-             MockedStatic<PersonService> personServiceMock = Mockito.mockStatic(PersonService.class)) {
+        when(dataStore.getDataWrapper()).thenReturn(dataWrapper);
 
-            dataWrapperRepoMock.when(DataWrapperRepository::getDataWrapper).thenReturn(dataWrapper);
+        try (MockedStatic<FirestationService> firestationServiceMock = Mockito.mockStatic(FirestationService.class);
+             MockedStatic<PersonService> personServiceMock = Mockito.mockStatic(PersonService.class)) {
 
             firestationServiceMock.when(() -> FirestationService.getFirestationAddresses(Mockito.any(), Mockito.any())).thenReturn(Collections.emptyList());
 
@@ -240,7 +227,7 @@ public class FirestationServiceTest {
 
             Integer firestationNumber = 1;
 
-            List<String> result = FirestationService.getPhoneNumbersByFirestation(firestationNumber);
+            List<String> result = firestationService.getPhoneNumbersByFirestation(firestationNumber);
 
             assertEquals(Collections.emptyList(), result);
 
@@ -252,51 +239,53 @@ public class FirestationServiceTest {
         String testAddress = mockFirestations.get(1).getAddress();
         Integer testNewFirestationNumber = 4;
 
-        // Mock static methods using Mockito.mockStatic().
-        try (MockedStatic<DataWrapperRepository> utilities = Mockito.mockStatic(DataWrapperRepository.class)) {
-            utilities.when(DataWrapperRepository::getDataWrapper).thenReturn(dataWrapper);
-            utilities.when(() -> DataWrapperRepository.updateFileWithDataWrapper(dataWrapper)).thenAnswer(invocation -> null);
+        applyUpdatesTo(dataWrapper);
 
-            // Create a spy of the service class so we can listen its method calls.
-            FirestationService serviceSpy = Mockito.spy(FirestationService.class);
+        // Create a spy of the service class so we can listen its method calls.
+        FirestationService serviceSpy = Mockito.spy(new FirestationService(dataStore));
 
-            // Call the method to be tested.
-            serviceSpy.updateFirestationStationNumberWrapper(testAddress, testNewFirestationNumber);
+        // Call the method to be tested.
+        serviceSpy.updateFirestationStationNumberWrapper(testAddress, testNewFirestationNumber);
 
-            // Validation: check if updateFirestationStationNumber method is correctly called with expected parameters.
-            Mockito.verify(serviceSpy, Mockito.times(1)).updateFirestationStationNumber(dataWrapper.getFirestations(), testAddress, testNewFirestationNumber);
+        // Validation: check if updateFirestationStationNumber method is correctly called with expected parameters.
+        Mockito.verify(serviceSpy, Mockito.times(1)).updateFirestationStationNumber(dataWrapper.getFirestations(), testAddress, testNewFirestationNumber);
 
-            // Validate that the new number is correctly updated.
-            assertEquals(testNewFirestationNumber, dataWrapper.getFirestations().get(1).getStation());
-        }
+        // Validate that the new number is correctly updated.
+        assertEquals(testNewFirestationNumber, dataWrapper.getFirestations().get(1).getStation());
     }
 
     @Test
-    public void testUpdateFirestationStationNumberWrapper_Throws_Exception() {
+    public void testUpdateFirestationStationNumberWrapper_Throws_Exception() throws IOException {
 
         String testAddress = "Address that does not exist";
         Integer testNewFirestationNumber = 4;
 
-        // Mock static methods using Mockito.mockStatic().
-        try (MockedStatic<DataWrapperRepository> utilities = Mockito.mockStatic(DataWrapperRepository.class)) {
-            utilities.when(DataWrapperRepository::getDataWrapper).thenReturn(dataWrapper);
-            utilities.when(() -> DataWrapperRepository.updateFileWithDataWrapper(dataWrapper)).thenAnswer(invocation -> null);
+        applyUpdatesTo(dataWrapper);
 
-            // Create a spy of the Service class so we can listen to its method calls.
-            FirestationService serviceSpy = Mockito.spy(FirestationService.class);
+        // Create a spy of the Service class so we can listen to its method calls.
+        FirestationService serviceSpy = Mockito.spy(new FirestationService(dataStore));
 
-            // Expect an exception to be thrown here.
-            Exception exception = assertThrows(FirestationUpdateException.class, () -> {
-                // Call the method under test.
-                serviceSpy.updateFirestationStationNumberWrapper(testAddress, testNewFirestationNumber);
-            });
+        // Expect an exception to be thrown here.
+        Exception exception = assertThrows(FirestationUpdateException.class, () -> {
+            // Call the method under test.
+            serviceSpy.updateFirestationStationNumberWrapper(testAddress, testNewFirestationNumber);
+        });
 
-            // Validate that the error message in exception is as expected.
-            assertEquals("The address does not exist in firestations", exception.getMessage());
+        // Validate that the error message in exception is as expected.
+        assertEquals("The address does not exist in firestations", exception.getMessage());
 
-            // Validation: check if updateFirestationStationNumber was indeed called with expected parameters
-            Mockito.verify(serviceSpy, Mockito.times(1)).updateFirestationStationNumber(dataWrapper.getFirestations(), testAddress, testNewFirestationNumber);
-        }
+        // Validation: check if updateFirestationStationNumber was indeed called with expected parameters
+        Mockito.verify(serviceSpy, Mockito.times(1)).updateFirestationStationNumber(dataWrapper.getFirestations(), testAddress, testNewFirestationNumber);
+    }
+
+    /**
+     * Makes the mocked DataStore apply the mutations it receives directly to the given DataWrapper.
+     */
+    private void applyUpdatesTo(DataWrapper target) throws IOException {
+        doAnswer(invocation -> {
+            invocation.<Consumer<DataWrapper>>getArgument(0).accept(target);
+            return null;
+        }).when(dataStore).update(any());
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,188 @@
+package com.amp.safetynetalerts;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.Change;
+import com.amp.safetynetalerts.repository.Checkpointer;
+import com.amp.safetynetalerts.repository.DataLayout;
+import com.amp.safetynetalerts.repository.DataSnapshot;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.Durability;
+import com.amp.safetynetalerts.repository.EntityType;
+import com.amp.safetynetalerts.repository.H2SnapshotStorage;
+import com.amp.safetynetalerts.repository.JsonSnapshotStorage;
+import com.amp.safetynetalerts.repository.MutationJournal;
+import com.amp.safetynetalerts.repository.ReadMode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class H2SnapshotStorageTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path dataFile;
+    private String url;
+    private JsonSnapshotStorage jsonStorage;
+    private H2SnapshotStorage storage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+
+        dataFile = tempDir.resolve("data.json");
+        DataWrapper dataWrapper = new DataWrapper(
+                new ArrayList<>(List.of(
+                        new Person("John", "Boyd", "1509 Culver St", "Culver", "97451", "841-874-6512", "jaboyd@email.com"),
+                        new Person("Jacob", "Boyd", "1509 Culver St", "Culver", "97451", "841-874-6513", "drk@email.com"))),
+                new ArrayList<>(List.of(new Firestation("1509 Culver St", 3), new Firestation("29 15th St", 2))),
+                new ArrayList<>(List.of(new MedicalRecord("John", "Boyd", "03/06/1984",
+                        List.of("aznol:350mg", "hydrapermazol:100mg"), List.of("nillacilan")))));
+        DataWrapperRepository.updateFileWithDataWrapper(dataWrapper, dataFile.toString());
+        url = "jdbc:h2:file:" + tempDir.resolve("data").toAbsolutePath();
+        jsonStorage = new JsonSnapshotStorage(dataFile.toString(), DataLayout.SINGLE_FILE, Durability.NONE, false);
+        storage = new H2SnapshotStorage(url, jsonStorage);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        storage.close();
+    }
+
+    private DataStore newDataStore(H2SnapshotStorage snapshotStorage) {
+        DataStore store = new DataStore(dataFile.toString(), snapshotStorage,
+                new MutationJournal(tempDir.resolve("data.journal").toString(), MutationJournal.FsyncPolicy.NEVER, 0),
+                null, ReadMode.MAPPED);
+        store.init();
+        return store;
+    }
+
+    @Test
+    void read_whenDatabaseIsEmpty_importsDataFile() throws SQLException {
+
+        DataSnapshot imported = storage.read();
+        storage.close();
+
+        DataSnapshot reread = new H2SnapshotStorage(url, null).read();
+        assertEquals(imported.getPersons(), reread.getPersons());
+        assertEquals(imported.getFirestations(), reread.getFirestations());
+        assertEquals(imported.getMedicalrecords(), reread.getMedicalrecords());
+        assertEquals(List.of("aznol:350mg", "hydrapermazol:100mg"), reread.getMedicalrecords().get(0).getMedications());
+    }
+
+    @Test
+    void checkpoint_writesChangedRowsAndKeepsTheOrderOfTheLists() throws IOException, SQLException {
+
+        DataStore dataStore = newDataStore(storage);
+        Checkpointer checkpointer = new Checkpointer(dataStore, dataStore.getJournal(), new SimpleMeterRegistry(),
+                1000, Long.MAX_VALUE, Long.MAX_VALUE, Durability.NONE);
+        dataStore.update(draft -> {
+            draft.getPersons().set(0, draft.getPersons().get(0).toBuilder().city("Paris").build());
+            draft.getFirestations().remove(1);
+            draft.getFirestations().add(new Firestation("834 Binoc Ave", 3));
+        });
+        dataStore.update(draft -> draft.getPersons().remove(1));
+
+        DataSnapshot written = checkpointer.checkpoint();
+        dataStore.getJournal().close();
+        storage.close();
+
+        H2SnapshotStorage reopened = new H2SnapshotStorage(url, null);
+        DataSnapshot reread = reopened.read();
+        reopened.close();
+        assertEquals(written.getPersons(), reread.getPersons());
+        assertEquals(written.getFirestations(), reread.getFirestations());
+        assertEquals(written.getMedicalrecords(), reread.getMedicalrecords());
+        assertEquals(2, reread.getVersion(EntityType.PERSON));
+        assertEquals(1, reread.getVersion(EntityType.FIRESTATION));
+        assertEquals(0, reread.getVersion(EntityType.MEDICAL_RECORD));
+        assertEquals(Arrays.asList("1509 Culver St", "834 Binoc Ave"),
+                reread.getFirestations().stream().map(Firestation::getAddress).toList());
+        assertEquals(0, DataWrapperRepository.readVersion(dataFile.toString()));
+    }
+
+    @Test
+    void write_withJournalEntries_appliesThemInOrderLikeTheSnapshot() throws IOException, SQLException {
+
+        Random random = new Random(13);
+        DataSnapshot base = storage.read();
+        List<MutationJournal.Entry> entries = new ArrayList<>();
+        for (int round = 1; round <= 6; round++) {
+            // Journal changes only hold the key of the entity they replace or remove, several entities share a key
+            List<Change> changes = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String firstName = "First" + random.nextInt(40);
+                String key = EntityType.key(firstName, "Boyd");
+                String address = "address " + random.nextInt(30);
+                switch (random.nextInt(6)) {
+                    case 0 -> changes.add(Change.insert(EntityType.PERSON,
+                            new Person(firstName, "Boyd", address, "Culver", "97451", "841-874-6512", null)));
+                    case 1 -> changes.add(new Change(EntityType.PERSON, key,
+                            new Person("First" + random.nextInt(40), "Boyd", address, "Paris", "75001", "841-874-6512", null)));
+                    case 2 -> changes.add(new Change(EntityType.PERSON, key, null));
+                    case 3 -> changes.add(new Change(EntityType.MEDICAL_RECORD, key, random.nextBoolean() ? null
+                            : new MedicalRecord(firstName, "Boyd", "01/01/2000", List.of("aznol:" + round), null)));
+                    case 4 -> changes.add(new Change(EntityType.FIRESTATION, EntityType.key(address, String.valueOf(round % 3)),
+                            new Firestation(address, round % 3 + 1)));
+                    default -> changes.add(new Change(EntityType.FIRESTATION, EntityType.key(address, String.valueOf(round % 4)), null));
+                }
+            }
+            base = base.apply(round, changes);
+            entries.add(new MutationJournal.Entry(round, changes));
+            storage.write(base, entries);
+
+            assertReadBack(base);
+        }
+
+        DataSnapshot skipped = base.apply(base.getVersion() + 2, List.of(new Change(EntityType.PERSON, EntityType.key("First1", "Boyd"), null)));
+        storage.write(skipped, entries);
+
+        assertReadBack(skipped);
+    }
+
+    private void assertReadBack(DataSnapshot written) throws SQLException {
+        H2SnapshotStorage reader = new H2SnapshotStorage(url, null);
+        DataSnapshot reread = reader.read();
+        reader.close();
+        assertEquals(written.getPersons(), reread.getPersons());
+        assertEquals(written.getFirestations(), reread.getFirestations());
+        assertEquals(written.getMedicalrecords(), reread.getMedicalrecords());
+    }
+
+    @Test
+    void load_replaysTheJournalOnTopOfTheDatabase() throws IOException, SQLException {
+
+        DataStore dataStore = newDataStore(storage);
+        Checkpointer checkpointer = new Checkpointer(dataStore, dataStore.getJournal(), new SimpleMeterRegistry(),
+                1000, Long.MAX_VALUE, Long.MAX_VALUE, Durability.NONE);
+        dataStore.update(draft -> draft.getFirestations().add(new Firestation("834 Binoc Ave", 3)));
+        checkpointer.checkpoint();
+        dataStore.update(draft -> draft.getMedicalrecords().clear());
+        dataStore.getJournal().close();
+        storage.close();
+
+        storage = new H2SnapshotStorage(url, null);
+        DataStore reloaded = newDataStore(storage);
+
+        assertTrue(reloaded.isLoaded());
+        assertEquals(2, reloaded.getVersion());
+        assertEquals(3, reloaded.getDataWrapper().getFirestations().size());
+        assertTrue(reloaded.getDataWrapper().getMedicalrecords().isEmpty());
+        reloaded.getJournal().close();
+    }
+}
@@ -0,0 +1,60 @@
+package com.amp.safetynetalerts;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.DataSnapshot;
+import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.Durability;
+import com.amp.safetynetalerts.repository.EntityType;
+import com.amp.safetynetalerts.repository.MappedDataFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedDataFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void find_decodesOnlyTheRequestedRecord() throws IOException {
+
+        Path file = tempDir.resolve("data.json");
+        DataWrapper dataWrapper = new DataWrapper(
+                List.of(new Person("John", "Boyd", "1509 Culver St", "Culver", "97451", "841-874-6512", "jaboyd@email.com"),
+                        new Person("Zoé", "O\"Neil", "12 \\\\ Rue {de} [la] Forêt", "Paris", "75000", "01-23", "zoe@email.com")),
+                List.of(new Firestation("1509 Culver St", 3), new Firestation("12 \\\\ Rue {de} [la] Forêt", 12)),
+                List.of(new MedicalRecord("Zoé", "O\"Neil", "03/06/1984", List.of("aznol:350mg", "]}"), List.of())));
+        DataWrapperRepository.updateFileWithSnapshot(DataSnapshot.of(7, dataWrapper), file.toString(), Durability.NONE);
+
+        MappedDataFile mapped = MappedDataFile.open(file);
+
+        assertEquals(7, mapped.getVersion());
+        assertEquals(2, mapped.count(EntityType.PERSON));
+        assertEquals(dataWrapper.getPersons().get(1), mapped.find(EntityType.PERSON, EntityType.key("Zoé", "O\"Neil")));
+        assertEquals(dataWrapper.getMedicalrecords().get(0), mapped.find(EntityType.MEDICAL_RECORD, EntityType.key("Zoé", "O\"Neil")));
+        assertEquals(dataWrapper.getFirestations().get(1), mapped.find(EntityType.FIRESTATION, EntityType.key("12 \\\\ Rue {de} [la] Forêt", "12")));
+        assertNull(mapped.find(EntityType.PERSON, EntityType.key("Jacob", "Boyd")));
+    }
+
+    @Test
+    void open_withoutVersionField_hasVersionZero() throws IOException {
+
+        Path file = tempDir.resolve("data.json");
+        Files.writeString(file, "{ \"persons\": [ { \"firstName\":\"John\", \"lastName\":\"Boyd\" } ], \"version\": 3 }");
+
+        MappedDataFile mapped = MappedDataFile.open(file);
+
+        assertEquals(0, mapped.getVersion());
+        assertEquals("Boyd", mapped.<Person>find(EntityType.PERSON, "John|Boyd").getLastName());
+        assertEquals(0, mapped.count(EntityType.MEDICAL_RECORD));
+    }
+}
@@ -3,7 +3,7 @@ package com.amp.safetynetalerts;
 import com.amp.safetynetalerts.dto.MedicalRecordDTO;
 import com.amp.safetynetalerts.model.DataWrapper;
 import com.amp.safetynetalerts.model.MedicalRecord;
-import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.DataStore;
 import com.amp.safetynetalerts.service.MedicalRecordService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -17,9 +17,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.when;
 
 @SpringBootTest
@@ -28,12 +31,12 @@ public class MedicalRecordServiceTest {
     private List<MedicalRecord> mockMedicalRecords;
 
     @MockBean
-    private DataWrapperRepository dataWrapperRepository;
+    private DataStore dataStore;
 
     @BeforeEach
     public void setup() {
 
-        medicalRecordService = new MedicalRecordService();
+        medicalRecordService = new MedicalRecordService(dataStore);
         mockMedicalRecords = new ArrayList<>();
 
         MedicalRecord record1 = new MedicalRecord();
@@ -76,49 +79,39 @@ public class MedicalRecordServiceTest {
 
     @Test
     public void getMedicalRecordDataWrapperTest() {
-        try (MockedStatic<MedicalRecordService> recordServiceMock = Mockito.mockStatic(MedicalRecordService.class);
-             MockedStatic<DataWrapperRepository> dataWrapperRepositoryMock = Mockito.mockStatic(DataWrapperRepository.class)) {
-            DataWrapper dataWrapper = new DataWrapper();
-            dataWrapper.setMedicalrecords(new ArrayList<>());
-            MedicalRecord record = new MedicalRecord("John", "Doe", "01/01/2000", null, null);
-            dataWrapper.setMedicalrecords(Collections.singletonList(record));
-            dataWrapperRepositoryMock.when(DataWrapperRepository::getDataWrapper).thenReturn(dataWrapper);
-            recordServiceMock.when(() -> MedicalRecordService.getMedicalRecord(anyList(), anyString(), anyString())).thenReturn(record);
+        MedicalRecord record = new MedicalRecord("John", "Doe", "01/01/2000", null, null);
+        when(dataStore.findMedicalRecord("John", "Doe")).thenReturn(record);
 
-            MedicalRecordDTO result = medicalRecordService.getMedicalRecordDataWrapper("John", "Doe");
-            assertEquals("John", result.getFirstName());
-            assertEquals("Doe", result.getLastName());
-            assertEquals("01/01/2000", result.getBirthdate());
-        }
+        MedicalRecordDTO result = medicalRecordService.getMedicalRecordDataWrapper("John", "Doe");
+        assertEquals("John", result.getFirstName());
+        assertEquals("Doe", result.getLastName());
+        assertEquals("01/01/2000", result.getBirthdate());
     }
 
     @Test
     public void addMedicalRecordDataWrapperTest()  throws IOException {
-        try (MockedStatic<DataWrapperRepository> dataWrapperRepositoryMock = Mockito.mockStatic(DataWrapperRepository.class)) {
-            DataWrapper dataWrapper = new DataWrapper();
-            dataWrapper.setMedicalrecords(new ArrayList<>());
-            MedicalRecord record = new MedicalRecord("John", "Doe", "01/01/2000", null, null);
-            dataWrapper.setMedicalrecords(new ArrayList<>());
-            when(dataWrapperRepository.getDataWrapper()).thenReturn(dataWrapper);
-            dataWrapperRepositoryMock.when(() -> DataWrapperRepository.updateFileWithDataWrapper(any(DataWrapper.class))).thenAnswer(i -> i.getArguments()[0]);
-
-            MedicalRecordDTO result = medicalRecordService.addMedicalRecordDataWrapper(record);
-            assertEquals("John", result.getFirstName());
-            assertEquals("Doe", result.getLastName());
-            assertEquals("01/01/2000", result.getBirthdate());
-        }
+        DataWrapper dataWrapper = new DataWrapper();
+        dataWrapper.setMedicalrecords(new ArrayList<>());
+        MedicalRecord record = new MedicalRecord("John", "Doe", "01/01/2000", null, null);
+        dataWrapper.setMedicalrecords(new ArrayList<>());
+        when(dataStore.getDataWrapper()).thenReturn(dataWrapper);
+        applyUpdatesTo(dataWrapper);
+
+        MedicalRecordDTO result = medicalRecordService.addMedicalRecordDataWrapper(record);
+        assertEquals("John", result.getFirstName());
+        assertEquals("Doe", result.getLastName());
+        assertEquals("01/01/2000", result.getBirthdate());
     }
 
     @Test
     public void updateMedicalRecordDataWrapperTest()  throws IOException {
-        try (MockedStatic<DataWrapperRepository> dataWrapperRepositoryMock = Mockito.mockStatic(DataWrapperRepository.class);
-             MockedStatic<MedicalRecordService> recordServiceMock = Mockito.mockStatic(MedicalRecordService.class)) {
+        try (MockedStatic<MedicalRecordService> recordServiceMock = Mockito.mockStatic(MedicalRecordService.class)) {
             DataWrapper dataWrapper = new DataWrapper();
             dataWrapper.setMedicalrecords(new ArrayList<>());
             MedicalRecord record = new MedicalRecord("John", "Doe", "01/01/2000", null, null);
-            dataWrapper.setMedicalrecords(Collections.singletonList(record));
-            when(dataWrapperRepository.getDataWrapper()).thenReturn(dataWrapper);
-            dataWrapperRepositoryMock.when(() -> DataWrapperRepository.updateFileWithDataWrapper(any(DataWrapper.class))).thenAnswer(i -> i.getArguments()[0]);
+            dataWrapper.setMedicalrecords(new ArrayList<>(Collections.singletonList(record)));
+            when(dataStore.getDataWrapper()).thenReturn(dataWrapper);
+            applyUpdatesTo(dataWrapper);
             recordServiceMock.when(() -> MedicalRecordService.getMedicalRecord(anyList(), anyString(), anyString())).thenReturn(record);
 
             MedicalRecord newRecord = new MedicalRecord("John", "Doe", "01/01/2001", null, null);
@@ -128,15 +121,23 @@ public class MedicalRecordServiceTest {
     }
     @Test
     public void deleteMedicalRecordDataWrapperTest() throws IOException  {
-        try (MockedStatic<DataWrapperRepository> dataWrapperRepositoryMock = Mockito.mockStatic(DataWrapperRepository.class)) {
-            DataWrapper dataWrapper = new DataWrapper();
-            MedicalRecord record = new MedicalRecord("John", "Doe", "01/01/2000", null, null);
-            dataWrapper.setMedicalrecords(new ArrayList<>(Arrays.asList(record)));
-            when(dataWrapperRepository.getDataWrapper()).thenReturn(dataWrapper);
-            dataWrapperRepositoryMock.when(() -> DataWrapperRepository.updateFileWithDataWrapper(any(DataWrapper.class))).thenAnswer(i -> i.getArguments()[0]);
+        DataWrapper dataWrapper = new DataWrapper();
+        MedicalRecord record = new MedicalRecord("John", "Doe", "01/01/2000", null, null);
+        dataWrapper.setMedicalrecords(new ArrayList<>(Arrays.asList(record)));
+        applyUpdatesTo(dataWrapper);
 
-            medicalRecordService.deleteMedicalRecordDataWrapper("John", "Doe");
-            assertTrue(dataWrapper.getMedicalrecords().isEmpty());
-        }
+        medicalRecordService.deleteMedicalRecordDataWrapper("John", "Doe");
+        assertTrue(dataWrapper.getMedicalrecords().isEmpty());
+    }
+
+    /**
+     * Makes the mocked DataStore apply the mutations it receives directly to the given DataWrapper.
+     */
+    private void applyUpdatesTo(DataWrapper target) throws IOException {
+        doAnswer(invocation -> {
+            invocation.<Consumer<DataWrapper>>getArgument(0).accept(target);
+            return null;
+        }).when(dataStore).update(any());
+        when(dataStore.updateAndGet(any())).thenAnswer(invocation -> invocation.<Function<DataWrapper, ?>>getArgument(0).apply(target));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,144 @@
+package com.amp.safetynetalerts;
+
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.Change;
+import com.amp.safetynetalerts.repository.EntityType;
+import com.amp.safetynetalerts.repository.MutationJournal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MutationJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path journalFile;
+    private MutationJournal journal;
+
+    private final Person person = new Person("John", "Boyd", "1509 Culver St", "Culver", "97451", "841-874-6512", "jaboyd@email.com");
+
+    @BeforeEach
+    void setUp() {
+
+        journalFile = tempDir.resolve("data.journal");
+        journal = new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.ALWAYS, 0);
+    }
+
+    @Test
+    void append_isReadBackInOrder() throws IOException {
+
+        Person moved = person.toBuilder().city("Paris").build();
+        journal.append(1, List.of(Change.insert(EntityType.PERSON, person), Change.insert(EntityType.FIRESTATION, new Firestation("1509 Culver St", 3))));
+        journal.append(2, List.of(Change.replace(EntityType.PERSON, person, moved)));
+        journal.append(3, List.of(Change.remove(EntityType.MEDICAL_RECORD, new MedicalRecord("John", "Boyd", "03/06/1984", List.of(), List.of()))));
+        journal.close();
+
+        List<MutationJournal.Entry> entries = journal.readAll();
+
+        assertEquals(3, entries.size());
+        assertEquals(List.of(1L, 2L, 3L), entries.stream().map(MutationJournal.Entry::version).toList());
+        assertEquals(person, entries.get(0).changes().get(0).getValue());
+        assertEquals(new Firestation("1509 Culver St", 3), entries.get(0).changes().get(1).getValue());
+        assertEquals("John|Boyd", entries.get(1).changes().get(0).getKey());
+        assertEquals(moved, entries.get(1).changes().get(0).getValue());
+        assertEquals("John|Boyd", entries.get(2).changes().get(0).getKey());
+        assertNull(entries.get(2).changes().get(0).getValue());
+        assertEquals(Files.size(journalFile), journal.getBytesWritten());
+    }
+
+    @Test
+    void sync_withinInterval_isForcedAtTheEndOfTheInterval() throws Exception {
+
+        MutationJournal intervalJournal = new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.INTERVAL, 200);
+        intervalJournal.sync(intervalJournal.append(1, List.of(Change.insert(EntityType.PERSON, person))));
+        assertEquals(1, intervalJournal.getForceCount());
+
+        intervalJournal.sync(intervalJournal.append(2, List.of(Change.remove(EntityType.PERSON, person))));
+        intervalJournal.sync(intervalJournal.append(3, List.of(Change.insert(EntityType.PERSON, person))));
+        assertEquals(1, intervalJournal.getForceCount());
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (intervalJournal.getForceCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, intervalJournal.getForceCount());
+        Thread.sleep(300);
+        assertEquals(2, intervalJournal.getForceCount());
+        intervalJournal.close();
+    }
+
+    @Test
+    void readAll_withTornLastRecord_truncatesIt() throws IOException {
+
+        journal.append(1, List.of(Change.insert(EntityType.PERSON, person)));
+        journal.close();
+        long validLength = Files.size(journalFile);
+        Files.writeString(journalFile, "{\"v\":2,\"c\":[{\"t\":\"PERS", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        List<MutationJournal.Entry> entries = journal.readAll();
+
+        assertEquals(1, entries.size());
+        assertEquals(validLength, Files.size(journalFile));
+    }
+
+    @Test
+    void readAll_withUnreadableRecordInRolledSegment_throwsAndKeepsTheSegment() throws IOException {
+
+        journal.append(1, List.of(Change.insert(EntityType.PERSON, person)));
+        journal.append(2, List.of(Change.remove(EntityType.PERSON, person)));
+        journal.roll();
+        journal.append(3, List.of(Change.insert(EntityType.PERSON, person)));
+        journal.close();
+        Path segment = tempDir.resolve("data.journal.2");
+        List<String> lines = Files.readAllLines(segment, StandardCharsets.UTF_8);
+        Files.writeString(segment, "{\"v\":1,\"c\":[{\"t\":\"PERS\n" + lines.get(1) + "\n", StandardCharsets.UTF_8);
+        long length = Files.size(segment);
+
+        assertThrows(IOException.class, () -> journal.readAll());
+        assertEquals(length, Files.size(segment));
+    }
+
+    @Test
+    void readAll_withUnreadableRecordFollowedByOthers_throwsAndKeepsTheJournal() throws IOException {
+
+        journal.append(1, List.of(Change.insert(EntityType.PERSON, person)));
+        journal.close();
+        Files.writeString(journalFile, "{\"v\":2,\"c\":[{\"t\":\"PERS\n" + Files.readString(journalFile, StandardCharsets.UTF_8),
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        long length = Files.size(journalFile);
+
+        assertThrows(IOException.class, () -> journal.readAll());
+        assertEquals(length, Files.size(journalFile));
+    }
+
+    @Test
+    void append_afterRepair_startsNewRecord() throws IOException {
+
+        Files.writeString(journalFile, "{\"v\":1,\"c\":[]}", StandardCharsets.UTF_8);
+
+        assertEquals(1, journal.readAll().size());
+        journal.append(2, List.of(Change.insert(EntityType.PERSON, person)));
+        journal.close();
+
+        assertEquals(2, journal.readAll().size());
+    }
+
+    @Test
+    void readAll_withoutJournal_returnsNoEntry() throws IOException {
+
+        assertTrue(journal.readAll().isEmpty());
+        assertFalse(Files.exists(journalFile));
+    }
+}
@@ -0,0 +1,253 @@
+package com.amp.safetynetalerts;
+
+import com.amp.safetynetalerts.exception.PreconditionFailedException;
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.repository.DataLayout;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.Durability;
+import com.amp.safetynetalerts.repository.EntityType;
+import com.amp.safetynetalerts.repository.JsonSnapshotStorage;
+import com.amp.safetynetalerts.repository.MutationJournal;
+import com.amp.safetynetalerts.repository.MutationPipeline;
+import com.amp.safetynetalerts.repository.ReadMode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MutationPipelineTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path dataFile;
+    private Path journalFile;
+    private SimpleMeterRegistry meterRegistry;
+    private MutationPipeline pipeline;
+
+    @BeforeEach
+    void setUp() throws IOException {
+
+        dataFile = tempDir.resolve("data.json");
+        DataWrapperRepository.updateFileWithDataWrapper(new DataWrapper(new ArrayList<>(), new ArrayList<>(), new ArrayList<>()), dataFile.toString());
+        journalFile = tempDir.resolve("data.journal");
+        meterRegistry = new SimpleMeterRegistry();
+        pipeline = new MutationPipeline(meterRegistry, true, 16);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        pipeline.stop();
+    }
+
+    private DataStore newDataStore(MutationPipeline pipeline, MutationJournal journal) {
+        DataStore store = new DataStore(dataFile.toString(),
+                new JsonSnapshotStorage(dataFile.toString(), DataLayout.SINGLE_FILE, Durability.NONE, false), journal, null, ReadMode.RESIDENT, pipeline, null);
+        store.init();
+        return store;
+    }
+
+    @Test
+    void update_fromConcurrentThreads_isAppliedInBatchesAndReplayed() throws Exception {
+
+        MutationJournal journal = new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.ALWAYS, 0);
+        DataStore store = newDataStore(pipeline, journal);
+        assertTrue(pipeline.isRunning());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            int writer = thread;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    String address = writer + "-" + i;
+                    store.update(dataWrapper -> dataWrapper.getFirestations().add(new Firestation(address, writer)));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        pipeline.stop();
+        journal.close();
+
+        assertEquals(400, store.getDataWrapper().getFirestations().size());
+        assertTrue(store.getVersion() <= 400);
+        assertEquals(store.getVersion(), (long) meterRegistry.get("safetynetalerts.pipeline.batch.size").summary().count());
+        DataStore reloaded = newDataStore(null, new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.NEVER, 0));
+        assertEquals(store.getDataWrapper().getFirestations(), reloaded.getDataWrapper().getFirestations());
+        assertEquals(store.getVersion(), reloaded.getVersion());
+    }
+
+    @Test
+    void update_whenSomeMutationsThrow_onlyPublishesTheOthers() throws Exception {
+
+        DataStore store = newDataStore(pipeline, new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.NEVER, 0));
+        AtomicInteger failures = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            int writer = thread;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    String address = writer + "-" + i;
+                    boolean failing = i % 2 == 1;
+                    try {
+                        store.update(dataWrapper -> {
+                            dataWrapper.getFirestations().add(new Firestation(address, writer));
+                            if (failing) {
+                                throw new IllegalArgumentException(address);
+                            }
+                        });
+                    } catch (IllegalArgumentException e) {
+                        assertEquals(address, e.getMessage());
+                        failures.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(100, failures.get());
+        List<Firestation> firestations = store.getDataWrapper().getFirestations();
+        assertEquals(100, firestations.size());
+        assertTrue(firestations.stream().allMatch(firestation -> Integer.parseInt(firestation.getAddress().split("-")[1]) % 2 == 0));
+    }
+
+    @Test
+    void updateIfMatch_withStaleVersion_isRejected() throws IOException {
+
+        DataStore store = newDataStore(pipeline, new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.NEVER, 0));
+        store.update(dataWrapper -> dataWrapper.getFirestations().add(new Firestation("29 15th St", 1)));
+        String key = EntityType.key("29 15th St", "1");
+        long version = store.getEntityVersion(EntityType.FIRESTATION, key);
+
+        store.updateIfMatch(EntityType.FIRESTATION, key, version, dataWrapper -> dataWrapper.getFirestations().set(0, new Firestation("29 15th St", 2)));
+
+        assertThrows(PreconditionFailedException.class, () -> store.updateIfMatch(EntityType.FIRESTATION, key, version,
+                dataWrapper -> dataWrapper.getFirestations().clear()));
+        assertEquals(List.of(new Firestation("29 15th St", 2)), store.getDataWrapper().getFirestations());
+    }
+
+    @Test
+    void update_whilePipelineStops_completesOrFailsWithoutHanging() throws Exception {
+
+        DataStore store = newDataStore(pipeline, new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.NEVER, 0));
+        AtomicInteger applied = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            int writer = thread;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    String address = writer + "-" + i;
+                    try {
+                        store.update(dataWrapper -> dataWrapper.getFirestations().add(new Firestation(address, writer)));
+                        applied.incrementAndGet();
+                    } catch (IllegalStateException e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        Thread.sleep(20);
+        pipeline.stop();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(1600, applied.get() + rejected.get());
+        assertEquals(applied.get(), store.getDataWrapper().getFirestations().size());
+    }
+
+    @Test
+    void update_interruptedBeforeTheWriterTakesIt_isCancelled() throws Exception {
+
+        DataStore store = newDataStore(pipeline, new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.NEVER, 0));
+        CountDownLatch applying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> blocking = executor.submit(() -> {
+            store.update(dataWrapper -> {
+                applying.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                dataWrapper.getFirestations().add(new Firestation("29 15th St", 1));
+            });
+            return null;
+        });
+        assertTrue(applying.await(10, TimeUnit.SECONDS));
+        AtomicReference<String> outcome = new AtomicReference<>();
+        Thread waiting = new Thread(() -> {
+            try {
+                store.update(dataWrapper -> dataWrapper.getFirestations().add(new Firestation("834 Binoc Ave", 2)));
+                outcome.set("applied");
+            } catch (InterruptedIOException e) {
+                outcome.set("cancelled, interrupted " + Thread.currentThread().isInterrupted());
+            } catch (IOException e) {
+                outcome.set(e.toString());
+            }
+        });
+        waiting.start();
+        while (waiting.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+
+        waiting.interrupt();
+        waiting.join(10_000);
+        release.countDown();
+        blocking.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        store.update(dataWrapper -> dataWrapper.getFirestations().add(new Firestation("644 Gershwin Cir", 3)));
+
+        assertEquals("cancelled, interrupted true", outcome.get());
+        assertEquals(List.of(new Firestation("29 15th St", 1), new Firestation("644 Gershwin Cir", 3)), store.getDataWrapper().getFirestations());
+    }
+
+    @Test
+    void update_fromAnotherMutation_isRejected() throws IOException {
+
+        DataStore store = newDataStore(pipeline, new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.NEVER, 0));
+
+        assertThrows(IllegalStateException.class, () -> store.update(dataWrapper -> {
+            try {
+                store.update(nested -> nested.getFirestations().clear());
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }));
+        assertEquals(0, store.getVersion());
+    }
+}
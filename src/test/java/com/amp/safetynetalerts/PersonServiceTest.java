@@ -1,6 +1,6 @@
 package com.amp.safetynetalerts;
 
-import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.DataStore;
 import com.amp.safetynetalerts.service.PersonService;
 import com.amp.safetynetalerts.dto.*;
 import com.amp.safetynetalerts.model.MedicalRecord;
@@ -16,6 +16,7 @@ import static org.junit.jupiter.api.Assertions.*;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
 
 import org.mockito.ArgumentCaptor;
 import org.mockito.MockedStatic;
@@ -23,6 +24,7 @@ import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
 import static org.mockito.Mockito.*;
 
 import java.util.Arrays;
@@ -53,6 +55,9 @@ public class PersonServiceTest {
     @Autowired
     private PersonService personServiceMock;
 
+    @SpyBean
+    private DataStore dataStore;
+
     @BeforeEach
     public void setup() {
 
@@ -254,20 +259,15 @@ public class PersonServiceTest {
         DataWrapper dataWrapper = new DataWrapper();
         dataWrapper.setPersons(persons);
 
-        try (MockedStatic<DataWrapperRepository> mockRepository = Mockito.mockStatic(DataWrapperRepository.class)) {
-            // Mock methods
-            mockRepository.when(DataWrapperRepository::getDataWrapper).thenReturn(dataWrapper);
-            doNothing().when(DataWrapperRepository.class); // void method, doNothing() used
-            DataWrapperRepository.updateFileWithDataWrapper(any(DataWrapper.class));
+        // Mock methods
+        applyUpdatesTo(dataWrapper);
 
-            personServiceMock.deletePersonDataWrapper(firstName, lastName);
+        personServiceMock.deletePersonDataWrapper(firstName, lastName);
 
-            ArgumentCaptor<DataWrapper> captor = ArgumentCaptor.forClass(DataWrapper.class);
-            mockRepository.verify(() -> DataWrapperRepository.updateFileWithDataWrapper(captor.capture()), times(1));
+        verify(dataStore, times(1)).update(any());
 
-            assertFalse(captor.getValue().getPersons().stream()
-                    .anyMatch(p -> p.getFirstName().equals(firstName) && p.getLastName().equals(lastName)));
-        }
+        assertFalse(dataWrapper.getPersons().stream()
+                .anyMatch(p -> p.getFirstName().equals(firstName) && p.getLastName().equals(lastName)));
     }
 
     @Test
@@ -291,15 +291,13 @@ public class PersonServiceTest {
         DataWrapper testWrapperData = new DataWrapper();
         testWrapperData.setPersons(Collections.singletonList(testPerson));
 
-        try (MockedStatic<DataWrapperRepository> dataWrapperMock = Mockito.mockStatic(DataWrapperRepository.class)) {
-            dataWrapperMock.when(DataWrapperRepository::getDataWrapper).thenReturn(testWrapperData);
+        doReturn(testWrapperData).when(dataStore).getDataWrapper();
 
-            PersonDTO result = personServiceMock.fetchPerson(firstName, lastName);
+        PersonDTO result = personServiceMock.fetchPerson(firstName, lastName);
 
-            assertNotNull(result);
-            assertEquals(firstName, result.getFirstName());
-            assertEquals(lastName, result.getLastName());
-        }
+        assertNotNull(result);
+        assertEquals(firstName, result.getFirstName());
+        assertEquals(lastName, result.getLastName());
     }
 
     @Test
@@ -317,15 +315,14 @@ public class PersonServiceTest {
         dossierMedical.setFirstName(prenom);
         dossierMedical.setLastName(nom);
 
-        try (MockedStatic<DataWrapperRepository> mocked = Mockito.mockStatic(DataWrapperRepository.class)) {
-            mocked.when(DataWrapperRepository::getDataWrapper).thenReturn(new DataWrapper(Collections.singletonList(enfant), Collections.emptyList(), Collections.singletonList(dossierMedical)));
+        doReturn(new DataWrapper(Collections.singletonList(enfant), Collections.emptyList(), Collections.singletonList(dossierMedical)))
+                .when(dataStore).getDataWrapper();
 
-            Optional<Map<String, HouseholdDTO>> resultat = personServiceMock.getChildAlertData(adresse);
+        Optional<Map<String, HouseholdDTO>> resultat = personServiceMock.getChildAlertData(adresse);
 
-            assertTrue(resultat.isPresent());
+        assertTrue(resultat.isPresent());
 
-            mocked.verify(DataWrapperRepository::getDataWrapper);
-        }
+        verify(dataStore).getDataWrapper();
     }
 
     @Test
@@ -359,18 +356,15 @@ public class PersonServiceTest {
         PersonService personServiceMockTemp = mock(PersonService.class);
         when(personServiceMockTemp.getPersonInfoDataWrapper(firstName, lastName)).thenReturn(expectedResult);
 
-        try (MockedStatic<DataWrapperRepository> mocked = Mockito.mockStatic(DataWrapperRepository.class)) {
-            mocked.when(DataWrapperRepository::getDataWrapper).thenReturn(dataWrapper);
-
-            // Running the method to test
-            List<PersoInfoDTO> result = personServiceMockTemp.getPersonInfoDataWrapper(firstName, lastName);
+        doReturn(dataWrapper).when(dataStore).getDataWrapper();
 
-            // Verification of the results
-            assertEquals(expectedResult.size(), result.size());
-            assertEquals(expectedResult.get(0).getFirstName(), result.get(0).getFirstName());
-            assertEquals(expectedResult.get(0).getLastName(), result.get(0).getLastName());
+        // Running the method to test
+        List<PersoInfoDTO> result = personServiceMockTemp.getPersonInfoDataWrapper(firstName, lastName);
 
-        }
+        // Verification of the results
+        assertEquals(expectedResult.size(), result.size());
+        assertEquals(expectedResult.get(0).getFirstName(), result.get(0).getFirstName());
+        assertEquals(expectedResult.get(0).getLastName(), result.get(0).getLastName());
     }
 
     @Test
@@ -386,20 +380,15 @@ public class PersonServiceTest {
 
         DataWrapper donneesInitiales = new DataWrapper(persons, new ArrayList<>(), new ArrayList<>());
 
-        // Use of try-with-resources to mock static
-        try (MockedStatic<DataWrapperRepository> mocked = Mockito.mockStatic(DataWrapperRepository.class)) {
-            mocked.when(DataWrapperRepository::getDataWrapper).thenReturn(donneesInitiales);
+        applyUpdatesTo(donneesInitiales);
 
-            // Execution of the method to test
-            personServiceMock.updatePersonDataWrapper(newPerson);
+        // Execution of the method to test
+        personServiceMock.updatePersonDataWrapper(newPerson);
 
-            // Use of ArgumentCaptor to capture the argument passed to updateFileWithDataWrapper()
-            ArgumentCaptor<DataWrapper> argumentCaptor = ArgumentCaptor.forClass(DataWrapper.class);
-            mocked.verify(() -> DataWrapperRepository.updateFileWithDataWrapper(argumentCaptor.capture()), times(1));
+        verify(dataStore, times(1)).update(any());
 
-            // Verification that the data passed to the method includes the new person
-            assertTrue(argumentCaptor.getValue().getPersons().contains(newPerson));
-        }
+        // Verification that the updated data includes the new person
+        assertTrue(donneesInitiales.getPersons().contains(newPerson));
 
     }
 
@@ -430,17 +419,25 @@ public class PersonServiceTest {
         dataWrapperMock.setFirestations(firestationsToMock);
         dataWrapperMock.setMedicalrecords(medicalRecordsToMock);
 
-        try (MockedStatic<DataWrapperRepository> mocked = Mockito.mockStatic(DataWrapperRepository.class)) {
-            mocked.when(DataWrapperRepository::getDataWrapper).thenReturn(dataWrapperMock);
+        doReturn(dataWrapperMock).when(dataStore).getDataWrapper();
 
-            List<DataOfInhabitantsDTO> expectedResults = Arrays.asList(
-                    new DataOfInhabitantsDTO(2, "Caroline", "Duchesse", "841-874-6513", calculateAge("03/15/1965", LocalDate.now()), Arrays.asList("aznol:200mg"), Arrays.asList("nillacilan")),
-                    new DataOfInhabitantsDTO(2, "Foster", "Shepard", "841-874-6544", calculateAge("01/03/1989", LocalDate.now()), Arrays.asList(), Arrays.asList())
-            );
+        List<DataOfInhabitantsDTO> expectedResults = Arrays.asList(
+                new DataOfInhabitantsDTO(2, "Caroline", "Duchesse", "841-874-6513", calculateAge("03/15/1965", LocalDate.now()), Arrays.asList("aznol:200mg"), Arrays.asList("nillacilan")),
+                new DataOfInhabitantsDTO(2, "Foster", "Shepard", "841-874-6544", calculateAge("01/03/1989", LocalDate.now()), Arrays.asList(), Arrays.asList())
+        );
 
-            List<DataOfInhabitantsDTO> results = personServiceMock.processDataByAddress("29 15th St");
+        List<DataOfInhabitantsDTO> results = personServiceMock.processDataByAddress("29 15th St");
+
+        assertEquals(expectedResults, results);
+    }
 
-            assertEquals(expectedResults, results);
-        }
+    /**
+     * Makes the DataStore apply the mutations it receives directly to the given DataWrapper instead of persisting them.
+     */
+    private void applyUpdatesTo(DataWrapper target) throws IOException {
+        doAnswer(invocation -> {
+            invocation.<Consumer<DataWrapper>>getArgument(0).accept(target);
+            return null;
+        }).when(dataStore).update(any());
     }
-}
\ No newline at end of file
+}
@@ -1,14 +1,19 @@
 package com.amp.safetynetalerts;
 
 import com.amp.safetynetalerts.controller.SafetynetalertsController;
+import com.amp.safetynetalerts.dto.ChangeSetDTO;
 import com.amp.safetynetalerts.dto.DataOfInhabitantsDTO;
 import com.amp.safetynetalerts.dto.HouseholdDTO;
 import com.amp.safetynetalerts.dto.MedicalRecordDTO;
+import com.amp.safetynetalerts.dto.PersonDTO;
 import com.amp.safetynetalerts.model.*;
 import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.ChangeFeed;
+import com.amp.safetynetalerts.repository.SnapshotHistory;
 import com.amp.safetynetalerts.service.FirestationService;
 import com.amp.safetynetalerts.service.MedicalRecordService;
 import com.amp.safetynetalerts.service.PersonService;
+import com.amp.safetynetalerts.service.SyncService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,7 +24,9 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.NoHandlerFoundException;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.when;
@@ -34,7 +41,11 @@ import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @ExtendWith(SpringExtension.class)
 @SpringBootTest(classes = SafetynetalertsController.class)
@@ -55,9 +66,21 @@ class SafetynetalertsControllerTest {
     @MockBean
     private MedicalRecordService medicalRecordService;
 
+    @MockBean
+    private SnapshotHistory snapshotHistory;
+
+    @MockBean
+    private ChangeFeed changeFeed;
+
+    @MockBean
+    private SyncService syncService;
+
     @Test
     void testGetPerson() throws Exception {
 
+        PersonDTO stubPerson = new PersonDTO("John", "Boyd", "1509 Culver St", "Culver", "97451", "841-874-6512", "jaboyd@email.com");
+        when(personService.fetchPerson("John", "Boyd")).thenReturn(stubPerson);
+
         MvcResult result = mockMvc.perform(get("/person")
                         .param("firstName", "John")
                         .param("lastName", "Boyd")
@@ -561,6 +584,9 @@ class SafetynetalertsControllerTest {
     @Test
     public void testGetPersonNotFound() throws Exception {
 
+        when(personService.fetchPerson(anyString(), anyString()))
+                .thenThrow(new NoHandlerFoundException("GET", "/FirstNameNotExists/LastNameNotExists", null));
+
         mockMvc.perform(get("/person")
                         .param("firstName", "FirstNameNotExists")
                         .param("lastName", "LastNameNotExists")
@@ -581,6 +607,78 @@ class SafetynetalertsControllerTest {
                 .andExpect(status().isNoContent());
     }
 
+    @Test
+    void testDeleteMedicalRecordWithIfMatch() throws Exception {
+
+        mockMvc.perform(delete("/medicalRecord")
+                        .param("firstName", "Tessa")
+                        .param("lastName", "Carman")
+                        .header("If-Match", "\"7\""))
+                .andExpect(status().isNoContent());
+
+        verify(medicalRecordService).deleteMedicalRecordDataWrapper("Tessa", "Carman", 7L);
+        verify(medicalRecordService, never()).deleteMedicalRecordDataWrapper("Tessa", "Carman");
+    }
+
+    @Test
+    void testDeletePersonWithWeakIfMatch() throws Exception {
+
+        mockMvc.perform(delete("/person")
+                        .param("firstName", "Tessa")
+                        .param("lastName", "Carman")
+                        .header("If-Match", "W/\"12\""))
+                .andExpect(status().isNoContent());
+
+        verify(personService).deletePersonDataWrapper("Tessa", "Carman", 12L);
+    }
+
+    @Test
+    void testGetPhoneAlertAsOfVersion() throws Exception {
+
+        when(snapshotHistory.pin("3")).thenReturn(SnapshotHistory.Pin.NONE);
+
+        mockMvc.perform(get("/phoneAlert")
+                .param("firestation", "1")
+                .param("asOf", "3"));
+        mockMvc.perform(get("/phoneAlert")
+                .param("firestation", "1"));
+
+        verify(snapshotHistory).pin("3");
+        verify(firestationService, times(2)).getPhoneNumbersByFirestation(1);
+    }
+
+    @Test
+    void testStreamChangesResumesFromLastEventId() throws Exception {
+
+        when(changeFeed.subscribe(any(), any())).thenReturn(() -> {
+        });
+
+        mockMvc.perform(get("/changes/stream")
+                        .header("Last-Event-ID", "42")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted());
+
+        verify(changeFeed).subscribe(eq(42L), any());
+    }
+
+    @Test
+    void testGetChangesSinceVersion() throws Exception {
+
+        when(syncService.getChangesSince(7)).thenReturn(new ChangeSetDTO());
+
+        mockMvc.perform(get("/changes")
+                .param("since", "7"));
+
+        verify(syncService).getChangesSince(7);
+    }
+
+    @Test
+    void testGetChangesWithoutVersion() throws Exception {
+
+        mockMvc.perform(get("/changes"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void testDeletePersonWithoutName() throws Exception {
 
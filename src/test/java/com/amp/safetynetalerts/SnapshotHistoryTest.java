@@ -0,0 +1,161 @@
+package com.amp.safetynetalerts;
+
+import com.amp.safetynetalerts.exception.VersionNotRetainedException;
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.AgeBrackets;
+import com.amp.safetynetalerts.repository.DataLayout;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.Durability;
+import com.amp.safetynetalerts.repository.Households;
+import com.amp.safetynetalerts.repository.JsonSnapshotStorage;
+import com.amp.safetynetalerts.repository.MutationJournal;
+import com.amp.safetynetalerts.repository.ReadMode;
+import com.amp.safetynetalerts.repository.SnapshotHistory;
+import com.amp.safetynetalerts.utils.AgeCalculator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotHistoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path dataFile;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() throws IOException {
+
+        dataFile = tempDir.resolve("data.json");
+        DataWrapperRepository.updateFileWithDataWrapper(new DataWrapper(new ArrayList<>(), new ArrayList<>(), new ArrayList<>()), dataFile.toString());
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private DataStore newDataStore(SnapshotHistory history) {
+        DataStore store = new DataStore(dataFile.toString(),
+                new JsonSnapshotStorage(dataFile.toString(), DataLayout.SINGLE_FILE, Durability.NONE, false),
+                new MutationJournal(tempDir.resolve("data.journal").toString(), MutationJournal.FsyncPolicy.NEVER, 0),
+                null, ReadMode.RESIDENT, null, history);
+        store.load();
+        return store;
+    }
+
+    private void addFirestation(DataStore store, String address) throws IOException {
+        store.update(dataWrapper -> dataWrapper.getFirestations().add(new Firestation(address, 1)));
+    }
+
+    private static List<String> addresses(DataStore store) {
+        return store.getDataWrapper().getFirestations().stream().map(Firestation::getAddress).toList();
+    }
+
+    @Test
+    void pin_servesEveryReadOfTheThreadFromThePastVersion() throws Exception {
+
+        SnapshotHistory history = new SnapshotHistory(meterRegistry, 100, 60_000, Long.MAX_VALUE);
+        DataStore store = newDataStore(history);
+        addFirestation(store, "29 15th St");
+        Instant between = Instant.now();
+        Thread.sleep(5);
+        addFirestation(store, "834 Binoc Ave");
+
+        try (SnapshotHistory.Pin ignored = history.pin("1")) {
+            assertEquals(List.of("29 15th St"), addresses(store));
+            assertEquals(1, store.getVersion());
+
+            addFirestation(store, "644 Gershwin Cir");
+            assertEquals(List.of("29 15th St"), addresses(store));
+        }
+        try (SnapshotHistory.Pin ignored = history.pin(between.toString())) {
+            assertEquals(List.of("29 15th St"), addresses(store));
+        }
+        assertEquals(List.of("29 15th St", "834 Binoc Ave", "644 Gershwin Cir"), addresses(store));
+        assertThrows(IllegalArgumentException.class, () -> history.pin("yesterday"));
+    }
+
+    @Test
+    void pin_computesAgesOnTheDateOfThePastVersion() throws IOException {
+
+        SnapshotHistory history = new SnapshotHistory(meterRegistry, 100, 60_000, Long.MAX_VALUE);
+        DataStore store = newDataStore(history);
+        store.update(dataWrapper -> {
+            dataWrapper.getPersons().add(new Person("Tenley", "Boyd", "1509 Culver St", "Culver", "97451", "841-874-6512", "tenz@email.com"));
+            dataWrapper.getFirestations().add(new Firestation("1509 Culver St", 3));
+        });
+        Instant now = Instant.now();
+        LocalDate day = LocalDate.ofInstant(now, ZoneOffset.UTC);
+        // Turns 18 the day after the version was published
+        String birthdate = day.plusDays(1).minusYears(18).format(DateTimeFormatter.ofPattern("MM/dd/yyyy"));
+        try {
+            AgeCalculator.setClock(Clock.fixed(day.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC));
+            store.update(dataWrapper -> dataWrapper.getMedicalrecords().add(new MedicalRecord("Tenley", "Boyd", birthdate, List.of(), List.of())));
+            String asOf = Instant.now().toString();
+
+            assertEquals(1, AgeBrackets.ofStation(store.getDataWrapper(), 3).adults());
+            for (String pinned : List.of(asOf, "2")) {
+                try (SnapshotHistory.Pin ignored = history.pin(pinned)) {
+                    DataWrapper dataWrapper = store.getDataWrapper();
+                    assertEquals(day.toEpochDay(), AgeCalculator.today(), pinned);
+                    assertEquals(1, AgeBrackets.ofStation(dataWrapper, 3).minors(), pinned);
+                    assertEquals(1, AgeBrackets.atAddress(dataWrapper, "1509 Culver St").minors(), pinned);
+                    Households.Household household = Households.at(dataWrapper, "1509 Culver St").get(0);
+                    assertEquals(1, household.split(AgeCalculator.today()).minors().size(), pinned);
+                    assertEquals(17, AgeCalculator.age(dataWrapper.getMedicalrecords().get(0)), pinned);
+                }
+            }
+            assertEquals(1, AgeBrackets.ofStation(store.getDataWrapper(), 3).adults());
+            assertEquals(18, AgeCalculator.age(store.getDataWrapper().getMedicalrecords().get(0)));
+        } finally {
+            AgeCalculator.setClock(Clock.systemDefaultZone());
+        }
+    }
+
+    @Test
+    void record_beyondTheWindow_dropsTheOldestVersions() throws IOException {
+
+        SnapshotHistory history = new SnapshotHistory(meterRegistry, 3, 60_000, Long.MAX_VALUE);
+        DataStore store = newDataStore(history);
+        for (int i = 0; i < 5; i++) {
+            addFirestation(store, "address " + i);
+        }
+
+        assertEquals(3, history.getRetainedVersions());
+        assertEquals(3, meterRegistry.get("safetynetalerts.history.versions").gauge().value());
+        assertEquals(2 * 1024, meterRegistry.get("safetynetalerts.history.retained.bytes").gauge().value());
+        assertThrows(VersionNotRetainedException.class, () -> history.pin("2"));
+        assertThrows(VersionNotRetainedException.class, () -> history.pin("6"));
+        assertEquals(3, history.atVersion(3).getFirestations().size());
+    }
+
+    @Test
+    void record_beyondTheMemoryBound_keepsTheCurrentVersion() throws IOException {
+
+        SnapshotHistory history = new SnapshotHistory(meterRegistry, 100, 60_000, 1024);
+        DataStore store = newDataStore(history);
+        store.update(dataWrapper -> {
+            dataWrapper.getFirestations().add(new Firestation("29 15th St", 1));
+            dataWrapper.getFirestations().add(new Firestation("834 Binoc Ave", 1));
+        });
+
+        assertEquals(1, history.getRetainedVersions());
+        assertEquals(0, history.getRetainedBytes());
+        assertEquals(2, history.atVersion(1).getFirestations().size());
+    }
+}
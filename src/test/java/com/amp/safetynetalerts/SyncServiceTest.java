@@ -0,0 +1,129 @@
+package com.amp.safetynetalerts;
+
+import com.amp.safetynetalerts.dto.ChangeSetDTO;
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.ChangeFeed;
+import com.amp.safetynetalerts.repository.DataLayout;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.Durability;
+import com.amp.safetynetalerts.repository.EntityType;
+import com.amp.safetynetalerts.repository.JsonSnapshotStorage;
+import com.amp.safetynetalerts.repository.MutationJournal;
+import com.amp.safetynetalerts.repository.ReadMode;
+import com.amp.safetynetalerts.service.SyncService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SyncServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ChangeFeed changeFeed;
+    private DataStore store;
+    private SyncService syncService;
+
+    private static Person person(String firstName, String city) {
+        return new Person(firstName, "Boyd", "1509 Culver St", city, "97451", "841-874-6512", "jaboyd@email.com");
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+
+        Path dataFile = tempDir.resolve("data.json");
+        List<Person> persons = new ArrayList<>(List.of(person("John", "Culver"), person("Jacob", "Culver")));
+        List<Firestation> firestations = new ArrayList<>(List.of(new Firestation("1509 Culver St", 3)));
+        DataWrapperRepository.updateFileWithDataWrapper(new DataWrapper(persons, firestations, new ArrayList<>()), dataFile.toString());
+        changeFeed = new ChangeFeed(new SimpleMeterRegistry(), 3, 16);
+        store = new DataStore(dataFile.toString(),
+                new JsonSnapshotStorage(dataFile.toString(), DataLayout.SINGLE_FILE, Durability.NONE, false),
+                new MutationJournal(tempDir.resolve("data.journal").toString(), MutationJournal.FsyncPolicy.NEVER, 0),
+                null, ReadMode.RESIDENT, null, null, changeFeed);
+        store.load();
+        syncService = new SyncService(store, changeFeed);
+    }
+
+    @AfterEach
+    void tearDown() {
+        changeFeed.stop();
+    }
+
+    @Test
+    void getChangesSince_compactsTheChangesToTheLastStateOfEachEntity() throws IOException {
+
+        store.update(dataWrapper -> dataWrapper.getPersons().set(0, person("John", "Paris")));
+        store.update(dataWrapper -> {
+            dataWrapper.getPersons().add(person("Tenley", "Culver"));
+            dataWrapper.getPersons().set(0, person("John", "Lyon"));
+        });
+        store.update(dataWrapper -> {
+            dataWrapper.getPersons().removeIf(person -> !person.getFirstName().equals("John"));
+            dataWrapper.getFirestations().set(0, new Firestation("1509 Culver St", 4));
+        });
+
+        ChangeSetDTO changes = syncService.getChangesSince(0);
+
+        assertFalse(changes.isFullResync());
+        assertEquals(3, changes.getVersion());
+        assertEquals(List.of(person("John", "Lyon")), changes.getPersons().getUpserts());
+        assertEquals(List.of(EntityType.key("Jacob", "Boyd")), changes.getPersons().getDeletes());
+        assertEquals(List.of(new Firestation("1509 Culver St", 4)), changes.getFirestations().getUpserts());
+        assertEquals(List.of(EntityType.key("1509 Culver St", "3")), changes.getFirestations().getDeletes());
+        assertTrue(changes.getMedicalrecords().getUpserts().isEmpty());
+
+        ChangeSetDTO upToDate = syncService.getChangesSince(3);
+        assertEquals(3, upToDate.getVersion());
+        assertTrue(upToDate.getPersons().getUpserts().isEmpty());
+        assertTrue(upToDate.getPersons().getDeletes().isEmpty());
+    }
+
+    @Test
+    void getChangesSince_aChangedKeyHoldingSeveralEntities_returnsTheWholeDataset() throws IOException {
+
+        store.update(dataWrapper -> dataWrapper.getPersons().add(person("John", "Paris")));
+        store.update(dataWrapper -> dataWrapper.getPersons().remove(0));
+        store.update(dataWrapper -> dataWrapper.getFirestations().set(0, new Firestation("1509 Culver St", 4)));
+
+        ChangeSetDTO sinceDuplicate = syncService.getChangesSince(1);
+        ChangeSetDTO sinceStart = syncService.getChangesSince(0);
+        ChangeSetDTO unrelated = syncService.getChangesSince(2);
+
+        assertTrue(sinceDuplicate.isFullResync());
+        assertEquals(store.getDataWrapper().getPersons(), sinceDuplicate.getPersons().getUpserts());
+        assertTrue(sinceStart.isFullResync());
+        assertFalse(unrelated.isFullResync());
+        assertEquals(List.of(new Firestation("1509 Culver St", 4)), unrelated.getFirestations().getUpserts());
+    }
+
+    @Test
+    void getChangesSince_aVersionNoLongerRetained_returnsTheWholeDataset() throws IOException {
+
+        for (int i = 0; i < 4; i++) {
+            String city = "City " + i;
+            store.update(dataWrapper -> dataWrapper.getPersons().set(1, person("Jacob", city)));
+        }
+
+        ChangeSetDTO compacted = syncService.getChangesSince(0);
+        ChangeSetDTO unknown = syncService.getChangesSince(9);
+
+        assertTrue(compacted.isFullResync());
+        assertEquals(4, compacted.getVersion());
+        assertEquals(store.getDataWrapper().getPersons(), compacted.getPersons().getUpserts());
+        assertEquals(store.getDataWrapper().getFirestations(), compacted.getFirestations().getUpserts());
+        assertTrue(unknown.isFullResync());
+        assertEquals(List.of(person("Jacob", "City 3")), syncService.getChangesSince(1).getPersons().getUpserts());
+    }
+}
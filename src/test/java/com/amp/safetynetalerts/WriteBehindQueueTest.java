@@ -0,0 +1,121 @@
+package com.amp.safetynetalerts;
+
+import com.amp.safetynetalerts.exception.PersistenceBacklogException;
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.repository.DataLayout;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.Durability;
+import com.amp.safetynetalerts.repository.JsonSnapshotStorage;
+import com.amp.safetynetalerts.repository.MutationJournal;
+import com.amp.safetynetalerts.repository.ReadMode;
+import com.amp.safetynetalerts.repository.WriteBehindQueue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindQueueTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path dataFile;
+    private Path journalFile;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() throws IOException {
+
+        dataFile = tempDir.resolve("data.json");
+        DataWrapperRepository.updateFileWithDataWrapper(new DataWrapper(new ArrayList<>(), new ArrayList<>(), new ArrayList<>()), dataFile.toString());
+        journalFile = tempDir.resolve("data.journal");
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private DataStore newDataStore(WriteBehindQueue writeBehind, MutationJournal journal) {
+        DataStore store = new DataStore(dataFile.toString(),
+                new JsonSnapshotStorage(dataFile.toString(), DataLayout.SINGLE_FILE, Durability.NONE, false), journal, writeBehind, ReadMode.RESIDENT);
+        store.load();
+        return store;
+    }
+
+    private WriteBehindQueue newQueue(MutationJournal journal, int capacity, WriteBehindQueue.Backpressure backpressure) {
+        return new WriteBehindQueue(journal, meterRegistry, true, capacity, 60_000, backpressure, 50);
+    }
+
+    private void addFirestation(DataStore store, String address) throws IOException {
+        store.update(dataWrapper -> dataWrapper.getFirestations().add(new Firestation(address, 1)));
+    }
+
+    @Test
+    void update_isAcknowledgedBeforePersistedThenReplayed() throws Exception {
+
+        MutationJournal journal = new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.ALWAYS, 0);
+        WriteBehindQueue writeBehind = newQueue(journal, 100, WriteBehindQueue.Backpressure.BLOCK);
+        DataStore store = newDataStore(writeBehind, journal);
+
+        addFirestation(store, "29 15th St");
+        addFirestation(store, "834 Binoc Ave");
+
+        assertEquals(2, store.getDataWrapper().getFirestations().size());
+        assertEquals(2, writeBehind.getDepth());
+        assertFalse(Files.exists(journalFile));
+
+        writeBehind.start();
+        assertTrue(writeBehind.awaitDrained(5_000));
+        writeBehind.stop();
+        journal.close();
+
+        assertEquals(0, meterRegistry.get("safetynetalerts.write-behind.queue.depth").gauge().value());
+        DataStore reloaded = newDataStore(null, new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.NEVER, 0));
+        assertEquals(store.getDataWrapper().getFirestations(), reloaded.getDataWrapper().getFirestations());
+        assertEquals(2, reloaded.getVersion());
+    }
+
+    @Test
+    void update_whenQueueIsFull_isRejected() throws IOException {
+
+        MutationJournal journal = new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.NEVER, 0);
+        DataStore store = newDataStore(newQueue(journal, 1, WriteBehindQueue.Backpressure.REJECT), journal);
+
+        addFirestation(store, "29 15th St");
+
+        assertThrows(PersistenceBacklogException.class, () -> addFirestation(store, "834 Binoc Ave"));
+        assertEquals(1, store.getVersion());
+    }
+
+    @Test
+    void update_whenQueueStaysFull_blocksThenIsRejected() throws IOException {
+
+        MutationJournal journal = new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.NEVER, 0);
+        DataStore store = newDataStore(newQueue(journal, 1, WriteBehindQueue.Backpressure.BLOCK), journal);
+
+        addFirestation(store, "29 15th St");
+        long start = System.nanoTime();
+
+        assertThrows(PersistenceBacklogException.class, () -> addFirestation(store, "834 Binoc Ave"));
+        assertTrue(System.nanoTime() - start >= 50_000_000L);
+    }
+
+    @Test
+    void update_withoutChange_givesRoomBack() throws IOException {
+
+        MutationJournal journal = new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.NEVER, 0);
+        DataStore store = newDataStore(newQueue(journal, 1, WriteBehindQueue.Backpressure.REJECT), journal);
+
+        store.update(dataWrapper -> dataWrapper.getFirestations().removeIf(firestation -> true));
+        addFirestation(store, "29 15th St");
+
+        assertEquals(List.of(new Firestation("29 15th St", 1)), store.getDataWrapper().getFirestations());
+    }
+}
@@ -0,0 +1,55 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.service.PersonService;
+import com.amp.safetynetalerts.utils.AgeCalculator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the age of a medical record: parsing its birthdate and computing a Period against LocalDate.now() as
+ * PersonService used to, versus the integer arithmetic of AgeCalculator on the birthdate parsed when the record was
+ * built. Run with -prof gc to see the allocations per age.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AgeBenchmark {
+
+    private static final int RECORDS = 1024;
+
+    private List<MedicalRecord> medicalRecords;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        medicalRecords = BenchmarkData.generate(RECORDS).getMedicalrecords();
+    }
+
+    private MedicalRecord nextRecord() {
+        return medicalRecords.get(next++ & (RECORDS - 1));
+    }
+
+    @Benchmark
+    public int parseAndPeriod() {
+        return PersonService.calculateAge(nextRecord().getBirthdate(), LocalDate.now());
+    }
+
+    @Benchmark
+    public int preParsedEpochDay() {
+        return AgeCalculator.age(nextRecord());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AgeBenchmark.class.getSimpleName()).build()).run();
+    }
+}
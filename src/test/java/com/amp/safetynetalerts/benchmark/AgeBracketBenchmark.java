@@ -0,0 +1,78 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.dto.PersonWithMedicalRecordDTO;
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.AgeBrackets;
+import com.amp.safetynetalerts.repository.DataSnapshot;
+import com.amp.safetynetalerts.service.FirestationService;
+import com.amp.safetynetalerts.service.PersonService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the adult and children counts of /personsByFirestationNumber and of the child check of /childAlert:
+ * joining the residents with their medical records and counting the ages as PersonService used to, versus reading
+ * the age brackets maintained by the snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class AgeBracketBenchmark {
+
+    @Param({"10000", "100000"})
+    public int persons;
+
+    private DataWrapper dataWrapper;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dataWrapper = DataSnapshot.of(0, BenchmarkData.generate(persons)).toDataWrapper();
+        // Builds the brackets once, as the first request after loading would
+        AgeBrackets.ofStation(dataWrapper, 1);
+    }
+
+    @Benchmark
+    public Map<String, Long> countStationByJoin() {
+        List<String> addresses = FirestationService.getFirestationAddresses(dataWrapper.getFirestations(), next++ % BenchmarkData.STATIONS + 1);
+        List<Person> residents = PersonService.getPersonsByAddresses(dataWrapper.getPersons(), addresses);
+        return PersonService.countAdultsAndChildren(PersonService.processPersonsAndRecords(residents, dataWrapper.getMedicalrecords()));
+    }
+
+    @Benchmark
+    public Map<String, Long> countStationByBrackets() {
+        return PersonService.countAdultsAndChildren(AgeBrackets.ofStation(dataWrapper, next++ % BenchmarkData.STATIONS + 1));
+    }
+
+    @Benchmark
+    public boolean childAtAddressByJoin() {
+        List<Person> residents = PersonService.getPersonsByAddresses(dataWrapper.getPersons(),
+                Collections.singletonList(BenchmarkData.address(next++ % (persons / BenchmarkData.PERSONS_PER_ADDRESS))));
+        for (PersonWithMedicalRecordDTO resident : PersonService.processPersonsAndRecords(residents, dataWrapper.getMedicalrecords())) {
+            if (resident.getAge() >= 0 && resident.getAge() < 18) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Benchmark
+    public boolean childAtAddressByBrackets() {
+        return AgeBrackets.atAddress(dataWrapper, BenchmarkData.address(next++ % (persons / BenchmarkData.PERSONS_PER_ADDRESS))).children() > 0;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AgeBracketBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,114 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.dto.DataOfInhabitantsDTO;
+import com.amp.safetynetalerts.repository.DataLayout;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.Durability;
+import com.amp.safetynetalerts.repository.JsonSnapshotStorage;
+import com.amp.safetynetalerts.repository.MutationJournal;
+import com.amp.safetynetalerts.repository.ReadMode;
+import com.amp.safetynetalerts.repository.SnapshotHistory;
+import com.amp.safetynetalerts.service.PersonService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of /fire on the current version without history, on the current version with 1000 retained versions,
+ * and as of the oldest retained version. The estimated memory held by the history is printed after setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AsOfReadBenchmark {
+
+    private static final int VERSIONS = 1000;
+
+    @Param({"10000"})
+    public int persons;
+
+    private Path file;
+    private Path journalWithoutHistory;
+    private Path journalWithHistory;
+    private DataStore withoutHistory;
+    private DataStore withHistory;
+    private SnapshotHistory history;
+    private PersonService serviceWithoutHistory;
+    private PersonService serviceWithHistory;
+    private String oldest;
+    private int operation;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = BenchmarkData.writeTempFile(persons);
+        journalWithoutHistory = Files.createTempFile("safetynet-bench-", ".journal");
+        journalWithHistory = Files.createTempFile("safetynet-bench-", ".journal");
+        withoutHistory = newDataStore(journalWithoutHistory, null);
+        history = new SnapshotHistory(new SimpleMeterRegistry(), VERSIONS, Long.MAX_VALUE, Long.MAX_VALUE);
+        withHistory = newDataStore(journalWithHistory, history);
+        for (int i = 0; i < VERSIONS; i++) {
+            int index = i % persons;
+            String city = "City " + i;
+            withHistory.update(dataWrapper -> dataWrapper.getPersons().set(index, dataWrapper.getPersons().get(index).toBuilder().city(city).build()));
+        }
+        oldest = String.valueOf(withHistory.getVersion() - VERSIONS + 1);
+        serviceWithoutHistory = new PersonService(withoutHistory);
+        serviceWithHistory = new PersonService(withHistory);
+        System.out.printf("%n%d versions retained, %d bytes estimated%n", history.getRetainedVersions(), history.getRetainedBytes());
+    }
+
+    private DataStore newDataStore(Path journal, SnapshotHistory history) throws IOException {
+        Files.delete(journal);
+        DataStore dataStore = new DataStore(file.toString(),
+                new JsonSnapshotStorage(file.toString(), DataLayout.SINGLE_FILE, Durability.NONE, false),
+                new MutationJournal(journal.toString(), MutationJournal.FsyncPolicy.NEVER, 0),
+                null, ReadMode.RESIDENT, null, history);
+        dataStore.load();
+        return dataStore;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        withoutHistory.getJournal().close();
+        withHistory.getJournal().close();
+        Files.deleteIfExists(journalWithoutHistory);
+        Files.deleteIfExists(journalWithHistory);
+        Files.deleteIfExists(file);
+    }
+
+    private String nextAddress() {
+        return BenchmarkData.address(operation++ % (persons / BenchmarkData.PERSONS_PER_ADDRESS));
+    }
+
+    @Benchmark
+    public List<DataOfInhabitantsDTO> currentWithoutHistory() {
+        return serviceWithoutHistory.processDataByAddress(nextAddress());
+    }
+
+    @Benchmark
+    public List<DataOfInhabitantsDTO> currentWithHistory() {
+        return serviceWithHistory.processDataByAddress(nextAddress());
+    }
+
+    @Benchmark
+    public List<DataOfInhabitantsDTO> asOfOldestVersion() {
+        try (SnapshotHistory.Pin ignored = history.pin(oldest)) {
+            return serviceWithHistory.processDataByAddress(nextAddress());
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AsOfReadBenchmark.class.getSimpleName()).build()).run();
+    }
+}
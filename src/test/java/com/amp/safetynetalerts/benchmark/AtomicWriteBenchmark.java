@@ -0,0 +1,64 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.repository.DataSnapshot;
+import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.Durability;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of replacing the data file atomically under each durability mode,
+ * for the DataWrapper rewrite and for the streamed checkpoint snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AtomicWriteBenchmark {
+
+    @Param({"100", "10000"})
+    public int persons;
+
+    @Param({"NONE", "FSYNC_FILE", "FSYNC_FILE_AND_DIRECTORY"})
+    public Durability durability;
+
+    private DataWrapper dataWrapper;
+    private DataSnapshot snapshot;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dataWrapper = BenchmarkData.generate(persons);
+        snapshot = DataSnapshot.of(1, dataWrapper);
+        file = BenchmarkData.writeTempFile(persons);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void writeDataWrapper() throws IOException {
+        DataWrapperRepository.updateFileWithDataWrapper(dataWrapper, file.toString(), durability);
+    }
+
+    @Benchmark
+    public void writeSnapshot() throws IOException {
+        DataWrapperRepository.updateFileWithSnapshot(snapshot, file.toString(), durability);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AtomicWriteBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,105 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.MutationJournal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates synthetic datasets shaped like data.json for the benchmarks.
+ */
+public final class BenchmarkData {
+
+    public static final int PERSONS_PER_ADDRESS = 4;
+    public static final int STATIONS = 4;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Builds a dataset of the given number of persons, with one medical record per person,
+     * four persons per address and each address covered by one of four stations.
+     *
+     * @param personCount the number of persons to generate
+     * @return the generated DataWrapper
+     */
+    public static DataWrapper generate(int personCount) {
+
+        List<Person> persons = new ArrayList<>(personCount);
+        List<MedicalRecord> medicalRecords = new ArrayList<>(personCount);
+        List<Firestation> firestations = new ArrayList<>();
+
+        for (int i = 0; i < personCount; i++) {
+            int addressIndex = i / PERSONS_PER_ADDRESS;
+            String address = address(addressIndex);
+            if (i % PERSONS_PER_ADDRESS == 0) {
+                firestations.add(new Firestation(address, station(addressIndex)));
+            }
+            String firstName = firstName(i);
+            String lastName = lastName(addressIndex);
+            persons.add(new Person(firstName, lastName, address, "Culver", "97451",
+                    "841-874-" + String.format("%04d", i % 10_000), firstName.toLowerCase() + "@email.com"));
+            medicalRecords.add(new MedicalRecord(firstName, lastName,
+                    String.format("%02d/%02d/%d", i % 12 + 1, i % 28 + 1, 1940 + i % 80),
+                    List.of("aznol:350mg"), List.of("nillacilan")));
+        }
+        return new DataWrapper(persons, firestations, medicalRecords);
+    }
+
+    /**
+     * Writes a generated dataset to a temporary JSON file.
+     *
+     * @param personCount the number of persons to generate
+     * @return the path of the written file
+     * @throws IOException if the file could not be written
+     */
+    public static Path writeTempFile(int personCount) throws IOException {
+
+        Path file = Files.createTempFile("safetynet-bench-" + personCount + "-", ".json");
+        DataWrapperRepository.updateFileWithDataWrapper(generate(personCount), file.toString());
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Creates a loaded DataStore over the given data file, with a fresh journal that is never forced to disk.
+     *
+     * @param file the data file
+     * @return the loaded DataStore
+     * @throws IOException if the journal could not be created
+     */
+    public static DataStore newDataStore(Path file) throws IOException {
+
+        Path journal = Files.createTempFile("safetynet-bench-", ".journal");
+        Files.delete(journal);
+        journal.toFile().deleteOnExit();
+        DataStore dataStore = new DataStore(file.toString(), new MutationJournal(journal.toString(), MutationJournal.FsyncPolicy.NEVER, 0));
+        dataStore.load();
+        return dataStore;
+    }
+
+    public static String address(int addressIndex) {
+        return addressIndex + " Culver St";
+    }
+
+    public static int station(int addressIndex) {
+        return addressIndex % STATIONS + 1;
+    }
+
+    public static String firstName(int personIndex) {
+        return "First" + personIndex;
+    }
+
+    public static String lastName(int addressIndex) {
+        return "Last" + addressIndex;
+    }
+}
@@ -0,0 +1,109 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.repository.ChangeFeed;
+import com.amp.safetynetalerts.repository.DataLayout;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.Durability;
+import com.amp.safetynetalerts.repository.JsonSnapshotStorage;
+import com.amp.safetynetalerts.repository.MutationJournal;
+import com.amp.safetynetalerts.repository.ReadMode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency of a person update published to the change feed, with no subscriber, with fast subscribers, and with
+ * fast subscribers plus one that never keeps up and is dropped, then subscribes again, whenever its buffer is full.
+ * The journal is not forced, so that the cost of the feed is not hidden by the flush.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChangeFeedBenchmark {
+
+    @Param({"0", "8"})
+    public int subscribers;
+
+    @Param({"false", "true"})
+    public boolean slowSubscriber;
+
+    private Path file;
+    private Path journal;
+    private DataStore dataStore;
+    private ChangeFeed changeFeed;
+    private final LongAdder received = new LongAdder();
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = BenchmarkData.writeTempFile(10000);
+        journal = Files.createTempFile("safetynet-bench-", ".journal");
+        Files.delete(journal);
+        changeFeed = new ChangeFeed(new SimpleMeterRegistry(), 10000, 1024);
+        dataStore = new DataStore(file.toString(),
+                new JsonSnapshotStorage(file.toString(), DataLayout.SINGLE_FILE, Durability.NONE, false),
+                new MutationJournal(journal.toString(), MutationJournal.FsyncPolicy.NEVER, 0),
+                null, ReadMode.RESIDENT, null, null, changeFeed);
+        dataStore.load();
+        for (int i = 0; i < subscribers; i++) {
+            changeFeed.subscribe(null, new ChangeFeed.Listener() {
+                @Override
+                public void onCommit(ChangeFeed.Commit commit) {
+                    received.increment();
+                }
+
+                @Override
+                public void onGap(long lastVersion) {
+                }
+            });
+        }
+        if (slowSubscriber) {
+            subscribeSlowly();
+        }
+    }
+
+    private void subscribeSlowly() {
+        changeFeed.subscribe(null, new ChangeFeed.Listener() {
+            @Override
+            public void onCommit(ChangeFeed.Commit commit) throws InterruptedException {
+                Thread.sleep(10);
+            }
+
+            @Override
+            public void onGap(long lastVersion) {
+                subscribeSlowly();
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        changeFeed.stop();
+        System.out.printf("%n%d commits delivered to the fast subscribers%n", received.sum());
+        dataStore.getJournal().close();
+        Files.deleteIfExists(journal);
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void update() throws IOException {
+        int index = next++ % 10000;
+        String city = "City " + next;
+        dataStore.update(dataWrapper -> dataWrapper.getPersons().set(index, dataWrapper.getPersons().get(index).toBuilder().city(city).build()));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ChangeFeedBenchmark.class.getSimpleName()).build()).run();
+    }
+}
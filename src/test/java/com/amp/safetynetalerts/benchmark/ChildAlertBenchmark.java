@@ -0,0 +1,102 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.dto.HouseholdDTO;
+import com.amp.safetynetalerts.dto.PersonWithMedicalRecordDTO;
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.service.PersonService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of /childAlert at dense addresses: joining the occupants with their medical records and grouping every
+ * child's household by scanning all occupants as PersonService used to, versus reading the households materialized
+ * by the snapshot. Also measures a person update followed by a child alert, which recomputes one address.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ChildAlertBenchmark {
+
+    private static final int PERSONS = 100_000;
+    private static final int FAMILY_SIZE = 4;
+
+    @Param({"4", "400"})
+    public int occupants;
+
+    private DataStore dataStore;
+    private PersonService personService;
+    private int addresses;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        List<Person> persons = new ArrayList<>(PERSONS);
+        List<MedicalRecord> medicalRecords = new ArrayList<>(PERSONS);
+        for (int i = 0; i < PERSONS; i++) {
+            String firstName = BenchmarkData.firstName(i);
+            String lastName = BenchmarkData.lastName(i / FAMILY_SIZE);
+            persons.add(new Person(firstName, lastName, BenchmarkData.address(i / occupants), "Culver", "97451",
+                    "841-874-6512", firstName.toLowerCase() + "@email.com"));
+            // Two adults and two children per family
+            medicalRecords.add(new MedicalRecord(firstName, lastName, i % FAMILY_SIZE < 2 ? "03/06/1984" : "09/06/2017",
+                    List.of("aznol:350mg"), List.of("nillacilan")));
+        }
+        Path file = Files.createTempFile("safetynet-bench-childalert-", ".json");
+        file.toFile().deleteOnExit();
+        DataWrapperRepository.updateFileWithDataWrapper(new DataWrapper(persons, new ArrayList<>(), medicalRecords), file.toString());
+        dataStore = BenchmarkData.newDataStore(file);
+        personService = new PersonService(dataStore);
+        addresses = PERSONS / occupants;
+    }
+
+    private String nextAddress() {
+        return BenchmarkData.address(next++ % addresses);
+    }
+
+    @Benchmark
+    public List<HouseholdDTO> scanHouseholds() {
+        DataWrapper dataWrapper = dataStore.getDataWrapper();
+        List<Person> persons = PersonService.getPersonsByAddresses(dataWrapper.getPersons(), Collections.singletonList(nextAddress()));
+        List<PersonWithMedicalRecordDTO> personWithMedicalRecordDTOS = PersonService.processPersonsAndRecords(persons, dataWrapper.getMedicalrecords());
+        return personService.fetchHouseholds(personWithMedicalRecordDTOS, personService.extractChildren(personWithMedicalRecordDTOS));
+    }
+
+    @Benchmark
+    public Optional<Map<String, HouseholdDTO>> materializedHouseholds() {
+        return personService.getChildAlertData(nextAddress());
+    }
+
+    @Benchmark
+    public Optional<Map<String, HouseholdDTO>> updateThenMaterializedHouseholds() throws IOException {
+        int index = next++ % PERSONS;
+        String address = BenchmarkData.address(index / occupants);
+        dataStore.update(dataWrapper -> {
+            Person person = dataWrapper.getPersons().get(index);
+            dataWrapper.getPersons().set(index, person.toBuilder().phone("841-874-" + String.format("%04d", next % 10_000)).build());
+        });
+        return personService.getChildAlertData(address);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ChildAlertBenchmark.class.getSimpleName()).build()).run();
+    }
+}
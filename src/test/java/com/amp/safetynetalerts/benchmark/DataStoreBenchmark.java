@@ -0,0 +1,61 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.service.MedicalRecordService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of obtaining the dataset: re-parsing the JSON file on every call
+ * versus reading the resident DataStore, for growing file sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataStoreBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int persons;
+
+    private Path file;
+    private DataStore dataStore;
+    private MedicalRecordService medicalRecordService;
+
+    @Setup
+    public void setup() throws IOException {
+        file = BenchmarkData.writeTempFile(persons);
+        dataStore = BenchmarkData.newDataStore(file);
+        medicalRecordService = new MedicalRecordService(dataStore);
+    }
+
+    @Benchmark
+    public DataWrapper reparseFilePerRequest() {
+        return DataWrapperRepository.getDataWrapper(file.toString());
+    }
+
+    @Benchmark
+    public DataWrapper residentStore() {
+        return dataStore.getDataWrapper();
+    }
+
+    @Benchmark
+    public void residentStoreFirstRecordLookup(Blackhole blackhole) {
+        blackhole.consume(medicalRecordService.getMedicalRecordDataWrapper(BenchmarkData.firstName(0), BenchmarkData.lastName(0)));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DataStoreBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,88 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.repository.ChangeFeed;
+import com.amp.safetynetalerts.repository.DataLayout;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.Durability;
+import com.amp.safetynetalerts.repository.JsonSnapshotStorage;
+import com.amp.safetynetalerts.repository.MutationJournal;
+import com.amp.safetynetalerts.repository.ReadMode;
+import com.amp.safetynetalerts.service.SyncService;
+import com.google.gson.Gson;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a mirror catching up on 100 person updates: serializing the change set since its version, against
+ * serializing the whole dataset as a full resync. The size of both payloads is printed after setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeltaSyncBenchmark {
+
+    private static final int UPDATES = 100;
+
+    @Param({"10000", "100000"})
+    public int persons;
+
+    private Path file;
+    private Path journal;
+    private DataStore dataStore;
+    private ChangeFeed changeFeed;
+    private SyncService syncService;
+    private final Gson gson = new Gson();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = BenchmarkData.writeTempFile(persons);
+        journal = Files.createTempFile("safetynet-bench-", ".journal");
+        Files.delete(journal);
+        changeFeed = new ChangeFeed(new SimpleMeterRegistry(), 10000, 1024);
+        dataStore = new DataStore(file.toString(),
+                new JsonSnapshotStorage(file.toString(), DataLayout.SINGLE_FILE, Durability.NONE, false),
+                new MutationJournal(journal.toString(), MutationJournal.FsyncPolicy.NEVER, 0),
+                null, ReadMode.RESIDENT, null, null, changeFeed);
+        dataStore.load();
+        for (int i = 0; i < UPDATES; i++) {
+            int index = i * 7 % persons;
+            String city = "City " + i;
+            dataStore.update(dataWrapper -> dataWrapper.getPersons().set(index, dataWrapper.getPersons().get(index).toBuilder().city(city).build()));
+        }
+        syncService = new SyncService(dataStore, changeFeed);
+        System.out.printf("%ndelta: %d bytes, full resync: %d bytes%n", delta().length(), fullResync().length());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        changeFeed.stop();
+        dataStore.getJournal().close();
+        Files.deleteIfExists(journal);
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public String delta() {
+        return gson.toJson(syncService.getChangesSince(0));
+    }
+
+    @Benchmark
+    public String fullResync() {
+        return gson.toJson(syncService.getChangesSince(-1));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DeltaSyncBenchmark.class.getSimpleName()).build()).run();
+    }
+}
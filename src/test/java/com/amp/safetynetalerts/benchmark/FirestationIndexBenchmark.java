@@ -0,0 +1,68 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.repository.DataSnapshot;
+import com.amp.safetynetalerts.service.FirestationService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the firestation lookups behind /fire, /phoneAlert, /flood/stations and /firestation: the station of an
+ * address and the addresses of a station, scanning the firestation list versus using the address and station
+ * indexes carried by the snapshot list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FirestationIndexBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int persons;
+
+    private List<Firestation> indexed;
+    private List<Firestation> scanned;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        indexed = DataSnapshot.of(0, BenchmarkData.generate(persons)).getFirestations();
+        scanned = new ArrayList<>(indexed);
+    }
+
+    private String nextAddress() {
+        return BenchmarkData.address((int) (next++ * 2654435761L % indexed.size()));
+    }
+
+    @Benchmark
+    public Integer scanStationOfAddress() {
+        return FirestationService.getFirestationNumber(scanned, nextAddress());
+    }
+
+    @Benchmark
+    public Integer indexedStationOfAddress() {
+        return FirestationService.getFirestationNumber(indexed, nextAddress());
+    }
+
+    @Benchmark
+    public List<String> scanAddressesOfStation() {
+        return FirestationService.getFirestationAddresses(scanned, next++ % BenchmarkData.STATIONS + 1);
+    }
+
+    @Benchmark
+    public List<String> indexedAddressesOfStation() {
+        return FirestationService.getFirestationAddresses(indexed, next++ % BenchmarkData.STATIONS + 1);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FirestationIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
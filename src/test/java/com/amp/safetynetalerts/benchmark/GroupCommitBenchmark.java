@@ -0,0 +1,92 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.Durability;
+import com.amp.safetynetalerts.repository.MutationJournal;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sustained durable write throughput of 16 concurrent writers updating persons:
+ * a full read-modify-write of the data file per mutation versus the journal with group commit.
+ * The number of mutations per journal force is printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(16)
+@Fork(1)
+public class GroupCommitBenchmark {
+
+    @Param({"1000"})
+    public int persons;
+
+    @Param({"0", "200"})
+    public long windowMicros;
+
+    private Path file;
+    private Path journalFile;
+    private DataStore dataStore;
+    private final AtomicLong mutations = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = BenchmarkData.writeTempFile(persons);
+        journalFile = Files.createTempFile("safetynet-bench-", ".journal");
+        Files.delete(journalFile);
+        dataStore = new DataStore(file.toString(),
+                new MutationJournal(journalFile.toString(), MutationJournal.FsyncPolicy.ALWAYS, 0, windowMicros));
+        dataStore.load();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        MutationJournal journal = dataStore.getJournal();
+        journal.close();
+        if (journal.getForceCount() > 0) {
+            System.out.printf("%n%.1f mutations per journal force%n", (double) mutations.get() / journal.getForceCount());
+        }
+        Files.deleteIfExists(journalFile);
+        Files.deleteIfExists(file);
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        private int next;
+    }
+
+    @Benchmark
+    public void rewriteFilePerMutation(Writer writer) throws IOException {
+        synchronized (this) {
+            DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper(file.toString());
+            Person person = dataWrapper.getPersons().get(writer.next++ % persons);
+            person.setCity("City " + writer.next);
+            DataWrapperRepository.updateFileWithDataWrapper(dataWrapper, file.toString(), Durability.FSYNC_FILE_AND_DIRECTORY);
+        }
+    }
+
+    @Benchmark
+    public void journalGroupCommit(Writer writer) throws IOException {
+        int index = writer.next++ % persons;
+        String city = "City " + writer.next;
+        dataStore.update(dataWrapper -> dataWrapper.getPersons().set(index, dataWrapper.getPersons().get(index).toBuilder().city(city).build()));
+        mutations.incrementAndGet();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(GroupCommitBenchmark.class.getSimpleName()).build()).run();
+    }
+}
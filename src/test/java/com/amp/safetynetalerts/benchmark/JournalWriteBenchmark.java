@@ -0,0 +1,84 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.Change;
+import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.EntityType;
+import com.amp.safetynetalerts.repository.MutationJournal;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of persisting one person update: rewriting the whole JSON file versus appending
+ * the change to the journal under each fsync policy.
+ * The bytes written per mutation are printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalWriteBenchmark {
+
+    @Param({"100", "10000"})
+    public int persons;
+
+    @Param({"ALWAYS", "INTERVAL", "NEVER"})
+    public MutationJournal.FsyncPolicy fsync;
+
+    private DataWrapper dataWrapper;
+    private Path file;
+    private Path journalFile;
+    private MutationJournal journal;
+    private List<Change> changes;
+    private long rewrites;
+    private long appends;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dataWrapper = BenchmarkData.generate(persons);
+        file = BenchmarkData.writeTempFile(persons);
+        journalFile = Files.createTempFile("safetynet-bench-", ".journal");
+        journal = new MutationJournal(journalFile.toString(), fsync, 100);
+        Person person = dataWrapper.getPersons().get(0);
+        changes = List.of(Change.replace(EntityType.PERSON, person, person.toBuilder().city("Paris").build()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        journal.close();
+        if (appends > 0) {
+            System.out.printf("%n%d bytes appended per mutation%n", journal.getBytesWritten() / appends);
+        }
+        if (rewrites > 0) {
+            System.out.printf("%n%d bytes rewritten per mutation%n", Files.size(file));
+        }
+        Files.deleteIfExists(journalFile);
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void rewriteFile() throws IOException {
+        DataWrapperRepository.updateFileWithDataWrapper(dataWrapper, file.toString());
+        rewrites++;
+    }
+
+    @Benchmark
+    public void appendJournal() throws IOException {
+        journal.append(++appends, changes);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JournalWriteBenchmark.class.getSimpleName()).build()).run();
+    }
+}
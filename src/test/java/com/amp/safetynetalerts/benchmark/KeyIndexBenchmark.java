@@ -0,0 +1,81 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.Change;
+import com.amp.safetynetalerts.repository.DataSnapshot;
+import com.amp.safetynetalerts.repository.EntityType;
+import com.amp.safetynetalerts.repository.IndexKey;
+import com.amp.safetynetalerts.repository.KeyIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of finding a person and a medical record by first name and last name: scanning the collections as the
+ * services used to, versus looking the key up in the index carried by the snapshot lists. Also measures what
+ * maintaining the index adds to publishing the snapshot following a single person update.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class KeyIndexBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int persons;
+
+    private DataSnapshot snapshot;
+    private List<Person> scannedPersons;
+    private List<MedicalRecord> scannedMedicalRecords;
+    private long version;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        snapshot = DataSnapshot.of(0, BenchmarkData.generate(persons));
+        scannedPersons = new ArrayList<>(snapshot.getPersons());
+        scannedMedicalRecords = new ArrayList<>(snapshot.getMedicalrecords());
+    }
+
+    private String nextKey() {
+        int index = (int) (next++ * 2654435761L % persons);
+        return EntityType.key(BenchmarkData.firstName(index), BenchmarkData.lastName(index / BenchmarkData.PERSONS_PER_ADDRESS));
+    }
+
+    @Benchmark
+    public MedicalRecord scanLookup() {
+        String key = nextKey();
+        KeyIndex.find(scannedPersons, IndexKey.PERSON_NAME, key);
+        return KeyIndex.find(scannedMedicalRecords, IndexKey.MEDICAL_RECORD_NAME, key);
+    }
+
+    @Benchmark
+    public MedicalRecord indexedLookup() {
+        String key = nextKey();
+        KeyIndex.find(snapshot.getPersons(), IndexKey.PERSON_NAME, key);
+        return KeyIndex.find(snapshot.getMedicalrecords(), IndexKey.MEDICAL_RECORD_NAME, key);
+    }
+
+    @Benchmark
+    public DataSnapshot indexedSnapshotPerWrite() {
+        int index = next++ % persons;
+        DataWrapper draft = snapshot.toDraft(new ArrayList<Change>());
+        Person person = draft.getPersons().get(index);
+        draft.getPersons().set(index, person.toBuilder().firstName(person.getFirstName() + "'").build());
+        snapshot = DataSnapshot.of(++version, draft);
+        return snapshot;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(KeyIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
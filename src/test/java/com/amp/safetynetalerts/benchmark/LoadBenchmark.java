@@ -0,0 +1,67 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.repository.DataSnapshot;
+import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup load of the base snapshot: parsing the file into a JSON tree then mapping and copying it,
+ * versus streaming the records straight into the snapshot lists.
+ * Run with {@code -prof gc} to compare the bytes allocated per load, the records per second are
+ * the number of records (persons x 2 + addresses) divided by the time per load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBenchmark {
+
+    @Param({"10000", "100000"})
+    public int persons;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = BenchmarkData.writeTempFile(persons);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public DataSnapshot treeParse() throws IOException {
+        try (Reader reader = new FileReader(file.toFile())) {
+            JsonObject root = JsonParser.parseReader(reader).getAsJsonObject();
+            long version = root.has(DataWrapperRepository.VERSION_FIELD) ? root.get(DataWrapperRepository.VERSION_FIELD).getAsLong() : 0;
+            return DataSnapshot.of(version, new Gson().fromJson(root, DataWrapper.class));
+        }
+    }
+
+    @Benchmark
+    public DataSnapshot streamingLoad() {
+        return DataWrapperRepository.getSnapshot(file.toString());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LoadBenchmark.class.getSimpleName()).build()).run();
+    }
+}
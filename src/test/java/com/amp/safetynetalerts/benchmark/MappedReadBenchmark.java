@@ -0,0 +1,74 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.model.MedicalRecord;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.DataLayout;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.Durability;
+import com.amp.safetynetalerts.repository.JsonSnapshotStorage;
+import com.amp.safetynetalerts.repository.MutationJournal;
+import com.amp.safetynetalerts.repository.ReadMode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to start, and from startup to the first point lookups, with the data file loaded into memory
+ * versus memory-mapped with records decoded on demand.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MappedReadBenchmark {
+
+    @Param({"10000", "100000"})
+    public int persons;
+
+    @Param({"RESIDENT", "MAPPED"})
+    public ReadMode readMode;
+
+    private Path file;
+    private Path journal;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = BenchmarkData.writeTempFile(persons);
+        journal = Files.createTempFile("safetynet-bench-", ".journal");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(journal);
+    }
+
+    @Benchmark
+    public DataStore startup() {
+        DataStore dataStore = new DataStore(file.toString(),
+                new JsonSnapshotStorage(file.toString(), DataLayout.SINGLE_FILE, Durability.NONE, false),
+                new MutationJournal(journal.toString(), MutationJournal.FsyncPolicy.NEVER, 0), null, readMode);
+        dataStore.init();
+        return dataStore;
+    }
+
+    @Benchmark
+    public MedicalRecord startupThenLookup() {
+        DataStore dataStore = startup();
+        int last = persons - 1;
+        Person person = dataStore.findPerson(BenchmarkData.firstName(last), BenchmarkData.lastName(last / BenchmarkData.PERSONS_PER_ADDRESS));
+        return dataStore.findMedicalRecord(person.getFirstName(), person.getLastName());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MappedReadBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,116 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.DataLayout;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.Durability;
+import com.amp.safetynetalerts.repository.JsonSnapshotStorage;
+import com.amp.safetynetalerts.repository.MutationJournal;
+import com.amp.safetynetalerts.repository.MutationPipeline;
+import com.amp.safetynetalerts.repository.ReadMode;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable write throughput of 16 concurrent writers updating persons: a full read-modify-write of the data file
+ * per request, the data store publishing each mutation by compare-and-set, and the single-writer pipeline
+ * applying and journaling the mutations in batches. The journal forces every record in both data store modes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(16)
+@Fork(1)
+public class MutationPipelineBenchmark {
+
+    @Param({"1000", "10000"})
+    public int persons;
+
+    private Path file;
+    private Path casJournal;
+    private Path pipelineJournal;
+    private DataStore casStore;
+    private DataStore pipelineStore;
+    private MutationPipeline pipeline;
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = BenchmarkData.writeTempFile(persons);
+        casJournal = Files.createTempFile("safetynet-bench-", ".journal");
+        pipelineJournal = Files.createTempFile("safetynet-bench-", ".journal");
+        Files.delete(casJournal);
+        Files.delete(pipelineJournal);
+        casStore = new DataStore(file.toString(),
+                new MutationJournal(casJournal.toString(), MutationJournal.FsyncPolicy.ALWAYS, 0));
+        casStore.load();
+        pipeline = new MutationPipeline(meterRegistry, true, 1024);
+        pipelineStore = new DataStore(file.toString(),
+                new JsonSnapshotStorage(file.toString(), DataLayout.SINGLE_FILE, Durability.NONE, false),
+                new MutationJournal(pipelineJournal.toString(), MutationJournal.FsyncPolicy.ALWAYS, 0),
+                null, ReadMode.RESIDENT, pipeline, null);
+        pipelineStore.init();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        pipeline.stop();
+        DistributionSummary batches = meterRegistry.get("safetynetalerts.pipeline.batch.size").summary();
+        if (batches.count() > 0) {
+            System.out.printf("%n%.1f mutations per pipeline batch%n", batches.mean());
+        }
+        casStore.getJournal().close();
+        pipelineStore.getJournal().close();
+        Files.deleteIfExists(casJournal);
+        Files.deleteIfExists(pipelineJournal);
+        Files.deleteIfExists(file);
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        private int next;
+    }
+
+    @Benchmark
+    public void rewriteFilePerRequest(Writer writer) throws IOException {
+        synchronized (this) {
+            DataWrapper dataWrapper = DataWrapperRepository.getDataWrapper(file.toString());
+            Person person = dataWrapper.getPersons().get(writer.next++ % persons);
+            person.setCity("City " + writer.next);
+            DataWrapperRepository.updateFileWithDataWrapper(dataWrapper, file.toString(), Durability.FSYNC_FILE_AND_DIRECTORY);
+        }
+    }
+
+    @Benchmark
+    public void compareAndSet(Writer writer) throws IOException {
+        update(casStore, writer);
+    }
+
+    @Benchmark
+    public void singleWriterPipeline(Writer writer) throws IOException {
+        update(pipelineStore, writer);
+    }
+
+    private static void update(DataStore dataStore, Writer writer) throws IOException {
+        int index = writer.next++ % dataStore.getSnapshot().getPersons().size();
+        String city = "City " + writer.next;
+        dataStore.update(dataWrapper -> dataWrapper.getPersons().set(index, dataWrapper.getPersons().get(index).toBuilder().city(city).build()));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MutationPipelineBenchmark.class.getSimpleName()).build()).run();
+    }
+}
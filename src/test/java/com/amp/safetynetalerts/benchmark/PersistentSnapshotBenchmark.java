@@ -0,0 +1,64 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.Change;
+import com.amp.safetynetalerts.repository.DataSnapshot;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of publishing the snapshot following a single person update: copying the person list as drafts used to,
+ * versus deriving the next version of the persistent vector that shares every untouched node with the previous one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PersistentSnapshotBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int persons;
+
+    private DataSnapshot snapshot;
+    private List<Person> personList;
+    private long version;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        snapshot = DataSnapshot.of(0, BenchmarkData.generate(persons));
+        personList = Collections.unmodifiableList(new ArrayList<>(snapshot.getPersons()));
+    }
+
+    @Benchmark
+    public List<Person> copyListPerWrite() {
+        int index = next++ % persons;
+        List<Person> draft = new ArrayList<>(personList);
+        draft.set(index, draft.get(index).toBuilder().city("City " + next).build());
+        personList = Collections.unmodifiableList(draft);
+        return personList;
+    }
+
+    @Benchmark
+    public DataSnapshot persistentSnapshotPerWrite() {
+        int index = next++ % persons;
+        DataWrapper draft = snapshot.toDraft(new ArrayList<Change>());
+        draft.getPersons().set(index, draft.getPersons().get(index).toBuilder().city("City " + next).build());
+        snapshot = DataSnapshot.of(++version, draft);
+        return snapshot;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PersistentSnapshotBenchmark.class.getSimpleName()).build()).run();
+    }
+}
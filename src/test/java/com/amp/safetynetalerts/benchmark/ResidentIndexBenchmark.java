@@ -0,0 +1,69 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.model.DataWrapper;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.DataSnapshot;
+import com.amp.safetynetalerts.service.FirestationService;
+import com.amp.safetynetalerts.service.PersonService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of finding the residents of one station, as /phoneAlert and /flood/stations do: testing every person
+ * against the list of addresses of the station as PersonService used to, versus the union of the posting lists
+ * of the address index carried by the snapshot list. The scan grows with persons times addresses, so it is not
+ * measured beyond 100k persons.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ResidentIndexBenchmark {
+
+    @Param({"10000", "100000"})
+    public int persons;
+
+    private List<Person> indexed;
+    private List<String> addresses;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        DataWrapper dataWrapper = DataSnapshot.of(0, BenchmarkData.generate(persons)).toDataWrapper();
+        indexed = dataWrapper.getPersons();
+        addresses = FirestationService.getFirestationAddresses(dataWrapper.getFirestations(), 1);
+    }
+
+    @Benchmark
+    public List<Person> listContainsScan() {
+        List<Person> result = new ArrayList<>();
+        for (Person person : indexed) {
+            if (addresses.contains(person.getAddress())) {
+                result.add(person);
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<Person> indexedResidents() {
+        return PersonService.getPersonsByAddresses(indexed, addresses);
+    }
+
+    @Benchmark
+    public List<Person> indexedResidentsOfOneAddress() {
+        return PersonService.getPersonsByAddresses(indexed, List.of(BenchmarkData.address(next++ % (persons / BenchmarkData.PERSONS_PER_ADDRESS))));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ResidentIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
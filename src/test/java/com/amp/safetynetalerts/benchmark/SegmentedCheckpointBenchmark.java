@@ -0,0 +1,84 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.repository.Checkpointer;
+import com.amp.safetynetalerts.repository.DataLayout;
+import com.amp.safetynetalerts.repository.DataSnapshot;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.Durability;
+import com.amp.safetynetalerts.repository.JsonSnapshotStorage;
+import com.amp.safetynetalerts.repository.MutationJournal;
+import com.amp.safetynetalerts.repository.ReadMode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Checkpoint following a firestation edit: the single data file rewrites every collection,
+ * the segmented layout only rewrites the firestations segment.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SegmentedCheckpointBenchmark {
+
+    @Param({"10000", "100000"})
+    public int persons;
+
+    @Param({"SINGLE_FILE", "SEGMENTED"})
+    public DataLayout layout;
+
+    private Path directory;
+    private DataStore dataStore;
+    private Checkpointer checkpointer;
+    private int station;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("safetynet-bench-");
+        Path file = directory.resolve("data.json");
+        Files.move(BenchmarkData.writeTempFile(persons), file);
+        dataStore = new DataStore(file.toString(),
+                new JsonSnapshotStorage(file.toString(), layout, Durability.NONE, false),
+                new MutationJournal(directory.resolve("data.journal").toString(), MutationJournal.FsyncPolicy.NEVER, 0),
+                null, ReadMode.RESIDENT);
+        dataStore.load();
+        checkpointer = new Checkpointer(dataStore, dataStore.getJournal(), new SimpleMeterRegistry(),
+                Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Durability.NONE);
+        checkpointer.checkpoint();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        dataStore.getJournal().close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public DataSnapshot firestationEditThenCheckpoint() throws IOException {
+        int next = station++ % BenchmarkData.STATIONS + 1;
+        dataStore.update(dataWrapper -> dataWrapper.getFirestations()
+                .set(0, new Firestation(BenchmarkData.address(0), next)));
+        return checkpointer.checkpoint();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SegmentedCheckpointBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,61 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.repository.DataSnapshot;
+import com.amp.safetynetalerts.repository.DataWrapperRepository;
+import com.amp.safetynetalerts.repository.Durability;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup load of the base snapshot from the JSON file versus the binary snapshot written next to it.
+ * The 10M persons dataset needs a heap of several GB, pass {@code -p persons=10000,1000000} to skip it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SnapshotFormatBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    public int persons;
+
+    private Path jsonFile;
+    private Path binaryFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        jsonFile = BenchmarkData.writeTempFile(persons);
+        binaryFile = Path.of(DataWrapperRepository.getBinarySnapshotFile(jsonFile.toString()));
+        DataWrapperRepository.updateBinarySnapshot(DataWrapperRepository.getSnapshot(jsonFile.toString()), binaryFile.toString(), Durability.NONE);
+        System.out.printf("%nJSON file: %d bytes, binary snapshot: %d bytes%n", Files.size(jsonFile), Files.size(binaryFile));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(jsonFile);
+        Files.deleteIfExists(binaryFile);
+    }
+
+    @Benchmark
+    public DataSnapshot jsonLoad() {
+        return DataWrapperRepository.getSnapshot(jsonFile.toString());
+    }
+
+    @Benchmark
+    public DataSnapshot binaryLoad() throws IOException {
+        return DataWrapperRepository.getBinarySnapshot(binaryFile.toString());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SnapshotFormatBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,61 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.model.Firestation;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.service.FirestationService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read latency of a station lookup with no concurrent writer, and while a writer keeps publishing snapshots.
+ * Readers never lock, so both groups should report the same read latency.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotReadBenchmark {
+
+    @Param({"10000"})
+    public int persons;
+
+    private DataStore dataStore;
+
+    @Setup
+    public void setup() throws IOException {
+        dataStore = BenchmarkData.newDataStore(BenchmarkData.writeTempFile(persons));
+    }
+
+    @Benchmark
+    @Group("readOnly")
+    @GroupThreads(3)
+    public List<String> readOnly() {
+        return FirestationService.getFirestationAddresses(dataStore.getDataWrapper().getFirestations(), 1);
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(3)
+    public List<String> reader() {
+        return FirestationService.getFirestationAddresses(dataStore.getDataWrapper().getFirestations(), 1);
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(1)
+    public void writer() throws IOException {
+        dataStore.update(dataWrapper -> dataWrapper.getFirestations().set(0, new Firestation(BenchmarkData.address(0), 1)));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SnapshotReadBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,122 @@
+package com.amp.safetynetalerts.benchmark;
+
+import com.amp.safetynetalerts.dto.DataOfInhabitantsDTO;
+import com.amp.safetynetalerts.model.Person;
+import com.amp.safetynetalerts.repository.Checkpointer;
+import com.amp.safetynetalerts.repository.DataLayout;
+import com.amp.safetynetalerts.repository.DataSnapshot;
+import com.amp.safetynetalerts.repository.DataStore;
+import com.amp.safetynetalerts.repository.Durability;
+import com.amp.safetynetalerts.repository.H2SnapshotStorage;
+import com.amp.safetynetalerts.repository.JsonSnapshotStorage;
+import com.amp.safetynetalerts.repository.MutationJournal;
+import com.amp.safetynetalerts.repository.ReadMode;
+import com.amp.safetynetalerts.repository.SnapshotStorage;
+import com.amp.safetynetalerts.repository.StorageBackend;
+import com.amp.safetynetalerts.service.PersonService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The /fire, /flood/stations and CRUD workloads over the JSON file and the H2 storage backends.
+ * Reads are served from the in-memory snapshot with either backend, the CRUD workload includes the checkpoint
+ * writing its changes to the backend: the whole file for JSON, the changed rows for H2.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageBackendBenchmark {
+
+    @Param({"1000", "10000"})
+    public int persons;
+
+    @Param({"JSON", "H2"})
+    public StorageBackend backend;
+
+    private Path directory;
+    private SnapshotStorage storage;
+    private DataStore dataStore;
+    private Checkpointer checkpointer;
+    private PersonService personService;
+    private int operation;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("safetynet-bench-");
+        Path file = directory.resolve("data.json");
+        Files.move(BenchmarkData.writeTempFile(persons), file);
+        JsonSnapshotStorage jsonStorage = new JsonSnapshotStorage(file.toString(), DataLayout.SINGLE_FILE, Durability.NONE, false);
+        storage = backend == StorageBackend.H2
+                ? new H2SnapshotStorage("jdbc:h2:file:" + directory.resolve("data").toAbsolutePath(), jsonStorage)
+                : jsonStorage;
+        dataStore = new DataStore(file.toString(), storage,
+                new MutationJournal(directory.resolve("data.journal").toString(), MutationJournal.FsyncPolicy.NEVER, 0),
+                null, ReadMode.RESIDENT);
+        dataStore.load();
+        checkpointer = new Checkpointer(dataStore, dataStore.getJournal(), new SimpleMeterRegistry(),
+                Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Durability.NONE);
+        personService = new PersonService(dataStore);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, SQLException {
+        dataStore.getJournal().close();
+        if (storage instanceof H2SnapshotStorage h2) {
+            h2.close();
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<DataOfInhabitantsDTO> fire() {
+        return personService.processDataByAddress(BenchmarkData.address(operation++ % (persons / BenchmarkData.PERSONS_PER_ADDRESS)));
+    }
+
+    @Benchmark
+    public Map<Integer, List<DataOfInhabitantsDTO>> floodStations() {
+        return personService.getPersonsDataByFirestationNumber(List.of(operation++ % BenchmarkData.STATIONS + 1));
+    }
+
+    /**
+     * Adds a person, updates an existing one and deletes the person added by the previous invocation,
+     * then checkpoints.
+     */
+    @Benchmark
+    public DataSnapshot crudThenCheckpoint() throws IOException {
+        int next = operation++;
+        personService.addAndPersistPerson(new Person("Added" + next, "Bench", BenchmarkData.address(0), "Culver", "97451",
+                "841-874-0000", "added@email.com"));
+        int updated = next % persons;
+        personService.updatePersonDataWrapper(new Person(BenchmarkData.firstName(updated),
+                BenchmarkData.lastName(updated / BenchmarkData.PERSONS_PER_ADDRESS), BenchmarkData.address(0), "Culver", "97451",
+                "841-874-" + String.format("%04d", next % 10_000), "updated@email.com"));
+        if (next > 0) {
+            personService.deletePersonDataWrapper("Added" + (next - 1), "Bench");
+        }
+        return checkpointer.checkpoint();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(StorageBackendBenchmark.class.getSimpleName()).build()).run();
+    }
+}